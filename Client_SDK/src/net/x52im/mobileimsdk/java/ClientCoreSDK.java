@@ -21,9 +21,11 @@ import net.x52im.mobileimsdk.java.core.KeepAliveDaemon;
 import net.x52im.mobileimsdk.java.core.LocalSocketProvider;
 import net.x52im.mobileimsdk.java.core.QoS4ReciveDaemon;
 import net.x52im.mobileimsdk.java.core.QoS4SendDaemon;
+import net.x52im.mobileimsdk.java.core.QoS4SeqReciveDaemon;
 import net.x52im.mobileimsdk.java.event.ChatBaseEvent;
 import net.x52im.mobileimsdk.java.event.ChatMessageEvent;
 import net.x52im.mobileimsdk.java.event.MessageQoSEvent;
+import net.x52im.mobileimsdk.java.event.PresenceEvent;
 import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
 
 public class ClientCoreSDK {
@@ -32,6 +34,8 @@ public class ClientCoreSDK {
 
 	public static boolean DEBUG = true;
 	public static boolean autoReLogin = true;
+	/** 是否向服务端声明支持按会话序号接收（服务端据此改用累计应答并保证按序交付），since 6.5 */
+	public static boolean seqAck = true;
 	private static ClientCoreSDK instance = null;
 
 	private boolean _init = false;
@@ -42,6 +46,7 @@ public class ClientCoreSDK {
 	private ChatBaseEvent chatBaseEvent = null;
 	private ChatMessageEvent chatMessageEvent = null;
 	private MessageQoSEvent messageQoSEvent = null;
+	private PresenceEvent presenceEvent = null;
 
 	public static ClientCoreSDK getInstance() {
 		if (instance == null) {
@@ -68,14 +73,17 @@ public class ClientCoreSDK {
 		this.setConnectedToServer(false);
 				
 		LocalSocketProvider.getInstance().closeLocalSocket();
+		LocalSocketProvider.getInstance().clearRedirect();
 		AutoReLoginDaemon.getInstance().stop();
 		QoS4SendDaemon.getInstance().stop();
 		KeepAliveDaemon.getInstance().stop();
 
 		QoS4ReciveDaemon.getInstance().stop();
+		QoS4SeqReciveDaemon.getInstance().stop();
 
 		QoS4SendDaemon.getInstance().clear();
 		QoS4ReciveDaemon.getInstance().clear();
+		QoS4SeqReciveDaemon.getInstance().clear();
 
 		_init = false;
 		this.setLoginHasInit(false);
@@ -161,4 +169,12 @@ public class ClientCoreSDK {
 	public MessageQoSEvent getMessageQoSEvent() {
 		return messageQoSEvent;
 	}
+
+	public void setPresenceEvent(PresenceEvent presenceEvent) {
+		this.presenceEvent = presenceEvent;
+	}
+
+	public PresenceEvent getPresenceEvent() {
+		return presenceEvent;
+	}
 }
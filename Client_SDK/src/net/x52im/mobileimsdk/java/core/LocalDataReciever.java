@@ -16,25 +16,36 @@
  */
 package net.x52im.mobileimsdk.java.core;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 
 import net.x52im.mobileimsdk.java.ClientCoreSDK;
 import net.x52im.mobileimsdk.java.utils.Log;
+import net.x52im.mobileimsdk.java.utils.MBObserver;
 import net.x52im.mobileimsdk.server.protocal.ErrorCode;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
 import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
 import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
 import net.x52im.mobileimsdk.server.protocal.s.PErrorResponse;
 import net.x52im.mobileimsdk.server.protocal.s.PKickoutInfo;
 import net.x52im.mobileimsdk.server.protocal.s.PLoginInfoResponse;
+import net.x52im.mobileimsdk.server.protocal.s.PPresenceDelta;
+import net.x52im.mobileimsdk.server.protocal.s.PSeqSyncResponse;
 
 public class LocalDataReciever
 {
 	private final static String TAG = LocalDataReciever.class.getSimpleName();
 	
+	/** 一次登陆最多跟随几次服务端重定向，防止集群各节点配置不一致时来回重定向 */
+	public static int MAX_LOGIN_REDIRECTS = 1;
+	
 	private static LocalDataReciever instance = null;
 	
+	private int loginRedirectCount = 0;
+	
 	public static LocalDataReciever getInstance()
 	{
 		if (instance == null) {
@@ -60,7 +71,8 @@ public class LocalDataReciever
 
 		try{
 			final Protocal pFromServer = ProtocalFactory.parse(fullProtocalOfBody, fullProtocalOfBody.length);
-			if(pFromServer.isQoS()){
+			// 带会话序号的包由QoS4SeqReciveDaemon去重并累计应答，无需逐条回指纹应答
+			if(pFromServer.isQoS() && !pFromServer.isSequenced()){
 				if(pFromServer.getType() == ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN && ProtocalFactory.parsePLoginInfoResponse(pFromServer.getDataContent()).getCode() != 0){
 					if(ClientCoreSDK.DEBUG)
 						Log.d(TAG, "【IMCORE-TCP】【BugFIX】这是服务端的登陆返回响应包，" +"且服务端判定登陆失败(即code!=0)，本次无需发送ACK应答包！");
@@ -83,7 +95,18 @@ public class LocalDataReciever
 
 			switch(pFromServer.getType()){
 				case ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA:{
-					onRecievedCommonData(pFromServer);
+					if(pFromServer.isSequenced()){
+						for(Protocal p : QoS4SeqReciveDaemon.getInstance().onSequencedData(pFromServer))
+							onRecievedCommonData(p);
+					}
+					else
+						onRecievedCommonData(pFromServer);
+					break;
+				}
+				case ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$SYNC$SEQ:{
+					PSeqSyncResponse res = ProtocalFactory.parsePSeqSyncResponse(pFromServer.getDataContent());
+					for(Protocal p : QoS4SeqReciveDaemon.getInstance().onSyncResponse(res))
+						onRecievedCommonData(p);
 					break;
 				}
 				case ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$KEEP$ALIVE:{
@@ -106,6 +129,10 @@ public class LocalDataReciever
 					onKickout(pFromServer);
 					break;
 				}
+				case ProtocalType.S.FROM_SERVER_TYPE_OF_PRESENCE$DELTA:{
+					onPresenceDelta(pFromServer);
+					break;
+				}
 				default:
 					Log.w(TAG, "【IMCORE-TCP】收到的服务端消息类型："+pFromServer.getType()+"，但目前该类型客户端不支持解析和处理！");
 					break;
@@ -146,6 +173,22 @@ public class LocalDataReciever
 	protected void onServerResponseLogined(Protocal pFromServer)
 	{
 		PLoginInfoResponse loginInfoRes = ProtocalFactory.parsePLoginInfoResponse(pFromServer.getDataContent());
+		if(loginInfoRes.getCode() == ErrorCode.ForS.RESPONSE_FOR_REDIRECT && loginInfoRes.getRedirectNodeHost() != null
+				&& loginRedirectCount < MAX_LOGIN_REDIRECTS)
+		{
+			loginRedirectCount++;
+			Log.i(TAG, "【IMCORE-TCP】登陆被服务端重定向到"+loginInfoRes.getRedirectNodeHost()+":"+loginInfoRes.getRedirectNodePort()+"，将改连该节点并重新登陆...");
+			
+			final PLoginInfo loginInfo = ClientCoreSDK.getInstance().getCurrentLoginInfo();
+			LocalSocketProvider.getInstance().redirectTo(loginInfoRes.getRedirectNodeHost(), loginInfoRes.getRedirectNodePort(), new MBObserver() {
+				public void update(boolean sucess, Object extraObj) {
+					LocalDataSender.getInstance().sendLogin(loginInfo);
+				}
+			});
+			return;
+		}
+		loginRedirectCount = 0;
+		
 		if(loginInfoRes.getCode() == 0)
 		{
 			if(!ClientCoreSDK.getInstance().isLoginHasInit()) {
@@ -203,6 +246,16 @@ public class LocalDataReciever
 			ClientCoreSDK.getInstance().getChatBaseEvent().onLinkClose(-1);
 	}
 	
+	protected void onPresenceDelta(Protocal pFromServer)
+	{
+		PPresenceDelta delta = ProtocalFactory.parsePPresenceDelta(pFromServer.getDataContent());
+		if(ClientCoreSDK.getInstance().getPresenceEvent() != null){
+			List<String> empty = Collections.emptyList();
+			ClientCoreSDK.getInstance().getPresenceEvent().onPresenceChanged(
+					delta.getOn() != null ? delta.getOn() : empty, delta.getOff() != null ? delta.getOff() : empty);
+		}
+	}
+	
 	protected void fireConnectedToServer()
 	{
 		ClientCoreSDK.getInstance().setLoginHasInit(true);
@@ -216,6 +269,7 @@ public class LocalDataReciever
 
 		QoS4SendDaemon.getInstance().startup(true);
 		QoS4ReciveDaemon.getInstance().startup(true);
+		QoS4SeqReciveDaemon.getInstance().startup();
 		ClientCoreSDK.getInstance().setConnectedToServer(true);
 	}
 	
@@ -230,6 +284,7 @@ public class LocalDataReciever
 		/** ## Bug FIX 20190326 [Bug 1] - END */
 
 		QoS4ReciveDaemon.getInstance().stop();
+		QoS4SeqReciveDaemon.getInstance().stop();
 //		LocalUDPSocketProvider.getInstance().closeLocalUDPSocket();
 
 		if(ClientCoreSDK.getInstance().getChatBaseEvent() != null)
@@ -18,12 +18,17 @@ package net.x52im.mobileimsdk.java.core;
 
 import io.netty.channel.Channel;
 
+import java.util.List;
+
 import org.jdesktop.swingworker.SwingWorker;
 
 import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
 import net.x52im.mobileimsdk.server.protocal.ErrorCode;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
 import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+import net.x52im.mobileimsdk.server.protocal.c.PPresenceSubscribe;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqAck;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqSync;
 import net.x52im.mobileimsdk.java.ClientCoreSDK;
 import net.x52im.mobileimsdk.java.utils.Log;
 import net.x52im.mobileimsdk.java.utils.MBObserver;
@@ -75,6 +80,7 @@ public class LocalDataSender {
 
 	// 不推荐直接调用本方法实现“登陆”流程，请使用SendLoginAsync（此异步线程中包含发送登陆包之外的处理和逻辑）
 	int sendLoginImpl(PLoginInfo loginInfo) {
+		loginInfo.setSeqAck(ClientCoreSDK.seqAck);
 		byte[] b = ProtocalFactory.createPLoginInfo(loginInfo).toBytes();
 		int code = send(b, b.length);
 		if (code == 0) {
@@ -104,6 +110,30 @@ public class LocalDataSender {
 		return send(b, b.length);
 	}
 
+	/**
+	 * 订阅/退订其它用户的在线状态，结果经 {@link net.x52im.mobileimsdk.java.event.PresenceEvent} 通知。
+	 * 订阅关系在本用户下线后即被服务端清除，重新登陆后需再次订阅。
+	 * 
+	 * @param subscribe 要订阅的用户id，可为null
+	 * @param unsubscribe 要退订的用户id，可为null
+	 * @since 6.5
+	 */
+	public int sendPresenceSubscribe(List<String> subscribe, List<String> unsubscribe) {
+		byte[] b = ProtocalFactory.createPPresenceSubscribe(new PPresenceSubscribe(subscribe, unsubscribe)
+				, ClientCoreSDK.getInstance().getCurrentLoginInfo().getLoginUserId()).toBytes();
+		return send(b, b.length);
+	}
+
+	int sendSeqAck(PSeqAck[] acks) {
+		byte[] b = ProtocalFactory.createPSeqAck(acks, ClientCoreSDK.getInstance().getCurrentLoginInfo().getLoginUserId()).toBytes();
+		return send(b, b.length);
+	}
+
+	int sendSeqSync(PSeqSync sync) {
+		byte[] b = ProtocalFactory.createPSeqSync(sync, ClientCoreSDK.getInstance().getCurrentLoginInfo().getLoginUserId()).toBytes();
+		return send(b, b.length);
+	}
+
 	public int sendCommonData(String dataContentWidthStr, String to_user_id) {
 		return sendCommonData(dataContentWidthStr, to_user_id, -1);
 	}
@@ -45,6 +45,8 @@ public class LocalSocketProvider {
 	public static int TCP_FRAME_FIXED_HEADER_LENGTH = 4; // 4 bytes
 	public static int TCP_FRAME_MAX_BODY_LENGTH = 6 * 1024; // 6K bytes
 	public static SslContext sslContext = null;
+	/** 被重定向后连续连接失败达到该次数时，放弃重定向地址，改回ConfigEntity中配置的服务端地址（since 6.5） */
+	public static int MAX_REDIRECT_CONNECT_FAILURES = 3;
 	private static LocalSocketProvider instance = null;
 
 	private Bootstrap bootstrap = null;
@@ -52,6 +54,11 @@ public class LocalSocketProvider {
 	private ChannelFuture localConnectingFuture = null;
 	private MBObserver connectionDoneObserver;
 
+	/** 登陆被重定向到的节点地址，为null表示未被重定向（连接ConfigEntity中配置的地址） */
+	private String redirectIP = null;
+	private int redirectPort = -1;
+	private int redirectConnectFailures = 0;
+
 	public static LocalSocketProvider getInstance() {
 		if (instance == null) {
 			synchronized (LocalSocketProvider.class) {
@@ -103,8 +110,17 @@ public class LocalSocketProvider {
 		if (ClientCoreSDK.DEBUG)
 			Log.d(TAG, "【IMCORE-TCP】tryConnectToHost并获取connection开始了...");
 
+		final String serverIP;
+		final int serverPort;
+		final boolean redirected;
+		synchronized (this) {
+			redirected = (redirectIP != null);
+			serverIP = (redirected ? redirectIP : ConfigEntity.serverIP);
+			serverPort = (redirected ? redirectPort : ConfigEntity.serverPort);
+		}
+
 		try {
-			ChannelFuture cf = bootstrap.connect(ConfigEntity.serverIP, ConfigEntity.serverPort);// .sync()
+			ChannelFuture cf = bootstrap.connect(serverIP, serverPort);// .sync()
 			this.localSocket = cf.channel();
 			this.localConnectingFuture = cf;
 
@@ -115,13 +131,19 @@ public class LocalSocketProvider {
 							Log.w(TAG, "【IMCORE-tryConnectToHost-异步回调】Connection attempt cancelled by user");
 						} else if (!f.isSuccess()) {
 							Log.w(TAG, "【IMCORE-tryConnectToHost-异步回调】连接失败，原因是：", f.cause());
+							if (redirected)
+								onRedirectConnectFailed();
 						} else {
 							Log.i(TAG, "【IMCORE-tryConnectToHost-异步回调】Connection established successfully");
+							if (redirected)
+								onRedirectConnected();
 						}
 
-						if (LocalSocketProvider.this.connectionDoneObserver != null) {
-							connectionDoneObserver.update(f.isSuccess(), null);
+						// 先取出再回调：回调中可能已为下一次连接设置了新的observer，不能在回调后将其清掉
+						MBObserver observer = LocalSocketProvider.this.connectionDoneObserver;
+						if (observer != null) {
 							LocalSocketProvider.this.connectionDoneObserver = null;
+							observer.update(f.isSuccess(), null);
 						}
 					}
 					
@@ -148,11 +170,63 @@ public class LocalSocketProvider {
 
 			return true;
 		} catch (Exception e) {
-			Log.e(TAG, String.format("【IMCORE-TCP】连接Server(IP[%s],PORT[%s])失败", ConfigEntity.serverIP, ConfigEntity.serverPort), e);
+			Log.e(TAG, String.format("【IMCORE-TCP】连接Server(IP[%s],PORT[%s])失败", serverIP, serverPort), e);
+			if (redirected)
+				onRedirectConnectFailed();
 			return false;
 		}
 	}
 
+	/**
+	 * 登陆被服务端重定向到集群中的另一节点时调用：改用新的服务端地址，并在当前连接彻底关闭后回调
+	 * closedObserver（此时可重新发起登陆，新连接将连到新地址）。
+	 * <p>
+	 * ConfigEntity中配置的原地址保持不变：连续 {@link #MAX_REDIRECT_CONNECT_FAILURES} 次连不上新地址时
+	 * （如该节点已下线），之后的重连将改回原地址，由其重新分配节点。
+	 */
+	public void redirectTo(String serverIP, int serverPort, final MBObserver closedObserver) {
+		synchronized (this) {
+			this.redirectIP = serverIP;
+			this.redirectPort = serverPort;
+			this.redirectConnectFailures = 0;
+		}
+
+		Channel old = this.localSocket;
+		if (old == null) {
+			closedObserver.update(true, null);
+			return;
+		}
+
+		// 注意：须在连接建立时注册的closeFuture监听（会把localSocket置null）之后再重连，否则新连接会被它误清掉
+		old.closeFuture().addListener(new ChannelFutureListener() {
+			public void operationComplete(ChannelFuture future) throws Exception {
+				closedObserver.update(true, null);
+			}
+		});
+		old.close();
+	}
+
+	/**
+	 * 放弃重定向地址，之后的连接改回ConfigEntity中配置的服务端地址。
+	 */
+	public synchronized void clearRedirect() {
+		this.redirectIP = null;
+		this.redirectPort = -1;
+		this.redirectConnectFailures = 0;
+	}
+
+	private synchronized void onRedirectConnected() {
+		this.redirectConnectFailures = 0;
+	}
+
+	private synchronized void onRedirectConnectFailed() {
+		if (redirectIP != null && ++redirectConnectFailures >= MAX_REDIRECT_CONNECT_FAILURES) {
+			Log.w(TAG, "【IMCORE-TCP】重定向的节点"+redirectIP+":"+redirectPort+"已连续"+redirectConnectFailures
+					+"次连接失败，之后将改回原服务端"+ConfigEntity.serverIP+":"+ConfigEntity.serverPort+"。");
+			clearRedirect();
+		}
+	}
+
 	public boolean isLocalSocketReady() {
 		return localSocket != null && localSocket.isActive();
 	}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK_TCP (MobileIMSDK v6.4 TCP版) Project. 
+ * All rights reserved.
+ * 
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：215477170 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *  
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ * 
+ * QoS4SeqReciveDaemon.java at 2026-10-18, code by Jack Jiang.
+ */
+package net.x52im.mobileimsdk.java.core;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.Timer;
+
+import net.x52im.mobileimsdk.java.ClientCoreSDK;
+import net.x52im.mobileimsdk.java.utils.Log;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqAck;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqSync;
+import net.x52im.mobileimsdk.server.protocal.s.PSeqSyncResponse;
+
+/**
+ * 按会话序号接收的QoS接收方：每个对方（会话流）只记录已按序交付的最大序号，据此去重、排序交付，
+ * 并周期性地合并发送累计应答；发现缺号超过 {@link #GAP_WAIT_TIME} 仍未补上时请求服务端补发。
+ * 
+ * @since 6.5
+ */
+public class QoS4SeqReciveDaemon {
+	
+	private final static String TAG = QoS4SeqReciveDaemon.class.getSimpleName();
+	
+	private static QoS4SeqReciveDaemon instance = null;
+	/** 累计应答的合并发送周期 */
+	public final static int ACK_INTERVAL = 200;
+	/** 缺号持续多久后请求补发 */
+	public final static int GAP_WAIT_TIME = 1000;
+	/** 每条会话流最多暂存的乱序包数 */
+	public final static int MAX_BUFFER_SIZE = 1000;
+
+	/** key=对方的user_id */
+	private final Map<String, SeqStream> streams = new HashMap<String, SeqStream>();
+	private boolean running = false;
+	private Timer timer = null;
+
+	public static QoS4SeqReciveDaemon getInstance() {
+		if (instance == null) {
+			synchronized (QoS4SeqReciveDaemon.class) {
+				if (instance == null) {
+					instance = new QoS4SeqReciveDaemon();
+				}
+			}
+		}
+		return instance;
+	}
+
+	private QoS4SeqReciveDaemon() {
+		timer = new Timer(ACK_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				run();
+			}
+		});
+	}
+
+	/**
+	 * 收到一个带会话序号的包。
+	 * 
+	 * @return 可按序交付给应用层的包（可能为空，也可能因补齐了缺号而多于一个）
+	 */
+	public synchronized List<Protocal> onSequencedData(Protocal p) {
+		String peer = p.getFrom();
+		long se = p.getSe() != null ? p.getSe() : 0;
+		long sq = p.getSq();
+
+		SeqStream s = streams.get(peer);
+		if (s == null || s.se != se) {
+			// 首次收到该流（或服务端已换了新流）：从1开始的流可直接交付，否则需先向服务端确认起点
+			s = new SeqStream(se, sq == 1 ? 0 : -1);
+			streams.put(peer, s);
+		} else if (s.lastSeq < 0 && sq == 1) {
+			// 起点未知时先到的是后面的包，sq=1随后到达即可确定起点，无需再等服务端的响应
+			s.lastSeq = 0;
+		}
+
+		if (s.lastSeq >= 0 && sq <= s.lastSeq) {
+			if (ClientCoreSDK.DEBUG)
+				Log.d(TAG, "【IMCORE-TCP】【序号QoS】来自" + peer + "的sq=" + sq + "的包已交付过(已交付至" + s.lastSeq + ")，这是重复包.");
+			// 仍需回应答：服务端重传说明之前的应答丢了
+			s.ackDirty = true;
+			return Collections.emptyList();
+		}
+
+		if (s.buffer.size() < MAX_BUFFER_SIZE)
+			s.buffer.put(sq, p);
+		else
+			Log.w(TAG, "【IMCORE-TCP】【序号QoS】来自" + peer + "的会话流暂存的乱序包已达上限" + MAX_BUFFER_SIZE + "，sq=" + sq + "的包被丢弃(稍后将由服务端重传).");
+		return drain(s);
+	}
+
+	/**
+	 * 收到补发请求的响应：以服务端告知的起点为准，不再等待起点之前的缺号。
+	 * 暂存的包中序号不大于起点的（服务端已判定丢失或已确认过的）也照常按序交付，不会被丢弃。
+	 */
+	public synchronized List<Protocal> onSyncResponse(PSeqSyncResponse res) {
+		SeqStream s = streams.get(res.getP());
+		if (s == null)
+			return Collections.emptyList();
+
+		if (res.getSe() == 0) {
+			// 服务端已没有这条流：暂存的包已无从补齐，按序交付后丢弃流状态
+			streams.remove(res.getP());
+			return new ArrayList<Protocal>(s.buffer.values());
+		}
+
+		if (s.se != res.getSe()) {
+			s = new SeqStream(res.getSe(), -1);
+			streams.put(res.getP(), s);
+		}
+		List<Protocal> out = new ArrayList<Protocal>(1);
+		if (s.lastSeq < res.getBase()) {
+			Map<Long, Protocal> head = s.buffer.headMap(res.getBase(), true);
+			out.addAll(head.values());
+			head.clear();
+			s.lastSeq = res.getBase();
+			s.ackDirty = true;
+		}
+		out.addAll(drain(s));
+		return out;
+	}
+
+	private List<Protocal> drain(SeqStream s) {
+		List<Protocal> out = new ArrayList<Protocal>(1);
+		if (s.lastSeq >= 0) {
+			Protocal next;
+			while ((next = s.buffer.remove(s.lastSeq + 1)) != null) {
+				out.add(next);
+				s.lastSeq++;
+				s.ackDirty = true;
+			}
+		}
+		if (s.buffer.isEmpty())
+			s.gapSince = 0;
+		else if (s.gapSince == 0 || !out.isEmpty())
+			s.gapSince = System.currentTimeMillis();
+		return out;
+	}
+
+	public void run() {
+		List<PSeqAck> acks = new ArrayList<PSeqAck>();
+		List<PSeqSync> syncs = new ArrayList<PSeqSync>();
+		collect(System.currentTimeMillis(), acks, syncs);
+
+		if (!acks.isEmpty()) {
+			int code = LocalDataSender.getInstance().sendSeqAck(acks.toArray(new PSeqAck[acks.size()]));
+			if (code != 0) {
+				// 发送失败则下次重发
+				synchronized (this) {
+					for (PSeqAck ack : acks) {
+						SeqStream s = streams.get(ack.getP());
+						if (s != null)
+							s.ackDirty = true;
+					}
+				}
+			}
+		}
+		for (PSeqSync sync : syncs) {
+			if (ClientCoreSDK.DEBUG)
+				Log.d(TAG, "【IMCORE-TCP】【序号QoS】来自" + sync.getP() + "的会话流缺少[" + sync.getFrom() + ", " + sync.getTo() + "]，请求补发.");
+			LocalDataSender.getInstance().sendSeqSync(sync);
+		}
+	}
+
+	/**
+	 * 收集本周期要发出的累计应答与补发请求。
+	 * <p>
+	 * 起点未知的流以from=0请求（服务端据此总会回以当前纪元与起点），首次立即请求、之后每 {@link #GAP_WAIT_TIME}
+	 * 最多请求一次，以免响应丢失时每个周期都让服务端重发；起点已知的流在缺号持续 {@link #GAP_WAIT_TIME}
+	 * 后才请求（以免把正常的乱序当成丢包）。
+	 */
+	synchronized void collect(long now, List<PSeqAck> acks, List<PSeqSync> syncs) {
+		for (Map.Entry<String, SeqStream> e : streams.entrySet()) {
+			SeqStream s = e.getValue();
+			if (s.ackDirty && s.lastSeq > 0) {
+				acks.add(new PSeqAck(e.getKey(), s.se, s.lastSeq));
+				s.ackDirty = false;
+			}
+			if (s.buffer.isEmpty())
+				continue;
+			if (s.lastSeq < 0) {
+				if (s.syncTime == 0 || now - s.syncTime >= GAP_WAIT_TIME) {
+					syncs.add(new PSeqSync(e.getKey(), s.se, 0, s.buffer.firstKey() - 1));
+					s.syncTime = now;
+				}
+			} else if (now - s.gapSince >= GAP_WAIT_TIME) {
+				syncs.add(new PSeqSync(e.getKey(), s.se, s.lastSeq + 1, s.buffer.firstKey() - 1));
+				s.gapSince = now;
+			}
+		}
+	}
+
+	public void startup() {
+		stop();
+		timer.start();
+		running = true;
+	}
+
+	public void stop() {
+		if (timer != null)
+			timer.stop();
+		running = false;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public synchronized void clear() {
+		streams.clear();
+	}
+
+	public synchronized int size() {
+		return streams.size();
+	}
+
+	private static class SeqStream {
+		final long se;
+		/** 已按序交付的最大序号，-1表示起点未知（尚待服务端告知） */
+		long lastSeq;
+		/** 乱序到达、暂不能交付的包 */
+		final TreeMap<Long, Protocal> buffer = new TreeMap<Long, Protocal>();
+		/** 自何时起存在缺号，0表示无缺号 */
+		long gapSince = 0;
+		/** 起点未知时上次请求起点的时间，0表示尚未请求 */
+		long syncTime = 0;
+		boolean ackDirty = false;
+
+		SeqStream(long se, long lastSeq) {
+			this.se = se;
+			this.lastSeq = lastSeq;
+		}
+	}
+}
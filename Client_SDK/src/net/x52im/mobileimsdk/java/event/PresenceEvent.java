@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK_TCP (MobileIMSDK v6.4 TCP版) Project. 
+ * All rights reserved.
+ * 
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：215477170 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *  
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ * 
+ * PresenceEvent.java at 2026-10-18, code by Jack Jiang.
+ */
+package net.x52im.mobileimsdk.java.event;
+
+import java.util.List;
+
+/**
+ * 所订阅用户的在线状态变化通知（订阅请使用 LocalDataSender.sendPresenceSubscribe）。
+ * 
+ * @since 6.5
+ */
+public interface PresenceEvent{
+	/**
+	 * @param onlineUserIds 变为在线的用户，可能为空但不会为null
+	 * @param offlineUserIds 变为离线的用户，可能为空但不会为null
+	 */
+	void onPresenceChanged(List<String> onlineUserIds, List<String> offlineUserIds);
+}
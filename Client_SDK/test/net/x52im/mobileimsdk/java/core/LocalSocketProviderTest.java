@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK_TCP (MobileIMSDK v6.4 TCP版) Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：215477170 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * LocalSocketProviderTest.java at 2026-10-18, code by Jack Jiang.
+ */
+package net.x52im.mobileimsdk.java.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.x52im.mobileimsdk.java.conf.ConfigEntity;
+import net.x52im.mobileimsdk.java.utils.MBObserver;
+
+import org.junit.Test;
+
+/**
+ * 登陆重定向：原服务端地址保持不变，重定向的节点连续连不上时，重连改回原地址。
+ */
+public class LocalSocketProviderTest
+{
+	@Test
+	public void redirectFallsBackToConfiguredServerAfterConnectFailures() throws Exception
+	{
+		String serverIP = ConfigEntity.serverIP;
+		int serverPort = ConfigEntity.serverPort;
+		LocalSocketProvider provider = LocalSocketProvider.getInstance();
+		ServerSocket origin = new ServerSocket(0);
+		try
+		{
+			ConfigEntity.serverIP = "127.0.0.1";
+			ConfigEntity.serverPort = origin.getLocalPort();
+
+			// 重定向到一个没有监听的端口
+			ServerSocket gone = new ServerSocket(0);
+			int gonePort = gone.getLocalPort();
+			gone.close();
+
+			final BlockingQueue<Boolean> closed = new ArrayBlockingQueue<Boolean>(1);
+			provider.redirectTo("127.0.0.1", gonePort, new MBObserver(){
+				public void update(boolean sucess, Object extraObj)
+				{
+					closed.add(sucess);
+				}
+			});
+			assertEquals(Boolean.TRUE, closed.poll(5, TimeUnit.SECONDS));
+			assertEquals("127.0.0.1", ConfigEntity.serverIP);
+			assertEquals(origin.getLocalPort(), ConfigEntity.serverPort);
+
+			for(int i = 0; i < LocalSocketProvider.MAX_REDIRECT_CONNECT_FAILURES; i++)
+				assertEquals(Boolean.FALSE, connect(provider));
+
+			assertEquals(Boolean.TRUE, connect(provider));
+			origin.setSoTimeout(5000);
+			Socket accepted = origin.accept();
+			assertNotNull(accepted);
+			accepted.close();
+		}
+		finally
+		{
+			provider.closeLocalSocket();
+			provider.clearRedirect();
+			origin.close();
+			ConfigEntity.serverIP = serverIP;
+			ConfigEntity.serverPort = serverPort;
+		}
+	}
+
+	private static Boolean connect(LocalSocketProvider provider) throws InterruptedException
+	{
+		final BlockingQueue<Boolean> done = new ArrayBlockingQueue<Boolean>(1);
+		provider.setConnectionDoneObserver(new MBObserver(){
+			public void update(boolean sucess, Object extraObj)
+			{
+				done.add(sucess);
+			}
+		});
+		provider.resetLocalSocket();
+		return done.poll(10, TimeUnit.SECONDS);
+	}
+}
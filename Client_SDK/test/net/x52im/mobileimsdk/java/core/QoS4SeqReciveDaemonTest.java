@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK_TCP (MobileIMSDK v6.4 TCP版) Project. 
+ * All rights reserved.
+ * 
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：215477170 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *  
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ * 
+ * QoS4SeqReciveDaemonTest.java at 2026-10-18, code by Jack Jiang.
+ */
+package net.x52im.mobileimsdk.java.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqAck;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqSync;
+import net.x52im.mobileimsdk.server.protocal.s.PSeqSyncResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 按会话序号接收：乱序暂存与按序交付、重复包、纪元切换，以及起点未知时的补发请求与响应处理。
+ */
+public class QoS4SeqReciveDaemonTest
+{
+	private static final String PEER = "peer";
+	private static final long EPOCH = 7;
+	
+	private QoS4SeqReciveDaemon daemon;
+	
+	@Before
+	public void setUp()
+	{
+		daemon = QoS4SeqReciveDaemon.getInstance();
+		daemon.clear();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		daemon.clear();
+	}
+	
+	@Test
+	public void outOfOrderPacketsAreDeliveredInOrder()
+	{
+		assertEquals(seqs(), seqs(daemon.onSequencedData(msg(EPOCH, 2))));
+		assertEquals(seqs(), seqs(daemon.onSequencedData(msg(EPOCH, 3))));
+		// sq=1到达即确定了起点，连同暂存的一起按序交付
+		assertEquals(seqs(1, 2, 3), seqs(daemon.onSequencedData(msg(EPOCH, 1))));
+	}
+	
+	@Test
+	public void streamStartingAtOneDeliversImmediatelyAndAcksCumulatively()
+	{
+		assertEquals(seqs(1), seqs(daemon.onSequencedData(msg(EPOCH, 1))));
+		assertEquals(seqs(2), seqs(daemon.onSequencedData(msg(EPOCH, 2))));
+		
+		List<PSeqAck> acks = new ArrayList<PSeqAck>();
+		List<PSeqSync> syncs = new ArrayList<PSeqSync>();
+		daemon.collect(System.currentTimeMillis(), acks, syncs);
+		assertEquals(1, acks.size());
+		assertEquals(2, acks.get(0).getSq());
+		assertTrue(syncs.isEmpty());
+	}
+	
+	@Test
+	public void duplicateIsDroppedButAckedAgain()
+	{
+		daemon.onSequencedData(msg(EPOCH, 1));
+		daemon.collect(System.currentTimeMillis(), new ArrayList<PSeqAck>(), new ArrayList<PSeqSync>());
+		
+		assertEquals(seqs(), seqs(daemon.onSequencedData(msg(EPOCH, 1))));
+		List<PSeqAck> acks = new ArrayList<PSeqAck>();
+		daemon.collect(System.currentTimeMillis(), acks, new ArrayList<PSeqSync>());
+		// 服务端重传说明上次的应答丢了，须再次应答
+		assertEquals(1, acks.size());
+		assertEquals(1, acks.get(0).getSq());
+	}
+	
+	@Test
+	public void newEpochRestartsTheStream()
+	{
+		daemon.onSequencedData(msg(EPOCH, 1));
+		daemon.onSequencedData(msg(EPOCH, 2));
+		assertEquals(seqs(1), seqs(daemon.onSequencedData(msg(EPOCH + 1, 1))));
+	}
+	
+	@Test
+	public void unknownStartRequestsFromZeroAndIsRateLimited()
+	{
+		daemon.onSequencedData(msg(EPOCH, 3));
+		
+		long now = 1000000;
+		List<PSeqSync> syncs = new ArrayList<PSeqSync>();
+		daemon.collect(now, new ArrayList<PSeqAck>(), syncs);
+		assertEquals(1, syncs.size());
+		assertEquals(0, syncs.get(0).getFrom());
+		assertEquals(2, syncs.get(0).getTo());
+		
+		// 响应未到之前不会每个周期都再请求一次（否则服务端每次都会重发）
+		syncs.clear();
+		daemon.collect(now + QoS4SeqReciveDaemon.ACK_INTERVAL, new ArrayList<PSeqAck>(), syncs);
+		assertTrue(syncs.isEmpty());
+		
+		daemon.collect(now + QoS4SeqReciveDaemon.GAP_WAIT_TIME, new ArrayList<PSeqAck>(), syncs);
+		assertEquals(1, syncs.size());
+		assertEquals(0, syncs.get(0).getFrom());
+	}
+	
+	@Test
+	public void syncResponseWithZeroBaseUnblocksStream()
+	{
+		// 客户端的首个应答尚未发出就被清空，之后先收到了sq=3：服务端的ackedSeq仍为0
+		daemon.onSequencedData(msg(EPOCH, 3));
+		assertEquals(seqs(), seqs(daemon.onSyncResponse(new PSeqSyncResponse(PEER, EPOCH, 0))));
+		
+		// 服务端随响应补发的sq=1、2到达后全部按序交付
+		assertEquals(seqs(1), seqs(daemon.onSequencedData(msg(EPOCH, 1))));
+		assertEquals(seqs(2, 3), seqs(daemon.onSequencedData(msg(EPOCH, 2))));
+		
+		List<PSeqSync> syncs = new ArrayList<PSeqSync>();
+		List<PSeqAck> acks = new ArrayList<PSeqAck>();
+		daemon.collect(System.currentTimeMillis(), acks, syncs);
+		assertTrue(syncs.isEmpty());
+		assertEquals(3, acks.get(0).getSq());
+	}
+	
+	@Test
+	public void syncResponseDeliversBufferedPacketsAtOrBelowBase()
+	{
+		daemon.onSequencedData(msg(EPOCH, 3));
+		daemon.onSequencedData(msg(EPOCH, 5));
+		// 服务端已把4及之前的消息判定为丢失：已收到的3不应被丢弃
+		assertEquals(seqs(3, 5), seqs(daemon.onSyncResponse(new PSeqSyncResponse(PEER, EPOCH, 4))));
+	}
+	
+	@Test
+	public void syncResponseForGoneStreamFlushesBuffer()
+	{
+		daemon.onSequencedData(msg(EPOCH, 4));
+		daemon.onSequencedData(msg(EPOCH, 6));
+		assertEquals(seqs(4, 6), seqs(daemon.onSyncResponse(new PSeqSyncResponse(PEER, 0, 0))));
+		assertEquals(0, daemon.size());
+	}
+	
+	private static Protocal msg(long se, long sq)
+	{
+		Protocal p = ProtocalFactory.createCommonData("m"+sq, PEER, "me", true, "fp-"+se+"-"+sq);
+		p.setSe(se);
+		p.setSq(sq);
+		return p;
+	}
+	
+	private static List<Long> seqs(long... sq)
+	{
+		List<Long> r = new ArrayList<Long>();
+		for(long s : sq)
+			r.add(s);
+		return r;
+	}
+	
+	private static List<Long> seqs(List<Protocal> ps)
+	{
+		List<Long> r = new ArrayList<Long>();
+		for(Protocal p : ps)
+			r.add(p.getSq());
+		return r;
+	}
+}
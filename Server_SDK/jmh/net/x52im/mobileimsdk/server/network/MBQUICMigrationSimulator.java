@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBQUICMigrationSimulator.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.incubator.codec.quic.QuicChannel;
+import io.netty.incubator.codec.quic.QuicClientCodecBuilder;
+import io.netty.incubator.codec.quic.QuicSslContext;
+import io.netty.incubator.codec.quic.QuicSslContextBuilder;
+import io.netty.incubator.codec.quic.QuicStreamChannel;
+import io.netty.incubator.codec.quic.QuicStreamType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.event.ServerEventListener;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+import net.x52im.mobileimsdk.server.utils.ServerToolKits;
+
+/**
+ * 比较客户端源地址改变（Wi-Fi与蜂窝网络切换、NAT重绑定）后，QUIC与TCP网关恢复收发的耗时。
+ * <p>
+ * 在本机同时启动 {@link GatewayQUIC} 与 {@link GatewayTCP}，客户端经由中继连入，中继为每个方向的
+ * 数据加上指定的单向延迟（TCP中继还为新连接补上一个RTT的建连耗时）。每一轮先让客户端的源地址改变：
+ * <ul>
+ * <li>QUIC：中继改用新的本地端口向网关转发，连接及会话保持，计时到下一个心跳应答返回为止（每轮只有建连时的一次登陆）；</li>
+ * <li>TCP：原连接随旧地址失效，客户端立即重连、重新登陆，计时到登陆后的第一个心跳应答返回为止（每轮都多一次登陆）。</li>
+ * </ul>
+ * TCP一侧假定客户端在地址改变的瞬间即感知到了断线（实际通常要等心跳超时），因此结果是TCP的最好情况。
+ * <p>
+ * 本类只存在于Server_SDK的jmh源码集中（与基准测试一起，不随SDK发布），可用以下任务运行：
+ * gradle :Server_SDK:migrationSim -Psim.args="[单向延迟ms] [轮数]"
+ *
+ * @since 6.5
+ */
+public class MBQUICMigrationSimulator
+{
+	private static final String USER_ID = "migration-u1";
+	
+	private static final int TIMEOUT = 10000;
+	
+	private final int delay;
+	private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor();
+	private final AtomicInteger loginVerifyCount = new AtomicInteger();
+	
+	public MBQUICMigrationSimulator(int delay)
+	{
+		this.delay = delay;
+	}
+	
+	public int[] runQUIC(int rounds) throws Exception
+	{
+		GatewayQUIC gateway = new GatewayQUIC();
+		gateway.init(new CountingCoreHandler());
+		gateway.bind();
+		
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		try
+		{
+			QuicSslContext sslContext = QuicSslContextBuilder.forClient()
+					.trustManager(InsecureTrustManagerFactory.INSTANCE)
+					.applicationProtocols(GatewayQUIC.APPLICATION_PROTOCOL).build();
+			
+			int[] latencies = new int[rounds];
+			for(int i = 0; i < rounds; i++)
+			{
+				// 每轮用一条新连接：当前版本的QUIC编解码器下同一连接只能平滑经历一次地址改变（见GatewayQUIC）
+				UdpRelay relay = new UdpRelay(new InetSocketAddress(InetAddress.getLoopbackAddress(), GatewayQUIC.PORT));
+				BlockingQueue<Protocal> received = new LinkedBlockingQueue<Protocal>();
+				QuicStreamChannel stream = quicLogin(group, sslContext, relay, received);
+				try
+				{
+					long start = System.nanoTime();
+					relay.rebind();
+					stream.writeAndFlush(Unpooled.wrappedBuffer(ProtocalFactory.createPKeepAlive(USER_ID).toBytes()));
+					await(received, ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$KEEP$ALIVE);
+					latencies[i] = (int)TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				}
+				finally
+				{
+					Channel quicChannel = stream.parent();
+					quicChannel.close().await(TIMEOUT);
+					quicChannel.parent().close().await(TIMEOUT);
+					relay.close();
+				}
+			}
+			Arrays.sort(latencies);
+			return latencies;
+		}
+		finally
+		{
+			group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+			gateway.shutdown();
+		}
+	}
+	
+	private QuicStreamChannel quicLogin(EventLoopGroup group, QuicSslContext sslContext, UdpRelay relay
+			, final BlockingQueue<Protocal> received) throws Exception
+	{
+		Channel datagramChannel = new Bootstrap()
+				.group(group)
+				.channel(NioDatagramChannel.class)
+				.handler(new QuicClientCodecBuilder()
+						.sslContext(sslContext)
+						.maxIdleTimeout(GatewayQUIC.SESION_RECYCLER_EXPIRE, TimeUnit.SECONDS)
+						.initialMaxData(1024 * 1024)
+						.initialMaxStreamDataBidirectionalLocal(1024 * 1024)
+						.build())
+				.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).sync().channel();
+		QuicChannel quicChannel = QuicChannel.newBootstrap(datagramChannel)
+				.streamHandler(new ChannelInboundHandlerAdapter())
+				.remoteAddress(relay.front.getLocalSocketAddress())
+				.connect().get(TIMEOUT, TimeUnit.MILLISECONDS);
+		QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL, new ChannelInitializer<QuicStreamChannel>() {
+			@Override
+			protected void initChannel(QuicStreamChannel ch)
+			{
+				ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(
+						GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH + GatewayQUIC.QUIC_FRAME_MAX_BODY_LENGTH
+						, 0, GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH, 0, GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH));
+				ch.pipeline().addLast(new LengthFieldPrepender(GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH));
+				ch.pipeline().addLast(new SimpleChannelInboundHandler<ByteBuf>() {
+					@Override
+					protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception
+					{
+						received.add(ServerToolKits.fromIOBuffer(msg));
+					}
+				});
+			}
+		}).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		
+		stream.writeAndFlush(Unpooled.wrappedBuffer(ProtocalFactory.createPLoginInfo(new PLoginInfo(USER_ID, "token")).toBytes()));
+		await(received, ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN);
+		// 登陆应答发出后会话才加入在线列表
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(OnlineProcessor.getInstance().getOnlineSession(USER_ID) == null && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		return stream;
+	}
+	
+	public int[] runTCP(int rounds) throws Exception
+	{
+		GatewayTCP gateway = new GatewayTCP();
+		gateway.init(new CountingCoreHandler());
+		gateway.bind();
+		
+		TcpRelay relay = new TcpRelay(new InetSocketAddress(InetAddress.getLoopbackAddress(), GatewayTCP.PORT));
+		Socket socket = null;
+		try
+		{
+			socket = tcpLogin(relay);
+			
+			int[] latencies = new int[rounds];
+			for(int i = 0; i < rounds; i++)
+			{
+				long start = System.nanoTime();
+				// 源地址改变：原连接失效，只能重连并重新登陆
+				socket.close();
+				socket = tcpLogin(relay);
+				write(socket, ProtocalFactory.createPKeepAlive(USER_ID));
+				await(socket, ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$KEEP$ALIVE);
+				latencies[i] = (int)TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			}
+			Arrays.sort(latencies);
+			return latencies;
+		}
+		finally
+		{
+			if(socket != null)
+				socket.close();
+			relay.close();
+			gateway.shutdown();
+		}
+	}
+	
+	public int getLoginVerifyCount()
+	{
+		return loginVerifyCount.get();
+	}
+	
+	public void close()
+	{
+		delayer.shutdownNow();
+	}
+	
+	private Socket tcpLogin(TcpRelay relay) throws Exception
+	{
+		Socket socket = new Socket();
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(TIMEOUT);
+		socket.connect(relay.server.getLocalSocketAddress());
+		write(socket, ProtocalFactory.createPLoginInfo(new PLoginInfo(USER_ID, "token")));
+		await(socket, ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN);
+		return socket;
+	}
+	
+	private static void write(Socket socket, Protocal p) throws Exception
+	{
+		byte[] body = p.toBytes();
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		out.writeInt(body.length);
+		out.write(body);
+		out.flush();
+	}
+	
+	private static void await(Socket socket, int type) throws Exception
+	{
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		for(;;)
+		{
+			byte[] body = new byte[in.readInt()];
+			in.readFully(body);
+			if(ServerToolKits.toProtocal(new String(body, "UTF-8")).getType() == type)
+				return;
+		}
+	}
+	
+	private static void await(BlockingQueue<Protocal> received, int type) throws Exception
+	{
+		for(;;)
+		{
+			Protocal p = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+			if(p == null)
+				throw new IllegalStateException("等待类型为" + type + "的应答超时");
+			if(p.getType() == type)
+				return;
+		}
+	}
+	
+	private void later(Runnable r, int delayMillis)
+	{
+		delayer.schedule(r, delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private class CountingCoreHandler extends ServerCoreHandler
+	{
+		CountingCoreHandler()
+		{
+			serverEventListener = new ServerEventListener() {
+				public int onUserLoginVerify(String userId, String token, String extra, Channel session)
+				{
+					loginVerifyCount.incrementAndGet();
+					return 0;
+				}
+				public void onUserLoginSucess(String userId, String extra, Channel session) {}
+				public void onUserLogout(String userId, Channel session, int beKickoutCode) {}
+				public boolean onTransferMessage4C2SBefore(Protocal p, Channel session) { return true; }
+				public boolean onTransferMessage4C2CBefore(Protocal p, Channel session) { return true; }
+				public boolean onTransferMessage4C2S(Protocal p, Channel session) { return true; }
+				public void onTransferMessage4C2C(Protocal p) {}
+				public boolean onTransferMessage_RealTimeSendFaild(Protocal p) { return false; }
+				public void onTransferMessage4C2C_AfterBridge(Protocal p) {}
+			};
+		}
+	}
+	
+	/**
+	 * 带单向延迟的UDP中继，{@link #rebind()}后改用新的本地端口向网关转发并关闭旧端口。
+	 */
+	private class UdpRelay
+	{
+		private final InetSocketAddress gateway;
+		private final DatagramSocket front;
+		private volatile DatagramSocket upstream;
+		private volatile SocketAddress client;
+		
+		UdpRelay(InetSocketAddress gateway) throws Exception
+		{
+			this.gateway = gateway;
+			this.front = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			this.upstream = openUpstream();
+			pump(front, true);
+		}
+		
+		void rebind() throws Exception
+		{
+			DatagramSocket old = upstream;
+			upstream = openUpstream();
+			old.close();
+		}
+		
+		void close()
+		{
+			front.close();
+			upstream.close();
+		}
+		
+		private DatagramSocket openUpstream() throws Exception
+		{
+			DatagramSocket s = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			pump(s, false);
+			return s;
+		}
+		
+		private void pump(final DatagramSocket from, final boolean fromClient)
+		{
+			Thread t = new Thread("udp-relay-" + from.getLocalPort()) {
+				@Override
+				public void run()
+				{
+					while(!from.isClosed())
+					{
+						try
+						{
+							final DatagramPacket p = new DatagramPacket(new byte[2048], 2048);
+							from.receive(p);
+							if(fromClient)
+								client = p.getSocketAddress();
+							later(new Runnable() {
+								public void run()
+								{
+									try
+									{
+										if(fromClient)
+											upstream.send(new DatagramPacket(p.getData(), p.getLength(), gateway));
+										else
+											front.send(new DatagramPacket(p.getData(), p.getLength(), client));
+									}
+									catch (Exception e)
+									{
+										// 途中改了端口（旧端口已关闭），该数据报丢弃
+									}
+								}
+							}, delay);
+						}
+						catch (Exception e)
+						{
+							// 端口已关闭
+						}
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+	
+	/**
+	 * 带单向延迟的TCP中继，新连接先等待一个RTT（模拟三次握手）再开始转发。
+	 */
+	private class TcpRelay
+	{
+		private final InetSocketAddress gateway;
+		private final ServerSocket server;
+		
+		TcpRelay(InetSocketAddress gateway) throws Exception
+		{
+			this.gateway = gateway;
+			this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread t = new Thread("tcp-relay-accept") {
+				@Override
+				public void run()
+				{
+					while(!server.isClosed())
+					{
+						try
+						{
+							final Socket client = server.accept();
+							client.setTcpNoDelay(true);
+							later(new Runnable() {
+								public void run()
+								{
+									connect(client);
+								}
+							}, 2 * delay);
+						}
+						catch (Exception e)
+						{
+							// 已关闭
+						}
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		private void connect(final Socket client)
+		{
+			new Thread("tcp-relay-connect") {
+				@Override
+				public void run()
+				{
+					try
+					{
+						Socket upstream = new Socket();
+						upstream.setTcpNoDelay(true);
+						upstream.connect(gateway);
+						pump(client, upstream);
+						pump(upstream, client);
+					}
+					catch (Exception e)
+					{
+						close(client);
+					}
+				}
+			}.start();
+		}
+		
+		private void pump(final Socket from, final Socket to)
+		{
+			Thread t = new Thread("tcp-relay-pump") {
+				@Override
+				public void run()
+				{
+					byte[] buf = new byte[8192];
+					try
+					{
+						InputStream in = from.getInputStream();
+						final OutputStream out = to.getOutputStream();
+						int n;
+						while((n = in.read(buf)) != -1)
+						{
+							final byte[] chunk = Arrays.copyOf(buf, n);
+							later(new Runnable() {
+								public void run()
+								{
+									try
+									{
+										out.write(chunk);
+										out.flush();
+									}
+									catch (Exception e)
+									{
+										// 对端已关闭
+									}
+								}
+							}, delay);
+						}
+					}
+					catch (Exception e)
+					{
+						// 连接已关闭
+					}
+					close(from);
+					close(to);
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		private void close(Socket s)
+		{
+			try
+			{
+				s.close();
+			}
+			catch (Exception e)
+			{
+				// ignore
+			}
+		}
+		
+		void close() throws Exception
+		{
+			server.close();
+		}
+	}
+	
+	private static String summary(int[] latencies)
+	{
+		if(latencies.length == 0)
+			return "n/a";
+		long sum = 0;
+		for(int l : latencies)
+			sum += l;
+		return String.format("avg=%6.1fms p50=%5dms p99=%5dms max=%5dms"
+				, (double)sum / latencies.length
+				, latencies[latencies.length / 2]
+				, latencies[Math.min(latencies.length - 1, (int)(latencies.length * 0.99))]
+				, latencies[latencies.length - 1]);
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		int delay = args.length > 0 ? Integer.parseInt(args[0]) : 25;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		
+		ServerSocket probe = new ServerSocket(0);
+		GatewayTCP.PORT = probe.getLocalPort();
+		probe.close();
+		DatagramSocket udpProbe = new DatagramSocket(0);
+		GatewayQUIC.PORT = udpProbe.getLocalPort();
+		udpProbe.close();
+		
+		System.out.println("单向延迟=" + delay + "ms (RTT=" + (2 * delay) + "ms), 地址切换轮数=" + rounds);
+		
+		MBQUICMigrationSimulator quic = new MBQUICMigrationSimulator(delay);
+		try
+		{
+			int[] q = quic.runQUIC(rounds);
+			System.out.println(String.format("QUIC(连接迁移):      %s 登陆次数=%d", summary(q), quic.getLoginVerifyCount()));
+		}
+		finally
+		{
+			quic.close();
+		}
+		
+		MBQUICMigrationSimulator tcp = new MBQUICMigrationSimulator(delay);
+		try
+		{
+			int[] t = tcp.runTCP(rounds);
+			System.out.println(String.format("TCP(重连+重新登陆):  %s 登陆次数=%d", summary(t), tcp.getLoginVerifyCount()));
+		}
+		finally
+		{
+			tcp.close();
+		}
+		
+		System.exit(0);
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBLossyLinkSimulator.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.udp;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import net.x52im.mobileimsdk.server.network.SessionContext;
+import net.x52im.mobileimsdk.server.qos.QoS4SendDaemonS2C;
+
+/**
+ * 进程内的有损链路模拟器，用于评估 {@link MBKCPSession} 在不同丢包率下的消息送达延迟。
+ * <p>
+ * 使用虚拟时钟驱动（不依赖真实网络和真实时间），两个KCP端点之间的每个数据报都会按
+ * 指定的概率被丢弃，未丢弃的按“单向基础延迟 + 随机抖动”后送达。同时给出一个
+ * “仅靠应用层QoS按固定周期重传”的对照结果，以便与KCP比较。
+ * <p>
+ * 另外按 {@link QoS4SendDaemonS2C} 的重传策略比较应用层QoS在固定重传间隔、自适应RTO（判定丢包也跟随RTO）、
+ * 自适应RTO（判定丢包保持固定间隔为下限）三种方式下的重复送达率与误判丢包率，链路上会按一定概率出现
+ * 较长的停顿（模拟网络切换、对端卡顿等），以体现判定丢包过早的代价。
+ * <p>
+ * 本类只存在于Server_SDK的jmh源码集中（与基准测试一起，不随SDK发布），可用以下任务运行：
+ * gradle :Server_SDK:lossyLinkSim -Psim.args="[单向延迟ms] [抖动ms] [消息数] [停顿概率] [停顿ms]"
+ *
+ * @since 6.5
+ */
+public class MBLossyLinkSimulator
+{
+	private final Random random;
+	private final double lossRate;
+	private final int delay;
+	private final int jitter;
+
+	private final PriorityQueue<Packet> inflight = new PriorityQueue<Packet>();
+	private int current = 0;
+	private long seq = 0;
+
+	private MBKCPSession server;
+	private MBKCPSession client;
+
+	private int[] sendTimes;
+	private final List<Integer> latencies = new ArrayList<Integer>();
+
+	public MBLossyLinkSimulator(double lossRate, int delay, int jitter, long seed)
+	{
+		this.lossRate = lossRate;
+		this.delay = delay;
+		this.jitter = jitter;
+		this.random = new Random(seed);
+	}
+
+	private static class Packet implements Comparable<Packet>
+	{
+		final int deliverAt;
+		final long seq;
+		final boolean toClient;
+		final byte[] data;
+
+		Packet(int deliverAt, long seq, boolean toClient, byte[] data)
+		{
+			this.deliverAt = deliverAt;
+			this.seq = seq;
+			this.toClient = toClient;
+			this.data = data;
+		}
+
+		@Override
+		public int compareTo(Packet o)
+		{
+			if(deliverAt != o.deliverAt)
+				return deliverAt < o.deliverAt ? -1 : 1;
+			return Long.compare(seq, o.seq);
+		}
+	}
+
+	private MBKCPSession.Output link(final boolean toClient)
+	{
+		return new MBKCPSession.Output() {
+			@Override
+			public void output(byte[] data, int len)
+			{
+				if(random.nextDouble() < lossRate)
+					return;
+				int at = current + delay + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+				inflight.add(new Packet(at, seq++, toClient, Arrays.copyOf(data, len)));
+			}
+		};
+	}
+
+	/**
+	 * 服务端以固定间隔向客户端发送count条消息，返回每条消息的送达延迟（毫秒，升序）。
+	 */
+	public int[] runKCP(int count, int sendInterval, int payloadSize)
+	{
+		server = configure(new MBKCPSession(0x52, link(true)));
+		client = configure(new MBKCPSession(0x52, link(false)));
+		sendTimes = new int[count];
+		latencies.clear();
+
+		int sent = 0;
+		int nextSend = 0;
+		int nextTick = 0;
+		int tick = server.getInterval();
+		int deadline = count * sendInterval + 600000;
+		byte[] payload = new byte[Math.max(payloadSize, 4)];
+
+		while(latencies.size() < count && current < deadline)
+		{
+			while(!inflight.isEmpty() && inflight.peek().deliverAt <= current)
+			{
+				Packet p = inflight.poll();
+				if(p.toClient)
+				{
+					client.input(p.data, 0, p.data.length);
+					byte[] msg;
+					while((msg = client.recv()) != null)
+					{
+						int id = ((msg[0] & 0xff) << 24) | ((msg[1] & 0xff) << 16) | ((msg[2] & 0xff) << 8) | (msg[3] & 0xff);
+						latencies.add(current - sendTimes[id]);
+					}
+					client.flush();
+				}
+				else
+					server.input(p.data, 0, p.data.length);
+			}
+
+			if(sent < count && current >= nextSend)
+			{
+				payload[0] = (byte)(sent >>> 24);
+				payload[1] = (byte)(sent >>> 16);
+				payload[2] = (byte)(sent >>> 8);
+				payload[3] = (byte)sent;
+				sendTimes[sent] = current;
+				server.send(payload, 0, payload.length);
+				server.flush();
+				sent++;
+				nextSend += sendInterval;
+			}
+
+			if(current >= nextTick)
+			{
+				server.update(current);
+				client.update(current);
+				nextTick += tick;
+			}
+
+			current++;
+		}
+		return sorted(latencies);
+	}
+
+	/**
+	 * 对照组：无传输层可靠性，仅靠应用层QoS每隔retryInterval毫秒整体重传一次（消息或其应答丢失都会触发重传）。
+	 */
+	public int[] runFixedRetry(int count, int retryInterval)
+	{
+		int[] result = new int[count];
+		for(int i = 0; i < count; i++)
+		{
+			int firstArrival = -1;
+			for(int attempt = 0; ; attempt++)
+			{
+				int base = attempt * retryInterval;
+				boolean dataArrived = random.nextDouble() >= lossRate;
+				if(dataArrived)
+				{
+					int arrival = base + delay + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+					if(firstArrival < 0)
+						firstArrival = arrival;
+					if(random.nextDouble() >= lossRate)
+						break;
+				}
+			}
+			result[i] = firstArrival;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * 应用层QoS的统计结果（每条消息独立模拟，发送方对每次发出都等待应答）。
+	 */
+	public static class AppQoSResult
+	{
+		/** 各条已送达消息的首次送达延迟（毫秒，升序） */
+		public int[] latencies;
+		/** 接收方收到的重复数据（同一消息第二次及以后到达） */
+		public int duplicates;
+		/** 被判定为丢包的消息数 */
+		public int declaredLost;
+		/** 被判定为丢包、但实际已送达的消息数（应用层会再按离线消息重复投递） */
+		public int falseLost;
+		
+		public int delivered()
+		{
+			return latencies.length;
+		}
+	}
+	
+	/**
+	 * 应用层QoS对照：接收方收到数据即回应答，发送方按 {@link QoS4SendDaemonS2C} 的策略重传，
+	 * 重传tryCount次后仍未收到应答即判定丢包。
+	 * 
+	 * @param fixedInterval 固定重传间隔（毫秒），即未开启自适应RTO时的重传间隔
+	 * @param adaptive 是否按RTT自适应重传超时（RTT样本遵循Karn算法，只取未重传过的消息）
+	 * @param lossFloor 判定丢包前至少等待多久（毫秒），0为与重传超时相同
+	 * @param stallRate 每个数据报额外停顿的概率
+	 * @param stall 停顿时长（毫秒）
+	 */
+	public AppQoSResult runAppQoS(int count, int tryCount, long fixedInterval, boolean adaptive, long lossFloor
+			, double stallRate, int stall)
+	{
+		SessionContext ctx = SessionContext.of(new EmbeddedChannel());
+		AppQoSResult r = new AppQoSResult();
+		List<Integer> delivered = new ArrayList<Integer>();
+		for(int i = 0; i < count; i++)
+		{
+			long firstArrival = -1;
+			long ackAt = Long.MAX_VALUE;
+			int arrivals = 0;
+			long sentAt = 0;
+			for(int retry = 0; ; retry++)
+			{
+				// 发出（或重传）一次：数据与应答各自可能丢失或停顿
+				if(random.nextDouble() >= lossRate)
+				{
+					long arrival = sentAt + oneWay(stallRate, stall);
+					arrivals++;
+					if(firstArrival < 0 || arrival < firstArrival)
+						firstArrival = arrival;
+					if(random.nextDouble() >= lossRate)
+						ackAt = Math.min(ackAt, arrival + oneWay(stallRate, stall));
+				}
+				
+				long rto = (adaptive ? QoS4SendDaemonS2C.getAdaptiveRto(ctx, fixedInterval, retry) : fixedInterval);
+				long deadline = sentAt + (retry >= tryCount ? Math.max(lossFloor, rto) : rto);
+				if(ackAt <= deadline)
+				{
+					if(retry == 0)
+						ctx.onRttSample(ackAt);
+					break;
+				}
+				if(retry >= tryCount)
+				{
+					r.declaredLost++;
+					if(firstArrival >= 0)
+						r.falseLost++;
+					break;
+				}
+				sentAt = deadline;
+			}
+			if(firstArrival >= 0)
+			{
+				delivered.add((int)firstArrival);
+				r.duplicates += arrivals - 1;
+			}
+		}
+		r.latencies = sorted(delivered);
+		return r;
+	}
+	
+	private int oneWay(double stallRate, int stall)
+	{
+		int d = delay + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+		if(stallRate > 0 && random.nextDouble() < stallRate)
+			d += stall;
+		return d;
+	}
+	
+	private static MBKCPSession configure(MBKCPSession session)
+	{
+		return session.nodelay(1, 10, 2, true).wndsize(128, 128).setMinRto(30);
+	}
+
+	private static int[] sorted(List<Integer> list)
+	{
+		int[] r = new int[list.size()];
+		for(int i = 0; i < r.length; i++)
+			r[i] = list.get(i);
+		Arrays.sort(r);
+		return r;
+	}
+
+	private static String summary(int[] latencies)
+	{
+		if(latencies.length == 0)
+			return "n/a";
+		long sum = 0;
+		for(int l : latencies)
+			sum += l;
+		return String.format("avg=%6.1fms p50=%5dms p99=%5dms max=%5dms"
+				, (double)sum / latencies.length
+				, latencies[latencies.length / 2]
+				, latencies[Math.min(latencies.length - 1, (int)(latencies.length * 0.99))]
+				, latencies[latencies.length - 1]);
+	}
+
+	public static void main(String[] args)
+	{
+		int delay = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int jitter = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		double stallRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.02;
+		int stall = args.length > 4 ? Integer.parseInt(args[4]) : 1500;
+		double[] lossRates = {0.01, 0.05, 0.10, 0.20};
+
+		System.out.println("单向延迟=" + delay + "ms, 抖动=" + jitter + "ms, 消息数=" + count);
+		for(double loss : lossRates)
+		{
+			int[] kcp = new MBLossyLinkSimulator(loss, delay, jitter, 52L).runKCP(count, 20, 64);
+			int[] qos = new MBLossyLinkSimulator(loss, delay, jitter, 52L).runFixedRetry(count, 5000);
+			System.out.println(String.format("loss=%2d%%  KCP:   %s (送达%d/%d)", (int)Math.round(loss * 100), summary(kcp), kcp.length, count));
+			System.out.println(String.format("          QoS-5s: %s", summary(qos)));
+		}
+		
+		// 应用层QoS：QoS4SendDaemonS2C的默认参数（固定间隔5s，重传1次）
+		long fixed = 5000;
+		int tryCount = 1;
+		System.out.println();
+		System.out.println("应用层QoS（重传" + tryCount + "次，停顿概率=" + stallRate + ", 停顿=" + stall + "ms）：");
+		for(double loss : lossRates)
+		{
+			System.out.println(String.format("loss=%2d%%  固定5s:       %s", (int)Math.round(loss * 100)
+					, summary(new MBLossyLinkSimulator(loss, delay, jitter, 52L).runAppQoS(count, tryCount, fixed, false, 0, stallRate, stall), count)));
+			System.out.println(String.format("          RTO判丢包:     %s"
+					, summary(new MBLossyLinkSimulator(loss, delay, jitter, 52L).runAppQoS(count, tryCount, fixed, true, 0, stallRate, stall), count)));
+			System.out.println(String.format("          RTO+5s判丢包:  %s"
+					, summary(new MBLossyLinkSimulator(loss, delay, jitter, 52L).runAppQoS(count, tryCount, fixed, true, fixed, stallRate, stall), count)));
+		}
+	}
+	
+	private static String summary(AppQoSResult r, int count)
+	{
+		return String.format("重复率=%5.2f%% 判定丢包=%5.2f%%(误判%5.2f%%) 未送达=%5.2f%% p99=%5dms"
+				, 100.0 * r.duplicates / Math.max(1, r.delivered())
+				, 100.0 * r.declaredLost / count
+				, 100.0 * r.falseLost / count
+				, 100.0 * (count - r.delivered()) / count
+				, r.latencies.length > 0 ? r.latencies[Math.min(r.latencies.length - 1, (int)(r.latencies.length * 0.99))] : 0);
+	}
+}
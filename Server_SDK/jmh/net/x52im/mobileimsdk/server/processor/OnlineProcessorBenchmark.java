@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * OnlineProcessorBenchmark.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.processor;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 在线列表在登陆/退出频繁交替时的吞吐：已有onlineUsers个用户在线的情况下，1个与16个线程并发地
+ * 让随机用户以本线程独占的设备类别登陆随即退出（putUser + removeUser(user, channel)）。
+ * <p>
+ * 运行：gradle :Server_SDK:jmh -Pjmh.includes=OnlineProcessorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OnlineProcessorBenchmark
+{
+	@Param({"10000", "1000000"})
+	public int onlineUsers;
+	
+	private Channel[] resident;
+	private final AtomicInteger threadSeq = new AtomicInteger();
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		OnlineProcessor op = OnlineProcessor.getInstance();
+		resident = new Channel[onlineUsers];
+		for(int i = 0; i < onlineUsers; i++)
+		{
+			resident[i] = new EmbeddedChannel();
+			op.putUser(userId(i), "resident", System.currentTimeMillis(), resident[i]);
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		OnlineProcessor op = OnlineProcessor.getInstance();
+		for(int i = 0; i < onlineUsers; i++)
+			op.removeUser(userId(i), resident[i]);
+	}
+	
+	@State(Scope.Thread)
+	public static class Churner
+	{
+		String deviceClass;
+		Channel channel;
+		int users;
+		
+		@Setup(Level.Trial)
+		public void setUp(OnlineProcessorBenchmark b)
+		{
+			// 每个线程独占一个设备类别，登陆时不会互踢
+			deviceClass = "churn"+b.threadSeq.getAndIncrement();
+			channel = new EmbeddedChannel();
+			users = b.onlineUsers;
+		}
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public boolean loginLogout1Thread(Churner c)
+	{
+		return loginLogout(c);
+	}
+	
+	@Benchmark
+	@Threads(16)
+	public boolean loginLogout16Threads(Churner c)
+	{
+		return loginLogout(c);
+	}
+	
+	private static boolean loginLogout(Churner c)
+	{
+		OnlineProcessor op = OnlineProcessor.getInstance();
+		// 一半登陆已在线的用户（多端同时在线），一半登陆新用户（在线人数与分页索引增减）
+		int u = ThreadLocalRandom.current().nextInt(c.users * 2);
+		String userId = userId(u);
+		op.putUser(userId, c.deviceClass, System.currentTimeMillis(), c.channel);
+		return op.removeUser(userId, c.channel);
+	}
+	
+	private static String userId(int i)
+	{
+		return "bench-"+i;
+	}
+}
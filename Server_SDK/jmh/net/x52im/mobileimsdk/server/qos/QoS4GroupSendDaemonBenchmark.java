@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoS4GroupSendDaemonBenchmark.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.utils.DeliveryScheduler;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 群消息QoS（{@link QoS4GroupSendDaemon}，每条群消息一个条目、共用一份编码数据、按成员位图跟踪应答）
+ * 与此前按成员各放一条QoS条目（与 {@link QoS4SendDaemonS2C} 相同的 {@link QoS4SendDaemonRoot} 条目）的对比：
+ * <ul>
+ * <li>sendAndAcknowledge：发给一个members人的群（全部在线）并收齐全部成员应答的耗时；</li>
+ * <li>pendingFootprint：pendingMessages条群消息都未应答时，以辅助计数器报告每条群消息占用的堆内存、
+ * 保留的编码数据（池化堆外内存，实际分配按规格向上取整）的字节数，以及挂在时间轮上的条目数（每个条目恰好一个调度）。
+ * 该项的计时包含了测量前后的GC，没有意义，只看辅助计数器。</li>
+ * </ul>
+ * 成员会话为丢弃写出数据的EmbeddedChannel（写操作当场完成），不计网络开销；两者的重传间隔都远大于基准时长，
+ * 测量期间不会发生重传。按成员的方式与原发送路径（LocalSendHelper）一样，每个成员单独编码一份to为该成员的消息，
+ * 写出成功后再放入QoS队列，各成员的指纹互不相同（否则无法各自应答）。
+ * <p>
+ * 运行：gradle :Server_SDK:jmh -Pjmh.includes=QoS4GroupSendDaemonBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Threads(1)
+public class QoS4GroupSendDaemonBenchmark
+{
+	/** 重传间隔：远大于基准时长，测量期间不会到期 */
+	private static final int RESIDENT_DELAY = 10 * 60 * 1000;
+	
+	@Param({"500"})
+	public int members;
+	
+	@Param({"group", "perMember"})
+	public String mode;
+	
+	@Param({"1000"})
+	public int pendingMessages;
+	
+	private String[] memberIds;
+	private EmbeddedChannel[] sessions;
+	private QoS4GroupSendDaemon groupDaemon;
+	private QoS4SendDaemonRootBenchmark.BenchDaemon memberDaemon;
+	private boolean group;
+	private int retryInterval;
+	private int seq;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		group = "group".equals(mode);
+		retryInterval = QoS4GroupSendDaemon.RETRY_INTERVAL;
+		QoS4GroupSendDaemon.RETRY_INTERVAL = RESIDENT_DELAY;
+		
+		// 成员id补零后即为升序，群消息直接引用该数组而不复制
+		memberIds = new String[members];
+		sessions = new EmbeddedChannel[members];
+		for(int i = 0; i < members; i++)
+		{
+			memberIds[i] = String.format("member%05d", i);
+			sessions[i] = new EmbeddedChannel(new DiscardingHandler());
+			OnlineProcessor.getInstance().putUser(memberIds[i], "android", System.currentTimeMillis(), sessions[i]);
+		}
+		
+		groupDaemon = QoS4GroupSendDaemon.getInstance().startup(false);
+		memberDaemon = new QoS4SendDaemonRootBenchmark.BenchDaemon(1, RESIDENT_DELAY);
+		memberDaemon.startup(false);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		groupDaemon.stop();
+		memberDaemon.stop();
+		for(int i = 0; i < members; i++)
+		{
+			OnlineProcessor.getInstance().removeUser(memberIds[i], sessions[i]);
+			sessions[i].finishAndReleaseAll();
+		}
+		QoS4GroupSendDaemon.RETRY_INTERVAL = retryInterval;
+	}
+	
+	@Benchmark
+	public int sendAndAcknowledge()
+	{
+		String fp = "group-"+(seq++);
+		send(fp);
+		acknowledge(fp);
+		return (group ? groupDaemon.size() : memberDaemon.size());
+	}
+	
+	/**
+	 * 辅助计数器在各次迭代间累加，因此只测量一次，报告的即为单次的值。
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 1)
+	public void pendingFootprint(Footprint f) throws InterruptedException
+	{
+		long heapBase = QoSEntryFootprint.usedHeap();
+		for(int k = 0; k < pendingMessages; k++)
+			send("pending-"+k);
+		long heap = QoSEntryFootprint.usedHeap() - heapBase;
+		long frameBytes = 0;
+		for(int k = 0; k < pendingMessages; k++)
+			frameBytes += frameBytes("pending-"+k);
+		int entries = (group ? groupDaemon.size() : memberDaemon.size());
+		
+		f.heapBytesPerMessage = heap / pendingMessages;
+		f.frameBytesPerMessage = frameBytes / pendingMessages;
+		f.timerEntriesPerMessage = entries / pendingMessages;
+		
+		for(int k = 0; k < pendingMessages; k++)
+			acknowledge("pending-"+k);
+	}
+	
+	private void send(String fp)
+	{
+		if(group)
+		{
+			groupDaemon.send(QoS4SendDaemonRootBenchmark.newMessage(fp, "group"), memberIds);
+			return;
+		}
+		
+		for(int i = 0; i < members; i++)
+		{
+			final Protocal p = QoS4SendDaemonRootBenchmark.newMessage(fp+"-"+i, memberIds[i]);
+			byte[] res = p.toBytes();
+			final ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(res.length).writeBytes(res);
+			DeliveryScheduler.getInstance().writeAndFlush(sessions[i], frame.retainedDuplicate(), new ChannelFutureListener(){
+				@Override
+				public void operationComplete(ChannelFuture future)
+				{
+					if(future.isSuccess())
+						memberDaemon.put(p, frame);
+					else
+						frame.release();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * send(fp)为这条消息保留的编码数据（池化堆外内存）的字节数。
+	 */
+	private int frameBytes(String fp)
+	{
+		if(group)
+			return QoS4SendDaemonRootBenchmark.newMessage(fp, "group").toBytes().length;
+		
+		int bytes = 0;
+		for(int i = 0; i < members; i++)
+			bytes += QoS4SendDaemonRootBenchmark.newMessage(fp+"-"+i, memberIds[i]).toBytes().length;
+		return bytes;
+	}
+	
+	private void acknowledge(String fp)
+	{
+		for(int i = 0; i < members; i++)
+		{
+			if(group)
+				groupDaemon.acknowledge(fp, memberIds[i]);
+			else
+				memberDaemon.acknowledge(fp+"-"+i, "android");
+		}
+	}
+	
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint
+	{
+		public long heapBytesPerMessage;
+		public long frameBytesPerMessage;
+		public long timerEntriesPerMessage;
+	}
+	
+	/**
+	 * 丢弃写出的数据并当场完成写操作。
+	 */
+	private static class DiscardingHandler extends ChannelOutboundHandlerAdapter
+	{
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+		{
+			ReferenceCountUtil.release(msg);
+			promise.setSuccess();
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoS4SendDaemonRootBenchmark.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QoS发送队列（时间轮调度）在不同在途消息数下的表现：
+ * <ul>
+ * <li>putAndAcknowledge：时间轮上已挂着pending条长期未到期的消息时，一次放入加一次应答（调度+取消）的开销，
+ * 其中也包含了时间轮工作线程每个tick遍历本格条目的开销（与本基准共用CPU）；</li>
+ * <li>drain：一次放入pending条消息，测量全部到达首次重传时刻所需的时间，并以辅助计数器报告
+ * 每条消息实际重传时刻相对其应重传时刻的延迟（平均与最大，毫秒），即重传时刻的精度。
+ * 接收方均不在线（重传本身不产生网络写），且不启用重传限速，延迟只来自时间轮本身及其工作线程的处理能力。</li>
+ * </ul>
+ * 与实际发送路径一样，放入时传入已编码好的数据（由模板替换指纹生成），不把消息的JSON序列化计入其中。
+ * <p>
+ * 运行：gradle :Server_SDK:jmh -Pjmh.includes=QoS4SendDaemonRootBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class QoS4SendDaemonRootBenchmark
+{
+	/** 常驻消息的重传间隔：远大于基准时长，测量期间不会到期 */
+	private static final long RESIDENT_DELAY = 10 * 60 * 1000;
+	/** drain中每条消息的到期时长 */
+	private static final long DRAIN_DELAY = 1000;
+	private static final String FP_PLACEHOLDER = "@FP@";
+	private static final String TEMPLATE = newMessage(FP_PLACEHOLDER, "user0").toGsonString();
+	
+	@Param({"10000", "100000", "1000000"})
+	public int pending;
+	
+	private BenchDaemon daemon;
+	private final AtomicInteger seq = new AtomicInteger();
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		daemon = new BenchDaemon(1, RESIDENT_DELAY);
+		daemon.startup(false);
+		for(int i = 0; i < pending; i++)
+			put(daemon, "resident-"+i, i);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		daemon.stop();
+		for(int i = 0; i < pending; i++)
+			daemon.acknowledge("resident-"+i, "android");
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public long putAndAcknowledge()
+	{
+		return putAndAcknowledge(daemon, seq);
+	}
+	
+	/**
+	 * 辅助计数器在各次迭代间累加，因此只测量一次，报告的即为单次的值。
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 1)
+	public void drain(Drain d, Lateness l) throws InterruptedException
+	{
+		for(int i = 0; i < d.putTimes.length; i++)
+		{
+			d.putTimes[i] = System.currentTimeMillis();
+			// 接收方id即序号，到期时据此找到放入时刻
+			put(d.daemon, "drain-"+i, String.valueOf(i), i);
+		}
+		d.daemon.retried.await();
+		
+		l.maxLatenessMs = d.daemon.maxLateness.get();
+		l.meanLatenessMs = d.daemon.totalLateness.sum() / d.putTimes.length;
+	}
+	
+	static long putAndAcknowledge(QoS4SendDaemonRoot daemon, AtomicInteger seq)
+	{
+		int n = seq.getAndIncrement();
+		String fp = "bench-"+n;
+		put(daemon, fp, n);
+		return daemon.acknowledge(fp, "android");
+	}
+	
+	static void put(QoS4SendDaemonRoot daemon, String fp, int i)
+	{
+		put(daemon, fp, "user"+(i % 10000), i);
+	}
+	
+	static void put(QoS4SendDaemonRoot daemon, String fp, String to, int i)
+	{
+		byte[] b = TEMPLATE.replace(FP_PLACEHOLDER, fp).getBytes(StandardCharsets.UTF_8);
+		ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(b.length).writeBytes(b);
+		daemon.put(newMessage(fp, to), frame);
+	}
+	
+	static Protocal newMessage(String fp, String to)
+	{
+		Protocal p = ProtocalFactory.createCommonData("{\"type\":\"text\",\"content\":\"a typical chat message\"}"
+				, "400069", to, true, fp);
+		p.setDeviceClass("android");
+		return p;
+	}
+	
+	@State(Scope.Thread)
+	public static class Drain
+	{
+		BenchDaemon daemon;
+		long[] putTimes;
+		private int retransmitRate;
+		
+		@Setup(Level.Invocation)
+		public void setUp(QoS4SendDaemonRootBenchmark b)
+		{
+			retransmitRate = QoS4SendDaemonRoot.RETRANSMIT_RATE;
+			QoS4SendDaemonRoot.RETRANSMIT_RATE = 0;
+			putTimes = new long[b.pending];
+			daemon = new BenchDaemon(1, DRAIN_DELAY);
+			daemon.putTimes = putTimes;
+			daemon.retried = new CountDownLatch(b.pending);
+			daemon.startup(false);
+		}
+		
+		@TearDown(Level.Invocation)
+		public void tearDown()
+		{
+			daemon.stop();
+			for(int i = 0; i < putTimes.length; i++)
+				daemon.acknowledge("drain-"+i, "android");
+			QoS4SendDaemonRoot.RETRANSMIT_RATE = retransmitRate;
+		}
+	}
+	
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Lateness
+	{
+		public long maxLatenessMs;
+		public long meanLatenessMs;
+	}
+	
+	static class BenchDaemon extends QoS4SendDaemonRoot
+	{
+		private final long retryDelay;
+		volatile long[] putTimes;
+		volatile CountDownLatch retried;
+		final LongAccumulator maxLateness = new LongAccumulator(Math::max, 0);
+		final LongAdder totalLateness = new LongAdder();
+		
+		BenchDaemon(int tryCount, long retryDelay)
+		{
+			super(0, 0, tryCount, false, "-bench");
+			this.retryDelay = retryDelay;
+		}
+		
+		/**
+		 * 首次重传之后即在重传时刻调用（retryCount为1），借此记录重传时刻的延迟；此后不再到期。
+		 */
+		@Override
+		protected long getRetryDelay(String userId, String deviceClass, int retryCount)
+		{
+			if(retryCount == 0)
+				return retryDelay;
+			
+			long[] times = putTimes;
+			if(times != null)
+			{
+				long lateness = System.currentTimeMillis() - times[Integer.parseInt(userId)] - retryDelay;
+				maxLateness.accumulate(lateness);
+				totalLateness.add(lateness);
+				retried.countDown();
+			}
+			return RESIDENT_DELAY;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoSEntryFootprint.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+/**
+ * 测量QoS发送队列中每条待应答消息占用的内存：
+ * <ul>
+ * <li>修改前：条目在堆上持有消息对象（{@link Protocal}），重传时再重新编码；</li>
+ * <li>修改后：条目只持有发出时编码好的池化堆外数据（与实际发送路径一样由 {@link QoS4SendDaemonRoot#put(Protocal, io.netty.buffer.ByteBuf)} 放入）。</li>
+ * </ul>
+ * 两种情况都使用真实的 {@link QoS4SendDaemonRoot}（时间轮调度、分片索引均计入）。修改前的条目以
+ * “放入空数据、并让消息对象随条目一直可达”来模拟，当前条目比修改前多几个基本类型字段，因此修改前的结果略偏大。
+ * 堆内存取多次Full GC之后的已用堆之差，堆外内存取池化分配器实际占用的直接内存（按Chunk计）。
+ * <p>
+ * 本类只存在于Server_SDK的jmh源码集中（与基准测试一起，不随SDK发布），可用以下任务运行：
+ * gradle :Server_SDK:qosFootprint -Psim.args="[消息数]"
+ *
+ * @since 6.5
+ */
+public class QoSEntryFootprint
+{
+	/** 条目的重传间隔：远大于测量时长，测量期间不会到期 */
+	private static final long RESIDENT_DELAY = 10 * 60 * 1000;
+	
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		System.out.println("待应答消息数=" + count);
+		
+		// 先测修改前（不占直接内存），池化分配器的Chunk释放后仍会保留，不影响其后的测量
+		long heapBase = usedHeap();
+		QoS4SendDaemonRootBenchmark.BenchDaemon before = new QoS4SendDaemonRootBenchmark.BenchDaemon(1, RESIDENT_DELAY);
+		before.startup(false);
+		Protocal[] retained = new Protocal[count];
+		for(int i = 0; i < count; i++)
+		{
+			// 与实际转发路径一样，消息对象由收到的数据解析而来，各字符串字段均为各自独立的对象
+			byte[] b = QoS4SendDaemonRootBenchmark.newMessage("footprint-"+i, "user"+(i % 10000)).toBytes();
+			retained[i] = ProtocalFactory.parse(b, b.length);
+			retained[i].setDeviceClass("android");
+			before.put(retained[i], Unpooled.EMPTY_BUFFER);
+		}
+		long heapBefore = usedHeap() - heapBase;
+		// 消息对象须一直可达到测量完成（否则会被JIT判为已死而在GC时回收）
+		Reference.reachabilityFence(retained);
+		print("修改前（堆上Protocal）", count, heapBefore, 0);
+		clear(before, count);
+		retained = null;
+		
+		heapBase = usedHeap();
+		long directBase = PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+		QoS4SendDaemonRootBenchmark.BenchDaemon after = new QoS4SendDaemonRootBenchmark.BenchDaemon(1, RESIDENT_DELAY);
+		after.startup(false);
+		for(int i = 0; i < count; i++)
+			QoS4SendDaemonRootBenchmark.put(after, "footprint-"+i, i);
+		long heapAfter = usedHeap() - heapBase;
+		long directAfter = PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory() - directBase;
+		print("修改后（堆外数据）", count, heapAfter, directAfter);
+		clear(after, count);
+		
+		System.exit(0);
+	}
+	
+	private static void clear(QoS4SendDaemonRoot daemon, int count)
+	{
+		daemon.stop();
+		for(int i = 0; i < count; i++)
+			daemon.acknowledge("footprint-"+i, "android");
+	}
+	
+	private static void print(String name, int count, long heap, long direct)
+	{
+		System.out.println(String.format("%s：堆 %6.1fMB（%4d B/条）  堆外 %6.1fMB（%4d B/条）"
+				, name, heap / 1048576.0, heap / count, direct / 1048576.0, direct / count));
+	}
+	
+	static long usedHeap() throws InterruptedException
+	{
+		for(int i = 0; i < 5; i++)
+		{
+			System.gc();
+			Thread.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
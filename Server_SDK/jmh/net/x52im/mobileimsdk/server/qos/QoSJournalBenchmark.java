@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoSJournalBenchmark.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QoS日志每条消息的开销：一次放入（SEND记录）加一次应答（ACK记录），分别在1个和8个线程并发追加时测量。
+ * 要求每条消息在几微秒以内。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QoSJournalBenchmark
+{
+	private File dir;
+	private ByteBuf frame;
+	private String key;
+	private String deviceClass;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		dir = Files.createTempDirectory("qos-journal-bench").toFile();
+		QoSJournal.DIR = dir.getAbsolutePath();
+		QoSJournal.getInstance().open(new QoS4SendDaemonRoot(0, 0, -1, false, "-bench"));
+		
+		Protocal p = ProtocalFactory.createCommonData("{\"type\":\"text\",\"content\":\"a typical chat message of moderate length\"}"
+				, "400069", "400070", true, null);
+		p.setDeviceClass("android");
+		byte[] b = p.toBytes();
+		frame = PooledByteBufAllocator.DEFAULT.directBuffer(b.length).writeBytes(b);
+		key = QoS4SendDaemonRoot.qosKey(p.getFp(), p.getDeviceClass());
+		deviceClass = p.getDeviceClass();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		QoSJournal.getInstance().close();
+		frame.release();
+		File[] files = dir.listFiles();
+		if(files != null)
+		{
+			for(File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public void sendAndAck1Thread()
+	{
+		sendAndAck();
+	}
+	
+	@Benchmark
+	@Threads(8)
+	public void sendAndAck8Threads()
+	{
+		sendAndAck();
+	}
+	
+	private void sendAndAck()
+	{
+		QoSJournal j = QoSJournal.getInstance();
+		j.appendSend(key, deviceClass, frame);
+		j.appendAck(key);
+	}
+}
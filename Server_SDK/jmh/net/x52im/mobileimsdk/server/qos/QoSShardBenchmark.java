@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoSShardBenchmark.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 16个线程并发放入并应答QoS消息时的吞吐，比较不分片（shards=1）与按 {@link QoS4SendDaemonRoot#QOS_SHARD_COUNT}
+ * 分片时的差别。时间轮上另挂着10000条长期未到期的消息，使每个tick都有条目需要遍历。
+ * <p>
+ * 分片的收益取决于CPU核数：工作线程数与分片数均不应超过核数，单核机器上两者应无明显差别。
+ * <p>
+ * 运行：gradle :Server_SDK:jmh -Pjmh.includes=QoSShardBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class QoSShardBenchmark
+{
+	private static final int RESIDENT = 10000;
+	private static final long RESIDENT_DELAY = 10 * 60 * 1000;
+	
+	@Param({"1", "16"})
+	public int shards;
+	
+	private QoS4SendDaemonRootBenchmark.BenchDaemon daemon;
+	private final AtomicInteger seq = new AtomicInteger();
+	private int shardCount;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		shardCount = QoS4SendDaemonRoot.QOS_SHARD_COUNT;
+		QoS4SendDaemonRoot.QOS_SHARD_COUNT = shards;
+		daemon = new QoS4SendDaemonRootBenchmark.BenchDaemon(1, RESIDENT_DELAY);
+		daemon.startup(false);
+		for(int i = 0; i < RESIDENT; i++)
+			QoS4SendDaemonRootBenchmark.put(daemon, "resident-"+i, i);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		daemon.stop();
+		for(int i = 0; i < RESIDENT; i++)
+			daemon.acknowledge("resident-"+i, "android");
+		QoS4SendDaemonRoot.QOS_SHARD_COUNT = shardCount;
+	}
+	
+	@Benchmark
+	@Threads(16)
+	public long putAndAcknowledge16Threads()
+	{
+		return QoS4SendDaemonRootBenchmark.putAndAcknowledge(daemon, seq);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * DeliverySchedulerBenchmark.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.utils;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 跨EventLoop的频繁小消息投递：4个发送线程（不在目标EventLoop中，相当于其它EventLoop上的发送方）
+ * 各自向随机的目标Channel连续写出一批消息，直到本批最后一条写完为止计一次操作。
+ * <p>
+ * coalesce=true时经 {@link DeliveryScheduler#writeAndFlush} 合并投递，false时关闭调度器，
+ * 即每条消息直接writeAndFlush（Netty为每次跨线程写单独向目标EventLoop提交一个任务）。
+ * 按SampleTime模式给出每批送达耗时的分布（含p99/p99.9尾延迟），每轮迭代结束时另外打印
+ * 目标EventLoop的任务队列压力：平均每条消息对应的任务数、采样到的最大积压任务数。
+ * <p>
+ * 目标Channel为LocalChannel，写出的数据由对端直接丢弃，不含真实网络开销。
+ * <p>
+ * 运行：gradle :Server_SDK:jmh -Pjmh.includes=DeliverySchedulerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class DeliverySchedulerBenchmark
+{
+	private static final ByteBuf PAYLOAD = Unpooled.unreleasableBuffer(Unpooled.directBuffer(64).writeZero(64));
+	
+	@Param({"true", "false"})
+	public boolean coalesce;
+	
+	/** 目标EventLoop上的Channel数 */
+	@Param({"16"})
+	public int channels;
+	
+	/** 每个发送线程每次操作连续写出的消息数 */
+	@Param({"32"})
+	public int burst;
+	
+	private EventLoopGroup targetGroup;
+	private SingleThreadEventExecutor targetLoop;
+	private Channel server;
+	private Channel[] targets;
+	
+	private final LongAdder writes = new LongAdder();
+	private final AtomicLong maxPendingTasks = new AtomicLong();
+	private long batchTasksAtStart;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		DeliveryScheduler.ENABLED = coalesce;
+		
+		targetGroup = new DefaultEventLoopGroup(1);
+		targetLoop = (SingleThreadEventExecutor)targetGroup.next();
+		LocalAddress address = new LocalAddress("delivery-bench");
+		server = new ServerBootstrap()
+				.group(targetGroup)
+				.channel(LocalServerChannel.class)
+				.childHandler(new ChannelInitializer<LocalChannel>() {
+					@Override
+					protected void initChannel(LocalChannel ch)
+					{
+						ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+							@Override
+							public void channelRead(ChannelHandlerContext ctx, Object msg)
+							{
+								ReferenceCountUtil.release(msg);
+							}
+						});
+					}
+				})
+				.bind(address).sync().channel();
+		
+		targets = new Channel[channels];
+		Bootstrap b = new Bootstrap()
+				.group(targetGroup)
+				.channel(LocalChannel.class)
+				.handler(new ChannelInitializer<LocalChannel>() {
+					@Override
+					protected void initChannel(LocalChannel ch)
+					{
+					}
+				});
+		for(int i = 0; i < channels; i++)
+			targets[i] = b.connect(address).sync().channel();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		for(Channel c : targets)
+			c.close().sync();
+		server.close().sync();
+		targetGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+		DeliveryScheduler.ENABLED = true;
+	}
+	
+	@Setup(Level.Iteration)
+	public void resetCounters()
+	{
+		writes.reset();
+		maxPendingTasks.set(0);
+		batchTasksAtStart = DeliveryScheduler.getInstance().getBatchTaskCount();
+	}
+	
+	@TearDown(Level.Iteration)
+	public void printQueuePressure()
+	{
+		long w = writes.sum();
+		// 关闭调度器时每次跨线程writeAndFlush都是一个任务
+		long tasks = coalesce ? DeliveryScheduler.getInstance().getBatchTaskCount() - batchTasksAtStart : w;
+		System.out.println(String.format("  [目标EventLoop] 消息=%d 任务=%d 任务/消息=%.3f 最大积压任务=%d"
+				, w, tasks, w == 0 ? 0 : (double)tasks / w, maxPendingTasks.get()));
+	}
+	
+	@State(Scope.Thread)
+	public static class Sender
+	{
+		CountDownLatch done;
+		final ChannelFutureListener lastWritten = new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future)
+			{
+				done.countDown();
+			}
+		};
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public void chattyCrossLoop(Sender s) throws InterruptedException
+	{
+		DeliveryScheduler scheduler = DeliveryScheduler.getInstance();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		s.done = new CountDownLatch(1);
+		for(int i = 0; i < burst; i++)
+		{
+			Channel target = targets[random.nextInt(targets.length)];
+			scheduler.writeAndFlush(target, PAYLOAD.duplicate(), i == burst - 1 ? s.lastWritten : null);
+		}
+		writes.add(burst);
+		
+		long pending = targetLoop.pendingTasks();
+		long max;
+		while(pending > (max = maxPendingTasks.get()) && !maxPendingTasks.compareAndSet(max, pending))
+			;
+		
+		s.done.await();
+	}
+}
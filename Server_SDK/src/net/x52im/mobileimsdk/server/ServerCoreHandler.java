@@ -20,6 +20,7 @@ import io.netty.channel.Channel;
 import net.x52im.mobileimsdk.server.event.MessageQoSEventListenerS2C;
 import net.x52im.mobileimsdk.server.event.ServerEventListener;
 import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.network.SessionContext;
 import net.x52im.mobileimsdk.server.processor.BridgeProcessor;
 import net.x52im.mobileimsdk.server.processor.LogicProcessor;
 import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
@@ -35,6 +36,11 @@ public class ServerCoreHandler
 {
 	private static Logger logger = LoggerFactory.getLogger(ServerCoreHandler.class);  
 	
+	/** 单个连接每秒允许发出的C2C消息数，0表示不限制，since 6.5 */
+	public static int C2C_RATE_PER_SECOND = 100;
+	/** 单个连接C2C限流的令牌桶最多积攒的令牌数（允许的瞬时突发），since 6.5 */
+	public static int C2C_RATE_BURST = 200;
+	
 	protected ServerEventListener serverEventListener = null;
 	protected MessageQoSEventListenerS2C serverMessageQoSEventListener = null;
 	
@@ -85,30 +91,34 @@ public class ServerCoreHandler
 
     public void messageReceived(Channel session, Protocal pFromClient) throws Exception     
 	{
-    	String remoteAddress = ServerToolKits.clientInfoToString(session);
+    	// 会话状态只读取一次，本方法后续均直接使用之
+    	SessionContext ctx = SessionContext.of(session);
+    	ctx.incrementReceived();
+    	String gateway = Gateway.getGatewayFlag(ctx.getSocketType());
+    	String remoteAddress = ServerToolKits.clientInfoToString(session, ctx);
     	
     	switch(pFromClient.getType())
     	{
 	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_RECIVED:
 	    	{
-	    		logger.info("[IMCORE-{}]<< 收到客户端{}的ACK应答包发送请求.", Gateway.$(session), remoteAddress);
+	    		logger.info("[IMCORE-{}]<< 收到客户端{}的ACK应答包发送请求.", gateway, remoteAddress);
 	
-	    		if(!OnlineProcessor.isLogined(session))
+	    		if(!ctx.isLogined())
 	    		{
 	    			LocalSendHelper.replyDataForUnlogined(session, pFromClient, null);
 	    			return;
 	    		}
 	
-	    		logicProcessor.processACK(pFromClient, remoteAddress);
+	    		logicProcessor.processACK(session, pFromClient, remoteAddress);
 	    		break;
 	    	}
 	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA:
 	    	{
-	    		logger.info("[IMCORE-{}]<< 收到客户端{}的通用数据发送请求.", Gateway.$(session), remoteAddress);
+	    		logger.info("[IMCORE-{}]<< 收到客户端{}的通用数据发送请求.", gateway, remoteAddress);
 	
 	    		if(serverEventListener != null)
 	    		{
-	    			if(!OnlineProcessor.isLogined(session))
+	    			if(!ctx.isLogined())
 	    			{
 	    				LocalSendHelper.replyDataForUnlogined(session, pFromClient, null);
 	    				return;
@@ -119,6 +129,11 @@ public class ServerCoreHandler
 	    					logicProcessor.processC2SMessage(session, pFromClient, remoteAddress);
 	    				}
 	    			} else{
+	    				// 超出本连接的C2C速率时不转发也不应答，带QoS的消息由客户端稍后重传
+	    				if(C2C_RATE_PER_SECOND > 0 && !ctx.tryAcquire(C2C_RATE_PER_SECOND, C2C_RATE_BURST)){
+	    					LocalSendHelper.replyDataForRateLimited(session, pFromClient, null);
+	    					return;
+	    				}
 	    				if(serverEventListener.onTransferMessage4C2CBefore(pFromClient, session)){
 	    					logicProcessor.processC2CMessage(bridgeProcessor, session, pFromClient, remoteAddress);
 	    				}
@@ -126,13 +141,13 @@ public class ServerCoreHandler
 	    		}
 	    		else
 	    		{
-	    			logger.warn("[IMCORE-{}]<< 收到客户端{}的通用数据传输消息，但回调对象是null，回调无法继续.", Gateway.$(session), remoteAddress);
+	    			logger.warn("[IMCORE-{}]<< 收到客户端{}的通用数据传输消息，但回调对象是null，回调无法继续.", gateway, remoteAddress);
 	    		}
 	    		break;
 	    	}
 	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_KEEP$ALIVE:
 	    	{
-		        if(!OnlineProcessor.isLogined(session))
+		        if(!ctx.isLogined())
 	    		{
 	    			LocalSendHelper.replyDataForUnlogined(session, pFromClient, null);
 	    			return;
@@ -149,10 +164,43 @@ public class ServerCoreHandler
 	    	}
 	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_LOGOUT:
 	    	{
-	    		logger.info("[IMCORE-{}]<< 收到客户端{}的退出登陆请求.", Gateway.$(session), remoteAddress);
+	    		logger.info("[IMCORE-{}]<< 收到客户端{}的退出登陆请求.", gateway, remoteAddress);
 	    		session.close();
 	    		break;
 	    	}
+	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_ACK$SEQ:
+	    	{
+	    		if(!ctx.isLogined())
+	    		{
+	    			LocalSendHelper.replyDataForUnlogined(session, pFromClient, null);
+	    			return;
+	    		}
+	    		
+	    		logicProcessor.processSeqAck(session, pFromClient, remoteAddress);
+	    		break;
+	    	}
+	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_SYNC$SEQ:
+	    	{
+	    		if(!ctx.isLogined())
+	    		{
+	    			LocalSendHelper.replyDataForUnlogined(session, pFromClient, null);
+	    			return;
+	    		}
+	    		
+	    		logicProcessor.processSeqSync(session, pFromClient, remoteAddress);
+	    		break;
+	    	}
+	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_PRESENCE$SUBSCRIBE:
+	    	{
+	    		if(!ctx.isLogined())
+	    		{
+	    			LocalSendHelper.replyDataForUnlogined(session, pFromClient, null);
+	    			return;
+	    		}
+	    		
+	    		logicProcessor.processPresenceSubscribe(session, pFromClient, remoteAddress);
+	    		break;
+	    	}
 	    	case ProtocalType.C.FROM_CLIENT_TYPE_OF_ECHO:
 	    	{
 	    		pFromClient.setType(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$ECHO);
@@ -162,7 +210,7 @@ public class ServerCoreHandler
 	    	default:
 	    	{
 	    		logger.warn("[IMCORE-{}]【注意】收到的客户端{}消息类型：{}，但目前该类型服务端不支持解析和处理！"
-	    				, Gateway.$(session), remoteAddress, pFromClient.getType());
+	    				, gateway, remoteAddress, pFromClient.getType());
 	    		break;
 	    	}
     	}
@@ -174,7 +222,7 @@ public class ServerCoreHandler
     	
     	if(user_id != null)
     	{
-	    	Channel sessionInOnlinelist = OnlineProcessor.getInstance().getOnlineSession(user_id);
+	    	Channel sessionInOnlinelist = OnlineProcessor.getInstance().getOnlineSession(user_id, OnlineProcessor.getDeviceClassFromChannel(session));
 	    	
 	    	logger.info("[IMCORE-{}]{}的会话已关闭(user_id={}, firstLoginTime={})了..."
 	    			, Gateway.$(session), ServerToolKits.clientInfoToString(session), user_id, OnlineProcessor.getFirstLoginTimeFromChannel(session));
@@ -193,13 +241,13 @@ public class ServerCoreHandler
 	    	}// DEBUG END
     	
     		//## Bug FIX: 20171211 START
-    		if(sessionInOnlinelist != null && session != null && session == sessionInOnlinelist)
+    		// 比较后移除：只有在线列表中映射的正是本会话时才移除，避免误删同一用户刚登陆上来的新会话
+    		if(OnlineProcessor.getInstance().removeUser(user_id, session))
     		//## Bug FIX: 20171211 END
     		{
     			int beKickoutCode = OnlineProcessor.getBeKickoutCodeFromChannel(session);
 				
     			OnlineProcessor.removeAttributesForChannel(session);
-    			OnlineProcessor.getInstance().removeUser(user_id);
 
     			if(serverEventListener != null)
     				serverEventListener.onUserLogout(user_id, session, beKickoutCode);
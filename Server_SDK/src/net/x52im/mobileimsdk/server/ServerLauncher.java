@@ -18,14 +18,22 @@ package net.x52im.mobileimsdk.server;
 
 import java.io.IOException;
 
+import net.x52im.mobileimsdk.server.cluster.ClusterRouter;
 import net.x52im.mobileimsdk.server.event.MessageQoSEventListenerS2C;
 import net.x52im.mobileimsdk.server.event.ServerEventListener;
 import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.network.GatewayEdgeLink;
+import net.x52im.mobileimsdk.server.network.GatewayQUIC;
 import net.x52im.mobileimsdk.server.network.GatewayTCP;
 import net.x52im.mobileimsdk.server.network.GatewayUDP;
 import net.x52im.mobileimsdk.server.network.GatewayWebsocket;
+import net.x52im.mobileimsdk.server.processor.PresenceProcessor;
+import net.x52im.mobileimsdk.server.processor.PresenceSubscriptionProcessor;
+import net.x52im.mobileimsdk.server.qos.QoS4GroupSendDaemon;
 import net.x52im.mobileimsdk.server.qos.QoS4ReciveDaemonC2S;
 import net.x52im.mobileimsdk.server.qos.QoS4SendDaemonS2C;
+import net.x52im.mobileimsdk.server.qos.QoS4SeqSendDaemonS2C;
+import net.x52im.mobileimsdk.server.qos.QoSJournal;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +52,8 @@ public abstract class ServerLauncher
     private Gateway udp = null;
     private Gateway tcp = null;
     private Gateway ws = null;
+    private Gateway quic = null;
+    private Gateway edgeLink = null;
     
     public ServerLauncher() throws IOException 
     {
@@ -76,6 +86,18 @@ public abstract class ServerLauncher
     		ws = createGatewayWebsocket();
     		ws.init(this.serverCoreHandler);
     	}
+    	
+    	if(Gateway.isSupportQUIC(supportedGateways))
+    	{
+    		quic = createGatewayQUIC();
+    		quic.init(this.serverCoreHandler);
+    	}
+    	
+    	if(Gateway.isSupportEdgeLink(supportedGateways))
+    	{
+    		edgeLink = createGatewayEdgeLink();
+    		edgeLink.init(this.serverCoreHandler);
+    	}
     }
     
     protected GatewayUDP createGatewayUDP()
@@ -93,6 +115,16 @@ public abstract class ServerLauncher
     	return new GatewayWebsocket();
     }
     
+    protected GatewayQUIC createGatewayQUIC()
+    {
+    	return new GatewayQUIC();
+    }
+    
+    protected GatewayEdgeLink createGatewayEdgeLink()
+    {
+    	return new GatewayEdgeLink();
+    }
+    
     public void startup() throws Exception
     {	
     	if(!this.running)
@@ -100,17 +132,7 @@ public abstract class ServerLauncher
     		serverCoreHandler = initServerCoreHandler();
     		initListeners();
     		initGateways();
-    		QoS4ReciveDaemonC2S.getInstance().startup();
-    		QoS4SendDaemonS2C.getInstance().startup(true).setServerLauncher(this);
-
-    		if(ServerLauncher.bridgeEnabled){
-    			serverCoreHandler.lazyStartupBridgeProcessor();
-    			logger.info("[IMCORE] 配置项：已开启与MobileIMSDK Web的互通.");
-    		}
-    		else{
-    			logger.info("[IMCORE] 配置项：未开启与MobileIMSDK Web的互通.");
-    		}
-    		
+    		startupServices();
     		bind();
     		this.running = true;
     	}
@@ -120,6 +142,54 @@ public abstract class ServerLauncher
     	}
     }
     
+    /**
+     * 启动QoS、在线状态、MQ互通及集群路由等核心服务（只接入连接的节点如边缘网关可不启动）。
+     * 
+     * @since 6.5
+     */
+    protected void startupServices() throws Exception
+    {
+    	QoS4ReciveDaemonC2S.getInstance().startup();
+    	if(QoSJournal.ENABLED)
+    		QoSJournal.getInstance().open(QoS4SendDaemonS2C.getInstance());
+    	QoS4SendDaemonS2C.getInstance().startup(true).setServerLauncher(this);
+    	QoS4SeqSendDaemonS2C.getInstance().startup(true).setServerLauncher(this);
+    	QoS4GroupSendDaemon.getInstance().startup(true).setServerLauncher(this);
+    	PresenceProcessor.getInstance().addPresenceChangeListener(PresenceSubscriptionProcessor.getInstance());
+    	PresenceProcessor.getInstance().startup();
+
+    	if(ServerLauncher.bridgeEnabled){
+    		serverCoreHandler.lazyStartupBridgeProcessor();
+    		logger.info("[IMCORE] 配置项：已开启与MobileIMSDK Web的互通.");
+    	}
+    	else{
+    		logger.info("[IMCORE] 配置项：未开启与MobileIMSDK Web的互通.");
+    	}
+    	
+    	if(ClusterRouter.ENABLED)
+    		ClusterRouter.getInstance().startup(serverCoreHandler);
+    }
+    
+    /**
+     * 停止 {@link #startupServices()} 中启动的服务。
+     * 
+     * @since 6.5
+     */
+    protected void shutdownServices()
+    {
+    	QoS4ReciveDaemonC2S.getInstance().stop();
+    	QoS4SendDaemonS2C.getInstance().stop();
+    	if(QoSJournal.ENABLED)
+    		QoSJournal.getInstance().close();
+    	QoS4SeqSendDaemonS2C.getInstance().stop();
+    	QoS4GroupSendDaemon.getInstance().stop();
+    	PresenceProcessor.getInstance().stop();
+    	PresenceProcessor.getInstance().removePresenceChangeListener(PresenceSubscriptionProcessor.getInstance());
+    	
+    	if(ClusterRouter.ENABLED)
+    		ClusterRouter.getInstance().shutdown();
+    }
+    
     protected void bind() throws Exception
     {
     	if(udp != null)
@@ -128,6 +198,10 @@ public abstract class ServerLauncher
     		tcp.bind();
     	if(ws != null)
     		ws.bind();
+    	if(quic != null)
+    		quic.bind();
+    	if(edgeLink != null)
+    		edgeLink.bind();
     }
 
     public void shutdown()
@@ -138,10 +212,12 @@ public abstract class ServerLauncher
     		tcp.shutdown();
     	if(ws != null)
     		ws.shutdown();
+    	if(quic != null)
+    		quic.shutdown();
+    	if(edgeLink != null)
+    		edgeLink.shutdown();
     	
-    	QoS4ReciveDaemonC2S.getInstance().stop();
-    	QoS4SendDaemonS2C.getInstance().stop();
-    	
+    	shutdownServices();
     	this.running = false;
     }
     
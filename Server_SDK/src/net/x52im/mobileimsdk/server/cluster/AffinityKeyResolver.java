@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * AffinityKeyResolver.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+
+/**
+ * 决定登陆用户按什么分组到节点上（见 {@link ClusterRouter#LOGIN_REDIRECT_ENABLED}）。
+ * <p>
+ * 默认按用户id分组；若返回租户id、主要所在群id等，则同一租户/群的用户会被集中到同一个节点上，
+ * 他们之间的消息便无需跨节点转发。
+ *
+ * @since 6.5
+ */
+public interface AffinityKeyResolver
+{
+	/**
+	 * @return 分组用的key，返回null表示该用户不做重定向
+	 */
+	String getAffinityKey(PLoginInfo loginInfo);
+}
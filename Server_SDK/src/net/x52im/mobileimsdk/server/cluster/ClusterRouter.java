@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * ClusterRouter.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.ServerLauncher;
+import net.x52im.mobileimsdk.server.event.SessionRegistryListener;
+import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 多节点集群下跨节点消息的路由器。
+ * <p>
+ * 本节点上的会话上线/下线时会登记到 {@link PresenceDirectory}，发给非本机用户的消息先查目录：
+ * 用户不在任何节点上则直接走离线处理；在别的节点上且该节点配置了直连地址（见 {@link #addNode(String, String, int)}）
+ * 则经节点间的TCP直连链路直接投递给它；否则才退回到原有的MQ桥接（{@link ServerLauncher#bridgeEnabled}）。
+ * <p>
+ * 目录通常是Redis等远程存储，登记在专用线程（{@link #PRESENCE_SYNC_THREADS}）中异步进行，不占用会话所在的IO线程；
+ * 同一用户排队期间的多次上下线合并为一次登记。因此用户刚上线的极短时间内，其它节点可能还查不到该用户（按离线处理）。
+ * <p>
+ * 注意：开启本功能后，未登记在目录中的用户一律视为离线，若还需与MobileIMSDK Web等异构服务端互通，
+ * 这些服务端也应把其在线用户登记到同一个目录中。
+ * <p>
+ * 节点间直连链路只接受来自已配置节点（{@link #addNode(String, String, int)}）地址的连接，
+ * 且双方须以共享密钥 {@link #LINK_SECRET} 完成握手（见 {@link MBNodeLinkHandshake}）后才收发消息，
+ * 未配置密钥时不会开启直连。
+ *
+ * @since 6.5
+ */
+public class ClusterRouter implements SessionRegistryListener
+{
+	private static Logger logger = LoggerFactory.getLogger(ClusterRouter.class); 
+	
+	/** 是否开启集群路由（默认关闭，关闭时行为与原来完全一致） */
+	public static boolean ENABLED = false;
+	/** 本节点在集群中的唯一id */
+	public static String NODE_ID = "node-1";
+	/** 是否开启节点间直连（关闭时跨节点消息仍经MQ桥接，但离线用户不再产生桥接流量） */
+	public static boolean DIRECT_LINK_ENABLED = true;
+	/** 本节点接受其它节点直连的地址（为null时监听全部网卡，建议设为内网地址） */
+	public static String LINK_HOST = null;
+	/** 本节点接受其它节点直连的端口 */
+	public static int LINK_PORT = 9903;
+	/** 节点间直连链路握手用的共享密钥，各节点须一致；为空时不开启直连（跨节点消息经MQ桥接） */
+	public static String LINK_SECRET = null;
+	public static int LINK_FRAME_MAX_LENGTH = 64 * 1024; // 64K bytes
+	public static int LINK_CONNECT_TIMEOUT = 3000;
+	/** 登记在线目录的线程数，需在 {@link #startup(ServerCoreHandler)} 之前设置 */
+	public static int PRESENCE_SYNC_THREADS = 2;
+	/** 
+	 * 是否开启登陆重定向：按一致性哈希把用户（或同一租户/群的用户，见 {@link AffinityKeyResolver}）集中到
+	 * 固定节点上，使其相互间的消息尽量在节点内完成。参与分组的节点（含本节点）须通过
+	 * {@link #addRedirectNode(String, String, int)} 配置，各节点的配置须一致。
+	 */
+	public static boolean LOGIN_REDIRECT_ENABLED = false;
+	
+	/** 接收者在本机（或本机即将按离线处理） */
+	public static final int ROUTE_LOCAL = 0;
+	/** 接收者不在任何节点上，直接离线处理 */
+	public static final int ROUTE_OFFLINE = 1;
+	/** 经节点间直连链路投递 */
+	public static final int ROUTE_DIRECT = 2;
+	/** 经MQ桥接投递 */
+	public static final int ROUTE_BRIDGE = 3;
+	
+	private static volatile ClusterRouter instance = null;
+	
+	private volatile PresenceDirectory presenceDirectory = new InMemoryPresenceDirectory();
+	private final ConcurrentMap<String, InetSocketAddress> nodeAddresses = new ConcurrentHashMap<String, InetSocketAddress>();
+	/** 各节点直连地址解析出的IP，用于校验连入链路的来源 */
+	private final ConcurrentMap<String, InetAddress[]> nodePeerAddresses = new ConcurrentHashMap<String, InetAddress[]>();
+	private final ConcurrentMap<String, ChannelFuture> links = new ConcurrentHashMap<String, ChannelFuture>();
+	/** 按用户分段的锁：同一用户的目录登记/移除串行进行，见 {@link #syncPresence(String)} */
+	private final Object[] presenceLocks = new Object[64];
+	/** 已提交、尚未开始执行目录登记的用户 */
+	private final ConcurrentMap<String, Boolean> presencePending = new ConcurrentHashMap<String, Boolean>();
+	private volatile ExecutorService presenceExecutor = null;
+	
+	private final ConsistentHashRing redirectRing = new ConsistentHashRing();
+	/** 参与登陆重定向的节点供客户端连接的地址 */
+	private final ConcurrentMap<String, InetSocketAddress> redirectAddresses = new ConcurrentHashMap<String, InetSocketAddress>();
+	private volatile AffinityKeyResolver affinityKeyResolver = new AffinityKeyResolver() {
+		@Override
+		public String getAffinityKey(PLoginInfo loginInfo) {
+			return loginInfo.getLoginUserId();
+		}
+	};
+	
+	private EventLoopGroup bossGroup = null;
+	private EventLoopGroup workerGroup = null;
+	private Channel serverChannel = null;
+	private Bootstrap linkBootstrap = null;
+	
+	public static ClusterRouter getInstance()
+	{
+		if (instance == null) {
+			synchronized (ClusterRouter.class) {
+				if (instance == null) {
+					instance = new ClusterRouter();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private ClusterRouter()
+	{
+		for(int i = 0; i < presenceLocks.length; i++)
+			presenceLocks[i] = new Object();
+	}
+	
+	public synchronized void startup(ServerCoreHandler serverCoreHandler) throws Exception
+	{
+		if(presenceExecutor == null)
+			presenceExecutor = Executors.newFixedThreadPool(Math.max(1, PRESENCE_SYNC_THREADS)
+					, new DefaultThreadFactory("mobileimsdk-cluster-presence", true));
+		OnlineProcessor.getInstance().addSessionRegistryListener(this);
+		
+		boolean directLink = DIRECT_LINK_ENABLED;
+		if(directLink && (LINK_SECRET == null || LINK_SECRET.isEmpty()))
+		{
+			logger.error("[IMCORE-cluster] 未配置节点间直连链路的密钥(LINK_SECRET)，本节点不开启直连，跨节点消息将经MQ桥接！");
+			directLink = false;
+		}
+		
+		if(directLink && workerGroup == null)
+		{
+			bossGroup = new NioEventLoopGroup(1);
+			workerGroup = new NioEventLoopGroup();
+			
+			ServerBootstrap bootstrap = new ServerBootstrap()
+				.group(bossGroup, workerGroup)
+				.channel(NioServerSocketChannel.class)
+				.childHandler(initLinkChannelHandler(serverCoreHandler));
+			bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+			bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+			
+			linkBootstrap = new Bootstrap()
+				.group(workerGroup)
+				.channel(NioSocketChannel.class)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, LINK_CONNECT_TIMEOUT)
+				.option(ChannelOption.SO_KEEPALIVE, true)
+				.option(ChannelOption.TCP_NODELAY, true)
+				.handler(initLinkChannelHandler(null));
+			
+			serverChannel = (LINK_HOST != null ? bootstrap.bind(LINK_HOST, LINK_PORT) : bootstrap.bind(LINK_PORT)).sync().channel();
+			logger.info("[IMCORE-cluster] 节点{}的直连链路服务正在{}:{}上监听中...", NODE_ID
+					, LINK_HOST != null ? LINK_HOST : "*", LINK_PORT);
+		}
+		
+		logger.info("[IMCORE-cluster] 集群路由已启动(nodeId={}, 直连{}, 目录实现={}).", NODE_ID
+				, directLink ? "已开启" : "未开启", presenceDirectory.getClass().getSimpleName());
+	}
+	
+	public synchronized void shutdown()
+	{
+		OnlineProcessor.getInstance().removeSessionRegistryListener(this);
+		// 已排队的登记仍会执行完
+		if(presenceExecutor != null)
+		{
+			presenceExecutor.shutdown();
+			presenceExecutor = null;
+		}
+		
+		if(serverChannel != null)
+		{
+			serverChannel.close();
+			serverChannel = null;
+		}
+		for(ChannelFuture cf : links.values())
+			cf.channel().close();
+		links.clear();
+		
+		if(workerGroup != null)
+		{
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+			bossGroup = null;
+			workerGroup = null;
+			linkBootstrap = null;
+		}
+	}
+	
+	/** 
+	 * 链路帧格式：4字节长度 + 帧内容，先是握手帧，之后每帧是一个Protocal的JSON。
+	 * 被动端（serverCoreHandler!=null）在读取任何数据之前先校验连接来源是否为已配置节点的地址。
+	 */
+	private ChannelHandler initLinkChannelHandler(final ServerCoreHandler serverCoreHandler)
+	{
+		return new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel channel) throws Exception {
+				if(serverCoreHandler != null)
+				{
+					InetSocketAddress remote = (InetSocketAddress)channel.remoteAddress();
+					if(!isNodeAddress(null, remote.getAddress()))
+					{
+						logger.warn("[IMCORE-cluster] 拒绝来自{}的直连链路：来源地址不属于任何已配置节点.", remote);
+						channel.close();
+						return;
+					}
+				}
+				
+				ChannelPipeline pipeline = channel.pipeline();
+				pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(LINK_FRAME_MAX_LENGTH, 0, 4, 0, 4));
+				pipeline.addLast("frameEncoder", new LengthFieldPrepender(4));
+				if(serverCoreHandler != null)
+					pipeline.addLast(new MBNodeLinkInboundHandler(serverCoreHandler));
+				else
+					pipeline.addLast(new MBNodeLinkClientHandler());
+			}
+		};
+	}
+	
+	/**
+	 * 配置一个可直连的节点（本节点自已无需配置）。
+	 * <p>
+	 * host在此时解析为IP，只有来自这些IP的连入链路才会被接受，节点地址变更后须重新调用本方法。
+	 */
+	public void addNode(String nodeId, String host, int port)
+	{
+		InetAddress[] peers;
+		try
+		{
+			peers = InetAddress.getAllByName(host);
+		}
+		catch (UnknownHostException e)
+		{
+			logger.warn("[IMCORE-cluster] 无法解析节点"+nodeId+"的地址"+host+"，将不接受该节点连入的直连链路：", e);
+			peers = new InetAddress[0];
+		}
+		nodePeerAddresses.put(nodeId, peers);
+		nodeAddresses.put(nodeId, InetSocketAddress.createUnresolved(host, port));
+	}
+	
+	public void removeNode(String nodeId)
+	{
+		nodeAddresses.remove(nodeId);
+		nodePeerAddresses.remove(nodeId);
+		ChannelFuture cf = links.remove(nodeId);
+		if(cf != null)
+			cf.channel().close();
+	}
+	
+	/**
+	 * 配置一个参与登陆重定向的节点。
+	 * 
+	 * @param clientHost 客户端连接该节点用的地址（非节点间直连地址）
+	 * @param clientPort 客户端连接该节点用的端口
+	 */
+	public void addRedirectNode(String nodeId, String clientHost, int clientPort)
+	{
+		redirectAddresses.put(nodeId, InetSocketAddress.createUnresolved(clientHost, clientPort));
+		redirectRing.addNode(nodeId);
+	}
+	
+	public void removeRedirectNode(String nodeId)
+	{
+		redirectRing.removeNode(nodeId);
+		redirectAddresses.remove(nodeId);
+	}
+	
+	/**
+	 * 登陆时调用：若该用户应归属于别的节点，则返回该节点供客户端连接的地址。
+	 * 
+	 * @return 需要重定向时返回目标节点的地址，否则返回null（在本节点正常登陆）
+	 */
+	public InetSocketAddress getLoginRedirect(PLoginInfo loginInfo)
+	{
+		if(!ENABLED || !LOGIN_REDIRECT_ENABLED || redirectRing.isEmpty())
+			return null;
+		
+		String nodeId = redirectRing.locate(affinityKeyResolver.getAffinityKey(loginInfo));
+		if(nodeId == null || nodeId.equals(NODE_ID))
+			return null;
+		return redirectAddresses.get(nodeId);
+	}
+	
+	/**
+	 * 决定发给userId的消息应如何投递。
+	 * 
+	 * @return {@link #ROUTE_LOCAL}、{@link #ROUTE_OFFLINE}、{@link #ROUTE_DIRECT} 或 {@link #ROUTE_BRIDGE}
+	 */
+	public int route(String userId)
+	{
+		if(OnlineProcessor.isOnline(userId))
+			return ROUTE_LOCAL;
+		
+		if(!ENABLED)
+			return (ServerLauncher.bridgeEnabled ? ROUTE_BRIDGE : ROUTE_LOCAL);
+		
+		String nodeId;
+		try
+		{
+			nodeId = presenceDirectory.lookup(userId);
+		}
+		catch (Exception e)
+		{
+			// 目录不可用时退回到原有的处理方式
+			logger.warn("[IMCORE-cluster] 查询用户"+userId+"所在节点时出错：", e);
+			return (ServerLauncher.bridgeEnabled ? ROUTE_BRIDGE : ROUTE_LOCAL);
+		}
+		
+		if(nodeId == null)
+			return ROUTE_OFFLINE;
+		// 目录中记的是本机、而本机在线列表中已没有（刚刚下线），按本机处理即会走离线
+		if(nodeId.equals(NODE_ID))
+			return ROUTE_LOCAL;
+		if(DIRECT_LINK_ENABLED && linkBootstrap != null && nodeAddresses.containsKey(nodeId))
+			return ROUTE_DIRECT;
+		return (ServerLauncher.bridgeEnabled ? ROUTE_BRIDGE : ROUTE_OFFLINE);
+	}
+	
+	/**
+	 * 经直连链路把消息投递到用户所在的节点（由 {@link #route(String)} 返回 {@link #ROUTE_DIRECT} 后调用）。
+	 * 
+	 * @param resultObserver 数据写入对端链路成功与否的回调
+	 */
+	public void forward(String userId, Protocal p, final MBObserver resultObserver)
+	{
+		String nodeId = presenceDirectory.lookup(userId);
+		ChannelFuture link = (nodeId != null ? getOrConnect(nodeId) : null);
+		if(link == null)
+		{
+			if(resultObserver != null)
+				resultObserver.update(false, null);
+			return;
+		}
+		
+		final byte[] bytes = p.toBytes();
+		link.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture connectFuture) throws Exception {
+				if(!connectFuture.isSuccess())
+				{
+					if(resultObserver != null)
+						resultObserver.update(false, null);
+					return;
+				}
+				connectFuture.channel().writeAndFlush(Unpooled.wrappedBuffer(bytes)).addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture writeFuture) throws Exception {
+						if(resultObserver != null)
+							resultObserver.update(writeFuture.isSuccess(), null);
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * address是否属于已配置的节点nodeId（nodeId为null时为任一已配置节点）。
+	 */
+	boolean isNodeAddress(String nodeId, InetAddress address)
+	{
+		if(nodeId != null)
+			return contains(nodePeerAddresses.get(nodeId), address);
+		for(InetAddress[] peers : nodePeerAddresses.values())
+		{
+			if(contains(peers, address))
+				return true;
+		}
+		return false;
+	}
+	
+	private static boolean contains(InetAddress[] peers, InetAddress address)
+	{
+		if(peers == null || address == null)
+			return false;
+		for(InetAddress peer : peers)
+		{
+			if(peer.equals(address))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 返回到nodeId的链路，其future在连接建立且握手成功后才完成。
+	 */
+	private ChannelFuture getOrConnect(final String nodeId)
+	{
+		ChannelFuture cf = links.get(nodeId);
+		if(isUsable(cf))
+			return cf;
+		
+		synchronized(links)
+		{
+			cf = links.get(nodeId);
+			if(isUsable(cf))
+				return cf;
+			
+			InetSocketAddress addr = nodeAddresses.get(nodeId);
+			Bootstrap b = linkBootstrap;
+			if(addr == null || b == null)
+				return null;
+			
+			ChannelFuture connectCf = b.connect(addr.getHostString(), addr.getPort());
+			final ChannelPromise newCf = MBNodeLinkClientHandler.linkReady(connectCf.channel());
+			connectCf.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					if(!future.isSuccess())
+						newCf.tryFailure(future.cause());
+				}
+			});
+			links.put(nodeId, newCf);
+			newCf.channel().closeFuture().addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					links.remove(nodeId, newCf);
+					logger.info("[IMCORE-cluster] 到节点{}的直连链路已关闭.", nodeId);
+				}
+			});
+			return newCf;
+		}
+	}
+	
+	private static boolean isUsable(ChannelFuture cf)
+	{
+		return cf != null && (!cf.isDone() || (cf.isSuccess() && cf.channel().isActive()));
+	}
+	
+	@Override
+	public void onSessionAdded(String userId, String deviceClass, Channel session)
+	{
+		schedulePresenceSync(userId);
+	}
+
+	@Override
+	public void onSessionRemoved(String userId, String deviceClass, Channel session)
+	{
+		schedulePresenceSync(userId);
+	}
+	
+	/**
+	 * 把该用户的目录登记交给专用线程。该用户已在排队时不再重复提交：执行时读取的是当时最新的在线状态，
+	 * 排队期间的多次上下线自然合并为一次登记。
+	 */
+	private void schedulePresenceSync(final String userId)
+	{
+		if(presencePending.putIfAbsent(userId, Boolean.TRUE) != null)
+			return;
+		
+		Runnable task = new Runnable() {
+			@Override
+			public void run()
+			{
+				// 先去掉排队标记再读取在线状态：此后发生的变化会重新提交，不会漏掉
+				presencePending.remove(userId);
+				try
+				{
+					syncPresence(userId);
+				}
+				catch (Exception e)
+				{
+					logger.warn("[IMCORE-cluster] 登记用户"+userId+"的在线目录时出错："+e.getMessage(), e);
+				}
+			}
+		};
+		
+		ExecutorService executor = presenceExecutor;
+		try
+		{
+			if(executor != null)
+			{
+				executor.execute(task);
+				return;
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			// 与shutdown并发，改为就地执行
+		}
+		task.run();
+	}
+	
+	/**
+	 * 按该用户此刻在本机是否还有会话来登记或移除目录（多端在线时，只有最后一个会话也下线了才移除）。
+	 * <p>
+	 * 会话的增删总是先于其登记的提交发生，而同一用户的登记在锁内串行执行（有多个登记线程时，
+	 * 同一用户先后提交的两次登记可能同时执行）并各自重新读取在线状态，所以最后执行的登记总能看到最新状态：
+	 * 不会出现“判断为离线后、移除前该用户又上线”而把刚登记的记录移除掉的情况。
+	 */
+	private void syncPresence(String userId)
+	{
+		synchronized(presenceLocks[(userId.hashCode() & 0x7fffffff) % presenceLocks.length])
+		{
+			if(OnlineProcessor.getInstance().isUserOnline(userId))
+				presenceDirectory.register(userId, NODE_ID);
+			else
+				presenceDirectory.unregister(userId, NODE_ID);
+		}
+	}
+
+	public AffinityKeyResolver getAffinityKeyResolver()
+	{
+		return affinityKeyResolver;
+	}
+
+	public void setAffinityKeyResolver(AffinityKeyResolver affinityKeyResolver)
+	{
+		this.affinityKeyResolver = affinityKeyResolver;
+	}
+
+	public PresenceDirectory getPresenceDirectory()
+	{
+		return presenceDirectory;
+	}
+
+	public void setPresenceDirectory(PresenceDirectory presenceDirectory)
+	{
+		this.presenceDirectory = presenceDirectory;
+	}
+}
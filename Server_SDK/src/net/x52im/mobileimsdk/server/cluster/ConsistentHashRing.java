@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * ConsistentHashRing.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 带虚拟节点的一致性哈希环：把一个key（用户id、租户id、群id等）稳定地映射到某个节点上，节点增减时
+ * 只有约1/N的key会改变归属。
+ * <p>
+ * 读多写少：修改时整体重建一个新环再替换，{@link #locate(String)} 无锁。
+ *
+ * @since 6.5
+ */
+public class ConsistentHashRing
+{
+	/** 每个物理节点在环上的虚拟节点数，越大分布越均匀 */
+	public static int VIRTUAL_NODES = 160;
+	
+	private volatile TreeMap<Long, String> ring = new TreeMap<Long, String>();
+	
+	public synchronized void addNode(String nodeId)
+	{
+		TreeMap<Long, String> newRing = new TreeMap<Long, String>(ring);
+		for(int i = 0; i < VIRTUAL_NODES; i++)
+			newRing.put(hash(nodeId + "#" + i), nodeId);
+		ring = newRing;
+	}
+	
+	public synchronized void removeNode(String nodeId)
+	{
+		TreeMap<Long, String> newRing = new TreeMap<Long, String>(ring);
+		for(int i = 0; i < VIRTUAL_NODES; i++)
+			newRing.remove(hash(nodeId + "#" + i));
+		ring = newRing;
+	}
+	
+	/**
+	 * 取得key所归属的节点。
+	 * 
+	 * @return 节点id，环为空时返回null
+	 */
+	public String locate(String key)
+	{
+		TreeMap<Long, String> r = ring;
+		if(r.isEmpty() || key == null)
+			return null;
+		Map.Entry<Long, String> e = r.ceilingEntry(hash(key));
+		return (e != null ? e : r.firstEntry()).getValue();
+	}
+	
+	public boolean isEmpty()
+	{
+		return ring.isEmpty();
+	}
+	
+	private static long hash(String key)
+	{
+		try
+		{
+			byte[] d = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+			return ((long)(d[0] & 0xFF) << 56) | ((long)(d[1] & 0xFF) << 48) | ((long)(d[2] & 0xFF) << 40) | ((long)(d[3] & 0xFF) << 32)
+				 | ((long)(d[4] & 0xFF) << 24) | ((long)(d[5] & 0xFF) << 16) | ((long)(d[6] & 0xFF) << 8) | (d[7] & 0xFF);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
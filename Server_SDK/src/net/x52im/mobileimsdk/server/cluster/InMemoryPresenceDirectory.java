@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * InMemoryPresenceDirectory.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于本进程内存的 {@link PresenceDirectory} 实现，仅适用于测试或单节点部署。
+ *
+ * @since 6.5
+ */
+public class InMemoryPresenceDirectory implements PresenceDirectory
+{
+	private final ConcurrentMap<String, String> userNodes = new ConcurrentHashMap<String, String>();
+	
+	@Override
+	public void register(String userId, String nodeId)
+	{
+		userNodes.put(userId, nodeId);
+	}
+
+	@Override
+	public void unregister(String userId, String nodeId)
+	{
+		userNodes.remove(userId, nodeId);
+	}
+
+	@Override
+	public String lookup(String userId)
+	{
+		return (userId != null ? userNodes.get(userId) : null);
+	}
+	
+	public int size()
+	{
+		return userNodes.size();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBNodeLinkClientHandler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 本节点主动连向别的节点的链路上完成握手（见 {@link MBNodeLinkHandshake}），
+ * 握手成功后 {@link #linkReady(Channel)} 才完成，此前不会在该链路上发出任何消息帧。
+ *
+ * @since 6.5
+ */
+public class MBNodeLinkClientHandler extends SimpleChannelInboundHandler<ByteBuf>
+{
+	private static Logger logger = LoggerFactory.getLogger(MBNodeLinkClientHandler.class); 
+	
+	private static final AttributeKey<ChannelPromise> LINK_READY = AttributeKey.valueOf("mb.nodeLinkReady");
+	
+	private byte[] serverNonce = null;
+	private byte[] clientNonce = null;
+	
+	/**
+	 * 返回链路握手完成的future（连接发起方与本handler谁先调用都拿到同一个）。
+	 */
+	static ChannelPromise linkReady(Channel channel)
+	{
+		Attribute<ChannelPromise> attr = channel.attr(LINK_READY);
+		ChannelPromise ready = attr.get();
+		if(ready == null)
+		{
+			ChannelPromise newReady = channel.newPromise();
+			ready = attr.setIfAbsent(newReady);
+			if(ready == null)
+				ready = newReady;
+		}
+		return ready;
+	}
+	
+	@Override
+	public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+		super.channelActive(ctx);
+		ctx.executor().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if(!linkReady(ctx.channel()).isDone())
+				{
+					logger.warn("[IMCORE-cluster] 到{}的直连链路握手超时，将关闭连接.", ctx.channel().remoteAddress());
+					ctx.close();
+				}
+			}
+		}, ClusterRouter.LINK_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		linkReady(ctx.channel()).tryFailure(new ClosedChannelException());
+		super.channelInactive(ctx);
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+		logger.warn("[IMCORE-cluster] 到" + ctx.channel().remoteAddress() + "的直连链路出错：", e);
+		linkReady(ctx.channel()).tryFailure(e);
+		ctx.close();
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+		if(serverNonce == null)
+		{
+			// 被动端的质询
+			if(frame.readableBytes() != MBNodeLinkHandshake.NONCE_LENGTH)
+			{
+				fail(ctx, "质询帧长度不正确");
+				return;
+			}
+			serverNonce = new byte[MBNodeLinkHandshake.NONCE_LENGTH];
+			frame.readBytes(serverNonce);
+			clientNonce = MBNodeLinkHandshake.newNonce();
+			
+			byte[] nodeId = ClusterRouter.NODE_ID.getBytes(StandardCharsets.UTF_8);
+			byte[] mac = MBNodeLinkHandshake.mac(ClusterRouter.LINK_SECRET, MBNodeLinkHandshake.ROLE_CLIENT
+					, serverNonce, clientNonce, nodeId);
+			ctx.writeAndFlush(Unpooled.wrappedBuffer(clientNonce, mac, nodeId));
+		}
+		else if(!linkReady(ctx.channel()).isDone())
+		{
+			// 被动端对本节点质询的应答
+			byte[] mac = new byte[frame.readableBytes()];
+			frame.readBytes(mac);
+			byte[] expected = MBNodeLinkHandshake.mac(ClusterRouter.LINK_SECRET, MBNodeLinkHandshake.ROLE_SERVER
+					, clientNonce, serverNonce);
+			if(!MBNodeLinkHandshake.matches(expected, mac))
+			{
+				fail(ctx, "对端未能证明其持有链路密钥");
+				return;
+			}
+			linkReady(ctx.channel()).trySuccess();
+		}
+		else
+		{
+			// 被动端在握手之后不会发送任何数据
+			fail(ctx, "收到了握手之后的意外数据");
+		}
+	}
+	
+	private void fail(ChannelHandlerContext ctx, String reason)
+	{
+		logger.warn("[IMCORE-cluster] 到{}的直连链路握手失败（{}），将关闭连接.", ctx.channel().remoteAddress(), reason);
+		linkReady(ctx.channel()).tryFailure(new IllegalStateException(reason));
+		ctx.close();
+	}
+}
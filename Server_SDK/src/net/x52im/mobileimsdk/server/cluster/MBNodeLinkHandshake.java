@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBNodeLinkHandshake.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 节点间直连链路的握手（基于共享密钥 {@link ClusterRouter#LINK_SECRET} 的双向质询-应答），
+ * 边缘网关到核心节点的复用链路也使用同样的握手（nodeId为空，密钥见 
+ * {@link net.x52im.mobileimsdk.server.network.GatewayEdgeLink#SECRET}）：
+ * <pre>
+ * 被动端 → 主动端：nonceS(16)
+ * 主动端 → 被动端：nonceC(16) + HMAC("C", nonceS, nonceC, nodeId)(32) + nodeId(UTF-8)
+ * 被动端 → 主动端：HMAC("S", nonceC, nonceS)(32)
+ * </pre>
+ * 被动端校验通过（且nodeId是已配置节点、对端IP属于该节点的地址）之前不接受任何消息帧，
+ * 主动端校验通过被动端的应答之前也不会发出消息帧。密钥本身不在链路上传输，
+ * 但握手之后的数据仍是明文，节点间链路应部署在内网中（见 {@link ClusterRouter#LINK_HOST}）。
+ *
+ * @since 6.5
+ */
+public final class MBNodeLinkHandshake
+{
+	public static final int NONCE_LENGTH = 16;
+	public static final int MAC_LENGTH = 32;
+	/** 主动端应答帧的最大长度（nodeId最长按200字节算），超出即视为非法连接 */
+	static final int MAX_RESPONSE_LENGTH = NONCE_LENGTH + MAC_LENGTH + 200;
+	
+	public static final byte ROLE_CLIENT = 'C';
+	public static final byte ROLE_SERVER = 'S';
+	
+	private static final SecureRandom random = new SecureRandom();
+	
+	private MBNodeLinkHandshake()
+	{
+	}
+	
+	public static byte[] newNonce()
+	{
+		byte[] nonce = new byte[NONCE_LENGTH];
+		random.nextBytes(nonce);
+		return nonce;
+	}
+	
+	public static byte[] mac(String secret, byte role, byte[]... parts) throws Exception
+	{
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		mac.update(role);
+		for(byte[] part : parts)
+			mac.update(part);
+		return mac.doFinal();
+	}
+	
+	/** 常量时间比较，避免通过耗时差异猜测MAC */
+	public static boolean matches(byte[] expected, byte[] actual)
+	{
+		return MessageDigest.isEqual(expected, actual);
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBNodeLinkInboundHandler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 处理别的节点直连过来的链路：每一帧就是一个完整的Protocal（JSON），收到后投递给本节点上的接收者，
+ * 投递结果的处理与 {@link net.x52im.mobileimsdk.server.processor.BridgeProcessor} 收到MQ消息时一致。
+ * <p>
+ * 连接建立后先完成握手（见 {@link MBNodeLinkHandshake}）：对端须证明持有链路密钥，且其声明的nodeId
+ * 须是已配置的节点、连接来源IP须属于该节点的地址，否则在接受任何消息帧之前即关闭连接。
+ *
+ * @since 6.5
+ */
+public class MBNodeLinkInboundHandler extends SimpleChannelInboundHandler<ByteBuf>
+{
+	private static Logger logger = LoggerFactory.getLogger(MBNodeLinkInboundHandler.class); 
+	
+	private final ServerCoreHandler serverCoreHandler;
+	
+	private byte[] serverNonce = null;
+	/** 握手通过后对端节点的id，为null时尚未通过握手 */
+	private String peerNodeId = null;
+	
+	public MBNodeLinkInboundHandler(ServerCoreHandler serverCoreHandler)
+	{
+		this.serverCoreHandler = serverCoreHandler;
+	}
+	
+	@Override
+	public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+		super.channelActive(ctx);
+		logger.info("[IMCORE-cluster] 节点{}的直连链路已建立，开始握手.", ctx.channel().remoteAddress());
+		
+		serverNonce = MBNodeLinkHandshake.newNonce();
+		ctx.writeAndFlush(Unpooled.wrappedBuffer(serverNonce));
+		ctx.executor().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if(peerNodeId == null)
+				{
+					logger.warn("[IMCORE-cluster] 节点{}的直连链路握手超时，将关闭连接.", ctx.channel().remoteAddress());
+					ctx.close();
+				}
+			}
+		}, ClusterRouter.LINK_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		super.channelInactive(ctx);
+		logger.info("[IMCORE-cluster] 节点{}的直连链路已断开.", ctx.channel().remoteAddress());
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+		logger.warn("[IMCORE-cluster] 节点" + ctx.channel().remoteAddress() + "的直连链路出错：", e);
+		ctx.close();
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+		if(peerNodeId == null)
+		{
+			handshake(ctx, frame);
+			return;
+		}
+		
+		byte[] bytes = new byte[frame.readableBytes()];
+		frame.readBytes(bytes);
+		
+		final Protocal p = ProtocalFactory.parse(bytes, bytes.length);
+		p.setBridge(true);
+		
+		LocalSendHelper.sendData(p, new MBObserver(){
+			@Override
+			public void update(boolean sendOK, Object extraObj)
+			{
+				if(serverCoreHandler.getServerEventListener() == null)
+					return;
+				
+				if(sendOK)
+				{
+					serverCoreHandler.getServerEventListener().onTransferMessage4C2C(p);
+				}
+				else
+				{
+					logger.info("[IMCORE-cluster]>> 节点转发过来的{}发给{}的消息(fp={})实时发送没有成功，将交给应用层进行离线存储..."
+							, p.getFrom(), p.getTo(), p.getFp());
+					
+					if(!serverCoreHandler.getServerEventListener().onTransferMessage_RealTimeSendFaild(p))
+						logger.warn("[IMCORE-cluster]>> 节点转发过来的{}发给{}的消息(fp={})实时发送没有成功，且应用层没有成功进行离线存储，此消息将被丢弃！"
+								, p.getFrom(), p.getTo(), p.getFp());
+				}
+			}
+		});
+	}
+	
+	private void handshake(ChannelHandlerContext ctx, ByteBuf frame) throws Exception
+	{
+		int len = frame.readableBytes();
+		if(len <= MBNodeLinkHandshake.NONCE_LENGTH + MBNodeLinkHandshake.MAC_LENGTH || len > MBNodeLinkHandshake.MAX_RESPONSE_LENGTH)
+		{
+			reject(ctx, "握手帧长度不正确");
+			return;
+		}
+		byte[] clientNonce = new byte[MBNodeLinkHandshake.NONCE_LENGTH];
+		byte[] mac = new byte[MBNodeLinkHandshake.MAC_LENGTH];
+		byte[] nodeId = new byte[len - clientNonce.length - mac.length];
+		frame.readBytes(clientNonce).readBytes(mac).readBytes(nodeId);
+		
+		byte[] expected = MBNodeLinkHandshake.mac(ClusterRouter.LINK_SECRET, MBNodeLinkHandshake.ROLE_CLIENT
+				, serverNonce, clientNonce, nodeId);
+		if(!MBNodeLinkHandshake.matches(expected, mac))
+		{
+			reject(ctx, "对端未能证明其持有链路密钥");
+			return;
+		}
+		String id = new String(nodeId, StandardCharsets.UTF_8);
+		InetSocketAddress remote = (InetSocketAddress)ctx.channel().remoteAddress();
+		if(!ClusterRouter.getInstance().isNodeAddress(id, remote.getAddress()))
+		{
+			reject(ctx, "对端声明的节点"+id+"未配置或来源地址不属于该节点");
+			return;
+		}
+		
+		peerNodeId = id;
+		ctx.writeAndFlush(Unpooled.wrappedBuffer(MBNodeLinkHandshake.mac(ClusterRouter.LINK_SECRET
+				, MBNodeLinkHandshake.ROLE_SERVER, clientNonce, serverNonce)));
+		logger.info("[IMCORE-cluster] 节点{}({})的直连链路握手成功.", peerNodeId, remote);
+	}
+	
+	private void reject(ChannelHandlerContext ctx, String reason)
+	{
+		logger.warn("[IMCORE-cluster] 拒绝来自{}的直连链路：{}.", ctx.channel().remoteAddress(), reason);
+		ctx.close();
+	}
+}
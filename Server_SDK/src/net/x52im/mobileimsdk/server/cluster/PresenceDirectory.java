@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PresenceDirectory.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+/**
+ * 集群在线用户目录：记录每个在线用户当前登陆在哪个节点上。
+ * <p>
+ * 各节点共用同一个目录（生产环境中通常基于Redis等共享存储实现），本SDK只自带一个单进程内的
+ * {@link InMemoryPresenceDirectory} 供测试及单节点部署使用。实现类必须是线程安全的。
+ *
+ * @since 6.5
+ */
+public interface PresenceDirectory
+{
+	/**
+	 * 用户在nodeId节点上线（覆盖原有记录）。
+	 */
+	void register(String userId, String nodeId);
+	
+	/**
+	 * 用户从nodeId节点下线：仅当目录中该用户仍归属于nodeId时才移除，以免误删其已在别的节点上的新登陆。
+	 */
+	void unregister(String userId, String nodeId);
+	
+	/**
+	 * 查询用户所在节点。
+	 * 
+	 * @return 节点id，用户不在线时返回null
+	 */
+	String lookup(String userId);
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * EdgeServerCoreHandler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.edge;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.AttributeKey;
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.network.edge.EdgeFrame;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+import net.x52im.mobileimsdk.server.protocal.s.PLoginInfoResponse;
+import net.x52im.mobileimsdk.server.utils.ServerToolKits;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 边缘网关模式下的核心处理器：不做任何业务逻辑，只把客户端会话复用到上行链路上转发给核心节点。
+ * <p>
+ * 唯一的例外是心跳：已登陆会话的心跳包由边缘网关就地应答，不再占用上行链路和核心节点资源。
+ * 边缘网关通过观察核心节点下发的登陆应答来得知会话是否已登陆。
+ *
+ * @since 6.5
+ */
+public class EdgeServerCoreHandler extends ServerCoreHandler
+{
+	private static Logger logger = LoggerFactory.getLogger(EdgeServerCoreHandler.class);  
+	
+	public static final AttributeKey<Long> ATTRIBUTE_KEY_EDGE_SESSION_ID = AttributeKey.newInstance("__edge_session_id__");
+	public static final AttributeKey<Integer> ATTRIBUTE_KEY_EDGE_LINK_INDEX = AttributeKey.newInstance("__edge_link_index__");
+	
+	private final EdgeUplinkPool uplinks;
+	private final AtomicLong sessionIdGenerator = new AtomicLong(0);
+	private final ConcurrentMap<Long, Channel> sessions = new ConcurrentHashMap<Long, Channel>();
+	
+	public EdgeServerCoreHandler(EdgeUplinkPool uplinks)
+	{
+		super();
+		this.uplinks = uplinks;
+		this.uplinks.setDownlinkHandler(this);
+	}
+	
+	@Override
+    public void sessionCreated(Channel session) throws Exception 
+    {
+		long sessionId = sessionIdGenerator.incrementAndGet();
+		int linkIndex = uplinks.select(sessionId);
+		if(linkIndex < 0)
+		{
+			logger.warn("[IMCORE-edge]{}与核心节点之间没有可用的上行链路，会话{}将被关闭！", Gateway.$(session), session.remoteAddress());
+			session.close();
+			return;
+		}
+		
+		session.attr(ATTRIBUTE_KEY_EDGE_SESSION_ID).set(sessionId);
+		session.attr(ATTRIBUTE_KEY_EDGE_LINK_INDEX).set(linkIndex);
+		sessions.put(sessionId, session);
+		
+		Channel link = uplinks.getLink(linkIndex);
+		if(!uplinks.send(linkIndex, EdgeFrame.open(link.alloc(), sessionId, Gateway.getSocketType(session), session.remoteAddress())))
+			session.close();
+    }
+	
+	@Override
+    public void messageReceived(Channel session, Protocal pFromClient) throws Exception     
+	{
+		Long sessionId = session.attr(ATTRIBUTE_KEY_EDGE_SESSION_ID).get();
+		Integer linkIndex = session.attr(ATTRIBUTE_KEY_EDGE_LINK_INDEX).get();
+		if(sessionId == null || linkIndex == null)
+			return;
+		
+		if(pFromClient.getType() == ProtocalType.C.FROM_CLIENT_TYPE_OF_KEEP$ALIVE)
+		{
+			String userId = OnlineProcessor.getUserIdFromChannel(session);
+			if(userId != null)
+			{
+				writeToClient(session, ProtocalFactory.createPKeepAliveResponse(userId));
+				return;
+			}
+		}
+		
+		Channel link = uplinks.getLink(linkIndex);
+		if(link == null || !uplinks.send(linkIndex, EdgeFrame.data(link.alloc(), sessionId, pFromClient.toBytes())))
+		{
+			logger.warn("[IMCORE-edge]{}会话{}所在的上行链路#{}已不可用，会话将被关闭.", Gateway.$(session), ServerToolKits.clientInfoToString(session), linkIndex);
+			session.close();
+		}
+	}
+	
+	@Override
+    public void sessionClosed(Channel session) throws Exception 
+    {
+		Long sessionId = session.attr(ATTRIBUTE_KEY_EDGE_SESSION_ID).get();
+		Integer linkIndex = session.attr(ATTRIBUTE_KEY_EDGE_LINK_INDEX).get();
+		OnlineProcessor.removeAttributesForChannel(session);
+		if(sessionId == null || linkIndex == null)
+			return;
+		
+		// 若是由核心节点发起的关闭，会话已提前从sessions中移除，此时无需再通知核心节点
+		if(sessions.remove(sessionId, session))
+		{
+			Channel link = uplinks.getLink(linkIndex);
+			if(link != null)
+				uplinks.send(linkIndex, EdgeFrame.close(link.alloc(), sessionId));
+		}
+    }
+	
+	/**
+	 * 处理核心节点经上行链路下发的帧（在链路的IO线程中调用）。
+	 */
+	void onDownlink(byte type, long sessionId, ByteBuf payload) throws Exception
+	{
+		switch(type)
+		{
+			case EdgeFrame.TYPE_DATA:
+			{
+				Channel session = sessions.get(sessionId);
+				if(session == null || !session.isActive())
+					return;
+				
+				// 会话登陆成功前需要解析下行数据以观察登陆应答，之后则原样透传，避免重复的JSON编解码
+				if(OnlineProcessor.getUserIdFromChannel(session) == null)
+				{
+					Protocal p = ServerToolKits.fromIOBuffer(payload);
+					if(p.getType() == ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN)
+					{
+						PLoginInfoResponse r = ProtocalFactory.parsePLoginInfoResponse(p.getDataContent());
+						if(r.getCode() == 0)
+							OnlineProcessor.setUserIdForChannel(session, p.getTo());
+					}
+					writeToClient(session, p);
+				}
+				else
+				{
+					if(Gateway.isWebSocketChannel(session))
+						session.writeAndFlush(new TextWebSocketFrame(payload.retain()));
+					else
+						session.writeAndFlush(payload.retain());
+				}
+				break;
+			}
+			case EdgeFrame.TYPE_CLOSE:
+			{
+				Channel session = sessions.remove(sessionId);
+				if(session != null)
+					session.close();
+				break;
+			}
+			default:
+			{
+				logger.warn("[IMCORE-edge] 收到核心节点未知的帧类型：{}，已忽略.", type);
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * 上行链路断开时，关闭其上承载的全部客户端会话（客户端将自动重连并重新登陆）。
+	 */
+	void onUplinkLost(int linkIndex)
+	{
+		int count = 0;
+		Iterator<Map.Entry<Long, Channel>> it = sessions.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Channel session = it.next().getValue();
+			Integer index = session.attr(ATTRIBUTE_KEY_EDGE_LINK_INDEX).get();
+			if(index != null && index.intValue() == linkIndex)
+			{
+				it.remove();
+				session.close();
+				count++;
+			}
+		}
+		if(count > 0)
+			logger.warn("[IMCORE-edge] 上行链路#{}断开，已关闭其上的{}个客户端会话.", linkIndex, count);
+	}
+	
+	private static void writeToClient(Channel session, Protocal p)
+	{
+		if(Gateway.isWebSocketChannel(session))
+			session.writeAndFlush(new TextWebSocketFrame(p.toGsonString()));
+		else
+			session.writeAndFlush(Unpooled.copiedBuffer(p.toBytes()));
+	}
+	
+	public int getSessionCount()
+	{
+		return sessions.size();
+	}
+}
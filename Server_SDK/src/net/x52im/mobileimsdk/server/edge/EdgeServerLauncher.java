@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * EdgeServerLauncher.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.edge;
+
+import java.io.IOException;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.ServerLauncher;
+import net.x52im.mobileimsdk.server.network.GatewayEdgeLink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 边缘网关模式的启动入口。
+ * <p>
+ * 边缘网关与普通节点一样按 {@link ServerLauncher#supportedGateways} 接入客户端的TCP/UDP/WebSocket连接，
+ * 但不运行登陆、消息路由、QoS、MQ互通等任何逻辑，而是把所有会话复用在 {@link #UPLINK_COUNT} 条
+ * 长连接上转发给核心节点（核心节点须开启 {@link net.x52im.mobileimsdk.server.network.Gateway#SOCKET_TYPE_EDGE_LINK}）。
+ * 这样连接数可以通过增加边缘网关独立扩容，而无需增加加入MQ互通的完整IM节点。
+ *
+ * @since 6.5
+ */
+public class EdgeServerLauncher extends ServerLauncher
+{
+	private static Logger logger = LoggerFactory.getLogger(EdgeServerLauncher.class); 
+	
+	public static String CORE_HOST = "127.0.0.1";
+	public static int CORE_PORT = GatewayEdgeLink.PORT;
+	/** 到核心节点的上行链路数 */
+	public static int UPLINK_COUNT = 4;
+	/** 上行链路断开后的重连间隔（秒） */
+	public static int UPLINK_RECONNECT_INTERVAL = 3;
+	/** 上行链路空闲时的PING间隔（秒），须小于核心节点的 GatewayEdgeLink.SESION_RECYCLER_EXPIRE */
+	public static int UPLINK_PING_INTERVAL = 10;
+	/** 与核心节点握手用的共享密钥，须与核心节点的 {@link GatewayEdgeLink#SECRET} 一致 */
+	public static String CORE_SECRET = null;
+	
+	protected EdgeUplinkPool uplinkPool = null;
+	
+	public EdgeServerLauncher() throws IOException 
+	{
+		super();
+	}
+	
+	@Override
+	protected ServerCoreHandler initServerCoreHandler()
+	{
+		return new EdgeServerCoreHandler(uplinkPool);
+	}
+	
+	@Override
+	protected void initListeners()
+	{
+		// 边缘网关不处理任何业务回调，全部交由核心节点
+	}
+	
+	@Override
+	public void startup() throws Exception
+	{
+		if(ServerLauncher.bridgeEnabled)
+		{
+			logger.warn("[IMCORE-edge] 边缘网关模式下不支持MQ互通，bridgeEnabled配置已被忽略.");
+			ServerLauncher.bridgeEnabled = false;
+		}
+		
+		if(CORE_SECRET == null || CORE_SECRET.isEmpty())
+			throw new IllegalStateException("边缘网关未配置与核心节点握手用的密钥(CORE_SECRET)！");
+		
+		if(uplinkPool == null)
+		{
+			uplinkPool = new EdgeUplinkPool(CORE_HOST, CORE_PORT, UPLINK_COUNT);
+			uplinkPool.start();
+		}
+		super.startup();
+	}
+	
+	/**
+	 * 边缘网关只接入并转发连接，QoS、在线状态、集群路由等均由核心节点负责，此处不启动。
+	 */
+	@Override
+	protected void startupServices() throws Exception
+	{
+	}
+	
+	@Override
+	protected void shutdownServices()
+	{
+	}
+	
+	@Override
+	public void shutdown()
+	{
+		super.shutdown();
+		if(uplinkPool != null)
+		{
+			uplinkPool.stop();
+			uplinkPool = null;
+		}
+	}
+}
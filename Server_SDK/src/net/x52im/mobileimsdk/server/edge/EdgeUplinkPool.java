@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * EdgeUplinkPool.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.edge;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import net.x52im.mobileimsdk.server.cluster.MBNodeLinkHandshake;
+import net.x52im.mobileimsdk.server.network.GatewayEdgeLink;
+import net.x52im.mobileimsdk.server.network.edge.EdgeFrame;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 边缘网关到核心节点的上行链路池：固定数量的TCP长连接，断开后自动重连。
+ * <p>
+ * 每条链路连上后先以 {@link EdgeServerLauncher#CORE_SECRET} 与核心节点完成双向握手
+ * （见 {@link MBNodeLinkHandshake}），握手成功后才会被 {@link #select(long)} 选中用于转发会话。
+ *
+ * @since 6.5
+ */
+public class EdgeUplinkPool
+{
+	private static Logger logger = LoggerFactory.getLogger(EdgeUplinkPool.class); 
+	
+	private static final AttributeKey<Integer> LINK_INDEX = AttributeKey.valueOf("mb.edgeUplinkIndex");
+	
+	private final String host;
+	private final int port;
+	private final Channel[] links;
+	
+	protected final EventLoopGroup __workerGroup4Netty = new NioEventLoopGroup();
+	protected Bootstrap bootstrap = null;
+	
+	private volatile boolean running = false;
+	private volatile EdgeServerCoreHandler downlinkHandler = null;
+	
+	public EdgeUplinkPool(String host, int port, int linkCount)
+	{
+		this.host = host;
+		this.port = port;
+		this.links = new Channel[Math.max(linkCount, 1)];
+	}
+	
+	public void start()
+	{
+		bootstrap = new Bootstrap()
+			.group(__workerGroup4Netty)
+			.channel(NioSocketChannel.class)
+			.option(ChannelOption.SO_KEEPALIVE, true)
+			.option(ChannelOption.TCP_NODELAY, true)
+			.handler(new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(Channel channel) throws Exception {
+					ChannelPipeline pipeline = channel.pipeline(); 
+					pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(
+							GatewayEdgeLink.EDGE_FRAME_MAX_LENGTH, 0, EdgeFrame.LENGTH_FIELD_LENGTH, 0, EdgeFrame.LENGTH_FIELD_LENGTH));
+	                pipeline.addLast("frameEncoder", new LengthFieldPrepender(EdgeFrame.LENGTH_FIELD_LENGTH));
+	                pipeline.addLast(new IdleStateHandler(0, EdgeServerLauncher.UPLINK_PING_INTERVAL, 0));
+					pipeline.addLast(new UplinkInboundHandler());
+				}
+			});
+		
+		running = true;
+		for(int i = 0; i < links.length; i++)
+			connect(i);
+	}
+	
+	public void stop()
+	{
+		running = false;
+		for(Channel c : links)
+		{
+			if(c != null)
+				c.close();
+		}
+		__workerGroup4Netty.shutdownGracefully();
+	}
+	
+	private void connect(final int index)
+	{
+		if(!running)
+			return;
+		
+		bootstrap.clone().attr(LINK_INDEX, index).connect(host, port).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if(future.isSuccess())
+				{
+					logger.info("[IMCORE-edge] 上行链路#{}已连接到核心节点{}:{}，开始握手.", index, host, port);
+					final Channel channel = future.channel();
+					channel.closeFuture().addListener(new ChannelFutureListener() {
+						@Override
+						public void operationComplete(ChannelFuture future) throws Exception {
+							onLinkClosed(index, channel);
+						}
+					});
+				}
+				else
+				{
+					logger.warn("[IMCORE-edge] 上行链路#{}连接核心节点{}:{}失败，{}秒后重试.", index, host, port, EdgeServerLauncher.UPLINK_RECONNECT_INTERVAL);
+					scheduleReconnect(index);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * 握手成功：链路从此可被选中转发会话。
+	 */
+	private void onLinkReady(int index, Channel channel)
+	{
+		logger.info("[IMCORE-edge] 上行链路#{}与核心节点握手成功.", index);
+		links[index] = channel;
+	}
+	
+	private void onLinkClosed(int index, Channel channel)
+	{
+		// 未握手成功的链路上不会有会话，无需通知
+		if(links[index] == channel)
+		{
+			links[index] = null;
+			logger.warn("[IMCORE-edge] 上行链路#{}已断开.", index);
+			
+			EdgeServerCoreHandler h = downlinkHandler;
+			if(h != null)
+				h.onUplinkLost(index);
+		}
+		else
+			logger.warn("[IMCORE-edge] 上行链路#{}未能完成握手，已断开.", index);
+		scheduleReconnect(index);
+	}
+	
+	private void scheduleReconnect(final int index)
+	{
+		if(!running)
+			return;
+		
+		__workerGroup4Netty.schedule(new Runnable() {
+			@Override
+			public void run() {
+				connect(index);
+			}
+		}, EdgeServerLauncher.UPLINK_RECONNECT_INTERVAL, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * 为一个新会话选择上行链路：优先按会话id取模，若该链路不可用则顺延到下一条可用链路。
+	 * 
+	 * @return 链路索引，-1表示当前没有任何可用链路
+	 */
+	public int select(long sessionId)
+	{
+		int start = (int)(sessionId % links.length);
+		for(int i = 0; i < links.length; i++)
+		{
+			int index = (start + i) % links.length;
+			Channel c = links[index];
+			if(c != null && c.isActive())
+				return index;
+		}
+		return -1;
+	}
+	
+	public Channel getLink(int index)
+	{
+		return links[index];
+	}
+	
+	/**
+	 * 经指定链路发出一帧，链路不可用时返回false（frame将被释放）。
+	 */
+	public boolean send(int index, ByteBuf frame)
+	{
+		Channel c = links[index];
+		if(c == null || !c.isActive())
+		{
+			ReferenceCountUtil.release(frame);
+			return false;
+		}
+		c.writeAndFlush(frame, c.voidPromise());
+		return true;
+	}
+	
+	void setDownlinkHandler(EdgeServerCoreHandler downlinkHandler)
+	{
+		this.downlinkHandler = downlinkHandler;
+	}
+	
+	private class UplinkInboundHandler extends SimpleChannelInboundHandler<ByteBuf>
+	{
+		private byte[] serverNonce = null;
+		private byte[] clientNonce = null;
+		private boolean ready = false;
+		
+		@Override
+		public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+			super.channelActive(ctx);
+			ctx.executor().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if(!ready)
+					{
+						logger.warn("[IMCORE-edge] 上行链路握手超时，将关闭连接.");
+						ctx.close();
+					}
+				}
+			}, GatewayEdgeLink.HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+		}
+		
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if(evt instanceof IdleStateEvent)
+			{
+				if(ready)
+					ctx.writeAndFlush(EdgeFrame.control(ctx.alloc(), EdgeFrame.TYPE_PING, 0));
+			}
+			else
+				super.userEventTriggered(ctx, evt);
+		}
+		
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+			logger.warn("[IMCORE-edge] 上行链路出错：", e);
+			ctx.close();
+		}
+		
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+			if(!ready)
+			{
+				handshake(ctx, frame);
+				return;
+			}
+			
+			byte type = frame.readByte();
+			long sessionId = frame.readLong();
+			if(type == EdgeFrame.TYPE_PONG)
+				return;
+			
+			EdgeServerCoreHandler h = downlinkHandler;
+			if(h != null)
+				h.onDownlink(type, sessionId, frame);
+		}
+		
+		private void handshake(ChannelHandlerContext ctx, ByteBuf frame) throws Exception
+		{
+			if(serverNonce == null)
+			{
+				// 核心节点的质询
+				if(frame.readableBytes() != MBNodeLinkHandshake.NONCE_LENGTH)
+				{
+					fail(ctx, "质询帧长度不正确");
+					return;
+				}
+				serverNonce = new byte[MBNodeLinkHandshake.NONCE_LENGTH];
+				frame.readBytes(serverNonce);
+				clientNonce = MBNodeLinkHandshake.newNonce();
+				ctx.writeAndFlush(Unpooled.wrappedBuffer(clientNonce, MBNodeLinkHandshake.mac(EdgeServerLauncher.CORE_SECRET
+						, MBNodeLinkHandshake.ROLE_CLIENT, serverNonce, clientNonce)));
+				return;
+			}
+			
+			// 核心节点对本网关质询的应答
+			byte[] mac = new byte[frame.readableBytes()];
+			frame.readBytes(mac);
+			byte[] expected = MBNodeLinkHandshake.mac(EdgeServerLauncher.CORE_SECRET, MBNodeLinkHandshake.ROLE_SERVER, clientNonce, serverNonce);
+			if(!MBNodeLinkHandshake.matches(expected, mac))
+			{
+				fail(ctx, "核心节点未能证明其持有链路密钥");
+				return;
+			}
+			ready = true;
+			onLinkReady(ctx.channel().attr(LINK_INDEX).get(), ctx.channel());
+		}
+		
+		private void fail(ChannelHandlerContext ctx, String reason)
+		{
+			logger.warn("[IMCORE-edge] 上行链路握手失败（{}），将关闭连接.", reason);
+			ctx.close();
+		}
+	}
+}
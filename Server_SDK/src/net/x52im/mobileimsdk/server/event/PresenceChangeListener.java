@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PresenceChangeListener.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.event;
+
+import java.util.Set;
+
+/**
+ * 用户在线状态（用户维度，而非单个会话）的净变化通知。
+ * <p>
+ * 由 {@link net.x52im.mobileimsdk.server.processor.PresenceProcessor} 对会话的加入/移除按用户去抖后批量回调：
+ * 同一用户在去抖窗口内的多次上下线（如网络抖动导致的“上线-下线-上线”）只会合并为一次净变化，
+ * 前后状态相同时则不会回调。回调发生在PresenceProcessor的定时线程中，适合在此批量持久化。
+ *
+ * @since 6.5
+ */
+public interface PresenceChangeListener
+{
+	/**
+	 * @param onlineUserIds 本批次中由离线变为在线的用户，不会为null
+	 * @param offlineUserIds 本批次中由在线变为离线的用户，不会为null
+	 */
+	void onPresenceChanged(Set<String> onlineUserIds, Set<String> offlineUserIds);
+}
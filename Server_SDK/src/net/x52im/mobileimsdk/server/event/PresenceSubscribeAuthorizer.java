@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PresenceSubscribeAuthorizer.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.event;
+
+import java.util.Collection;
+
+/**
+ * 在线状态订阅的授权回调：决定订阅者可以订阅哪些用户的在线状态（例如只允许订阅好友或同群成员）。
+ * <p>
+ * 由 {@link net.x52im.mobileimsdk.server.processor.PresenceSubscriptionProcessor} 在建立订阅关系之前调用，
+ * 调用发生在处理该订阅请求的网络线程中，如需查库请尽量按整批查询。未设置时不做限制。
+ *
+ * @since 6.5
+ */
+public interface PresenceSubscribeAuthorizer
+{
+	/**
+	 * @param subscriber 订阅者的user_id（会话上登陆的user_id）
+	 * @param userIds 本次请求订阅的user_id，不会为null或空
+	 * @return 允许订阅的user_id（应为userIds的子集），返回null或空集合表示全部拒绝
+	 */
+	Collection<String> authorize(String subscriber, Collection<String> userIds);
+}
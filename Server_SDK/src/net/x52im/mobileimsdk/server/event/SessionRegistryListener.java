@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * SessionRegistryListener.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.event;
+
+import io.netty.channel.Channel;
+
+/**
+ * 在线会话表的变更通知。
+ * <p>
+ * 回调发生在登陆/退出/被踢的处理线程中（通常是Netty的IO线程），实现者不应在其中做耗时操作。
+ *
+ * @since 6.5
+ */
+public interface SessionRegistryListener
+{
+	/** 用户的一个会话已加入在线列表 */
+	void onSessionAdded(String userId, String deviceClass, Channel session);
+	/** 用户的一个会话已从在线列表中移除（正常退出、被同类设备顶替或被踢） */
+	void onSessionRemoved(String userId, String deviceClass, Channel session);
+}
@@ -22,12 +22,19 @@ import net.x52im.mobileimsdk.server.ServerCoreHandler;
 
 public abstract class Gateway
 {
+	/** @deprecated socket类型已改为保存在 {@link SessionContext} 中 */
+	@Deprecated
 	public final static String SOCKET_TYPE_IN_CHANNEL_ATTRIBUTE = "__socket_type__";
+	/** @deprecated socket类型已改为保存在 {@link SessionContext} 中 */
+	@Deprecated
 	public static final AttributeKey<Integer> SOCKET_TYPE_IN_CHANNEL_ATTRIBUTE_ATTR = AttributeKey.newInstance(SOCKET_TYPE_IN_CHANNEL_ATTRIBUTE);
 	
 	public static final int SOCKET_TYPE_UDP       = 0x0001; 
 	public static final int SOCKET_TYPE_TCP       = 0x0002; 
 	public static final int SOCKET_TYPE_WEBSOCKET = 0x0004; 
+	public static final int SOCKET_TYPE_QUIC      = 0x0008; 
+	/** 核心节点接受边缘网关链路（仅用于ServerLauncher.supportedGateways，不会作为客户端Channel的socketType） */
+	public static final int SOCKET_TYPE_EDGE_LINK = 0x0010; 
 	
 	public abstract void init(ServerCoreHandler serverCoreHandler);
 	public abstract void bind() throws Exception;
@@ -35,20 +42,20 @@ public abstract class Gateway
 	
 	public static void setSocketType(Channel c, int socketType)
 	{
-		c.attr(SOCKET_TYPE_IN_CHANNEL_ATTRIBUTE_ATTR).set(socketType);
+		SessionContext.of(c).setSocketType(socketType);
 	}
 	
 	public static void removeSocketType(Channel c)
 	{
-		c.attr(SOCKET_TYPE_IN_CHANNEL_ATTRIBUTE_ATTR).set(null);
+		SessionContext ctx = SessionContext.get(c);
+		if(ctx != null)
+			ctx.setSocketType(-1);
 	}
 	
 	public static int getSocketType(Channel c)
 	{
-		Integer socketType = c.attr(SOCKET_TYPE_IN_CHANNEL_ATTRIBUTE_ATTR).get();
-		if(socketType != null)
-			return socketType.intValue();
-		return -1;
+		SessionContext ctx = SessionContext.get(c);
+		return (ctx != null ? ctx.getSocketType() : -1);
 	}
 	
 	public static boolean isSupportUDP(int support)
@@ -68,6 +75,18 @@ public abstract class Gateway
 		// 位运算
 		return (support & SOCKET_TYPE_WEBSOCKET) == SOCKET_TYPE_WEBSOCKET;
 	}
+	
+	public static boolean isSupportQUIC(int support)
+	{
+		// 位运算
+		return (support & SOCKET_TYPE_QUIC) == SOCKET_TYPE_QUIC;
+	}
+	
+	public static boolean isSupportEdgeLink(int support)
+	{
+		// 位运算
+		return (support & SOCKET_TYPE_EDGE_LINK) == SOCKET_TYPE_EDGE_LINK;
+	}
 
 	public static boolean isTCPChannel(Channel c)
 	{
@@ -86,6 +105,11 @@ public abstract class Gateway
 		return (c != null && getSocketType(c) == SOCKET_TYPE_WEBSOCKET);
 	}
 	
+	public static boolean isQUICChannel(Channel c)
+	{
+		return (c != null && getSocketType(c) == SOCKET_TYPE_QUIC);
+	}
+	
 	public static String $(Channel c)
 	{
 		return getGatewayFlag(c);
@@ -94,13 +118,23 @@ public abstract class Gateway
 	public static String getGatewayFlag(Channel c)
 	{
 //		logger.info(">>>>>> c.class="+c.getClass().getName());
-		if(Gateway.isUDPChannel(c))
-			return "udp";
-		else if(Gateway.isTCPChannel(c))
-			return "tcp";
-		else if(Gateway.isWebSocketChannel(c))
-			return "websocket";
-		else 
-			return "unknow";
+		return getGatewayFlag(c != null ? getSocketType(c) : -1);
+	}
+	
+	public static String getGatewayFlag(int socketType)
+	{
+		switch(socketType)
+		{
+			case SOCKET_TYPE_UDP:
+				return "udp";
+			case SOCKET_TYPE_TCP:
+				return "tcp";
+			case SOCKET_TYPE_WEBSOCKET:
+				return "websocket";
+			case SOCKET_TYPE_QUIC:
+				return "quic";
+			default:
+				return "unknow";
+		}
 	}
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * GatewayEdgeLink.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.edge.EdgeFrame;
+import net.x52im.mobileimsdk.server.network.edge.MBEdgeLinkInboundHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 核心节点上接受边缘网关（见 net.x52im.mobileimsdk.server.edge.EdgeServerLauncher）复用链路的网关。
+ * <p>
+ * 每条链路上可复用成千上万个客户端会话，每个会话在本节点上表现为一个独立的
+ * {@link net.x52im.mobileimsdk.server.network.edge.MBEdgeChannel}，因而登陆、在线列表、QoS
+ * 等逻辑均无需任何改动。
+ * <p>
+ * 链路建立后边缘网关须先以共享密钥 {@link #SECRET} 完成握手（见 
+ * {@link net.x52im.mobileimsdk.server.cluster.MBNodeLinkHandshake}），此前收到的任何帧都会导致链路被关闭；
+ * 配置了 {@link #ALLOWED_EDGE_HOSTS} 时，来源地址不在其中的连接在读取任何数据之前即被关闭。
+ * 未配置密钥时本网关不会监听。
+ *
+ * @since 6.5
+ */
+public class GatewayEdgeLink extends Gateway
+{
+	private static Logger logger = LoggerFactory.getLogger(GatewayEdgeLink.class); 
+	
+    /** 监听的地址（为null时监听全部网卡，建议设为内网地址） */
+    public static String HOST = null;
+    public static int PORT = 9902;
+    /** 与边缘网关握手用的共享密钥，须与边缘网关的 EdgeServerLauncher.CORE_SECRET 一致 */
+    public static String SECRET = null;
+    /** 允许连入的边缘网关地址（主机名或IP，启动时解析），为null或空时不限来源（仍须通过握手） */
+    public static String[] ALLOWED_EDGE_HOSTS = null;
+    /** 链路建立后须在多久内完成握手（秒） */
+    public static int HANDSHAKE_TIMEOUT = 5;
+    /** 链路读超时（秒），边缘网关会定时发送PING帧，故该值应大于其PING间隔 */
+    public static int SESION_RECYCLER_EXPIRE = 30;
+    public static int EDGE_FRAME_MAX_LENGTH = 64 * 1024; // 64K bytes
+
+	protected final EventLoopGroup __bossGroup4Netty = new NioEventLoopGroup(1);
+ 	protected final EventLoopGroup __workerGroup4Netty = new NioEventLoopGroup();
+ 	/** 所有经由边缘网关接入的虚拟会话Channel都注册在这里 */
+ 	protected final EventLoopGroup __sessionGroup4Netty = new DefaultEventLoopGroup();
+ 	protected Channel __serverChannel4Netty = null;
+ 	
+ 	protected ServerBootstrap bootstrap = null;
+ 	/** 由 {@link #ALLOWED_EDGE_HOSTS} 解析出的来源地址，为null时不限来源 */
+ 	protected volatile Set<InetAddress> allowedSources = null;
+
+	@Override
+ 	public void init(ServerCoreHandler serverCoreHandler)
+    {
+        bootstrap = new ServerBootstrap()
+			.group(__bossGroup4Netty, __workerGroup4Netty)
+			.channel(NioServerSocketChannel.class)
+			.childHandler(initChildChannelHandler(serverCoreHandler));
+        
+        bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+    }
+    
+	@Override
+    public void bind() throws Exception
+    {
+    	if(SECRET == null || SECRET.isEmpty())
+    	{
+    		logger.error("[IMCORE-edge] 未配置与边缘网关握手用的密钥(SECRET)，边缘链路服务将不会监听！");
+    		return;
+    	}
+    	allowedSources = resolveAllowedSources();
+    	
+        ChannelFuture cf = (HOST != null ? bootstrap.bind(HOST, PORT) : bootstrap.bind(PORT)).sync();
+        if (cf.isSuccess()) {
+        	logger.info("[IMCORE-edge] 基于MobileIMSDK的边缘链路服务绑定端口"+PORT+"成功 √");
+        }
+        else{
+        	logger.info("[IMCORE-edge] 基于MobileIMSDK的边缘链路服务绑定端口"+PORT+"失败 ×");
+        }
+        
+		__serverChannel4Netty = cf.channel();
+		__serverChannel4Netty.closeFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				__bossGroup4Netty.shutdownGracefully();
+				__workerGroup4Netty.shutdownGracefully();
+				__sessionGroup4Netty.shutdownGracefully();
+			}
+		});
+		
+		logger.info("[IMCORE-edge] .... continue ...");
+		logger.info("[IMCORE-edge] 基于MobileIMSDK的边缘链路服务正在端口"+ PORT +"上监听中...");
+    }
+  
+	@Override
+	public void shutdown()
+	{
+    	if (__serverChannel4Netty != null) 
+    		__serverChannel4Netty.close();
+	}
+	
+	private static Set<InetAddress> resolveAllowedSources() throws Exception
+	{
+		if(ALLOWED_EDGE_HOSTS == null || ALLOWED_EDGE_HOSTS.length == 0)
+			return null;
+		
+		Set<InetAddress> sources = new HashSet<InetAddress>();
+		for(String host : ALLOWED_EDGE_HOSTS)
+		{
+			for(InetAddress a : InetAddress.getAllByName(host))
+				sources.add(a);
+		}
+		return sources;
+	}
+	
+    protected ChannelHandler initChildChannelHandler(final ServerCoreHandler serverCoreHandler)
+	{
+		return new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel channel) throws Exception {
+				Set<InetAddress> sources = allowedSources;
+				InetSocketAddress remote = (InetSocketAddress)channel.remoteAddress();
+				if(sources != null && !sources.contains(remote.getAddress()))
+				{
+					logger.warn("[IMCORE-edge] 拒绝来自{}的边缘链路：来源地址不在ALLOWED_EDGE_HOSTS中.", remote);
+					channel.close();
+					return;
+				}
+				
+				ChannelPipeline pipeline = channel.pipeline(); 
+				pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(
+						EDGE_FRAME_MAX_LENGTH, 0, EdgeFrame.LENGTH_FIELD_LENGTH, 0, EdgeFrame.LENGTH_FIELD_LENGTH));
+                pipeline.addLast("frameEncoder", new LengthFieldPrepender(EdgeFrame.LENGTH_FIELD_LENGTH));
+				pipeline.addLast(new ReadTimeoutHandler(SESION_RECYCLER_EXPIRE));
+				pipeline.addLast(new MBEdgeLinkInboundHandler(serverCoreHandler, __sessionGroup4Netty));
+			}
+		};
+	}
+}
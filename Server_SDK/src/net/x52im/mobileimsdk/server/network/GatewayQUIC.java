@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * GatewayQUIC.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.incubator.codec.quic.InsecureQuicTokenHandler;
+import io.netty.incubator.codec.quic.QuicChannel;
+import io.netty.incubator.codec.quic.QuicServerCodecBuilder;
+import io.netty.incubator.codec.quic.QuicSslContext;
+import io.netty.incubator.codec.quic.QuicSslContextBuilder;
+import io.netty.incubator.codec.quic.QuicStreamChannel;
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.quic.MBQUICClientInboundHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于Netty QUIC编解码器实现的网关。
+ * <p>
+ * 客户端每建立一条QUIC连接后应打开一个双向Stream，该Stream即对应一个IM会话（Channel），
+ * Stream内的数据帧格式与TCP网关完全相同（定长头部+消息体）。QUIC连接以Connection ID而非
+ * 四元组标识，客户端在Wi-Fi与蜂窝网络间切换（源地址变化）时连接及其上的Stream均保持不变，
+ * 因而无需重新登陆。
+ * <p>
+ * 注意：当前所用的Netty QUIC编解码器（0.0.52）没有为连接补发新Connection ID的接口，实测同一条
+ * 连接只能平滑经历一次源地址改变，再次改变后该连接将无法继续收发（直至空闲超时），客户端需重连。
+ *
+ * @since 6.5
+ */
+public class GatewayQUIC extends Gateway
+{
+	private static Logger logger = LoggerFactory.getLogger(GatewayQUIC.class); 
+	
+    public static int PORT = 9901;
+    /** QUIC连接的空闲超时（秒），同时也是Stream会话的读超时 */
+    public static int SESION_RECYCLER_EXPIRE = 20;
+    public static int QUIC_FRAME_FIXED_HEADER_LENGTH = 4;     // 4 bytes
+	public static int QUIC_FRAME_MAX_BODY_LENGTH  = 6 * 1024; // 6K bytes
+	/** 单条连接允许客户端打开的双向Stream数 */
+	public static int MAX_STREAMS_BIDIRECTIONAL = 4;
+	/** TLS握手时使用的ALPN协议名，客户端须保持一致 */
+	public static String APPLICATION_PROTOCOL = "mobileimsdk";
+	
+	/** 证书链文件（PEM），为null时将使用自签名证书（仅适用于测试环境） */
+	public static String CERT_CHAIN_FILE = null;
+	/** 私钥文件（PKCS#8 PEM） */
+	public static String PRIVATE_KEY_FILE = null;
+	public static String PRIVATE_KEY_PASSWORD = null;
+
+	protected final EventLoopGroup __workerGroup4Netty = new NioEventLoopGroup(1);
+ 	protected Channel __serverChannel4Netty = null;
+ 	protected Bootstrap bootstrap = null;
+
+	@Override
+ 	public void init(ServerCoreHandler serverCoreHandler)
+    {
+		QuicSslContext sslContext = null;
+		try{
+			sslContext = buildSslContext();
+		}
+		catch (Exception e){
+			// QUIC强制使用TLS 1.3，没有证书则无法提供服务
+			logger.error("[IMCORE-quic] TLS证书准备失败，QUIC服务将不会启动：", e);
+			return;
+		}
+		
+		ChannelHandler codec = new QuicServerCodecBuilder()
+			.sslContext(sslContext)
+			.maxIdleTimeout(SESION_RECYCLER_EXPIRE, TimeUnit.SECONDS)
+			.initialMaxData(10 * 1024 * 1024)
+			.initialMaxStreamDataBidirectionalLocal(1024 * 1024)
+			.initialMaxStreamDataBidirectionalRemote(1024 * 1024)
+			.initialMaxStreamsBidirectional(MAX_STREAMS_BIDIRECTIONAL)
+			// 允许连接迁移（客户端网络切换时地址改变，连接保持）
+			.activeMigration(true)
+			.tokenHandler(InsecureQuicTokenHandler.INSTANCE)
+			// 该handler会被加入每一条QUIC连接的pipeline，必须是可共享的
+			.handler(new QuicConnectionHandler())
+			.streamHandler(initChildChannelHandler(serverCoreHandler))
+			.build();
+		
+    	bootstrap = new Bootstrap()
+    		.group(__workerGroup4Netty)
+    		.channel(NioDatagramChannel.class)
+    		.handler(codec);
+    }
+	
+	protected QuicSslContext buildSslContext() throws Exception
+	{
+		if(CERT_CHAIN_FILE != null && PRIVATE_KEY_FILE != null)
+		{
+			return QuicSslContextBuilder.forServer(new File(PRIVATE_KEY_FILE), PRIVATE_KEY_PASSWORD, new File(CERT_CHAIN_FILE))
+				.applicationProtocols(APPLICATION_PROTOCOL).build();
+		}
+		
+		logger.warn("[IMCORE-quic] 未配置TLS证书，将使用自签名证书（请勿在生产环境中使用）！");
+		SelfSignedCertificate ssc = new SelfSignedCertificate();
+		return QuicSslContextBuilder.forServer(ssc.privateKey(), null, ssc.certificate())
+			.applicationProtocols(APPLICATION_PROTOCOL).build();
+	}
+    
+ 	@Override
+    public void bind() throws Exception
+    {
+		if(bootstrap == null)
+		{
+			logger.info("[IMCORE-quic] 基于MobileIMSDK的QUIC服务未能初始化，绑定端口"+PORT+"失败 ×");
+			return;
+		}
+		
+		ChannelFuture cf = bootstrap.bind("0.0.0.0", PORT).syncUninterruptibly();
+		if (cf.isSuccess()) {
+        	logger.info("[IMCORE-quic] 基于MobileIMSDK的QUIC服务绑定端口"+PORT+"成功 √");
+        }
+        else{
+        	logger.info("[IMCORE-quic] 基于MobileIMSDK的QUIC服务绑定端口"+PORT+"失败 ×");
+        }
+		__serverChannel4Netty = cf.channel();
+		__serverChannel4Netty.closeFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				__workerGroup4Netty.shutdownGracefully();
+			}
+		});
+		
+		logger.info("[IMCORE-quic] .... continue ...");
+		logger.info("[IMCORE-quic] 基于MobileIMSDK的QUIC服务正在端口" + PORT+"上监听中...");
+    }
+	
+	@Override
+	public void shutdown()
+	{
+    	if (__serverChannel4Netty != null) 
+    		__serverChannel4Netty.close();
+	}
+	
+	@Sharable
+	private static class QuicConnectionHandler extends ChannelInboundHandlerAdapter
+	{
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) throws Exception {
+			super.channelActive(ctx);
+			logger.debug("[IMCORE-quic] 新的QUIC连接{}已建立.", ((QuicChannel)ctx.channel()).remoteAddress());
+		}
+		
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+			logger.debug("[IMCORE-quic] QUIC连接出错："+e.getMessage());
+			ctx.close();
+		}
+	}
+	
+	protected ChannelHandler initChildChannelHandler(final ServerCoreHandler serverCoreHandler)
+	{
+		return new ChannelInitializer<QuicStreamChannel>() {
+			@Override
+			protected void initChannel(QuicStreamChannel channel) throws Exception {
+				ChannelPipeline pipeline = channel.pipeline(); 
+				pipeline.addLast("frameDecoder", new LengthFieldBasedFrameDecoder(
+						QUIC_FRAME_FIXED_HEADER_LENGTH+QUIC_FRAME_MAX_BODY_LENGTH
+						, 0, QUIC_FRAME_FIXED_HEADER_LENGTH, 0, QUIC_FRAME_FIXED_HEADER_LENGTH));
+				pipeline.addLast("frameEncoder", new LengthFieldPrepender(QUIC_FRAME_FIXED_HEADER_LENGTH));
+				pipeline.addLast(new ReadTimeoutHandler(SESION_RECYCLER_EXPIRE));
+				pipeline.addLast(new MBQUICClientInboundHandler(serverCoreHandler));
+			}
+		};
+	}
+}
@@ -27,6 +27,7 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.udp.MBKCPHandler;
 import net.x52im.mobileimsdk.server.network.udp.MBUDPClientInboundHandler;
 import net.x52im.mobileimsdk.server.network.udp.MBUDPServerChannel;
 
@@ -40,6 +41,26 @@ public class GatewayUDP extends Gateway
     public static int PORT = 7901;
     public static int SESION_RECYCLER_EXPIRE = 10;
 
+    /** 是否在UDP会话上启用KCP可靠传输层（启用后客户端也必须使用KCP协议收发数据） */
+    public static boolean KCP_ENABLED = false;
+    /** KCP极速模式：0关闭，1开启（最小RTO 30ms、超时退避1.5倍） */
+    public static int KCP_NODELAY = 1;
+    /** KCP内部时钟间隔（毫秒） */
+    public static int KCP_INTERVAL = 10;
+    /** KCP快速重传阈值（0表示关闭快速重传） */
+    public static int KCP_FAST_RESEND = 2;
+    /** 是否关闭KCP拥塞控制 */
+    public static boolean KCP_NO_CWND = true;
+    public static int KCP_SND_WND = 128;
+    public static int KCP_RCV_WND = 128;
+    /** KCP最小RTO（毫秒） */
+    public static int KCP_MIN_RTO = 30;
+    public static int KCP_MTU = 1400;
+    /** 单个分片重传达到该次数即认为链路已断开 */
+    public static int KCP_DEAD_LINK = 20;
+    /** 收到数据后是否立即回ACK（而不等到下一个时钟周期） */
+    public static boolean KCP_ACK_NODELAY = true;
+
     protected final EventLoopGroup __bossGroup4Netty = new NioEventLoopGroup();
  	protected final EventLoopGroup __workerGroup4Netty = new DefaultEventLoopGroup();
  	protected Channel __serverChannel4Netty = null;
@@ -89,9 +110,10 @@ public class GatewayUDP extends Gateway
 		return new ChannelInitializer<Channel>() {
 			@Override
 			protected void initChannel(Channel channel) throws Exception {
-				channel.pipeline()
-					.addLast(new ReadTimeoutHandler(SESION_RECYCLER_EXPIRE))
-					.addLast(new MBUDPClientInboundHandler(serverCoreHandler));
+				channel.pipeline().addLast(new ReadTimeoutHandler(SESION_RECYCLER_EXPIRE));
+				if(KCP_ENABLED)
+					channel.pipeline().addLast(new MBKCPHandler());
+				channel.pipeline().addLast(new MBUDPClientInboundHandler(serverCoreHandler));
 			}
 		};
 	}
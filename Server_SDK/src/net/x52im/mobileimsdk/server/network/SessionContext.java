@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * SessionContext.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * 一个客户端会话（Channel）的全部状态。
+ * <p>
+ * 以一个AttributeKey挂在Channel上（会话建立时创建），此后热路径代码只需一次属性读取即可拿到
+ * 用户id、首次登陆时间、被踢原因码、socket类型、协商选项、收发计数、限流状态等信息；新增每连接
+ * 特性时只需在本类中加字段，而不必再新增AttributeKey。
+ *
+ * @since 6.5
+ */
+public class SessionContext
+{
+	public static final AttributeKey<SessionContext> ATTRIBUTE_KEY_SESSION_CONTEXT = AttributeKey.newInstance("__session_context__");
+	
+	private final long createTime = System.currentTimeMillis();
+	
+	private volatile int socketType = -1;
+	private volatile String userId = null;
+	private volatile String deviceClass = null;
+	private volatile long firstLoginTime = -1;
+	private volatile long loginTime = -1;
+	private volatile int beKickoutCode = -1;
+	private volatile boolean seqAck = false;
+	
+	private final AtomicLong receivedCount = new AtomicLong(0);
+	private final AtomicLong sentCount = new AtomicLong(0);
+	private volatile long lastReceivedTime = createTime;
+	
+	/** 令牌桶限流状态（见 {@link #tryAcquire(int, int)}） */
+	private double rateTokens = -1;
+	private long rateLastRefillNanos = 0;
+	
+	/** 往返时延估计（毫秒，见 {@link #onRttSample(long)}），srtt小于0表示尚无样本 */
+	private double srtt = -1;
+	private double rttvar = 0;
+	
+	private volatile ConcurrentMap<String, Object> options = null;
+	
+	/**
+	 * 取得Channel上的会话上下文，不存在时返回null。
+	 */
+	public static SessionContext get(Channel c)
+	{
+		return (c != null ? c.attr(ATTRIBUTE_KEY_SESSION_CONTEXT).get() : null);
+	}
+	
+	/**
+	 * 取得Channel上的会话上下文，不存在时创建之。
+	 */
+	public static SessionContext of(Channel c)
+	{
+		Attribute<SessionContext> attr = c.attr(ATTRIBUTE_KEY_SESSION_CONTEXT);
+		SessionContext ctx = attr.get();
+		if(ctx == null)
+		{
+			SessionContext newCtx = new SessionContext();
+			ctx = attr.setIfAbsent(newCtx);
+			if(ctx == null)
+				ctx = newCtx;
+		}
+		return ctx;
+	}
+	
+	/**
+	 * 登陆成功后调用。
+	 */
+	public void onLogined(String userId, String deviceClass, long firstLoginTime)
+	{
+		this.deviceClass = deviceClass;
+		this.firstLoginTime = firstLoginTime;
+		this.loginTime = System.currentTimeMillis();
+		this.beKickoutCode = -1;
+		// userId最后写入：其它线程一旦看到userId，也必然能看到上面的字段
+		this.userId = userId;
+	}
+	
+	/**
+	 * 清除登陆相关的状态（socket类型、计数等连接级状态保留）。
+	 */
+	public void clearLogin()
+	{
+		this.userId = null;
+		this.deviceClass = null;
+		this.firstLoginTime = -1;
+		this.loginTime = -1;
+		this.beKickoutCode = -1;
+		this.seqAck = false;
+	}
+	
+	public boolean isLogined()
+	{
+		return userId != null;
+	}
+	
+	/**
+	 * 简单的令牌桶限流：每秒补充ratePerSecond个令牌，最多积攒burst个。
+	 * 
+	 * @return true表示本次请求被允许，false表示已超出速率限制
+	 */
+	public synchronized boolean tryAcquire(int ratePerSecond, int burst)
+	{
+		long now = System.nanoTime();
+		if(rateTokens < 0)
+		{
+			rateTokens = burst;
+		}
+		else
+		{
+			double refill = (now - rateLastRefillNanos) / 1e9 * ratePerSecond;
+			rateTokens = Math.min(burst, rateTokens + refill);
+		}
+		rateLastRefillNanos = now;
+		
+		if(rateTokens >= 1)
+		{
+			rateTokens -= 1;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 记录一次“发出->收到应答”的往返时延样本，按Jacobson/Karels算法更新平滑RTT及其偏差。
+	 * 调用方应只提交未经重传的消息的样本（Karn算法），否则无法区分应答对应的是哪一次发送。
+	 * 
+	 * @since 6.5
+	 */
+	public synchronized void onRttSample(long rttMillis)
+	{
+		if(rttMillis < 0)
+			return;
+		if(srtt < 0)
+		{
+			srtt = rttMillis;
+			rttvar = rttMillis / 2.0;
+		}
+		else
+		{
+			rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rttMillis);
+			srtt = 0.875 * srtt + 0.125 * rttMillis;
+		}
+	}
+	
+	/**
+	 * 按当前RTT估计算出的重传超时：srtt + max(granularity, 4*rttvar)，尚无样本时返回defaultRto。
+	 * 
+	 * @since 6.5
+	 */
+	public synchronized long getRto(long granularity, long defaultRto)
+	{
+		if(srtt < 0)
+			return defaultRto;
+		return (long)Math.ceil(srtt + Math.max(granularity, 4 * rttvar));
+	}
+	
+	/**
+	 * 平滑往返时延（毫秒），尚无样本时返回-1。
+	 * 
+	 * @since 6.5
+	 */
+	public synchronized long getSmoothedRtt()
+	{
+		return (long)srtt;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <T> T getOption(String name)
+	{
+		ConcurrentMap<String, Object> o = options;
+		return (o != null ? (T)o.get(name) : null);
+	}
+	
+	public void setOption(String name, Object value)
+	{
+		ConcurrentMap<String, Object> o = options;
+		if(o == null)
+		{
+			synchronized(this)
+			{
+				if(options == null)
+					options = new ConcurrentHashMap<String, Object>(4);
+				o = options;
+			}
+		}
+		if(value == null)
+			o.remove(name);
+		else
+			o.put(name, value);
+	}
+	
+	public long incrementReceived()
+	{
+		lastReceivedTime = System.currentTimeMillis();
+		return receivedCount.incrementAndGet();
+	}
+	
+	public long incrementSent()
+	{
+		return sentCount.incrementAndGet();
+	}
+	
+	public long getReceivedCount()
+	{
+		return receivedCount.get();
+	}
+	
+	public long getSentCount()
+	{
+		return sentCount.get();
+	}
+	
+	/**
+	 * 最近一次收到该客户端数据（含心跳）的时间。
+	 */
+	public long getLastReceivedTime()
+	{
+		return lastReceivedTime;
+	}
+
+	public int getSocketType()
+	{
+		return socketType;
+	}
+
+	public void setSocketType(int socketType)
+	{
+		this.socketType = socketType;
+	}
+
+	public String getUserId()
+	{
+		return userId;
+	}
+
+	public void setUserId(String userId)
+	{
+		this.userId = userId;
+	}
+
+	public String getDeviceClass()
+	{
+		return deviceClass;
+	}
+	
+	/**
+	 * 客户端登陆时是否声明了支持按会话序号接收与累计应答。
+	 * 
+	 * @since 6.5
+	 */
+	public boolean isSeqAck()
+	{
+		return seqAck;
+	}
+	
+	public void setSeqAck(boolean seqAck)
+	{
+		this.seqAck = seqAck;
+	}
+
+	public long getFirstLoginTime()
+	{
+		return firstLoginTime;
+	}
+
+	public void setFirstLoginTime(long firstLoginTime)
+	{
+		this.firstLoginTime = firstLoginTime;
+	}
+
+	public long getLoginTime()
+	{
+		return loginTime;
+	}
+
+	public int getBeKickoutCode()
+	{
+		return beKickoutCode;
+	}
+
+	public void setBeKickoutCode(int beKickoutCode)
+	{
+		this.beKickoutCode = beKickoutCode;
+	}
+
+	public long getCreateTime()
+	{
+		return createTime;
+	}
+}
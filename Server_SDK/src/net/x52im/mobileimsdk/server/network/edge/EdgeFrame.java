@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * EdgeFrame.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.edge;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+/**
+ * 边缘网关与核心节点之间复用链路上的帧格式定义。
+ * <p>
+ * 链路为TCP长连接，每帧前有4字节长度头（由LengthFieldPrepender/LengthFieldBasedFrameDecoder处理），
+ * 帧体为：1字节帧类型 + 8字节会话id + 负载。其中会话id由边缘网关分配，在同一条链路上唯一。
+ * <ul>
+ * <li>{@link #TYPE_OPEN}：客户端会话建立，负载为：4字节socketType + 4字节端口 + 客户端IP（UTF-8）；</li>
+ * <li>{@link #TYPE_DATA}：双向的协议数据，负载即为 Protocal 的JSON字节；</li>
+ * <li>{@link #TYPE_CLOSE}：任一方关闭会话，无负载；</li>
+ * <li>{@link #TYPE_PING}/{@link #TYPE_PONG}：链路自身的保活，会话id无意义。</li>
+ * </ul>
+ *
+ * @since 6.5
+ */
+public class EdgeFrame
+{
+	public static final byte TYPE_OPEN  = 1;
+	public static final byte TYPE_DATA  = 2;
+	public static final byte TYPE_CLOSE = 3;
+	public static final byte TYPE_PING  = 4;
+	public static final byte TYPE_PONG  = 5;
+	
+	public static final int LENGTH_FIELD_LENGTH = 4;
+	public static final int HEADER_LENGTH = 1 + 8;
+	
+	public static ByteBuf open(ByteBufAllocator alloc, long sessionId, int socketType, SocketAddress remote)
+	{
+		String host = "0.0.0.0";
+		int port = 0;
+		if(remote instanceof InetSocketAddress)
+		{
+			host = ((InetSocketAddress)remote).getHostString();
+			port = ((InetSocketAddress)remote).getPort();
+		}
+		
+		byte[] hostBytes = host.getBytes(CharsetUtil.UTF_8);
+		ByteBuf buf = alloc.buffer(HEADER_LENGTH + 8 + hostBytes.length);
+		buf.writeByte(TYPE_OPEN).writeLong(sessionId);
+		buf.writeInt(socketType).writeInt(port).writeBytes(hostBytes);
+		return buf;
+	}
+	
+	public static ByteBuf data(ByteBufAllocator alloc, long sessionId, byte[] payload)
+	{
+		ByteBuf buf = alloc.buffer(HEADER_LENGTH + payload.length);
+		buf.writeByte(TYPE_DATA).writeLong(sessionId).writeBytes(payload);
+		return buf;
+	}
+	
+	/**
+	 * 以零拷贝方式组装数据帧，payload的引用计数将由返回的ByteBuf接管。
+	 */
+	public static ByteBuf data(ByteBufAllocator alloc, long sessionId, ByteBuf payload)
+	{
+		ByteBuf header = alloc.buffer(HEADER_LENGTH);
+		header.writeByte(TYPE_DATA).writeLong(sessionId);
+		return Unpooled.wrappedBuffer(header, payload);
+	}
+	
+	public static ByteBuf close(ByteBufAllocator alloc, long sessionId)
+	{
+		return control(alloc, TYPE_CLOSE, sessionId);
+	}
+	
+	public static ByteBuf control(ByteBufAllocator alloc, byte type, long sessionId)
+	{
+		return alloc.buffer(HEADER_LENGTH).writeByte(type).writeLong(sessionId);
+	}
+	
+	/**
+	 * 从OPEN帧的负载中读取客户端地址（调用前须已读取socketType）。
+	 */
+	public static InetSocketAddress readRemoteAddress(ByteBuf payload)
+	{
+		int port = payload.readInt();
+		String host = payload.toString(CharsetUtil.UTF_8);
+		// 边缘网关传来的是IP字面量，此处不会引发DNS查询
+		return new InetSocketAddress(host, port);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBEdgeChannel.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.edge;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * 核心节点上代表一个“经由边缘网关接入的客户端”的虚拟Channel。
+ * <p>
+ * 对上层（ServerCoreHandler、OnlineProcessor、LocalSendHelper等）而言它与普通的客户端Channel
+ * 没有区别；写出的数据会被封装成 {@link EdgeFrame#TYPE_DATA} 帧经由所属的边缘链路发出。
+ *
+ * @since 6.5
+ */
+public class MBEdgeChannel extends AbstractChannel 
+{
+	protected final ChannelMetadata metadata = new ChannelMetadata(false);
+	protected final DefaultChannelConfig config = new DefaultChannelConfig(this);
+	
+	protected final Channel link;
+	protected final MBEdgeLinkInboundHandler linkHandler;
+	protected final long sessionId;
+	protected final int clientSocketType;
+	protected final InetSocketAddress remote;
+	
+	private volatile boolean open = true;
+	/** 为true表示关闭是由边缘网关通知的，无需再回送CLOSE帧 */
+	private volatile boolean closedByEdge = false;
+	
+	protected MBEdgeChannel(Channel link, MBEdgeLinkInboundHandler linkHandler, long sessionId, int clientSocketType, InetSocketAddress remote) 
+	{
+		super(link);
+		this.link = link;
+		this.linkHandler = linkHandler;
+		this.sessionId = sessionId;
+		this.clientSocketType = clientSocketType;
+		this.remote = remote;
+	}
+
+	@Override
+	public ChannelMetadata metadata()
+	{
+		return metadata;
+	}
+
+	@Override
+	public ChannelConfig config()
+	{
+		return config;
+	}
+
+	@Override
+	public boolean isActive()
+	{
+		return open;
+	}
+
+	@Override
+	public boolean isOpen() 
+	{
+		return isActive();
+	}
+	
+	void closeByEdge()
+	{
+		closedByEdge = true;
+		close();
+	}
+
+	@Override
+	protected void doClose() throws Exception 
+	{
+		open = false;
+		linkHandler.removeChannel(this);
+		if(!closedByEdge && link.isActive())
+			link.writeAndFlush(EdgeFrame.close(link.alloc(), sessionId));
+	}
+
+	@Override
+	protected void doDisconnect() throws Exception
+	{
+		doClose();
+	}
+
+	@Override
+	protected void doBeginRead() throws Exception
+	{
+		// 数据由边缘链路主动推送（见MBEdgeLinkInboundHandler），此处无需任何操作
+	}
+
+	@Override
+	protected void doWrite(ChannelOutboundBuffer buffer) throws Exception 
+	{
+		Object msg = null;
+		while ((msg = buffer.current()) != null) 
+		{
+			ByteBuf payload = null;
+			if(msg instanceof ByteBuf)
+				payload = ((ByteBuf)msg).retain();
+			// 客户端为WebSocket时LocalSendHelper写出的是文本帧，其内容即为协议JSON字节
+			else if(msg instanceof WebSocketFrame)
+				payload = ((WebSocketFrame)msg).content().retain();
+			
+			if(payload != null && link.isActive())
+				link.write(EdgeFrame.data(link.alloc(), sessionId, payload), link.voidPromise());
+			else
+				ReferenceCountUtil.safeRelease(payload);
+			
+			buffer.remove();
+		}
+		link.flush();
+	}
+
+	@Override
+	protected boolean isCompatible(EventLoop eventloop) 
+	{
+		return eventloop instanceof DefaultEventLoop;
+	}
+
+	@Override
+	protected AbstractUnsafe newUnsafe()
+	{
+		return new EdgeChannelUnsafe();
+	}
+
+	@Override
+	protected SocketAddress localAddress0()
+	{
+		return link.localAddress();
+	}
+
+	@Override
+	protected SocketAddress remoteAddress0() 
+	{
+		return remote;
+	}
+
+	@Override
+	protected void doBind(SocketAddress addr) throws Exception
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	public long getSessionId()
+	{
+		return sessionId;
+	}
+	
+	public int getClientSocketType()
+	{
+		return clientSocketType;
+	}
+
+	private class EdgeChannelUnsafe extends AbstractUnsafe 
+	{
+		@Override
+		public void connect(SocketAddress addr1, SocketAddress addr2, ChannelPromise pr)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBEdgeClientInboundHandler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.edge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.utils.ServerToolKits;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MBEdgeClientInboundHandler extends SimpleChannelInboundHandler<ByteBuf>
+{
+	private static Logger logger = LoggerFactory.getLogger(MBEdgeClientInboundHandler.class); 
+	private ServerCoreHandler serverCoreHandler = null;
+	
+	public MBEdgeClientInboundHandler(ServerCoreHandler serverCoreHandler)
+	{
+		this.serverCoreHandler = serverCoreHandler;
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+		try{
+			serverCoreHandler.exceptionCaught(ctx.channel(), e);
+		}catch (Exception e2){
+			logger.warn(e2.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		super.channelActive(ctx);
+		// 沿用客户端在边缘网关上的真实连接类型，以保证回复的数据格式（如WebSocket文本帧）与客户端一致
+		Gateway.setSocketType(ctx.channel(), ((MBEdgeChannel)ctx.channel()).getClientSocketType());
+		serverCoreHandler.sessionCreated(ctx.channel());
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		super.channelInactive(ctx);
+		Gateway.removeSocketType(ctx.channel());
+		serverCoreHandler.sessionClosed(ctx.channel());
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, ByteBuf bytebuf) throws Exception {
+		Protocal pFromClient = ServerToolKits.fromIOBuffer(bytebuf);
+		serverCoreHandler.messageReceived(ctx.channel(), pFromClient);
+	}
+}
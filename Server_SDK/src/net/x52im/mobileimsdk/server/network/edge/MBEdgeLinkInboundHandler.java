@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBEdgeLinkInboundHandler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.edge;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.ReadTimeoutException;
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.cluster.MBNodeLinkHandshake;
+import net.x52im.mobileimsdk.server.network.GatewayEdgeLink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 核心节点上处理一条边缘链路的Handler：按会话id把复用在链路上的数据分发到各自的 {@link MBEdgeChannel}。
+ * <p>
+ * 链路建立后先发出质询，边缘网关须证明持有 {@link GatewayEdgeLink#SECRET}（见 {@link MBNodeLinkHandshake}），
+ * 握手通过之前收到的任何帧都会导致链路被关闭，不会建立任何会话。
+ *
+ * @since 6.5
+ */
+public class MBEdgeLinkInboundHandler extends SimpleChannelInboundHandler<ByteBuf>
+{
+	private static Logger logger = LoggerFactory.getLogger(MBEdgeLinkInboundHandler.class); 
+	
+	private final ServerCoreHandler serverCoreHandler;
+	private final EventLoopGroup sessionGroup;
+	private final ConcurrentMap<Long, MBEdgeChannel> channels = new ConcurrentHashMap<Long, MBEdgeChannel>();
+	
+	private byte[] serverNonce = null;
+	/** 是否已通过握手，只在链路的EventLoop上读写 */
+	private boolean authenticated = false;
+	
+	public MBEdgeLinkInboundHandler(ServerCoreHandler serverCoreHandler, EventLoopGroup sessionGroup)
+	{
+		this.serverCoreHandler = serverCoreHandler;
+		this.sessionGroup = sessionGroup;
+	}
+	
+	@Override
+	public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+		super.channelActive(ctx);
+		logger.info("[IMCORE-edge] 边缘网关{}的链路已建立，开始握手.", ctx.channel().remoteAddress());
+		
+		serverNonce = MBNodeLinkHandshake.newNonce();
+		ctx.writeAndFlush(Unpooled.wrappedBuffer(serverNonce));
+		ctx.executor().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if(!authenticated)
+				{
+					logger.warn("[IMCORE-edge] 边缘网关{}的链路握手超时，将关闭连接.", ctx.channel().remoteAddress());
+					ctx.close();
+				}
+			}
+		}, GatewayEdgeLink.HANDSHAKE_TIMEOUT, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		super.channelInactive(ctx);
+		logger.warn("[IMCORE-edge] 边缘网关{}的链路已断开，其上的{}个客户端会话将被关闭.", ctx.channel().remoteAddress(), channels.size());
+		for(MBEdgeChannel c : channels.values())
+			c.closeByEdge();
+		channels.clear();
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable e) {
+		if(e instanceof ReadTimeoutException)
+			logger.info("[IMCORE-edge] 边缘网关{}的链路已超时，即将关闭 ...", ctx.channel().remoteAddress());
+		else
+			logger.warn("[IMCORE-edge] 边缘网关" + ctx.channel().remoteAddress() + "的链路出错：", e);
+		ctx.close();
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+		if(!authenticated)
+		{
+			handshake(ctx, frame);
+			return;
+		}
+		
+		byte type = frame.readByte();
+		long sessionId = frame.readLong();
+		
+		switch(type)
+		{
+			case EdgeFrame.TYPE_OPEN:
+			{
+				int socketType = frame.readInt();
+				InetSocketAddress remote = EdgeFrame.readRemoteAddress(frame);
+				final MBEdgeChannel c = new MBEdgeChannel(ctx.channel(), this, sessionId, socketType, remote);
+				c.pipeline().addLast(new MBEdgeClientInboundHandler(serverCoreHandler));
+				MBEdgeChannel old = channels.put(sessionId, c);
+				if(old != null)
+					old.closeByEdge();
+				sessionGroup.register(c);
+				break;
+			}
+			case EdgeFrame.TYPE_DATA:
+			{
+				final MBEdgeChannel c = channels.get(sessionId);
+				if(c == null)
+				{
+					logger.debug("[IMCORE-edge] 收到会话{}的数据，但该会话不存在（可能刚被关闭），已忽略.", sessionId);
+					return;
+				}
+				final ByteBuf payload = frame.retainedSlice();
+				// 注册是提交到同一个EventLoop上的任务，故此处的数据一定在channelActive之后才会被处理
+				c.eventLoop().execute(new Runnable() {
+					@Override
+					public void run() {
+						c.pipeline().fireChannelRead(payload);
+					}
+				});
+				break;
+			}
+			case EdgeFrame.TYPE_CLOSE:
+			{
+				MBEdgeChannel c = channels.remove(sessionId);
+				if(c != null)
+					c.closeByEdge();
+				break;
+			}
+			case EdgeFrame.TYPE_PING:
+			{
+				ctx.writeAndFlush(EdgeFrame.control(ctx.alloc(), EdgeFrame.TYPE_PONG, 0));
+				break;
+			}
+			default:
+			{
+				logger.warn("[IMCORE-edge] 收到边缘网关{}未知的帧类型：{}，已忽略.", ctx.channel().remoteAddress(), type);
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * 边缘网关的应答：nonceC(16) + HMAC("C", nonceS, nonceC)(32)，通过后回以 HMAC("S", nonceC, nonceS)。
+	 */
+	private void handshake(ChannelHandlerContext ctx, ByteBuf frame) throws Exception
+	{
+		if(frame.readableBytes() != MBNodeLinkHandshake.NONCE_LENGTH + MBNodeLinkHandshake.MAC_LENGTH)
+		{
+			reject(ctx, "握手帧长度不正确");
+			return;
+		}
+		byte[] clientNonce = new byte[MBNodeLinkHandshake.NONCE_LENGTH];
+		byte[] mac = new byte[MBNodeLinkHandshake.MAC_LENGTH];
+		frame.readBytes(clientNonce).readBytes(mac);
+		
+		byte[] expected = MBNodeLinkHandshake.mac(GatewayEdgeLink.SECRET, MBNodeLinkHandshake.ROLE_CLIENT, serverNonce, clientNonce);
+		if(!MBNodeLinkHandshake.matches(expected, mac))
+		{
+			reject(ctx, "对端未能证明其持有边缘链路密钥");
+			return;
+		}
+		
+		authenticated = true;
+		ctx.writeAndFlush(Unpooled.wrappedBuffer(MBNodeLinkHandshake.mac(GatewayEdgeLink.SECRET
+				, MBNodeLinkHandshake.ROLE_SERVER, clientNonce, serverNonce)));
+		logger.info("[IMCORE-edge] 边缘网关{}的链路握手成功.", ctx.channel().remoteAddress());
+	}
+	
+	private void reject(ChannelHandlerContext ctx, String reason)
+	{
+		logger.warn("[IMCORE-edge] 拒绝来自{}的边缘链路：{}.", ctx.channel().remoteAddress(), reason);
+		ctx.close();
+	}
+	
+	void removeChannel(MBEdgeChannel c)
+	{
+		channels.remove(c.getSessionId(), c);
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBKCPHandler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.udp;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import net.x52im.mobileimsdk.server.network.GatewayUDP;
+import net.x52im.mobileimsdk.server.utils.ServerToolKits;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 在每个UDP子Channel上挂载一个 {@link MBKCPSession}，为上层提供可靠、有序的消息收发。
+ * <p>
+ * 入站：原始数据报 -> KCP input -> 重组后的完整消息继续向后传递；
+ * 出站：上层写出的完整消息 -> KCP send -> 由KCP按窗口/重传策略输出数据报。
+ * 会话的conv由客户端发来的首个数据报决定。
+ *
+ * @since 6.5
+ */
+public class MBKCPHandler extends ChannelDuplexHandler
+{
+	private static Logger logger = LoggerFactory.getLogger(MBKCPHandler.class);
+
+	private ChannelHandlerContext ctx = null;
+	private MBKCPSession kcp = null;
+	private ScheduledFuture<?> updateFuture = null;
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+	{
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception
+	{
+		cancelUpdate();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception
+	{
+		cancelUpdate();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+	{
+		if(!(msg instanceof ByteBuf))
+		{
+			ctx.fireChannelRead(msg);
+			return;
+		}
+
+		ByteBuf buf = (ByteBuf)msg;
+		try
+		{
+			int len = buf.readableBytes();
+			if(len < MBKCPSession.IKCP_OVERHEAD)
+			{
+				logger.debug("[IMCORE-udp-kcp]客户端{}发来的数据报长度{}不足KCP头部，已丢弃。"
+						, ServerToolKits.clientInfoToString(ctx.channel()), len);
+				return;
+			}
+
+			byte[] data = new byte[len];
+			buf.readBytes(data);
+
+			if(kcp == null)
+				kcp = createSession(MBKCPSession.decodeConv(data, 0));
+
+			kcp.update(now());
+			int ret = kcp.input(data, 0, len);
+			if(ret < 0)
+			{
+				logger.debug("[IMCORE-udp-kcp]客户端{}的数据报无法被KCP解析(ret={})，已丢弃。"
+						, ServerToolKits.clientInfoToString(ctx.channel()), ret);
+				return;
+			}
+
+			byte[] message;
+			while((message = kcp.recv()) != null)
+				ctx.fireChannelRead(Unpooled.wrappedBuffer(message));
+
+			// 尽快回ACK，不必等到下一个时钟周期
+			if(GatewayUDP.KCP_ACK_NODELAY && kcp.hasPendingAck())
+				kcp.flush();
+		}
+		finally
+		{
+			ReferenceCountUtil.release(buf);
+		}
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+	{
+		if(!(msg instanceof ByteBuf))
+		{
+			ctx.write(msg, promise);
+			return;
+		}
+
+		ByteBuf buf = (ByteBuf)msg;
+		try
+		{
+			if(kcp == null)
+			{
+				// 客户端尚未发来任何数据报（conv未知），无法建立KCP会话
+				promise.setFailure(new IllegalStateException("KCP session not established yet."));
+				return;
+			}
+
+			byte[] data = new byte[buf.readableBytes()];
+			buf.readBytes(data);
+			if(kcp.send(data, 0, data.length) < 0)
+				promise.setFailure(new IllegalArgumentException("Message too large for KCP: " + data.length + " bytes."));
+			else
+				// 数据已进入KCP发送队列，其可靠送达由KCP负责
+				promise.setSuccess();
+		}
+		finally
+		{
+			ReferenceCountUtil.release(buf);
+		}
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception
+	{
+		if(kcp != null)
+		{
+			kcp.update(now());
+			kcp.flush();
+		}
+		ctx.flush();
+	}
+
+	MBKCPSession createSession(int conv)
+	{
+		MBKCPSession session = new MBKCPSession(conv, new MBKCPSession.Output() {
+			@Override
+			public void output(byte[] data, int len)
+			{
+				ctx.write(Unpooled.copiedBuffer(data, 0, len), ctx.voidPromise());
+				ctx.flush();
+			}
+		});
+		session.nodelay(GatewayUDP.KCP_NODELAY, GatewayUDP.KCP_INTERVAL, GatewayUDP.KCP_FAST_RESEND, GatewayUDP.KCP_NO_CWND)
+			.wndsize(GatewayUDP.KCP_SND_WND, GatewayUDP.KCP_RCV_WND)
+			.setMtu(GatewayUDP.KCP_MTU)
+			.setMinRto(GatewayUDP.KCP_MIN_RTO)
+			.setDeadLink(GatewayUDP.KCP_DEAD_LINK);
+
+		updateFuture = ctx.executor().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run()
+			{
+				onUpdate();
+			}
+		}, session.getInterval(), session.getInterval(), TimeUnit.MILLISECONDS);
+
+		logger.debug("[IMCORE-udp-kcp]客户端{}的KCP会话已建立(conv={})。", ServerToolKits.clientInfoToString(ctx.channel()), conv);
+		return session;
+	}
+
+	private void onUpdate()
+	{
+		if(kcp == null || !ctx.channel().isActive())
+			return;
+
+		kcp.update(now());
+		if(kcp.getState() < 0)
+		{
+			logger.info("[IMCORE-udp-kcp]客户端{}的KCP重传次数已达上限({})，链路视为已断开，即将关闭会话 ..."
+					, ServerToolKits.clientInfoToString(ctx.channel()), GatewayUDP.KCP_DEAD_LINK);
+			cancelUpdate();
+			ctx.close();
+		}
+	}
+
+	private void cancelUpdate()
+	{
+		if(updateFuture != null)
+		{
+			updateFuture.cancel(false);
+			updateFuture = null;
+		}
+	}
+
+	MBKCPSession getSession()
+	{
+		return kcp;
+	}
+
+	private static int now()
+	{
+		return (int)System.currentTimeMillis();
+	}
+}
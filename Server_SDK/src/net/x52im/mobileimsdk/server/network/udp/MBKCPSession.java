@@ -0,0 +1,835 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * MBKCPSession.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network.udp;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/**
+ * 一个KCP风格的可靠UDP会话（ARQ协议状态机）实现.
+ * <p>
+ * 报文格式与原版KCP（ikcp.c）保持一致（小端序，24字节头），支持逐包选择性
+ * 确认（SACK）+ 累积确认（una）、快速重传、可配置的最小RTO以及收发窗口。
+ * <p>
+ * 本类不是线程安全的，调用方需保证所有方法都在同一线程（通常即该会话所属
+ * Channel的EventLoop）中调用。
+ *
+ * @since 6.5
+ */
+class MBKCPSession
+{
+	public static final int IKCP_RTO_NDL = 30;
+	public static final int IKCP_RTO_MIN = 100;
+	public static final int IKCP_RTO_DEF = 200;
+	public static final int IKCP_RTO_MAX = 60000;
+
+	public static final int IKCP_CMD_PUSH = 81;
+	public static final int IKCP_CMD_ACK  = 82;
+	public static final int IKCP_CMD_WASK = 83;
+	public static final int IKCP_CMD_WINS = 84;
+
+	public static final int IKCP_ASK_SEND = 1;
+	public static final int IKCP_ASK_TELL = 2;
+
+	public static final int IKCP_WND_SND = 32;
+	public static final int IKCP_WND_RCV = 128;
+	public static final int IKCP_MTU_DEF = 1400;
+	public static final int IKCP_INTERVAL = 100;
+	public static final int IKCP_OVERHEAD = 24;
+	public static final int IKCP_DEADLINK = 20;
+	public static final int IKCP_THRESH_INIT = 2;
+	public static final int IKCP_THRESH_MIN = 2;
+	public static final int IKCP_PROBE_INIT = 7000;
+	public static final int IKCP_PROBE_LIMIT = 120000;
+	public static final int IKCP_FASTACK_LIMIT = 5;
+
+	/**
+	 * 底层数据报输出回调：data中[0, len)区间的内容在回调返回后即会被复用，
+	 * 实现者如需异步发送必须自行拷贝。
+	 */
+	public interface Output
+	{
+		void output(byte[] data, int len);
+	}
+
+	private static class Segment
+	{
+		int conv = 0;
+		int cmd = 0;
+		int frg = 0;
+		int wnd = 0;
+		int ts = 0;
+		int sn = 0;
+		int una = 0;
+		int resendts = 0;
+		int rto = 0;
+		int fastack = 0;
+		int xmit = 0;
+		byte[] data;
+
+		Segment(int size)
+		{
+			this.data = new byte[size];
+		}
+	}
+
+	private final int conv;
+	private final Output output;
+
+	private int mtu = IKCP_MTU_DEF;
+	private int mss = IKCP_MTU_DEF - IKCP_OVERHEAD;
+	private int state = 0;
+
+	private int snd_una = 0;
+	private int snd_nxt = 0;
+	private int rcv_nxt = 0;
+	private int ssthresh = IKCP_THRESH_INIT;
+
+	private int rx_rttval = 0;
+	private int rx_srtt = 0;
+	private int rx_rto = IKCP_RTO_DEF;
+	private int rx_minrto = IKCP_RTO_MIN;
+
+	private int snd_wnd = IKCP_WND_SND;
+	private int rcv_wnd = IKCP_WND_RCV;
+	private int rmt_wnd = IKCP_WND_RCV;
+	private int cwnd = 0;
+	private int probe = 0;
+
+	private int current = 0;
+	private int interval = IKCP_INTERVAL;
+	private int ts_flush = IKCP_INTERVAL;
+	private int xmit = 0;
+	private int nodelay = 0;
+	private boolean updated = false;
+	private int ts_probe = 0;
+	private int probe_wait = 0;
+	private int dead_link = IKCP_DEADLINK;
+	private int incr = 0;
+
+	private int fastresend = 0;
+	private int fastlimit = IKCP_FASTACK_LIMIT;
+	private boolean nocwnd = false;
+
+	private final ArrayDeque<Segment> snd_queue = new ArrayDeque<Segment>();
+	private final ArrayDeque<Segment> rcv_queue = new ArrayDeque<Segment>();
+	private final LinkedList<Segment> snd_buf = new LinkedList<Segment>();
+	private final LinkedList<Segment> rcv_buf = new LinkedList<Segment>();
+
+	private int[] acklist = new int[16];
+	private int ackcount = 0;
+
+	private byte[] buffer = new byte[(IKCP_MTU_DEF + IKCP_OVERHEAD) * 3];
+
+	public MBKCPSession(int conv, Output output)
+	{
+		this.conv = conv;
+		this.output = output;
+	}
+
+	private static int _itimediff(int later, int earlier)
+	{
+		return later - earlier;
+	}
+
+	//---------------------------------------------------------------------------------- 用户层接口
+
+	/**
+	 * 取出一个完整的上层消息（已完成分片重组且保证有序），没有可读消息时返回null。
+	 */
+	public byte[] recv()
+	{
+		if(rcv_queue.isEmpty())
+			return null;
+
+		int peeksize = peekSize();
+		if(peeksize < 0)
+			return null;
+
+		boolean recover = (rcv_queue.size() >= rcv_wnd);
+
+		byte[] out = new byte[peeksize];
+		int len = 0;
+		while(!rcv_queue.isEmpty())
+		{
+			Segment seg = rcv_queue.poll();
+			System.arraycopy(seg.data, 0, out, len, seg.data.length);
+			len += seg.data.length;
+			if(seg.frg == 0)
+				break;
+		}
+
+		moveRcvBufToQueue();
+
+		// 快速告知对端：接收窗口已重新打开
+		if(recover && rcv_queue.size() < rcv_wnd)
+			probe |= IKCP_ASK_TELL;
+
+		return out;
+	}
+
+	public int peekSize()
+	{
+		Segment seg = rcv_queue.peek();
+		if(seg == null)
+			return -1;
+		if(seg.frg == 0)
+			return seg.data.length;
+		if(rcv_queue.size() < seg.frg + 1)
+			return -1;
+
+		int length = 0;
+		for(Segment s : rcv_queue)
+		{
+			length += s.data.length;
+			if(s.frg == 0)
+				break;
+		}
+		return length;
+	}
+
+	/**
+	 * 提交一个上层消息，超过MSS时会自动分片。
+	 *
+	 * @return 0表示成功，负数表示失败（消息过大导致分片数超出接收窗口）
+	 */
+	public int send(byte[] data, int offset, int len)
+	{
+		int count = (len <= mss ? 1 : (len + mss - 1) / mss);
+		if(count >= IKCP_WND_RCV || count > 255)
+			return -2;
+
+		for(int i = 0; i < count; i++)
+		{
+			int size = Math.min(len, mss);
+			Segment seg = new Segment(size);
+			System.arraycopy(data, offset, seg.data, 0, size);
+			seg.frg = count - i - 1;
+			snd_queue.add(seg);
+			offset += size;
+			len -= size;
+		}
+		return 0;
+	}
+
+	//---------------------------------------------------------------------------------- 协议处理
+
+	private void updateAck(int rtt)
+	{
+		if(rx_srtt == 0)
+		{
+			rx_srtt = rtt;
+			rx_rttval = rtt / 2;
+		}
+		else
+		{
+			int delta = Math.abs(rtt - rx_srtt);
+			rx_rttval = (3 * rx_rttval + delta) / 4;
+			rx_srtt = (7 * rx_srtt + rtt) / 8;
+			if(rx_srtt < 1)
+				rx_srtt = 1;
+		}
+		int rto = rx_srtt + Math.max(interval, 4 * rx_rttval);
+		rx_rto = Math.min(Math.max(rx_minrto, rto), IKCP_RTO_MAX);
+	}
+
+	private void shrinkBuf()
+	{
+		snd_una = snd_buf.isEmpty() ? snd_nxt : snd_buf.getFirst().sn;
+	}
+
+	private void parseAck(int sn)
+	{
+		if(_itimediff(sn, snd_una) < 0 || _itimediff(sn, snd_nxt) >= 0)
+			return;
+
+		Iterator<Segment> it = snd_buf.iterator();
+		while(it.hasNext())
+		{
+			Segment seg = it.next();
+			if(sn == seg.sn)
+			{
+				it.remove();
+				break;
+			}
+			if(_itimediff(sn, seg.sn) < 0)
+				break;
+		}
+	}
+
+	private void parseUna(int una)
+	{
+		Iterator<Segment> it = snd_buf.iterator();
+		while(it.hasNext())
+		{
+			Segment seg = it.next();
+			if(_itimediff(una, seg.sn) > 0)
+				it.remove();
+			else
+				break;
+		}
+	}
+
+	private void parseFastack(int sn)
+	{
+		if(_itimediff(sn, snd_una) < 0 || _itimediff(sn, snd_nxt) >= 0)
+			return;
+
+		for(Segment seg : snd_buf)
+		{
+			if(_itimediff(sn, seg.sn) < 0)
+				break;
+			else if(sn != seg.sn)
+				seg.fastack++;
+		}
+	}
+
+	private void ackPush(int sn, int ts)
+	{
+		if(ackcount * 2 + 2 > acklist.length)
+		{
+			int[] n = new int[acklist.length * 2];
+			System.arraycopy(acklist, 0, n, 0, ackcount * 2);
+			acklist = n;
+		}
+		acklist[ackcount * 2] = sn;
+		acklist[ackcount * 2 + 1] = ts;
+		ackcount++;
+	}
+
+	private void parseData(Segment newseg)
+	{
+		int sn = newseg.sn;
+		if(_itimediff(sn, rcv_nxt + rcv_wnd) >= 0 || _itimediff(sn, rcv_nxt) < 0)
+			return;
+
+		boolean repeat = false;
+		ListIterator<Segment> it = rcv_buf.listIterator(rcv_buf.size());
+		while(it.hasPrevious())
+		{
+			Segment seg = it.previous();
+			if(seg.sn == sn)
+			{
+				repeat = true;
+				break;
+			}
+			if(_itimediff(sn, seg.sn) > 0)
+			{
+				it.next();
+				break;
+			}
+		}
+		if(!repeat)
+			it.add(newseg);
+
+		moveRcvBufToQueue();
+	}
+
+	private void moveRcvBufToQueue()
+	{
+		while(!rcv_buf.isEmpty())
+		{
+			Segment seg = rcv_buf.getFirst();
+			if(seg.sn == rcv_nxt && rcv_queue.size() < rcv_wnd)
+			{
+				rcv_buf.removeFirst();
+				rcv_queue.add(seg);
+				rcv_nxt++;
+			}
+			else
+				break;
+		}
+	}
+
+	/**
+	 * 输入一个从底层收到的原始数据报。
+	 *
+	 * @return 0表示成功，负数表示数据报非法（conv不匹配、长度错误或未知指令）
+	 */
+	public int input(byte[] data, int offset, int size)
+	{
+		int prev_una = snd_una;
+		int maxack = 0;
+		int latest_ts = 0;
+		boolean flag = false;
+
+		if(data == null || size < IKCP_OVERHEAD)
+			return -1;
+
+		while(size >= IKCP_OVERHEAD)
+		{
+			int _conv = decodeInt(data, offset);
+			if(_conv != conv)
+				return -1;
+			int cmd = data[offset + 4] & 0xff;
+			int frg = data[offset + 5] & 0xff;
+			int wnd = (data[offset + 6] & 0xff) | ((data[offset + 7] & 0xff) << 8);
+			int ts = decodeInt(data, offset + 8);
+			int sn = decodeInt(data, offset + 12);
+			int una = decodeInt(data, offset + 16);
+			int len = decodeInt(data, offset + 20);
+			offset += IKCP_OVERHEAD;
+			size -= IKCP_OVERHEAD;
+
+			if(len < 0 || size < len)
+				return -2;
+			if(cmd != IKCP_CMD_PUSH && cmd != IKCP_CMD_ACK && cmd != IKCP_CMD_WASK && cmd != IKCP_CMD_WINS)
+				return -3;
+
+			rmt_wnd = wnd;
+			parseUna(una);
+			shrinkBuf();
+
+			if(cmd == IKCP_CMD_ACK)
+			{
+				if(_itimediff(current, ts) >= 0)
+					updateAck(_itimediff(current, ts));
+				parseAck(sn);
+				shrinkBuf();
+				if(!flag)
+				{
+					flag = true;
+					maxack = sn;
+					latest_ts = ts;
+				}
+				else if(_itimediff(sn, maxack) > 0)
+				{
+					maxack = sn;
+					latest_ts = ts;
+				}
+			}
+			else if(cmd == IKCP_CMD_PUSH)
+			{
+				if(_itimediff(sn, rcv_nxt + rcv_wnd) < 0)
+				{
+					ackPush(sn, ts);
+					if(_itimediff(sn, rcv_nxt) >= 0)
+					{
+						Segment seg = new Segment(len);
+						seg.conv = _conv;
+						seg.cmd = cmd;
+						seg.frg = frg;
+						seg.wnd = wnd;
+						seg.ts = ts;
+						seg.sn = sn;
+						seg.una = una;
+						System.arraycopy(data, offset, seg.data, 0, len);
+						parseData(seg);
+					}
+				}
+			}
+			else if(cmd == IKCP_CMD_WASK)
+			{
+				probe |= IKCP_ASK_TELL;
+			}
+
+			offset += len;
+			size -= len;
+		}
+
+		if(flag)
+			parseFastack(maxack);
+
+		// 拥塞窗口增长（慢启动 / 拥塞避免）
+		if(_itimediff(snd_una, prev_una) > 0 && cwnd < rmt_wnd)
+		{
+			if(cwnd < ssthresh)
+			{
+				cwnd++;
+				incr += mss;
+			}
+			else
+			{
+				if(incr < mss)
+					incr = mss;
+				incr += (mss * mss) / incr + (mss / 16);
+				if((cwnd + 1) * mss <= incr)
+					cwnd = (incr + mss - 1) / (mss > 0 ? mss : 1);
+			}
+			if(cwnd > rmt_wnd)
+			{
+				cwnd = rmt_wnd;
+				incr = rmt_wnd * mss;
+			}
+		}
+
+		return 0;
+	}
+
+	private int wndUnused()
+	{
+		return rcv_queue.size() < rcv_wnd ? rcv_wnd - rcv_queue.size() : 0;
+	}
+
+	private int encodeSeg(int ptr, Segment seg, int len)
+	{
+		encodeInt(buffer, ptr, seg.conv);
+		buffer[ptr + 4] = (byte) seg.cmd;
+		buffer[ptr + 5] = (byte) seg.frg;
+		buffer[ptr + 6] = (byte) seg.wnd;
+		buffer[ptr + 7] = (byte) (seg.wnd >>> 8);
+		encodeInt(buffer, ptr + 8, seg.ts);
+		encodeInt(buffer, ptr + 12, seg.sn);
+		encodeInt(buffer, ptr + 16, seg.una);
+		encodeInt(buffer, ptr + 20, len);
+		return ptr + IKCP_OVERHEAD;
+	}
+
+	private int flushIfFull(int ptr, int need)
+	{
+		if(ptr + need > mtu)
+		{
+			output.output(buffer, ptr);
+			return 0;
+		}
+		return ptr;
+	}
+
+	/**
+	 * 立即把待发送的ACK、窗口探测以及数据分片输出到底层（通常由 {@link #update(int)} 驱动）。
+	 */
+	public void flush()
+	{
+		if(!updated)
+			return;
+
+		Segment seg = new Segment(0);
+		seg.conv = conv;
+		seg.cmd = IKCP_CMD_ACK;
+		seg.wnd = wndUnused();
+		seg.una = rcv_nxt;
+
+		int ptr = 0;
+
+		// flush acknowledges
+		for(int i = 0; i < ackcount; i++)
+		{
+			ptr = flushIfFull(ptr, IKCP_OVERHEAD);
+			seg.sn = acklist[i * 2];
+			seg.ts = acklist[i * 2 + 1];
+			ptr = encodeSeg(ptr, seg, 0);
+		}
+		ackcount = 0;
+
+		// probe window size (if remote window size equals zero)
+		if(rmt_wnd == 0)
+		{
+			if(probe_wait == 0)
+			{
+				probe_wait = IKCP_PROBE_INIT;
+				ts_probe = current + probe_wait;
+			}
+			else if(_itimediff(current, ts_probe) >= 0)
+			{
+				if(probe_wait < IKCP_PROBE_INIT)
+					probe_wait = IKCP_PROBE_INIT;
+				probe_wait += probe_wait / 2;
+				if(probe_wait > IKCP_PROBE_LIMIT)
+					probe_wait = IKCP_PROBE_LIMIT;
+				ts_probe = current + probe_wait;
+				probe |= IKCP_ASK_SEND;
+			}
+		}
+		else
+		{
+			ts_probe = 0;
+			probe_wait = 0;
+		}
+
+		if((probe & IKCP_ASK_SEND) != 0)
+		{
+			seg.cmd = IKCP_CMD_WASK;
+			ptr = flushIfFull(ptr, IKCP_OVERHEAD);
+			ptr = encodeSeg(ptr, seg, 0);
+		}
+		if((probe & IKCP_ASK_TELL) != 0)
+		{
+			seg.cmd = IKCP_CMD_WINS;
+			ptr = flushIfFull(ptr, IKCP_OVERHEAD);
+			ptr = encodeSeg(ptr, seg, 0);
+		}
+		probe = 0;
+
+		// calculate window size
+		int cwnd_ = Math.min(snd_wnd, rmt_wnd);
+		if(!nocwnd)
+			cwnd_ = Math.min(cwnd, cwnd_);
+
+		// move data from snd_queue to snd_buf
+		while(_itimediff(snd_nxt, snd_una + cwnd_) < 0)
+		{
+			Segment newseg = snd_queue.poll();
+			if(newseg == null)
+				break;
+			newseg.conv = conv;
+			newseg.cmd = IKCP_CMD_PUSH;
+			newseg.wnd = seg.wnd;
+			newseg.ts = current;
+			newseg.sn = snd_nxt++;
+			newseg.una = rcv_nxt;
+			newseg.resendts = current;
+			newseg.rto = rx_rto;
+			newseg.fastack = 0;
+			newseg.xmit = 0;
+			snd_buf.add(newseg);
+		}
+
+		int resent = (fastresend > 0 ? fastresend : Integer.MAX_VALUE);
+		int rtomin = (nodelay == 0 ? (rx_rto >> 3) : 0);
+		boolean lost = false;
+		boolean change = false;
+
+		// flush data segments
+		for(Segment segment : snd_buf)
+		{
+			boolean needsend = false;
+			if(segment.xmit == 0)
+			{
+				needsend = true;
+				segment.xmit++;
+				segment.rto = rx_rto;
+				segment.resendts = current + segment.rto + rtomin;
+			}
+			else if(_itimediff(current, segment.resendts) >= 0)
+			{
+				needsend = true;
+				segment.xmit++;
+				xmit++;
+				if(nodelay == 0)
+					segment.rto += Math.max(segment.rto, rx_rto);
+				else
+				{
+					int step = (nodelay < 2 ? segment.rto : rx_rto);
+					segment.rto += step / 2;
+				}
+				segment.resendts = current + segment.rto;
+				lost = true;
+			}
+			else if(segment.fastack >= resent)
+			{
+				if(segment.xmit <= fastlimit || fastlimit <= 0)
+				{
+					needsend = true;
+					segment.xmit++;
+					segment.fastack = 0;
+					segment.resendts = current + segment.rto;
+					change = true;
+				}
+			}
+
+			if(needsend)
+			{
+				segment.ts = current;
+				segment.wnd = seg.wnd;
+				segment.una = rcv_nxt;
+
+				int need = IKCP_OVERHEAD + segment.data.length;
+				ptr = flushIfFull(ptr, need);
+				ptr = encodeSeg(ptr, segment, segment.data.length);
+				if(segment.data.length > 0)
+				{
+					System.arraycopy(segment.data, 0, buffer, ptr, segment.data.length);
+					ptr += segment.data.length;
+				}
+
+				if(segment.xmit >= dead_link)
+					state = -1;
+			}
+		}
+
+		// flush remain segments
+		if(ptr > 0)
+			output.output(buffer, ptr);
+
+		// update ssthresh
+		if(change)
+		{
+			int inflight = snd_nxt - snd_una;
+			ssthresh = inflight / 2;
+			if(ssthresh < IKCP_THRESH_MIN)
+				ssthresh = IKCP_THRESH_MIN;
+			cwnd = ssthresh + resent;
+			incr = cwnd * mss;
+		}
+		if(lost)
+		{
+			ssthresh = cwnd_ / 2;
+			if(ssthresh < IKCP_THRESH_MIN)
+				ssthresh = IKCP_THRESH_MIN;
+			cwnd = 1;
+			incr = mss;
+		}
+		if(cwnd < 1)
+		{
+			cwnd = 1;
+			incr = mss;
+		}
+	}
+
+	/**
+	 * 时钟驱动：应按 interval 间隔周期性调用，current为当前毫秒时间戳（允许回绕）。
+	 */
+	public void update(int current)
+	{
+		this.current = current;
+		if(!updated)
+		{
+			updated = true;
+			ts_flush = current;
+		}
+
+		int slap = _itimediff(current, ts_flush);
+		if(slap >= 10000 || slap < -10000)
+		{
+			ts_flush = current;
+			slap = 0;
+		}
+
+		if(slap >= 0)
+		{
+			ts_flush += interval;
+			if(_itimediff(current, ts_flush) >= 0)
+				ts_flush = current + interval;
+			flush();
+		}
+	}
+
+	//---------------------------------------------------------------------------------- 参数设置
+
+	/**
+	 * 极速模式设置（含义与原版KCP的ikcp_nodelay一致）。
+	 *
+	 * @param nodelay 0:关闭(默认)，1:开启（最小RTO降为30ms、超时退避由2倍降为1.5倍）
+	 * @param interval 内部flush时钟间隔（毫秒，10~5000）
+	 * @param resend 快速重传阈值（被跨越多少次ACK即重传，0表示关闭快速重传）
+	 * @param nc true表示关闭拥塞控制
+	 */
+	public MBKCPSession nodelay(int nodelay, int interval, int resend, boolean nc)
+	{
+		if(nodelay >= 0)
+		{
+			this.nodelay = nodelay;
+			this.rx_minrto = (nodelay != 0 ? IKCP_RTO_NDL : IKCP_RTO_MIN);
+		}
+		if(interval >= 0)
+			this.interval = Math.min(Math.max(interval, 10), 5000);
+		if(resend >= 0)
+			this.fastresend = resend;
+		this.nocwnd = nc;
+		return this;
+	}
+
+	public MBKCPSession wndsize(int sndwnd, int rcvwnd)
+	{
+		if(sndwnd > 0)
+			this.snd_wnd = sndwnd;
+		if(rcvwnd > 0)
+			this.rcv_wnd = Math.max(rcvwnd, IKCP_WND_RCV);
+		return this;
+	}
+
+	public MBKCPSession setMtu(int mtu)
+	{
+		if(mtu >= 50 && mtu >= IKCP_OVERHEAD)
+		{
+			this.buffer = new byte[(mtu + IKCP_OVERHEAD) * 3];
+			this.mtu = mtu;
+			this.mss = mtu - IKCP_OVERHEAD;
+		}
+		return this;
+	}
+
+	public MBKCPSession setMinRto(int minrto)
+	{
+		if(minrto > 0)
+			this.rx_minrto = minrto;
+		return this;
+	}
+
+	public MBKCPSession setDeadLink(int deadLink)
+	{
+		if(deadLink > 0)
+			this.dead_link = deadLink;
+		return this;
+	}
+
+	public int getConv()
+	{
+		return conv;
+	}
+
+	/**
+	 * 会话状态：-1表示某个分片的重传次数已达 dead_link 上限，链路应视为已断开。
+	 */
+	public int getState()
+	{
+		return state;
+	}
+
+	public int getInterval()
+	{
+		return interval;
+	}
+
+	public int getRxRto()
+	{
+		return rx_rto;
+	}
+
+	public int getRxSrtt()
+	{
+		return rx_srtt;
+	}
+
+	/**
+	 * 尚未被对端确认的分片数（含还未进入发送窗口的）。
+	 */
+	public int waitSnd()
+	{
+		return snd_buf.size() + snd_queue.size();
+	}
+
+	public boolean hasPendingAck()
+	{
+		return ackcount > 0;
+	}
+
+	//---------------------------------------------------------------------------------- 编解码
+
+	public static int decodeConv(byte[] data, int offset)
+	{
+		return decodeInt(data, offset);
+	}
+
+	private static int decodeInt(byte[] p, int offset)
+	{
+		return (p[offset] & 0xff)
+				| ((p[offset + 1] & 0xff) << 8)
+				| ((p[offset + 2] & 0xff) << 16)
+				| ((p[offset + 3] & 0xff) << 24);
+	}
+
+	private static void encodeInt(byte[] p, int offset, int v)
+	{
+		p[offset] = (byte) v;
+		p[offset + 1] = (byte) (v >>> 8);
+		p[offset + 2] = (byte) (v >>> 16);
+		p[offset + 3] = (byte) (v >>> 24);
+	}
+}
@@ -17,15 +17,26 @@
 package net.x52im.mobileimsdk.server.processor;
 
 import io.netty.channel.Channel;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
 import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.cluster.ClusterRouter;
 import net.x52im.mobileimsdk.server.network.Gateway;
 import net.x52im.mobileimsdk.server.network.GatewayUDP;
 import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.network.SessionContext;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
 import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
 import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+import net.x52im.mobileimsdk.server.protocal.c.PPresenceSubscribe;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqAck;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqSync;
 import net.x52im.mobileimsdk.server.qos.QoS4ReciveDaemonC2S;
+import net.x52im.mobileimsdk.server.qos.QoS4GroupSendDaemon;
 import net.x52im.mobileimsdk.server.qos.QoS4SendDaemonS2C;
+import net.x52im.mobileimsdk.server.qos.QoS4SeqSendDaemonS2C;
 import net.x52im.mobileimsdk.server.utils.GlobalSendHelper;
 import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
 
@@ -80,15 +91,23 @@ public class LogicProcessor
 		boolean processedOK = this.serverCoreHandler.getServerEventListener().onTransferMessage4C2S(pFromClient, session);
 	}
 	
-	public void processACK(final Protocal pFromClient, final String remoteAddress) throws Exception
+	public void processACK(final Channel session, final Protocal pFromClient, final String remoteAddress) throws Exception
 	{
 		String theFingerPrint = pFromClient.getDataContent();
 		logger.debug("[IMCORE-本机QoS！]【QoS机制_S2C】收到接收者"+pFromClient.getFrom()+"回过来的指纹为"+theFingerPrint+"的应答包.");
 
+		// 群消息按成员跟踪（应答方以会话上登陆的用户为准，应答包的from此时是群id），
+		// 收齐全部成员的应答后才由QoS4GroupSendDaemon通知一次messagesBeReceived
+		if(QoS4GroupSendDaemon.getInstance().acknowledge(theFingerPrint, SessionContext.of(session).getUserId()))
+			return;
+		
 		if(this.serverCoreHandler.getServerMessageQoSEventListener() != null)
 			this.serverCoreHandler.getServerMessageQoSEventListener().messagesBeReceived(theFingerPrint);
 
-		QoS4SendDaemonS2C.getInstance().remove(theFingerPrint);
+		// 多端在线时QoS按设备分别跟踪，应答只能消掉回应答的这个设备上的那一份
+		long rtt = QoS4SendDaemonS2C.getInstance().acknowledge(theFingerPrint, OnlineProcessor.getDeviceClassFromChannel(session));
+		if(rtt >= 0)
+			SessionContext.of(session).onRttSample(rtt);
 	}
 
 	public void processLogin(final Channel session, final Protocal pFromClient, final String remoteAddress) throws Exception
@@ -120,6 +139,14 @@ public class LogicProcessor
 			}
 			else
 			{
+				// 集群开启了登陆重定向、且该用户应归属于别的节点时，告知客户端改连过去
+				InetSocketAddress redirect = ClusterRouter.getInstance().getLoginRedirect(loginInfo);
+				if(redirect != null)
+				{
+					processLoginRedirect(session, loginInfo, redirect, remoteAddress);
+					return;
+				}
+				
 				int code = serverCoreHandler.getServerEventListener().onUserLoginVerify(
 						loginInfo.getLoginUserId(), loginInfo.getLoginToken(), loginInfo.getExtra(), session);
 				if(code == 0)
@@ -149,6 +176,24 @@ public class LogicProcessor
 		}
 	}
 	
+	private void processLoginRedirect(final Channel session, PLoginInfo loginInfo, InetSocketAddress redirect, final String remoteAddress) throws Exception
+	{
+		logger.info("[IMCORE-{}]>> 客户端{}(uid={})应归属于集群中的节点{}:{}，将重定向之。"
+				, Gateway.$(session), remoteAddress, loginInfo.getLoginUserId(), redirect.getHostString(), redirect.getPort());
+		
+		MBObserver sendResultObserver = new MBObserver(){
+			@Override
+			public void update(boolean sendOK, Object extraObj)
+			{
+				session.close();
+			}
+		};
+		
+		LocalSendHelper.sendData(session
+				, ProtocalFactory.createPLoginInfoRedirectResponse(redirect.getHostString(), redirect.getPort(), loginInfo.getLoginUserId())
+				, GatewayUDP.isUDPChannel(session)?null:sendResultObserver);
+	}
+	
 	private void processLoginSucessSend(final Channel session, final PLoginInfo loginInfo, final String remoteAddress) throws Exception
 	{
 		final long firstLoginTimeFromClient = loginInfo.getFirstLoginTime();
@@ -161,12 +206,15 @@ public class LogicProcessor
 			{
 				if(__sendOK)
 				{
-					boolean putOK = OnlineProcessor.getInstance().putUser(loginInfo.getLoginUserId(), firstLoginTimeFromClient, session);
+					boolean putOK = OnlineProcessor.getInstance().putUser(loginInfo.getLoginUserId(), loginInfo.getDeviceClass(), firstLoginTimeFromClient, session);
 					if(putOK)
 					{
-						OnlineProcessor.setUserIdForChannel(session, loginInfo.getLoginUserId());
-						OnlineProcessor.setFirstLoginTimeForChannel(session, firstLoginTimeToClient);
+						SessionContext.of(session).setSeqAck(loginInfo.isSeqAck());
+						SessionContext.of(session).onLogined(loginInfo.getLoginUserId()
+								, OnlineProcessor.normalizeDeviceClass(loginInfo.getDeviceClass()), firstLoginTimeToClient);
 						serverCoreHandler.getServerEventListener().onUserLoginSucess(loginInfo.getLoginUserId(), loginInfo.getExtra(), session);
+						// 掉线期间未应答的消息立即补发到新会话
+						QoS4SendDaemonS2C.getInstance().resendPending(session, loginInfo.getLoginUserId(), loginInfo.getDeviceClass());
 					}
 				}
 				else
@@ -187,4 +235,71 @@ public class LogicProcessor
 			logger.warn("[IMCORE-{}]>> Server在回客户端{}的响应包时，调用getUserIdFromSession返回null，用户在这一瞬间掉线了？！", Gateway.$(session), remoteAddress);
 		}
 	}
+	
+	/**
+	 * 处理按会话序号的累计应答（一个包中可含多条会话流的应答）。
+	 * 
+	 * @since 6.5
+	 */
+	public void processSeqAck(Channel session, Protocal pFromClient, String remoteAddress) throws Exception
+	{
+		SessionContext ctx = SessionContext.get(session);
+		PSeqAck[] acks = ProtocalFactory.parsePSeqAck(pFromClient.getDataContent());
+		if(ctx == null || acks == null)
+			return;
+		
+		for(PSeqAck ack : acks)
+		{
+			List<Protocal> acked = QoS4SeqSendDaemonS2C.getInstance().ack(ctx.getUserId(), ctx.getDeviceClass(), ack.getP(), ack.getSe(), ack.getSq());
+			if(!acked.isEmpty())
+			{
+				logger.debug("[IMCORE-本机QoS！]【序号QoS】收到接收者{}对来自{}的会话流的累计应答(sq={})，确认了{}条消息."
+						, ctx.getUserId(), ack.getP(), ack.getSq(), acked.size());
+				
+				if(this.serverCoreHandler.getServerMessageQoSEventListener() != null)
+				{
+					for(Protocal p : acked)
+						this.serverCoreHandler.getServerMessageQoSEventListener().messagesBeReceived(p.getFp());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 处理客户端对会话流中缺失序号的补发请求。
+	 * 
+	 * @since 6.5
+	 */
+	public void processSeqSync(Channel session, Protocal pFromClient, String remoteAddress) throws Exception
+	{
+		SessionContext ctx = SessionContext.get(session);
+		PSeqSync sync = ProtocalFactory.parsePSeqSync(pFromClient.getDataContent());
+		if(ctx == null || sync == null)
+			return;
+		
+		logger.debug("[IMCORE-{}]【序号QoS】客户端{}请求补发来自{}的会话流中[{}, {}]区间的消息."
+				, Gateway.$(session), remoteAddress, sync.getP(), sync.getFrom(), sync.getTo());
+		QoS4SeqSendDaemonS2C.getInstance().sync(session, ctx.getUserId(), ctx.getDeviceClass()
+				, sync.getP(), sync.getSe(), sync.getFrom(), sync.getTo());
+	}
+	
+	/**
+	 * 处理在线状态的订阅/退订请求（订阅者以会话上登陆的user_id为准，而非包中的from）。
+	 * 
+	 * @since 6.5
+	 */
+	public void processPresenceSubscribe(Channel session, Protocal pFromClient, String remoteAddress) throws Exception
+	{
+		String userId = OnlineProcessor.getUserIdFromChannel(session);
+		if(userId == null)
+		{
+			logger.warn("[IMCORE-{}]>> 客户端{}的在线状态订阅请求处理时，会话上的user_id为null，用户在这一瞬间掉线了？！", Gateway.$(session), remoteAddress);
+			return;
+		}
+		
+		PPresenceSubscribe req = ProtocalFactory.parsePPresenceSubscribe(pFromClient.getDataContent());
+		if(req == null)
+			return;
+		PresenceSubscriptionProcessor.getInstance().subscribe(userId, req.getSubscribe(), req.getUnsubscribe());
+	}
 }
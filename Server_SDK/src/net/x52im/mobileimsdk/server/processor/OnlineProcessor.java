@@ -19,27 +19,66 @@ package net.x52im.mobileimsdk.server.processor;
 import io.netty.channel.Channel;
 import io.netty.util.AttributeKey;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
+import net.x52im.mobileimsdk.server.event.SessionRegistryListener;
 import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.network.SessionContext;
 import net.x52im.mobileimsdk.server.protocal.s.PKickoutInfo;
 import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class OnlineProcessor
+public class OnlineProcessor implements SessionRegistry
 {
+	/** @deprecated 会话状态已统一保存在 {@link SessionContext} 中 */
+	@Deprecated
 	public static final AttributeKey<String> ATTRIBUTE_KEY_USER_ID = AttributeKey.newInstance("__user_id__");
+	/** @deprecated 会话状态已统一保存在 {@link SessionContext} 中 */
+	@Deprecated
 	public static final AttributeKey<Long> ATTRIBUTE_KEY_FIRST_LOGIN_TIME = AttributeKey.newInstance("__first_login_time__");
+	/** @deprecated 会话状态已统一保存在 {@link SessionContext} 中 */
+	@Deprecated
 	public static final AttributeKey<Integer> ATTRIBUTE_KEY_BE_KICKOUT_CODE = AttributeKey.newInstance("__be_keickout_code__");
 	
+	/** 客户端登陆时未指明设备类别时使用的默认类别（老版本客户端均归于此类，行为与单端登陆时一致） */
+	public static final String DEFAULT_DEVICE_CLASS = "default";
+	
+	/** 踢人策略：新登陆只踢掉同一设备类别下的老会话，其它类别的会话保持在线（多端同时在线） */
+	public static final int KICK_POLICY_SAME_DEVICE_CLASS = 0;
+	/** 踢人策略：新登陆将踢掉该用户的所有其它会话（即单端登陆） */
+	public static final int KICK_POLICY_ALL = 1;
+	
+	/** 未单独配置踢人策略的设备类别所使用的策略 */
+	public static int DEFAULT_KICK_POLICY = KICK_POLICY_SAME_DEVICE_CLASS;
+	
 	public static boolean DEBUG = false;
 	private static Logger logger = LoggerFactory.getLogger(OnlineProcessor.class); 
 	private static volatile OnlineProcessor instance = null;
 	
-	private ConcurrentMap<String, Channel> onlineSessions = new ConcurrentHashMap<String, Channel>();
+	private static final ConcurrentMap<String, Integer> kickPolicies = new ConcurrentHashMap<String, Integer>();
+	
+	private final List<SessionRegistryListener> listeners = new CopyOnWriteArrayList<SessionRegistryListener>();
+	
+	/** key=user_id，value=该用户各设备类别下的会话（不可变快照，按登陆先后排序，整体做比较后替换） */
+	private ConcurrentMap<String, Map<String, Channel>> onlineSessions = new ConcurrentHashMap<String, Map<String, Channel>>();
+	/** 在线用户id的有序索引，仅用于按游标分页遍历（可能短暂残留已离线的id，读取时会过滤并清理） */
+	private final ConcurrentSkipListSet<String> onlineUserIndex = new ConcurrentSkipListSet<String>();
+	/** 在线用户数、在线会话数：随每次成功的交换增量维护，读取无需遍历 */
+	private final LongAdder onlineUserCount = new LongAdder();
+	private final LongAdder onlineSessionCount = new LongAdder();
 	
 	public static OnlineProcessor getInstance()
 	{
@@ -57,28 +96,63 @@ public class OnlineProcessor
 	{
 	}
 	
+	/**
+	 * 设置某设备类别的踢人策略。
+	 * 
+	 * @param deviceClass 设备类别
+	 * @param kickPolicy {@link #KICK_POLICY_SAME_DEVICE_CLASS} 或 {@link #KICK_POLICY_ALL}
+	 */
+	public static void setKickPolicy(String deviceClass, int kickPolicy)
+	{
+		kickPolicies.put(normalizeDeviceClass(deviceClass), kickPolicy);
+	}
+	
+	public static int getKickPolicy(String deviceClass)
+	{
+		Integer policy = kickPolicies.get(normalizeDeviceClass(deviceClass));
+		return (policy != null ? policy : DEFAULT_KICK_POLICY);
+	}
+	
+	public static String normalizeDeviceClass(String deviceClass)
+	{
+		return (deviceClass == null || deviceClass.isEmpty() ? DEFAULT_DEVICE_CLASS : deviceClass);
+	}
+	
 	public boolean putUser(String user_id, long firstLoginTime, Channel newSession)
 	{
+		return putUser(user_id, null, firstLoginTime, newSession);
+	}
+	
+	public boolean putUser(String user_id, String deviceClass, long firstLoginTime, Channel newSession)
+	{
+		deviceClass = normalizeDeviceClass(deviceClass);
+		final boolean kickAll = (getKickPolicy(deviceClass) == KICK_POLICY_ALL);
+		
 		boolean putOk = true;
-		final Channel oldSession = onlineSessions.get(user_id);
-		if(oldSession != null)
+		// 无锁实现：每个用户的会话表是不可变快照，基于ConcurrentMap的putIfAbsent/replace整体做比较后
+		// 交换，若与并发的登陆/退出冲突则重试
+		for(;;)
 		{
-
-			boolean isTheSame = (oldSession.compareTo(newSession) == 0);
+			final Map<String, Channel> oldSessions = onlineSessions.get(user_id);
+			final Channel oldSession = (oldSessions != null ? oldSessions.get(deviceClass) : null);
 			
-			logger.debug("[IMCORE-{}]【注意】用户id={}已经在在线列表中了，session也是同一个吗？{}", Gateway.$(newSession), user_id, isTheSame);
+			boolean kickoutOld = false;
+			if(oldSession != null)
+			{
+				boolean isTheSame = (oldSession.compareTo(newSession) == 0);
 
-			/************* 以下将展开同一账号重复登陆情况的处理逻辑 *************/
+				logger.debug("[IMCORE-{}]【注意】用户id={}(设备类别{})已经在在线列表中了，session也是同一个吗？{}", Gateway.$(newSession), user_id, deviceClass, isTheSame);
 
-			if(!isTheSame)
-			{
+				/************* 以下将展开同一账号同一设备类别重复登陆情况的处理逻辑 *************/
+
+				if(isTheSame)
+					break;
 
 				if(firstLoginTime <= 0)
 				{
 					logger.debug("[IMCORE-{}]【注意】用户id={}提交过来的firstLoginTime未设置(值={}, 应该是真的首次登陆？！)，将无条件踢出前面的会话！"
 							, Gateway.$(newSession), user_id, firstLoginTime);
-					sendKickoutDuplicateLogin(oldSession, user_id);	
-					onlineSessions.put(user_id, newSession);
+					kickoutOld = true;
 				}
 				else
 				{
@@ -87,14 +161,12 @@ public class OnlineProcessor
 					{
 						logger.debug("[IMCORE-{}]【提示】用户id={}提交过来的firstLoginTime为{}、firstLoginTimeForOld为{}，新的“首次登陆时间”【晚于】列表中的“老的”、正常踢出老的即可！"
 								, Gateway.$(newSession), user_id, firstLoginTime, firstLoginTimeForOld);
-						sendKickoutDuplicateLogin(oldSession, user_id);		
-						onlineSessions.put(user_id, newSession);
+						kickoutOld = true;
 					}
 					else if(firstLoginTime == firstLoginTimeForOld)
 					{
 						logger.error("[IMCORE-{}]【注意】用户id={}提交过来的firstLoginTime为{}、firstLoginTimeForOld为{}，新的“首次登陆时间”【等于】列表中的“老的”、此时不能踢出老的！【Bug Fix 20240426, since v6.5】"
 								, Gateway.$(newSession), user_id, firstLoginTime, firstLoginTimeForOld);
-						onlineSessions.put(user_id, newSession);
 					}
 					else
 					{
@@ -102,17 +174,65 @@ public class OnlineProcessor
 								, Gateway.$(newSession), user_id, firstLoginTime, firstLoginTimeForOld);
 						sendKickoutDuplicateLogin(newSession, user_id);	
 						putOk = false;
+						break;
 					}
 				}
 			}
-			else
+			
+			// 新快照：本设备类别的会话总是排在最后（即“最近登陆”的那个）
+			final Map<String, Channel> newSessions = new LinkedHashMap<String, Channel>();
+			final List<Channel> sessionsBeKick = new ArrayList<Channel>(1);
+			if(oldSessions != null)
 			{
-				onlineSessions.put(user_id, newSession);
+				for(Map.Entry<String, Channel> e : oldSessions.entrySet())
+				{
+					Channel c = e.getValue();
+					if(e.getKey().equals(deviceClass))
+					{
+						if(kickoutOld)
+							sessionsBeKick.add(c);
+					}
+					// 同一会话换了设备类别重新登陆时，不应在老类别下残留
+					else if(c != newSession)
+					{
+						if(kickAll)
+							sessionsBeKick.add(c);
+						else
+							newSessions.put(e.getKey(), c);
+					}
+				}
 			}
-		}
-		else
-		{
-			onlineSessions.put(user_id, newSession);
+			newSessions.put(deviceClass, newSession);
+			
+			// 只有成功替换了老快照的一方才负责踢掉被替换的会话
+			final Map<String, Channel> snapshot = Collections.unmodifiableMap(newSessions);
+			boolean swapped = (oldSessions == null ? onlineSessions.putIfAbsent(user_id, snapshot) == null
+					: onlineSessions.replace(user_id, oldSessions, snapshot));
+			if(!swapped)
+				continue;
+			if(oldSessions == null)
+			{
+				onlineUserCount.increment();
+				onlineUserIndex.add(user_id);
+			}
+			onlineSessionCount.add(snapshot.size() - (oldSessions != null ? oldSessions.size() : 0));
+			for(Channel c : sessionsBeKick)
+				sendKickoutDuplicateLogin(c, user_id);
+			
+			if(!listeners.isEmpty())
+			{
+				if(oldSessions != null)
+				{
+					for(Map.Entry<String, Channel> e : oldSessions.entrySet())
+					{
+						if(snapshot.get(e.getKey()) != e.getValue())
+							fireSessionRemoved(user_id, e.getKey(), e.getValue());
+					}
+				}
+				if(oldSession != newSession)
+					fireSessionAdded(user_id, deviceClass, newSession);
+			}
+			break;
 		}
 
 		__printOnline();// just for debug
@@ -120,7 +240,7 @@ public class OnlineProcessor
 		return putOk;
 	}
 
-private void sendKickoutDuplicateLogin(final Channel sessionBeKick, String to_user_id)
+	private void sendKickoutDuplicateLogin(final Channel sessionBeKick, String to_user_id)
 	{
 		try{
 			LocalSendHelper.sendKickout(sessionBeKick, to_user_id, PKickoutInfo.KICKOUT_FOR_DUPLICATE_LOGIN, null);
@@ -133,29 +253,97 @@ private void sendKickoutDuplicateLogin(final Channel sessionBeKick, String to_us
 	
 	public void __printOnline()
 	{
-		logger.debug("【@】当前在线用户共("+onlineSessions.size()+")人------------------->");
+		// 注意：本方法在登陆等热路径上被调用，非DEBUG时不能有任何遍历或字符串拼接
+		if(!logger.isDebugEnabled())
+			return;
+		
+		logger.debug("【@】当前在线用户共({})人------------------->", onlineSessions.size());
 		if(DEBUG)
 		{
-			for(String key : onlineSessions.keySet())
-				logger.debug("      > user_id="+key+",session="+onlineSessions.get(key).remoteAddress());
+			for(Map.Entry<String, Map<String, Channel>> e : onlineSessions.entrySet())
+			{
+				for(Map.Entry<String, Channel> d : e.getValue().entrySet())
+					logger.debug("      > user_id="+e.getKey()+",deviceClass="+d.getKey()+",session="+d.getValue().remoteAddress());
+			}
 		}
 	}
 	
+	/**
+	 * 无条件移除用户（不论其当前有哪些会话）。
+	 * 
+	 * @see #removeUser(String, Channel)
+	 */
 	public boolean removeUser(String user_id)
 	{
-		synchronized(onlineSessions)
+		Map<String, Channel> oldSessions = onlineSessions.remove(user_id);
+		if(oldSessions == null)
 		{
-			if(!onlineSessions.containsKey(user_id))
-			{
-				logger.warn("[IMCORE]！用户id={}不存在在线列表中，本次removeUser没有继续.", user_id);
-				__printOnline();// just for debug
+			logger.warn("[IMCORE]！用户id={}不存在在线列表中，本次removeUser没有继续.", user_id);
+			return false;
+		}
+		onlineUserCount.decrement();
+		onlineSessionCount.add(-oldSessions.size());
+		unindexUser(user_id);
+		for(Map.Entry<String, Channel> e : oldSessions.entrySet())
+			fireSessionRemoved(user_id, e.getKey(), e.getValue());
+		return true;
+	}
+	
+	/**
+	 * 仅当该用户在在线列表中确实映射着session时才移除之（比较后移除，无全局锁），该用户其它设备
+	 * 类别下的会话不受影响。
+	 * <p>
+	 * 会话关闭时应使用本方法，以免误删同一用户刚刚登陆上来的新会话。
+	 * 
+	 * @return true表示已移除，false表示该用户不在线或在线列表中已是另一个会话
+	 */
+	public boolean removeUser(String user_id, Channel session)
+	{
+		for(;;)
+		{
+			final Map<String, Channel> oldSessions = onlineSessions.get(user_id);
+			if(oldSessions == null || !oldSessions.containsValue(session))
 				return false;
+			
+			boolean removed;
+			if(oldSessions.size() == 1)
+			{
+				removed = onlineSessions.remove(user_id, oldSessions);
 			}
 			else
-				return (onlineSessions.remove(user_id) != null);
+			{
+				final Map<String, Channel> newSessions = new LinkedHashMap<String, Channel>(oldSessions);
+				newSessions.values().remove(session);
+				removed = onlineSessions.replace(user_id, oldSessions, Collections.unmodifiableMap(newSessions));
+			}
+			
+			if(removed)
+			{
+				onlineSessionCount.decrement();
+				if(oldSessions.size() == 1)
+				{
+					onlineUserCount.decrement();
+					unindexUser(user_id);
+				}
+				if(!listeners.isEmpty())
+				{
+					for(Map.Entry<String, Channel> e : oldSessions.entrySet())
+					{
+						if(e.getValue() == session)
+							fireSessionRemoved(user_id, e.getKey(), session);
+					}
+				}
+				return true;
+			}
 		}
 	}
 	
+	/**
+	 * 取得用户最近登陆的那个会话（用户不在线时返回null）。
+	 * <p>
+	 * 多端同时在线时，如需投递给该用户的所有会话请使用 {@link #getOnlineSessions(String)}。
+	 */
+	@Override
 	public Channel getOnlineSession(String user_id)
 	{
 		if(user_id == null)
@@ -164,66 +352,205 @@ private void sendKickoutDuplicateLogin(final Channel sessionBeKick, String to_us
 			return null;
 		}
 		
-		return onlineSessions.get(user_id);
+		Map<String, Channel> sessions = onlineSessions.get(user_id);
+		Channel latest = null;
+		if(sessions != null)
+		{
+			for(Channel c : sessions.values())
+				latest = c;
+		}
+		return latest;
+	}
+	
+	/**
+	 * 取得用户在指定设备类别下的会话（不在线时返回null）。
+	 */
+	@Override
+	public Channel getOnlineSession(String user_id, String deviceClass)
+	{
+		if(user_id == null)
+		{
+			logger.warn("[IMCORE][CAUTION] getOnlineSession时，作为key的user_id== null.");
+			return null;
+		}
+		
+		Map<String, Channel> sessions = onlineSessions.get(user_id);
+		return (sessions != null ? sessions.get(normalizeDeviceClass(deviceClass)) : null);
 	}
 	
-	public ConcurrentMap<String, Channel> getOnlineSessions()
+	/**
+	 * 取得用户当前所有在线的会话（key=设备类别，按登陆先后排序），不在线时返回空Map。
+	 * <p>
+	 * 返回的是一个不可变快照，调用者可放心遍历。
+	 */
+	@Override
+	public Map<String, Channel> getOnlineSessions(String user_id)
+	{
+		Map<String, Channel> sessions = (user_id != null ? onlineSessions.get(user_id) : null);
+		return (sessions != null ? sessions : Collections.<String, Channel>emptyMap());
+	}
+	
+	/**
+	 * @deprecated 返回的是在线列表本身，直接修改会绕过在线人数的统计和分页索引；遍历在线用户请使用
+	 * {@link #getOnlineUserIds(String, int)} 分页进行
+	 */
+	@Deprecated
+	public ConcurrentMap<String, Map<String, Channel>> getOnlineSessions()
 	{
 		return onlineSessions;
 	}
+	
+	@Override
+	public boolean isUserOnline(String userId)
+	{
+		return userId != null && onlineSessions.containsKey(userId);
+	}
+	
+	@Override
+	public Set<String> getOnlineUserIds()
+	{
+		return Collections.unmodifiableSet(onlineSessions.keySet());
+	}
+	
+	/**
+	 * 按user_id升序分页取在线用户id，每次只遍历一页，不会拷贝整个在线列表。
+	 * <p>
+	 * 分页期间有用户上下线时，已翻过的页不受影响，之后的页会反映最新状态（弱一致）。
+	 */
+	@Override
+	public List<String> getOnlineUserIds(String afterUserId, int limit)
+	{
+		List<String> page = new ArrayList<String>(Math.max(0, Math.min(limit, 1024)));
+		if(limit <= 0)
+			return page;
+		
+		Iterator<String> it = (afterUserId == null ? onlineUserIndex : onlineUserIndex.tailSet(afterUserId, false)).iterator();
+		while(page.size() < limit && it.hasNext())
+		{
+			String user_id = it.next();
+			if(onlineSessions.containsKey(user_id))
+				page.add(user_id);
+			else
+				unindexUser(user_id);
+		}
+		return page;
+	}
+	
+	@Override
+	public int getOnlineUserCount()
+	{
+		return onlineUserCount.intValue();
+	}
+	
+	@Override
+	public long getOnlineSessionCount()
+	{
+		return onlineSessionCount.sum();
+	}
+	
+	/**
+	 * 从分页索引中移除用户。与该用户的并发登陆竞争时移除后需复查，以免把刚上线的用户从索引中误删。
+	 */
+	private void unindexUser(String user_id)
+	{
+		onlineUserIndex.remove(user_id);
+		if(onlineSessions.containsKey(user_id))
+			onlineUserIndex.add(user_id);
+	}
+	
+	@Override
+	public void addSessionRegistryListener(SessionRegistryListener l)
+	{
+		if(l != null)
+			listeners.add(l);
+	}
+	
+	@Override
+	public void removeSessionRegistryListener(SessionRegistryListener l)
+	{
+		listeners.remove(l);
+	}
+	
+	private void fireSessionAdded(String user_id, String deviceClass, Channel session)
+	{
+		for(SessionRegistryListener l : listeners)
+		{
+			try{
+				l.onSessionAdded(user_id, deviceClass, session);
+			}
+			catch (Exception e){
+				logger.warn("[IMCORE-"+Gateway.$(session)+"] SessionRegistryListener.onSessionAdded时发生了异常：", e);
+			}
+		}
+	}
+	
+	private void fireSessionRemoved(String user_id, String deviceClass, Channel session)
+	{
+		for(SessionRegistryListener l : listeners)
+		{
+			try{
+				l.onSessionRemoved(user_id, deviceClass, session);
+			}
+			catch (Exception e){
+				logger.warn("[IMCORE-"+Gateway.$(session)+"] SessionRegistryListener.onSessionRemoved时发生了异常：", e);
+			}
+		}
+	}
 
 	public static boolean isLogined(Channel session)
 	{
-		return session != null && getUserIdFromChannel(session) != null;
+		SessionContext ctx = SessionContext.get(session);
+		return ctx != null && ctx.isLogined();
 	}
 	
 	public static boolean isOnline(String userId)
 	{
-		return OnlineProcessor.getInstance().getOnlineSession(userId) != null;
+		return OnlineProcessor.getInstance().isUserOnline(userId);
 	}
 	
 	public static void setUserIdForChannel(Channel session, String userId)
 	{
-		session.attr(OnlineProcessor.ATTRIBUTE_KEY_USER_ID).set(userId);
+		SessionContext.of(session).setUserId(userId);
 	}
 	
 	public static void setFirstLoginTimeForChannel(Channel session, long firstLoginTime)
 	{
-		session.attr(OnlineProcessor.ATTRIBUTE_KEY_FIRST_LOGIN_TIME).set(firstLoginTime);
+		SessionContext.of(session).setFirstLoginTime(firstLoginTime);
 	}
 	
 	public static void setBeKickoutCodeForChannel(Channel session, int beKickoutCode)
 	{
-		session.attr(OnlineProcessor.ATTRIBUTE_KEY_BE_KICKOUT_CODE).set(beKickoutCode);
+		SessionContext.of(session).setBeKickoutCode(beKickoutCode);
 	}
 	
 	public static String getUserIdFromChannel(Channel session)
 	{
-		return (session != null ? session.attr(ATTRIBUTE_KEY_USER_ID).get() : null);
+		SessionContext ctx = SessionContext.get(session);
+		return (ctx != null ? ctx.getUserId() : null);
+	}
+	
+	public static String getDeviceClassFromChannel(Channel session)
+	{
+		SessionContext ctx = SessionContext.get(session);
+		return (ctx != null ? ctx.getDeviceClass() : null);
 	}
 	
 	public static long getFirstLoginTimeFromChannel(Channel session)
 	{
-		if(session != null){
-			Long attr = session.attr(ATTRIBUTE_KEY_FIRST_LOGIN_TIME).get();
-			return attr != null ? attr : -1;
-		}
-		return -1;
+		SessionContext ctx = SessionContext.get(session);
+		return (ctx != null ? ctx.getFirstLoginTime() : -1);
 	}
 	
 	public static int getBeKickoutCodeFromChannel(Channel session)
 	{
-		if(session != null){
-			Integer attr = session.attr(ATTRIBUTE_KEY_BE_KICKOUT_CODE).get();
-			return attr != null ? attr : -1;
-		}
-		return -1;
+		SessionContext ctx = SessionContext.get(session);
+		return (ctx != null ? ctx.getBeKickoutCode() : -1);
 	}
 	
 	public static void removeAttributesForChannel(Channel session)
 	{
-		session.attr(OnlineProcessor.ATTRIBUTE_KEY_USER_ID).set(null);
-		session.attr(OnlineProcessor.ATTRIBUTE_KEY_FIRST_LOGIN_TIME).set(null);
-		session.attr(OnlineProcessor.ATTRIBUTE_KEY_BE_KICKOUT_CODE).set(null);
+		SessionContext ctx = SessionContext.get(session);
+		if(ctx != null)
+			ctx.clearLogin();
 	}
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PresenceProcessor.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.processor;
+
+import io.netty.channel.Channel;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.x52im.mobileimsdk.server.event.PresenceChangeListener;
+import net.x52im.mobileimsdk.server.event.SessionRegistryListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 用户在线状态变化的去抖合并处理器。
+ * <p>
+ * 监听 {@link OnlineProcessor} 的会话变更，只记下“哪些用户的会话发生过变化”，待该用户安静满
+ * {@link #DEBOUNCE_MILLIS}（或自首次变化起已达 {@link #MAX_DELAY_MILLIS}）后，再以在线列表的当前状态与
+ * 上次通知出去的状态做比较，仅将净变化按批次通知给 {@link PresenceChangeListener}。因此网络抖动时的
+ * 频繁重连、多端中某一设备的上下线都不会产生多余的状态通知和数据库写入。
+ * <p>
+ * 净变化在本对象锁内计算后放入队列，回调监听器时不持有该锁（监听器中通常要写库，可能较慢），
+ * 回调由另一把锁串行执行并按计算的先后顺序进行，同一用户的上线/下线通知不会乱序。
+ *
+ * @since 6.5
+ */
+public class PresenceProcessor implements SessionRegistryListener
+{
+	private static Logger logger = LoggerFactory.getLogger(PresenceProcessor.class);
+	private static volatile PresenceProcessor instance = null;
+	
+	/** 去抖窗口：用户最后一次会话变化后需安静多久才通知（毫秒） */
+	public static long DEBOUNCE_MILLIS = 2000;
+	/** 最长延迟：用户持续抖动时，自首次变化起最多延迟多久必须通知一次（毫秒） */
+	public static long MAX_DELAY_MILLIS = 10 * 1000;
+	/** 检查待通知用户的周期（毫秒） */
+	public static int CHECK_INTERVAL = 500;
+	
+	public static boolean DEBUG = false;
+	
+	private final List<PresenceChangeListener> listeners = new CopyOnWriteArrayList<PresenceChangeListener>();
+	
+	/** key=user_id，value=该用户会话的首次/最近一次变化时间 */
+	private final ConcurrentMap<String, PendingChange> pendings = new ConcurrentHashMap<String, PendingChange>();
+	/** 已通知为在线的用户（在本对象锁内读写） */
+	private final Set<String> notifiedOnline = new HashSet<String>();
+	/** 已计算出、待回调给监听器的净变化，按计算顺序排列 */
+	private final ConcurrentLinkedQueue<Delta> deliveries = new ConcurrentLinkedQueue<Delta>();
+	/** 串行化监听器回调，保证按计算顺序通知 */
+	private final Object deliverLock = new Object();
+	
+	private Timer timer = null;
+	
+	public static PresenceProcessor getInstance()
+	{
+		if (instance == null) {
+			synchronized (PresenceProcessor.class) {
+				if (instance == null) {
+					instance = new PresenceProcessor();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private PresenceProcessor()
+	{
+	}
+	
+	public void startup()
+	{
+		stop();
+		
+		synchronized (this)
+		{
+			OnlineProcessor.getInstance().addSessionRegistryListener(this);
+			timer = new Timer("PresenceProcessor", true);
+			timer.scheduleAtFixedRate(new TimerTask() 
+			{
+				@Override
+				public void run()
+				{
+					flush(false);
+				}
+			}
+			, CHECK_INTERVAL
+			, CHECK_INTERVAL);
+		}
+	}
+	
+	/**
+	 * 停止处理，尚在去抖窗口中的变化会被立即通知出去。
+	 */
+	public void stop()
+	{
+		synchronized (this)
+		{
+			if(timer == null)
+				return;
+			
+			OnlineProcessor.getInstance().removeSessionRegistryListener(this);
+			try{
+				timer.cancel();
+			}
+			finally{
+				timer = null;
+			}
+			collect(true);
+		}
+		deliver();
+	}
+	
+	public boolean isRunning()
+	{
+		return timer != null;
+	}
+	
+	public void addPresenceChangeListener(PresenceChangeListener l)
+	{
+		listeners.add(l);
+	}
+	
+	public void removePresenceChangeListener(PresenceChangeListener l)
+	{
+		listeners.remove(l);
+	}
+	
+	@Override
+	public void onSessionAdded(String userId, String deviceClass, Channel session)
+	{
+		touch(userId);
+	}
+	
+	@Override
+	public void onSessionRemoved(String userId, String deviceClass, Channel session)
+	{
+		touch(userId);
+	}
+	
+	private void touch(String userId)
+	{
+		long now = System.currentTimeMillis();
+		PendingChange pc = pendings.get(userId);
+		if(pc == null)
+		{
+			pc = pendings.putIfAbsent(userId, new PendingChange(now));
+			if(pc == null)
+				return;
+		}
+		// 与flush并发时此次更新可能落在一个刚被移除的条目上，但flush是在移除条目之后才读取在线状态的，
+		// 本次变化已体现在其读到的状态中，不会丢失
+		pc.lastChangeTime = now;
+	}
+	
+	private void flush(boolean force)
+	{
+		collect(force);
+		deliver();
+	}
+	
+	/**
+	 * 计算到期用户的净变化并放入待回调队列。
+	 */
+	private synchronized void collect(boolean force)
+	{
+		long now = System.currentTimeMillis();
+		Set<String> online = null;
+		Set<String> offline = null;
+		
+		SessionRegistry registry = OnlineProcessor.getInstance();
+		Iterator<Entry<String, PendingChange>> it = pendings.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Entry<String, PendingChange> entry = it.next();
+			PendingChange pc = entry.getValue();
+			if(!force 
+				&& now - pc.lastChangeTime < DEBOUNCE_MILLIS 
+				&& now - pc.firstChangeTime < MAX_DELAY_MILLIS)
+				continue;
+			
+			it.remove();
+			
+			String userId = entry.getKey();
+			boolean isOnline = registry.isUserOnline(userId);
+			if(isOnline == notifiedOnline.contains(userId))
+				continue;
+			
+			if(isOnline)
+			{
+				notifiedOnline.add(userId);
+				if(online == null)
+					online = new HashSet<String>();
+				online.add(userId);
+			}
+			else
+			{
+				notifiedOnline.remove(userId);
+				if(offline == null)
+					offline = new HashSet<String>();
+				offline.add(userId);
+			}
+		}
+		
+		if(online == null && offline == null)
+			return;
+		if(online == null)
+			online = Collections.emptySet();
+		if(offline == null)
+			offline = Collections.emptySet();
+		
+		if(DEBUG)
+			logger.debug("[IMCORE] 用户在线状态变化：上线"+online.size()+"人，下线"+offline.size()+"人。");
+		deliveries.add(new Delta(online, offline));
+	}
+	
+	/**
+	 * 按计算顺序把待回调的净变化通知给监听器（不持有本对象锁）。
+	 */
+	private void deliver()
+	{
+		synchronized (deliverLock)
+		{
+			Delta d;
+			while((d = deliveries.poll()) != null)
+			{
+				for(PresenceChangeListener l : listeners)
+				{
+					try{
+						l.onPresenceChanged(d.online, d.offline);
+					}
+					catch (Exception e){
+						logger.warn("[IMCORE] PresenceChangeListener.onPresenceChanged时发生了异常：", e);
+					}
+				}
+			}
+		}
+	}
+	
+	private static class Delta
+	{
+		final Set<String> online;
+		final Set<String> offline;
+		
+		Delta(Set<String> online, Set<String> offline)
+		{
+			this.online = online;
+			this.offline = offline;
+		}
+	}
+	
+	private static class PendingChange
+	{
+		final long firstChangeTime;
+		volatile long lastChangeTime;
+		
+		PendingChange(long now)
+		{
+			this.firstChangeTime = now;
+			this.lastChangeTime = now;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PresenceSubscriptionProcessor.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.x52im.mobileimsdk.server.event.PresenceChangeListener;
+import net.x52im.mobileimsdk.server.event.PresenceSubscribeAuthorizer;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.s.PPresenceDelta;
+import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 在线状态订阅处理器：维护“被订阅用户 -> 订阅者”的反向索引，收到 {@link PresenceProcessor} 去抖合并后的
+ * 在线状态变化时，只需查找变化用户各自的订阅者，按订阅者聚合成一个 {@link PPresenceDelta} 推送，处理代价
+ * 与本批变化涉及的订阅关系数成正比，与在线总人数、订阅总数无关。
+ * <p>
+ * 建立订阅关系前会先经 {@link PresenceSubscribeAuthorizer} 过滤（见 {@link #setAuthorizer(PresenceSubscribeAuthorizer)}），
+ * 未设置时任何已登陆用户都可订阅任意用户的在线状态。
+ * <p>
+ * 订阅关系在订阅者下线（其所有设备均离线）后自动清除，客户端重新登陆后应重新订阅。
+ * 注意：目前只能感知本节点上的用户在线状态变化，集群部署时跨节点的订阅需借助 PresenceDirectory 另行实现。
+ *
+ * @since 6.5
+ */
+public class PresenceSubscriptionProcessor implements PresenceChangeListener
+{
+	private static Logger logger = LoggerFactory.getLogger(PresenceSubscriptionProcessor.class);
+	private static volatile PresenceSubscriptionProcessor instance = null;
+	
+	/** 每个用户最多可订阅多少个用户的在线状态 */
+	public static int MAX_SUBSCRIPTIONS_PER_USER = 5000;
+	
+	private volatile PresenceSubscribeAuthorizer authorizer = null;
+	
+	/** key=被订阅的user_id，value=订阅者的user_id（并发Set，推送时可无锁遍历） */
+	private final ConcurrentMap<String, Set<String>> watchers = new ConcurrentHashMap<String, Set<String>>();
+	/** key=订阅者的user_id，value=其订阅的user_id，用于退订与下线清理 */
+	private final Map<String, Set<String>> subscriptions = new HashMap<String, Set<String>>();
+	
+	public static PresenceSubscriptionProcessor getInstance()
+	{
+		if (instance == null) {
+			synchronized (PresenceSubscriptionProcessor.class) {
+				if (instance == null) {
+					instance = new PresenceSubscriptionProcessor();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private PresenceSubscriptionProcessor()
+	{
+	}
+	
+	/**
+	 * 处理订阅/退订请求，并立即向订阅者推送本次新订阅用户的当前在线状态。
+	 */
+	public void subscribe(String subscriber, Collection<String> subscribe, Collection<String> unsubscribe)
+	{
+		if(unsubscribe != null && !unsubscribe.isEmpty())
+			removeSubscriptions(subscriber, unsubscribe);
+		
+		if(subscribe != null && !subscribe.isEmpty())
+			subscribe = authorize(subscriber, subscribe);
+		
+		if(subscribe != null && !subscribe.isEmpty())
+		{
+			PPresenceDelta snapshot = new PPresenceDelta();
+			SessionRegistry registry = OnlineProcessor.getInstance();
+			for(String userId : addSubscriptions(subscriber, subscribe))
+			{
+				if(registry.isUserOnline(userId))
+					snapshot.addOnline(userId);
+				else
+					snapshot.addOffline(userId);
+			}
+			push(subscriber, snapshot);
+		}
+	}
+	
+	public PresenceSubscribeAuthorizer getAuthorizer()
+	{
+		return authorizer;
+	}
+	
+	/**
+	 * 设置订阅授权回调，为null时不做限制。
+	 */
+	public void setAuthorizer(PresenceSubscribeAuthorizer authorizer)
+	{
+		this.authorizer = authorizer;
+	}
+	
+	/**
+	 * 清除订阅者的全部订阅。
+	 */
+	public synchronized void clear(String subscriber)
+	{
+		Set<String> watched = subscriptions.remove(subscriber);
+		if(watched != null)
+			unindex(subscriber, watched);
+	}
+	
+	/** 订阅了该用户在线状态的用户数 */
+	public int getWatcherCount(String userId)
+	{
+		Set<String> ws = watchers.get(userId);
+		return (ws != null ? ws.size() : 0);
+	}
+	
+	@Override
+	public void onPresenceChanged(Set<String> onlineUserIds, Set<String> offlineUserIds)
+	{
+		Map<String, PPresenceDelta> deltas = new HashMap<String, PPresenceDelta>();
+		for(String userId : onlineUserIds)
+		{
+			Set<String> ws = watchers.get(userId);
+			if(ws != null)
+			{
+				for(String subscriber : ws)
+					deltaOf(deltas, subscriber).addOnline(userId);
+			}
+		}
+		for(String userId : offlineUserIds)
+		{
+			Set<String> ws = watchers.get(userId);
+			if(ws != null)
+			{
+				for(String subscriber : ws)
+					deltaOf(deltas, subscriber).addOffline(userId);
+			}
+		}
+		
+		// 已下线的订阅者不必再推送，其订阅关系也随之清除
+		for(String userId : offlineUserIds)
+		{
+			deltas.remove(userId);
+			clear(userId);
+		}
+		
+		for(Map.Entry<String, PPresenceDelta> e : deltas.entrySet())
+			push(e.getKey(), e.getValue());
+	}
+	
+	private Collection<String> authorize(String subscriber, Collection<String> userIds)
+	{
+		PresenceSubscribeAuthorizer a = authorizer;
+		if(a == null)
+			return userIds;
+		
+		Collection<String> allowed;
+		try{
+			allowed = a.authorize(subscriber, userIds);
+		}
+		catch (Exception e){
+			// 授权回调出错时按拒绝处理，宁可订阅失败也不能越权
+			logger.warn("[IMCORE] 用户"+subscriber+"的在线状态订阅授权时发生了异常，本次订阅被拒绝：", e);
+			return null;
+		}
+		
+		int denied = userIds.size() - (allowed == null ? 0 : allowed.size());
+		if(denied > 0)
+			logger.debug("[IMCORE] 用户{}的在线状态订阅请求中有{}个未获授权，已忽略.", subscriber, denied);
+		return allowed;
+	}
+	
+	private synchronized Collection<String> addSubscriptions(String subscriber, Collection<String> userIds)
+	{
+		Set<String> watched = subscriptions.get(subscriber);
+		if(watched == null)
+		{
+			watched = new HashSet<String>();
+			subscriptions.put(subscriber, watched);
+		}
+		
+		List<String> added = new ArrayList<String>(userIds.size());
+		for(String userId : userIds)
+		{
+			if(userId == null || userId.isEmpty())
+				continue;
+			if(watched.size() >= MAX_SUBSCRIPTIONS_PER_USER)
+			{
+				logger.warn("[IMCORE] 用户{}订阅的在线状态已达上限{}，其余订阅被忽略！", subscriber, MAX_SUBSCRIPTIONS_PER_USER);
+				break;
+			}
+			
+			watched.add(userId);
+			Set<String> ws = watchers.get(userId);
+			if(ws == null)
+			{
+				ws = ConcurrentHashMap.<String>newKeySet();
+				watchers.put(userId, ws);
+			}
+			ws.add(subscriber);
+			added.add(userId);
+		}
+		return added;
+	}
+	
+	private synchronized void removeSubscriptions(String subscriber, Collection<String> userIds)
+	{
+		Set<String> watched = subscriptions.get(subscriber);
+		if(watched == null)
+			return;
+		
+		watched.removeAll(userIds);
+		if(watched.isEmpty())
+			subscriptions.remove(subscriber);
+		unindex(subscriber, userIds);
+	}
+	
+	private void unindex(String subscriber, Collection<String> userIds)
+	{
+		for(String userId : userIds)
+		{
+			Set<String> ws = watchers.get(userId);
+			if(ws != null)
+			{
+				ws.remove(subscriber);
+				// 反向索引的增删均在本对象锁内进行，此时移除空Set不会与订阅竞争
+				if(ws.isEmpty())
+					watchers.remove(userId);
+			}
+		}
+	}
+	
+	private static PPresenceDelta deltaOf(Map<String, PPresenceDelta> deltas, String subscriber)
+	{
+		PPresenceDelta d = deltas.get(subscriber);
+		if(d == null)
+		{
+			d = new PPresenceDelta();
+			deltas.put(subscriber, d);
+		}
+		return d;
+	}
+	
+	private void push(String subscriber, PPresenceDelta delta)
+	{
+		if(delta.isEmpty())
+			return;
+		try{
+			LocalSendHelper.sendData(ProtocalFactory.createPPresenceDelta(delta, subscriber), null);
+		}
+		catch (Exception e){
+			logger.warn("[IMCORE] 向用户"+subscriber+"推送在线状态变化时发生了异常：", e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * SessionRegistry.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.processor;
+
+import io.netty.channel.Channel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.x52im.mobileimsdk.server.event.SessionRegistryListener;
+
+/**
+ * 服务端在线会话表（由 {@link OnlineProcessor} 实现）。
+ * <p>
+ * 上层应用应通过本接口读取在线状态、并通过 {@link SessionRegistryListener} 获知会话的变化，
+ * 而不要自已再维护一份会话表：两份表各自更新迟早会不一致。本接口返回的集合均为只读视图，
+ * 不会产生拷贝。
+ *
+ * @since 6.5
+ */
+public interface SessionRegistry
+{
+	/** 用户是否有任一设备在线 */
+	boolean isUserOnline(String userId);
+	/** 用户最近登陆的那个会话，不在线时返回null */
+	Channel getOnlineSession(String userId);
+	/** 用户在指定设备类别下的会话，不在线时返回null */
+	Channel getOnlineSession(String userId, String deviceClass);
+	/** 用户当前所有在线的会话（key=设备类别），不在线时返回空Map */
+	Map<String, Channel> getOnlineSessions(String userId);
+	/** 当前在线的所有用户id（只读视图） */
+	Set<String> getOnlineUserIds();
+	/**
+	 * 按user_id升序分页取在线用户id。
+	 * 
+	 * @param afterUserId 游标：上一页的最后一个user_id，取第一页时传null
+	 * @param limit 本页最多返回多少个
+	 * @return 本页的在线用户id，不足limit个时表示已到最后一页
+	 */
+	List<String> getOnlineUserIds(String afterUserId, int limit);
+	/** 当前在线的用户数（增量维护，无需遍历） */
+	int getOnlineUserCount();
+	/** 当前在线的会话数（多端在线时一个用户有多个会话） */
+	long getOnlineSessionCount();
+	
+	void addSessionRegistryListener(SessionRegistryListener l);
+	void removeSessionRegistryListener(SessionRegistryListener l);
+}
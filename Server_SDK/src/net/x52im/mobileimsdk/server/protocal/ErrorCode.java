@@ -62,5 +62,11 @@ public interface ErrorCode
 	{
 		/** 客户端尚未登陆，请重新登陆 */
 		int RESPONSE_FOR_UNLOGIN = 301;
+		
+		/** 登陆被重定向：请改连到PLoginInfoResponse中指明的节点后重新登陆（since 6.5） */
+		int RESPONSE_FOR_REDIRECT = 302;
+		
+		/** 发送过于频繁，本条消息未被处理，请稍后重发（since 6.5） */
+		int RESPONSE_FOR_RATE_LIMITED = 303;
 	}
 }
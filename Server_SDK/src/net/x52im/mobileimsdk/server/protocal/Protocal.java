@@ -34,7 +34,13 @@ public class Protocal
 	protected int typeu = -1;
 	
 	protected transient int retryCount = 0;
+	/** 本包在服务端所投递的目标设备类别（多端登陆时用于按设备跟踪QoS），不参与序列化，since 6.5 */
+	protected transient String deviceClass = null;
 	protected long sm = -1;
+	/** 会话流的纪元：服务端每新建一条会话流就换一个，客户端据此判断服务端的序号是否已重新开始，since 6.5 */
+	protected Long se = null;
+	/** 会话流内的序号（由服务端按“接收设备+对方”单调递增分配），非序号投递的包为null（不参与序列化以免增加包体），since 6.5 */
+	protected Long sq = null;
 	public Protocal(int type, String dataContent, String from, String to)
 	{
 		this(type, dataContent, from, to, -1);
@@ -117,6 +123,23 @@ public class Protocal
 		this.retryCount += 1;
 	}
 	
+	/**
+	 * 重置重传计数（如接收方重新登陆后立即重发时），since 6.5
+	 */
+	public void resetRetryCount()
+	{
+		this.retryCount = 0;
+	}
+	
+	public String getDeviceClass()
+	{
+		return this.deviceClass;
+	}
+	public void setDeviceClass(String deviceClass)
+	{
+		this.deviceClass = deviceClass;
+	}
+	
 	public boolean isQoS()
 	{
 		return QoS;
@@ -155,6 +178,32 @@ public class Protocal
 		this.sm = sm;
 	}
 	
+	public Long getSe()
+	{
+		return se;
+	}
+	
+	public void setSe(Long se)
+	{
+		this.se = se;
+	}
+	
+	public Long getSq()
+	{
+		return sq;
+	}
+	
+	public void setSq(Long sq)
+	{
+		this.sq = sq;
+	}
+	
+	/** 是否为按会话序号投递的包（这类包由累计应答确认，不再逐条回指纹应答），since 6.5 */
+	public boolean isSequenced()
+	{
+		return sq != null;
+	}
+	
 	public String toGsonString()
 	{
 		return new Gson().toJson(this);
@@ -174,6 +223,7 @@ public class Protocal
 		cloneP.setTypeu(this.typeu);   // since 3.0
 //		cloneP.setCm(this.cm);         // since 6.0
 		cloneP.setSm(this.sm);         // since 6.0
+		cloneP.setDeviceClass(this.deviceClass); // since 6.5
 		return cloneP;
 	}
 	
@@ -18,10 +18,15 @@ package net.x52im.mobileimsdk.server.protocal;
 
 import net.x52im.mobileimsdk.server.protocal.c.PKeepAlive;
 import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+import net.x52im.mobileimsdk.server.protocal.c.PPresenceSubscribe;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqAck;
+import net.x52im.mobileimsdk.server.protocal.c.PSeqSync;
 import net.x52im.mobileimsdk.server.protocal.s.PErrorResponse;
 import net.x52im.mobileimsdk.server.protocal.s.PKeepAliveResponse;
 import net.x52im.mobileimsdk.server.protocal.s.PKickoutInfo;
 import net.x52im.mobileimsdk.server.protocal.s.PLoginInfoResponse;
+import net.x52im.mobileimsdk.server.protocal.s.PPresenceDelta;
+import net.x52im.mobileimsdk.server.protocal.s.PSeqSyncResponse;
 
 import com.google.gson.Gson;
 
@@ -97,6 +102,14 @@ public class ProtocalFactory
 		return new Protocal(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN, create(new PLoginInfoResponse(code, firstLoginTime)), "0", user_id, false, null); 
 	}
 	
+	public static Protocal createPLoginInfoRedirectResponse(String redirectHost, int redirectPort, String user_id)
+	{
+		PLoginInfoResponse res = new PLoginInfoResponse(ErrorCode.ForS.RESPONSE_FOR_REDIRECT, -1);
+		res.setRedirectNodeHost(redirectHost);
+		res.setRedirectNodePort(redirectPort);
+		return new Protocal(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN, create(res), "0", user_id, false, null); 
+	}
+	
 	public static PLoginInfoResponse parsePLoginInfoResponse(String dataContentOfProtocal)
 	{
 		return parse(dataContentOfProtocal, PLoginInfoResponse.class);
@@ -133,4 +146,54 @@ public class ProtocalFactory
 	{
 		return parse(dataContentOfProtocal, PKickoutInfo.class);
 	}
+	
+	public static Protocal createPPresenceSubscribe(PPresenceSubscribe subscribe, String from_user_id)
+	{
+		return new Protocal(ProtocalType.C.FROM_CLIENT_TYPE_OF_PRESENCE$SUBSCRIBE, create(subscribe), from_user_id, "0");
+	}
+	
+	public static PPresenceSubscribe parsePPresenceSubscribe(String dataContentOfProtocal)
+	{
+		return parse(dataContentOfProtocal, PPresenceSubscribe.class);
+	}
+	
+	public static Protocal createPPresenceDelta(PPresenceDelta delta, String to_user_id)
+	{
+		return new Protocal(ProtocalType.S.FROM_SERVER_TYPE_OF_PRESENCE$DELTA, create(delta), "0", to_user_id);
+	}
+	
+	public static PPresenceDelta parsePPresenceDelta(String dataContentOfProtocal)
+	{
+		return parse(dataContentOfProtocal, PPresenceDelta.class);
+	}
+	
+	public static Protocal createPSeqAck(PSeqAck[] acks, String from_user_id)
+	{
+		return new Protocal(ProtocalType.C.FROM_CLIENT_TYPE_OF_ACK$SEQ, create(acks), from_user_id, "0");
+	}
+	
+	public static PSeqAck[] parsePSeqAck(String dataContentOfProtocal)
+	{
+		return parse(dataContentOfProtocal, PSeqAck[].class);
+	}
+	
+	public static Protocal createPSeqSync(PSeqSync sync, String from_user_id)
+	{
+		return new Protocal(ProtocalType.C.FROM_CLIENT_TYPE_OF_SYNC$SEQ, create(sync), from_user_id, "0");
+	}
+	
+	public static PSeqSync parsePSeqSync(String dataContentOfProtocal)
+	{
+		return parse(dataContentOfProtocal, PSeqSync.class);
+	}
+	
+	public static Protocal createPSeqSyncResponse(PSeqSyncResponse res, String to_user_id)
+	{
+		return new Protocal(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$SYNC$SEQ, create(res), "0", to_user_id);
+	}
+	
+	public static PSeqSyncResponse parsePSeqSyncResponse(String dataContentOfProtocal)
+	{
+		return parse(dataContentOfProtocal, PSeqSyncResponse.class);
+	}
 }
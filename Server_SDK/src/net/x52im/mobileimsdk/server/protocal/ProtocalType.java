@@ -44,6 +44,14 @@ public interface ProtocalType
 		
 		/** 由客户端发出 - 协议类型：C2S时的回显指令（此指令目前仅用于测试时） */
 		int FROM_CLIENT_TYPE_OF_ECHO = 5;
+		
+		/** 由客户端发出 - 协议类型：订阅/退订其它用户的在线状态（since 6.5） */
+		int FROM_CLIENT_TYPE_OF_PRESENCE$SUBSCRIBE = 6;
+		
+		/** 由客户端发出 - 协议类型：按会话序号的累计应答（“已按序收到至第N条”，since 6.5） */
+		int FROM_CLIENT_TYPE_OF_ACK$SEQ = 7;
+		/** 由客户端发出 - 协议类型：请求补发某会话中缺失的序号区间（since 6.5） */
+		int FROM_CLIENT_TYPE_OF_SYNC$SEQ = 8;
 	}
 	
 	//------------------------------------------------------- from server
@@ -62,5 +70,11 @@ public interface ProtocalType
 		
 		/** 由服务端发出 - 协议类型：向客户端发出“被踢”指令 */
 		int FROM_SERVER_TYPE_OF_KICKOUT = 54;
+		
+		/** 由服务端发出 - 协议类型：向订阅者推送其所订阅用户的在线状态变化（since 6.5） */
+		int FROM_SERVER_TYPE_OF_PRESENCE$DELTA = 55;
+		
+		/** 由服务端发出 - 协议类型：补发请求的响应，告知客户端该会话流在服务端的起点（since 6.5） */
+		int FROM_SERVER_TYPE_OF_RESPONSE$SYNC$SEQ = 56;
 	}
 }
@@ -22,6 +22,10 @@ public class PLoginInfo
 	protected String loginToken = null;
 	protected String extra = null;
 	protected long firstLoginTime = 0;
+	/** 客户端设备类别（如"mobile"、"pc"、"web"），为空时服务端按默认类别处理，since 6.5 */
+	protected String deviceClass = null;
+	/** 客户端是否支持按会话序号接收与累计应答（见 ProtocalType.C.FROM_CLIENT_TYPE_OF_ACK$SEQ），since 6.5 */
+	protected boolean seqAck = false;
 	
 	public PLoginInfo(String loginUserId, String loginToken)
 	{
@@ -75,6 +79,26 @@ public class PLoginInfo
 		this.firstLoginTime = firstLoginTime;
 	}
 	
+	public String getDeviceClass()
+	{
+		return deviceClass;
+	}
+
+	public void setDeviceClass(String deviceClass)
+	{
+		this.deviceClass = deviceClass;
+	}
+	
+	public boolean isSeqAck()
+	{
+		return seqAck;
+	}
+
+	public void setSeqAck(boolean seqAck)
+	{
+		this.seqAck = seqAck;
+	}
+	
 	public static boolean isFirstLogin(long firstLoginTime)
 	{
 		return firstLoginTime <= 0;
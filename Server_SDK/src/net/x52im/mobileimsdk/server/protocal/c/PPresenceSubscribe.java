@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PPresenceSubscribe.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.protocal.c;
+
+import java.util.List;
+
+/**
+ * 在线状态订阅请求：订阅后服务端会先推送一次被订阅用户的当前在线状态，之后仅在其上线/下线时推送变化。
+ * 
+ * @since 6.5
+ */
+public class PPresenceSubscribe
+{
+	/** 要订阅的用户id，可为null */
+	protected List<String> subscribe = null;
+	/** 要退订的用户id，可为null */
+	protected List<String> unsubscribe = null;
+	
+	public PPresenceSubscribe(List<String> subscribe, List<String> unsubscribe)
+	{
+		this.subscribe = subscribe;
+		this.unsubscribe = unsubscribe;
+	}
+
+	public List<String> getSubscribe()
+	{
+		return subscribe;
+	}
+
+	public void setSubscribe(List<String> subscribe)
+	{
+		this.subscribe = subscribe;
+	}
+
+	public List<String> getUnsubscribe()
+	{
+		return unsubscribe;
+	}
+
+	public void setUnsubscribe(List<String> unsubscribe)
+	{
+		this.unsubscribe = unsubscribe;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PSeqAck.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.protocal.c;
+
+/**
+ * 某会话流的累计应答：表示来自对方p的、纪元为se的会话流中，序号不大于sq的包均已按序收到。
+ * <p>
+ * 多个会话流的应答合并在一个包中发送（包体为本对象的JSON数组）。
+ * 
+ * @since 6.5
+ */
+public class PSeqAck
+{
+	/** 对方（即消息发送者）的user_id */
+	protected String p = null;
+	protected long se = 0;
+	protected long sq = 0;
+	
+	public PSeqAck(String p, long se, long sq)
+	{
+		this.p = p;
+		this.se = se;
+		this.sq = sq;
+	}
+
+	public String getP()
+	{
+		return p;
+	}
+
+	public long getSe()
+	{
+		return se;
+	}
+
+	public long getSq()
+	{
+		return sq;
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PSeqSync.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.protocal.c;
+
+/**
+ * 补发请求：请服务端重发来自对方p的会话流中序号在[from, to]之间的包。
+ * 客户端尚不知道会话流的纪元时se为0、尚不知道起点时from为0，服务端都会以该流当前的纪元和起点作答。
+ * to为0时表示直到窗口末尾。
+ * 
+ * @since 6.5
+ */
+public class PSeqSync
+{
+	/** 对方（即消息发送者）的user_id */
+	protected String p = null;
+	protected long se = 0;
+	protected long from = 0;
+	protected long to = 0;
+	
+	public PSeqSync(String p, long se, long from, long to)
+	{
+		this.p = p;
+		this.se = se;
+		this.from = from;
+		this.to = to;
+	}
+
+	public String getP()
+	{
+		return p;
+	}
+
+	public long getSe()
+	{
+		return se;
+	}
+
+	public long getFrom()
+	{
+		return from;
+	}
+
+	public long getTo()
+	{
+		return to;
+	}
+}
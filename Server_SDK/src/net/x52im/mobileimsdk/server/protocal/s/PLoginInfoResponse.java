@@ -21,6 +21,11 @@ public class PLoginInfoResponse
 	protected int code = 0;
 	
 	protected long firstLoginTime = 0;
+	
+	/** code为ErrorCode.ForS.RESPONSE_FOR_REDIRECT时，客户端应改连的节点（since 6.5） */
+	protected String redirectNodeHost = null;
+	protected int redirectNodePort = -1;
+	
 	public PLoginInfoResponse(int code, long firstLoginTime)
 	{
 		this.code = code;
@@ -45,4 +50,24 @@ public class PLoginInfoResponse
 	{
 		this.firstLoginTime = firstLoginTime;
 	}
+
+	public String getRedirectNodeHost()
+	{
+		return redirectNodeHost;
+	}
+
+	public void setRedirectNodeHost(String redirectNodeHost)
+	{
+		this.redirectNodeHost = redirectNodeHost;
+	}
+
+	public int getRedirectNodePort()
+	{
+		return redirectNodePort;
+	}
+
+	public void setRedirectNodePort(int redirectNodePort)
+	{
+		this.redirectNodePort = redirectNodePort;
+	}
 }
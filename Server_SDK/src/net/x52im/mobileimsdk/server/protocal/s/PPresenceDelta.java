@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PPresenceDelta.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.protocal.s;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 推送给订阅者的在线状态变化（一批，只含有变化的用户）。
+ * 
+ * @since 6.5
+ */
+public class PPresenceDelta
+{
+	/** 变为在线的用户id，无时为null（以减小包体） */
+	protected List<String> on = null;
+	/** 变为离线的用户id，无时为null */
+	protected List<String> off = null;
+	
+	public void addOnline(String userId)
+	{
+		if(on == null)
+			on = new ArrayList<String>(4);
+		on.add(userId);
+	}
+	
+	public void addOffline(String userId)
+	{
+		if(off == null)
+			off = new ArrayList<String>(4);
+		off.add(userId);
+	}
+	
+	public boolean isEmpty()
+	{
+		return (on == null || on.isEmpty()) && (off == null || off.isEmpty());
+	}
+
+	public List<String> getOn()
+	{
+		return on;
+	}
+
+	public void setOn(List<String> on)
+	{
+		this.on = on;
+	}
+
+	public List<String> getOff()
+	{
+		return off;
+	}
+
+	public void setOff(List<String> off)
+	{
+		this.off = off;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * PSeqSyncResponse.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.protocal.s;
+
+/**
+ * 补发请求的响应：来自对方p的会话流（纪元se）在服务端只保留了序号大于base的包，
+ * 不大于base的包已确认或已作丢失处理，客户端不必再等待。
+ * 
+ * @since 6.5
+ */
+public class PSeqSyncResponse
+{
+	protected String p = null;
+	protected long se = 0;
+	protected long base = 0;
+	
+	public PSeqSyncResponse(String p, long se, long base)
+	{
+		this.p = p;
+		this.se = se;
+		this.base = base;
+	}
+
+	public String getP()
+	{
+		return p;
+	}
+
+	public long getSe()
+	{
+		return se;
+	}
+
+	public long getBase()
+	{
+		return base;
+	}
+}
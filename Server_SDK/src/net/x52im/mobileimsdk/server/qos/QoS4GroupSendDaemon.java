@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoS4GroupSendDaemon.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.x52im.mobileimsdk.server.ServerLauncher;
+import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.network.SessionContext;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.utils.DeliveryScheduler;
+import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 群消息的QoS发送方（服务端 -> 群成员）。
+ * <p>
+ * 一条群消息只占一个QoS条目，而不是按成员展开成N个各带指纹、时间戳和重传调度的条目：条目中保存
+ * 已排序的成员id数组、一个“尚未应答成员”的位图，以及首次发送时编码好的一份数据（池化堆外内存，
+ * 所有成员共用，消息的to为群id）。成员回应答时清掉其对应的位，位图清空即出队；重传只发给仍未应答的成员。
+ * 这样内存和时间轮上的调度数都只与消息数成正比，而与“消息数 x 成员数”无关。
+ * <p>
+ * 应答按成员（而非按设备）计：成员多端在线时任一设备的应答即视为该成员已收到，重传则发往其全部在线设备。
+ * 支持会话序号的设备（见 {@link QoS4SeqSendDaemonS2C}）不经本类跟踪，由其序号窗口负责送达。
+ * 重传 {@link #QOS_TRY_COUNT} 次后仍未应答的成员，各以一条to为该成员的消息通过
+ * {@link net.x52im.mobileimsdk.server.event.MessageQoSEventListenerS2C#messagesLost} 通知应用层。
+ * 重传与 {@link QoS4SendDaemonRoot} 共用全节点的重传令牌桶。
+ * 
+ * @since 6.5
+ */
+public class QoS4GroupSendDaemon
+{
+	private static Logger logger = LoggerFactory.getLogger(QoS4GroupSendDaemon.class);
+	private static volatile QoS4GroupSendDaemon instance = null;
+	
+	/** 距上次发出多久未收齐应答即重传（毫秒） */
+	public static int RETRY_INTERVAL = 5000;
+	/** 最多重传次数 */
+	public static int QOS_TRY_COUNT = 1;
+	
+	public static boolean DEBUG = false;
+	
+	/** key=消息指纹 */
+	private final ConcurrentMap<String, GroupEntry> sentMessages = new ConcurrentHashMap<String, GroupEntry>();
+	private final LongAdder retransmitCount = new LongAdder();
+	
+	private ServerLauncher serverLauncher = null;
+	private volatile HashedWheelTimer timer = null;
+	
+	public static QoS4GroupSendDaemon getInstance()
+	{
+		if (instance == null) {
+			synchronized (QoS4GroupSendDaemon.class) {
+				if (instance == null) {
+					instance = new QoS4GroupSendDaemon();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private QoS4GroupSendDaemon()
+	{
+	}
+	
+	/**
+	 * 把一条需QoS的消息发给一组成员并按群消息跟踪其送达。
+	 * <p>
+	 * memberIds已严格升序且不含null时直接引用而不复制（调用方此后不得再修改它），同一群的多条消息可共用同一个数组。
+	 * 
+	 * @return 发送时不在线的成员（未被跟踪，应由应用层作离线处理），无时返回空列表
+	 */
+	public List<String> send(Protocal p, String[] memberIds)
+	{
+		String[] members = sortedMembers(memberIds);
+		if(members.length == 0)
+			return new ArrayList<String>(0);
+		
+		byte[] res = p.toBytes();
+		ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(res.length).writeBytes(res);
+		
+		GroupEntry entry = new GroupEntry(p.getFp(), p.getType(), members, frame);
+		GroupEntry old = sentMessages.put(entry.fp, entry);
+		if(old != null)
+		{
+			if(DEBUG)
+				logger.warn("[IMCORE-本机QoS！]【群消息QoS】指纹为{}的消息已经在群消息发送质量保证队列中，该消息为何会重复？", entry.fp);
+			old.cancel();
+			old.release();
+		}
+		schedule(entry, RETRY_INTERVAL);
+		
+		List<String> offline = new ArrayList<String>(0);
+		for(int i = 0; i < members.length; i++)
+		{
+			if(!deliver(entry, i, p))
+			{
+				offline.add(members[i]);
+				clear(entry, i);
+			}
+		}
+		return offline;
+	}
+	
+	private static String[] sortedMembers(String[] memberIds)
+	{
+		boolean sorted = true;
+		for(int i = 0; i < memberIds.length && sorted; i++)
+			sorted = (memberIds[i] != null && (i == 0 || memberIds[i - 1].compareTo(memberIds[i]) < 0));
+		if(sorted)
+			return memberIds;
+		
+		String[] copy = new String[memberIds.length];
+		int n = 0;
+		for(String m : memberIds)
+		{
+			if(m != null)
+				copy[n++] = m;
+		}
+		Arrays.sort(copy, 0, n);
+		// 去重：同一成员占两位时，其应答只能清掉其中一位
+		int k = 0;
+		for(int i = 0; i < n; i++)
+		{
+			if(k == 0 || !copy[k - 1].equals(copy[i]))
+				copy[k++] = copy[i];
+		}
+		return Arrays.copyOf(copy, k);
+	}
+	
+	/**
+	 * 发给第index个成员当前在线的全部设备。p为null时（重传）只在需要时才从编码数据中还原消息对象。
+	 * 
+	 * @return 该成员至少有一个在线会话时返回true
+	 */
+	private boolean deliver(final GroupEntry entry, int index, Protocal p)
+	{
+		final String member = entry.members[index];
+		Map<String, Channel> sessions = OnlineProcessor.getInstance().getOnlineSessions(member);
+		boolean online = false;
+		boolean tracked = false;
+		for(Channel session : sessions.values())
+		{
+			if(session == null || !session.isActive())
+				continue;
+			online = true;
+			
+			final SessionContext ctx = SessionContext.get(session);
+			if(ctx != null && ctx.isSeqAck() && ctx.isLogined())
+			{
+				// 支持会话序号的设备：拷贝一份to为该成员的消息，交由序号窗口跟踪
+				if(p == null)
+					p = entry.decode();
+				// 并发出队，数据已释放
+				if(p == null)
+					return true;
+				Protocal pForMember = (Protocal)p.clone();
+				pForMember.setTo(member);
+				pForMember.setDeviceClass(ctx.getDeviceClass());
+				try
+				{
+					LocalSendHelper.sendData(session, pForMember, null);
+				}
+				catch (Exception e)
+				{
+					logger.warn("[IMCORE-本机QoS！]【群消息QoS】指纹为"+entry.fp+"的消息发给成员"+member+"时出错："+e.getMessage());
+				}
+				continue;
+			}
+			
+			ByteBuf payload = entry.retainFrame();
+			// 并发收齐了应答（或被移除），数据已释放
+			if(payload == null)
+				return true;
+			tracked = true;
+			Object msg = (Gateway.isWebSocketChannel(session) ? new TextWebSocketFrame(payload) : payload);
+			DeliveryScheduler.getInstance().writeAndFlush(session, msg, new ChannelFutureListener(){
+				@Override
+				public void operationComplete(ChannelFuture future)
+				{
+					if(future.isSuccess())
+					{
+						if(ctx != null)
+							ctx.incrementSent();
+					}
+					else if(DEBUG)
+					{
+						logger.warn("[IMCORE-本机QoS！]【群消息QoS】指纹为{}的消息发给成员{}失败，将在重传时再试.", entry.fp, member);
+					}
+				}
+			});
+		}
+		
+		// 该成员在线的设备全部由序号窗口跟踪
+		if(online && !tracked)
+			clear(entry, index);
+		return online;
+	}
+	
+	private void schedule(GroupEntry entry, long delay)
+	{
+		HashedWheelTimer t = timer;
+		if(t == null)
+			return;
+		
+		entry.timeout = t.newTimeout(entry, delay, TimeUnit.MILLISECONDS);
+		// 与出队并发时条目可能已被移除，此时取消刚挂上的调度
+		if(sentMessages.get(entry.fp) != entry)
+			entry.timeout.cancel();
+	}
+	
+	/**
+	 * 一轮重传：依次重发给仍未应答的成员，每个成员占用一个重传令牌。令牌不足时记下进度、带抖动推迟，
+	 * 下次到期时从断点接着发，一轮全部发完才计一次重传。
+	 */
+	private void onRetryDeadline(GroupEntry entry)
+	{
+		if(sentMessages.get(entry.fp) != entry)
+			return;
+		
+		if(entry.cursor == 0 && entry.retryCount >= QOS_TRY_COUNT)
+		{
+			declareLost(entry);
+			return;
+		}
+		
+		int i = entry.nextPending(entry.cursor);
+		while(i >= 0)
+		{
+			if(!QoS4SendDaemonRoot.tryAcquireRetransmit(entry.type, entry.createTime))
+			{
+				long now = System.currentTimeMillis();
+				if(entry.deferredSince <= 0)
+					entry.deferredSince = now;
+				entry.cursor = i;
+				
+				if(QoS4SendDaemonRoot.RETRANSMIT_MAX_DEFER > 0 && now - entry.deferredSince >= QoS4SendDaemonRoot.RETRANSMIT_MAX_DEFER)
+				{
+					QoS4SendDaemonRoot.droppedRetransmitCount.increment();
+					logger.warn("[IMCORE-本机QoS！]【群消息QoS】指纹为{}的消息因重传限速已被推迟{}ms，放弃重传并判定为丢包！"
+							, entry.fp, now - entry.deferredSince);
+					declareLost(entry);
+				}
+				else
+				{
+					QoS4SendDaemonRoot.deferredRetransmitCount.increment();
+					schedule(entry, QoS4SendDaemonRoot.WHEEL_TICK_DURATION
+							+ ThreadLocalRandom.current().nextInt(Math.max(1, QoS4SendDaemonRoot.RETRANSMIT_DEFER_JITTER)));
+				}
+				return;
+			}
+			entry.deferredSince = 0;
+			
+			try
+			{
+				deliver(entry, i, null);
+				retransmitCount.increment();
+			}
+			catch (Exception e)
+			{
+				logger.warn("[IMCORE-本机QoS！]【群消息QoS】指纹为"+entry.fp+"的消息重传给成员"+entry.members[i]+"时出错："+e.getMessage());
+			}
+			i = entry.nextPending(i + 1);
+		}
+		
+		entry.cursor = 0;
+		entry.retryCount++;
+		if(DEBUG)
+			logger.debug("[IMCORE-本机QoS！]【群消息QoS】指纹为{}的消息已完成第{}轮重传(最多{}次)，尚有{}个成员未应答."
+					, entry.fp, entry.retryCount, QOS_TRY_COUNT, entry.pendingCount());
+		schedule(entry, RETRY_INTERVAL);
+	}
+	
+	private void declareLost(GroupEntry entry)
+	{
+		if(!sentMessages.remove(entry.fp, entry))
+			return;
+		entry.cancel();
+		
+		ArrayList<Protocal> lostMessages = new ArrayList<Protocal>();
+		Protocal p = entry.decode();
+		for(int i = entry.nextPending(0); i >= 0; i = entry.nextPending(i + 1))
+		{
+			Protocal pForMember = (Protocal)p.clone();
+			pForMember.setTo(entry.members[i]);
+			lostMessages.add(pForMember);
+		}
+		entry.release();
+		
+		logger.warn("[IMCORE-本机QoS！]【群消息QoS】指纹为{}的消息重传{}次后仍有{}个成员未应答，判定为丢包！"
+				, entry.fp, entry.retryCount, lostMessages.size());
+		if(!lostMessages.isEmpty())
+			notifyMessageLost(lostMessages);
+	}
+	
+	protected void notifyMessageReceived(String fingerPrint)
+	{
+		if(serverLauncher != null && serverLauncher.getServerMessageQoSEventListener() != null)
+			serverLauncher.getServerMessageQoSEventListener().messagesBeReceived(fingerPrint);
+	}
+	
+	protected void notifyMessageLost(ArrayList<Protocal> lostMessages)
+	{
+		if(serverLauncher != null && serverLauncher.getServerMessageQoSEventListener() != null)
+			serverLauncher.getServerMessageQoSEventListener().messagesLost(lostMessages);
+	}
+	
+	/**
+	 * 收到某成员的应答时调用。全部被跟踪的成员都应答后（而不是每个成员应答时）才通过
+	 * {@link net.x52im.mobileimsdk.server.event.MessageQoSEventListenerS2C#messagesBeReceived} 通知应用层一次。
+	 * 
+	 * @return 该指纹是本类跟踪的群消息时返回true（此时不必再交给 {@link QoS4SendDaemonS2C}）
+	 */
+	public boolean acknowledge(String fingerPrint, String userId)
+	{
+		GroupEntry entry = (fingerPrint == null ? null : sentMessages.get(fingerPrint));
+		if(entry == null)
+			return false;
+		
+		int index = (userId == null ? -1 : Arrays.binarySearch(entry.members, userId));
+		if(index >= 0)
+		{
+			entry.acked = true;
+			clear(entry, index);
+		}
+		return true;
+	}
+	
+	/**
+	 * 清掉一个成员的待应答位，全部清空时出队并释放数据。
+	 */
+	private void clear(GroupEntry entry, int index)
+	{
+		boolean done;
+		synchronized(entry)
+		{
+			entry.pending.clear(index);
+			done = entry.pending.isEmpty();
+		}
+		
+		if(done && sentMessages.remove(entry.fp, entry))
+		{
+			entry.cancel();
+			entry.release();
+			if(DEBUG)
+				logger.debug("[IMCORE-本机QoS！]【群消息QoS】指纹为{}的消息已收齐全部{}个成员的应答，重传次数={}."
+						, entry.fp, entry.members.length, entry.retryCount);
+			// 全部成员都因不在线等原因未被跟踪（没有任何应答）时不算送达
+			if(entry.acked)
+				notifyMessageReceived(entry.fp);
+		}
+	}
+	
+	public boolean exist(String fingerPrint)
+	{
+		return sentMessages.containsKey(fingerPrint);
+	}
+	
+	/**
+	 * 某条群消息尚未应答的成员数，不存在时返回0。
+	 */
+	public int getPendingMemberCount(String fingerPrint)
+	{
+		GroupEntry entry = sentMessages.get(fingerPrint);
+		return (entry != null ? entry.pendingCount() : 0);
+	}
+	
+	/**
+	 * 不再跟踪某条群消息（不通知丢包）。
+	 */
+	public void remove(String fingerPrint)
+	{
+		GroupEntry entry = sentMessages.remove(fingerPrint);
+		if(entry != null)
+		{
+			entry.cancel();
+			entry.release();
+		}
+	}
+	
+	public QoS4GroupSendDaemon startup(boolean immediately)
+	{
+		stop();
+		timer = new HashedWheelTimer(new DefaultThreadFactory("mobileimsdk-qos-group")
+				, QoS4SendDaemonRoot.WHEEL_TICK_DURATION, TimeUnit.MILLISECONDS, QoS4SendDaemonRoot.WHEEL_TICKS_PER_WHEEL);
+		for(GroupEntry e : sentMessages.values())
+			schedule(e, immediately ? 0 : RETRY_INTERVAL);
+		
+		logger.debug("[IMCORE-本机QoS！]【群消息QoS】====== 群消息发送质量保证时间轮已成功启动");
+		return this;
+	}
+	
+	/**
+	 * 停止时间轮，尚未收齐应答的消息仍保留在队列中，再次启动后继续调度。
+	 */
+	public void stop()
+	{
+		HashedWheelTimer t = timer;
+		if(t != null)
+		{
+			try{
+				t.stop();
+			}
+			finally{
+				timer = null;
+			}
+		}
+	}
+	
+	public boolean isRunning()
+	{
+		return timer != null;
+	}
+	
+	public QoS4GroupSendDaemon setServerLauncher(ServerLauncher serverLauncher)
+	{
+		this.serverLauncher = serverLauncher;
+		return this;
+	}
+	
+	/**
+	 * 已重传的（成员）次数。
+	 */
+	public long getRetransmitCount()
+	{
+		return retransmitCount.sum();
+	}
+	
+	public int size()
+	{
+		return sentMessages.size();
+	}
+	
+	/**
+	 * 一条群消息：共用的编码数据、成员数组及其未应答位图。
+	 * <p>
+	 * 与 {@link QoS4SendDaemonRoot} 的条目一样，数据的引用归条目所有，只由赢得出队的一方释放；
+	 * 取用与释放都在条目的监视器下进行（池化的ByteBuf释放后可能已被另一条消息复用）。
+	 */
+	private class GroupEntry implements TimerTask
+	{
+		private final String fp;
+		private final int type;
+		private final String[] members;
+		private final BitSet pending;
+		private final ByteBuf frame;
+		/** 数据是否已释放，由条目的监视器保护 */
+		private boolean released = false;
+		private final long createTime = System.currentTimeMillis();
+		private volatile int retryCount = 0;
+		/** 被限速打断的一轮重传从哪个成员接着发，0表示不在一轮中途 */
+		private volatile int cursor = 0;
+		private volatile long deferredSince = 0;
+		/** 是否收到过成员的应答 */
+		private volatile boolean acked = false;
+		private volatile Timeout timeout = null;
+		
+		private GroupEntry(String fp, int type, String[] members, ByteBuf frame)
+		{
+			this.fp = fp;
+			this.type = type;
+			this.members = members;
+			this.frame = frame;
+			this.pending = new BitSet(members.length);
+			this.pending.set(0, members.length);
+		}
+		
+		private synchronized int nextPending(int from)
+		{
+			return pending.nextSetBit(from);
+		}
+		
+		private synchronized int pendingCount()
+		{
+			return pending.cardinality();
+		}
+		
+		/**
+		 * 取一份数据的retainedDuplicate（用完由调用方释放），数据已释放时返回null。
+		 */
+		private synchronized ByteBuf retainFrame()
+		{
+			return (released ? null : frame.retainedDuplicate());
+		}
+		
+		/**
+		 * 从编码数据还原出消息对象，数据已释放时返回null。
+		 */
+		private synchronized Protocal decode()
+		{
+			if(released)
+				return null;
+			byte[] b = ByteBufUtil.getBytes(frame);
+			return ProtocalFactory.parse(b, b.length);
+		}
+		
+		private synchronized void release()
+		{
+			if(!released)
+			{
+				released = true;
+				ReferenceCountUtil.safeRelease(frame);
+			}
+		}
+		
+		@Override
+		public void run(Timeout timeout)
+		{
+			onRetryDeadline(this);
+		}
+		
+		private void cancel()
+		{
+			Timeout t = timeout;
+			if(t != null)
+				t.cancel();
+		}
+	}
+}
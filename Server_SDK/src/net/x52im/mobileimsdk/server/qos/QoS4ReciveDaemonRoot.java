@@ -23,15 +23,35 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.x52im.mobileimsdk.server.protocal.Protocal;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * QoS接收方基类，用于识别对方因未收到应答而重传的重复消息。
+ * <p>
+ * 默认将收到的每个指纹在MESSAGES_VALID_TIME内精确保存，入站量大时内存占用随之线性增长。
+ * 开启 {@link #FILTER_DEDUP_ENABLED} 后（since 6.5），精确表只保留最近 {@link #FILTER_RECENT_WINDOW} 内的指纹
+ * （绝大多数重传都发生在这一窗口内），更早的指纹由按时间分片轮转的布隆过滤器 {@link RotatingBloomFilter} 兜底，
+ * 内存固定为其容量决定的大小，代价是窗口外的新消息有约 {@link #FILTER_FPP} 的概率被误判为重复。
+ */
 public class QoS4ReciveDaemonRoot
 {
 	private static Logger logger = LoggerFactory.getLogger(QoS4ReciveDaemonRoot.class);  
+	
+	/** 是否启用“精确近期窗口+轮转布隆过滤器”的去重模式，需在实例创建前设置，since 6.5 */
+	public static boolean FILTER_DEDUP_ENABLED = false;
+	/** 过滤器模式下精确表的保留时长（毫秒），since 6.5 */
+	public static int FILTER_RECENT_WINDOW = 30 * 1000;
+	/** 过滤器分片数，总有效期MESSAGES_VALID_TIME被均分为(分片数-1)个轮转周期，since 6.5 */
+	public static int FILTER_SLICE_COUNT = 4;
+	/** 每个轮转周期内预计收到的QoS消息数，决定过滤器容量（内存约为 分片数 x 该值 x 2.8字节 @4分片、fpp=0.0001），since 6.5 */
+	public static long FILTER_EXPECTED_INSERTIONS = 1000000;
+	/** 过滤器全部分片写满预计数量时整体的期望误判率（每个分片按 该值/分片数 确定容量），since 6.5 */
+	public static double FILTER_FPP = 0.0001;
 
 	private boolean DEBUG = false;
 	private int CHECH_INTERVAL = 5 * 60 * 1000; // 5分钟
@@ -41,6 +61,11 @@ public class QoS4ReciveDaemonRoot
 	private Runnable runnable = null;
 	private boolean _excuting = false;
 	private String debugTag = "";
+	private RotatingBloomFilter filter = null;
+	private long filterRotateInterval = 0;
+	private long lastFilterRotateTime = 0;
+	private final LongAdder exactHits = new LongAdder();
+	private final LongAdder filterHits = new LongAdder();
 	
 	public QoS4ReciveDaemonRoot(int CHECH_INTERVAL, int MESSAGES_VALID_TIME
 			, boolean DEBUG, String debugTag)
@@ -51,6 +76,20 @@ public class QoS4ReciveDaemonRoot
 			this.MESSAGES_VALID_TIME = MESSAGES_VALID_TIME;
 		this.DEBUG = DEBUG;
 		this.debugTag = debugTag;
+		
+		if(FILTER_DEDUP_ENABLED)
+		{
+			this.filter = new RotatingBloomFilter(FILTER_SLICE_COUNT, FILTER_EXPECTED_INSERTIONS, FILTER_FPP);
+			this.filterRotateInterval = this.MESSAGES_VALID_TIME / (filter.getSliceCount() - 1);
+			this.lastFilterRotateTime = System.currentTimeMillis();
+			logger.info("【IMCORE"+this.debugTag+"】【QoS接收方】已启用过滤器去重模式，分片"+filter.getSliceCount()
+					+"个，轮转周期"+filterRotateInterval+"ms，固定占用"+(filter.getMemoryBytes() / 1024)+"KB.");
+		}
+	}
+	
+	private int getRecievedValidTime()
+	{
+		return filter == null ? MESSAGES_VALID_TIME : Math.min(MESSAGES_VALID_TIME, FILTER_RECENT_WINDOW);
 	}
 	
 	private void doTaskOnece()
@@ -71,14 +110,23 @@ public class QoS4ReciveDaemonRoot
 		        long value = entry.getValue();
 		        
 		        long delta = System.currentTimeMillis() - value;
-				if(delta >= MESSAGES_VALID_TIME)
+				if(delta >= getRecievedValidTime())
 				{
 					if(DEBUG)
 						logger.debug("【IMCORE"+this.debugTag+"】【QoS接收方】指纹为"+key+"的包已生存"+delta
-							+"ms(最大允许"+MESSAGES_VALID_TIME+"ms), 马上将删除之.");
+							+"ms(最大允许"+getRecievedValidTime()+"ms), 马上将删除之.");
 					recievedMessages.remove(key);
 				}
 		    }  
+		    
+		    if(filter != null && System.currentTimeMillis() - lastFilterRotateTime >= filterRotateInterval)
+		    {
+		    	logger.info("【IMCORE"+this.debugTag+"】【QoS接收方】去重过滤器轮转，本周期精确表命中"+exactHits.sumThenReset()
+		    			+"次、仅过滤器命中"+filterHits.sumThenReset()+"次(其中含误判)，轮转前估算误判率"
+		    			+String.format("%.6f", filter.getEstimatedFalsePositiveRate())+".");
+		    	filter.rotate();
+		    	lastFilterRotateTime = System.currentTimeMillis();
+		    }
 		}
 
 		if(DEBUG)
@@ -108,8 +156,13 @@ public class QoS4ReciveDaemonRoot
 				doTaskOnece();
 			}
 		}
-		, CHECH_INTERVAL
-		, CHECH_INTERVAL);
+		, getCheckInterval()
+		, getCheckInterval());
+	}
+	
+	private int getCheckInterval()
+	{
+		return filter == null ? CHECH_INTERVAL : Math.min(CHECH_INTERVAL, FILTER_RECENT_WINDOW);
 	}
 	
 	public void stop()
@@ -153,12 +206,37 @@ public class QoS4ReciveDaemonRoot
 	private void putImpl(String fingerPrintOfProtocal)
 	{
 		if(fingerPrintOfProtocal != null)
+		{
 			recievedMessages.put(fingerPrintOfProtocal, System.currentTimeMillis());
+			if(filter != null)
+				filter.put(fingerPrintOfProtocal);
+		}
 	}
 	
 	public boolean hasRecieved(String fingerPrintOfProtocal)
 	{
-		return recievedMessages.containsKey(fingerPrintOfProtocal);
+		if(recievedMessages.containsKey(fingerPrintOfProtocal))
+		{
+			if(filter != null)
+				exactHits.increment();
+			return true;
+		}
+		if(filter != null && fingerPrintOfProtocal != null && filter.mightContain(fingerPrintOfProtocal))
+		{
+			filterHits.increment();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 过滤器模式下按当前填充率估算的误判率，未启用过滤器模式时返回0。
+	 * 
+	 * @since 6.5
+	 */
+	public double getEstimatedFalsePositiveRate()
+	{
+		return filter == null ? 0 : filter.getEstimatedFalsePositiveRate();
 	}
 
 	public int size()
@@ -16,36 +16,102 @@
  */
 package net.x52im.mobileimsdk.server.qos;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import net.x52im.mobileimsdk.server.ServerLauncher;
-import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.network.Gateway;
+import net.x52im.mobileimsdk.server.network.SessionContext;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+import net.x52im.mobileimsdk.server.utils.DeliveryScheduler;
 import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * QoS发送方基类。
+ * <p>
+ * 自6.5起不再用定时器周期性扫描全部待应答消息，而是基于时间轮（{@link HashedWheelTimer}）为每条消息
+ * 在其精确的重传时刻单独调度：放入时调度首次重传，每次重传后再调度下一次，达到重传上限后的那次到期即判定为丢包；
+ * 收到应答时直接取消该条目的调度（O(1)）。时间轮的精度为 {@link #WHEEL_TICK_DURATION} 毫秒，
+ * 与待应答消息的数量无关。
+ * <p>
+ * 待应答消息按key的哈希分成 {@link #QOS_SHARD_COUNT} 个分片，每个分片独占自己的队列和时间轮工作线程，
+ * 分片之间没有任何共享状态，重传吞吐随CPU核数扩展。
+ * <p>
+ * 队列中不保存消息对象本身，而是保存其首次发送时编码好的数据（池化堆外内存），堆上只留指纹、接收方等少量字段；
+ * 重传时直接写出该数据的retainedDuplicate，不再重新序列化。只有判定丢包等少数场合才会从中解码出消息对象。
+ * <p>
+ * 全节点的重传受一个令牌桶（{@link #RETRANSMIT_RATE}/{@link #RETRANSMIT_BURST}）限速，某个网段整体失联时
+ * 大量同时到期的重传不会一次性涌向本已拥塞的链路：拿不到令牌的重传带随机抖动推迟到稍后的tick，
+ * 普通聊天消息还须给控制类消息及等待已久的消息留出 {@link #RETRANSMIT_LOW_PRIORITY_RESERVE} 的余量，
+ * 推迟超过 {@link #RETRANSMIT_MAX_DEFER} 仍未能重传的判定为丢包。
+ */
 public class QoS4SendDaemonRoot
 {
 	private static Logger logger = LoggerFactory.getLogger(QoS4SendDaemonRoot.class);  
 	
+	/** 时间轮每格的时长（毫秒），即重传时刻的最大误差，since 6.5 */
+	public static int WHEEL_TICK_DURATION = 100;
+	/** 时间轮的格数（轮长为 格数 x 每格时长，超出一轮的任务按轮次挂在对应格上），since 6.5 */
+	public static int WHEEL_TICKS_PER_WHEEL = 512;
+	/** 分片数（每个分片一个时间轮线程），需在实例创建前设置，since 6.5 */
+	public static int QOS_SHARD_COUNT = Math.min(Runtime.getRuntime().availableProcessors(), 32);
+	/** 全节点每秒允许的重传次数，0表示不限制，since 6.5 */
+	public static int RETRANSMIT_RATE = 5000;
+	/** 重传令牌桶最多积攒的令牌数（允许的瞬时突发），since 6.5 */
+	public static int RETRANSMIT_BURST = 10000;
+	/** 普通优先级的重传只在令牌余量高于 突发数 x 该比例 时才进行，其余留给高优先级，since 6.5 */
+	public static double RETRANSMIT_LOW_PRIORITY_RESERVE = 0.2;
+	/** 自首次发出起超过该时长（毫秒）的消息，其重传按高优先级处理，since 6.5 */
+	public static long RETRANSMIT_PRIORITY_AGE = 10 * 1000;
+	/** 拿不到令牌时推迟重传的随机抖动上限（毫秒，另加一个时间轮tick），since 6.5 */
+	public static int RETRANSMIT_DEFER_JITTER = 1000;
+	/** 重传被连续推迟超过该时长（毫秒）即放弃并判定为丢包，0表示不放弃，since 6.5 */
+	public static long RETRANSMIT_MAX_DEFER = 60 * 1000;
+	
+	private static final RetransmitBudget retransmitBudget = new RetransmitBudget();
+	/** 重传预算是全节点共享的，因其推迟、放弃的次数也按全节点统计（含 {@link QoS4GroupSendDaemon}、{@link QoS4SeqSendDaemonS2C}） */
+	static final LongAdder deferredRetransmitCount = new LongAdder();
+	static final LongAdder droppedRetransmitCount = new LongAdder();
+	
 	private boolean DEBUG = false;
 	private ServerLauncher serverLauncher = null;
-	private ConcurrentSkipListMap<String, Protocal> sentMessages = new ConcurrentSkipListMap<String, Protocal>();
-	private ConcurrentMap<String, Long> sendMessagesTimestamp = new ConcurrentHashMap<String, Long>();
+	private final Shard[] shards;
+	/** 按接收方用户id索引的未应答消息，增删均在compute内完成，读取时需同步在该集合上 */
+	private final ConcurrentMap<String, Set<QoSEntry>> recipientIndex = new ConcurrentHashMap<String, Set<QoSEntry>>();
 	private int CHECH_INTERVAL = 5000;
 	private int MESSAGES_JUST$NOW_TIME = 2 * 1000;
-	private int QOS_TRY_COUNT = 1;
-	private boolean _excuting = false;
-	private Timer timer = null;
+	private volatile int QOS_TRY_COUNT = 1;
+	private volatile boolean running = false;
+	private volatile QoSJournal journal = null;
+	private final LongAdder retransmitCount = new LongAdder();
 	private String debugTag = "";
 	
 	public QoS4SendDaemonRoot(int CHECH_INTERVAL
@@ -61,163 +127,311 @@ public class QoS4SendDaemonRoot
 			this.QOS_TRY_COUNT = QOS_TRY_COUNT;
 		this.DEBUG = DEBUG;
 		this.debugTag = debugTag;
+		
+		this.shards = new Shard[Math.max(1, QOS_SHARD_COUNT)];
+		for(int i = 0; i < shards.length; i++)
+			shards[i] = new Shard();
+	}
+	
+	private Shard shardOf(String key)
+	{
+		int h = key.hashCode();
+		return shards[((h ^ (h >>> 16)) & 0x7fffffff) % shards.length];
+	}
+	
+	/**
+	 * 距上次发出多久后需要重传（毫秒）。
+	 * <p>
+	 * 重传间隔沿用CHECH_INTERVAL，且不小于MESSAGES_JUST$NOW_TIME，以免应答还在途中就被重传。
+	 * 
+	 * @since 6.5
+	 */
+	protected long getRetryDelay(String userId, String deviceClass, int retryCount)
+	{
+		return Math.max(CHECH_INTERVAL, MESSAGES_JUST$NOW_TIME);
+	}
+	
+	/**
+	 * 重传次数已用完后，距最后一次发出多久仍未收到应答即判定丢包（毫秒）。
+	 * <p>
+	 * 默认与 {@link #getRetryDelay(String, String, int)} 相同；子类缩短重传间隔（如按RTT自适应）时
+	 * 可让判定丢包保持较长的等待，以免应答稍有延迟就被误判为丢包。
+	 * 
+	 * @since 6.5
+	 */
+	protected long getLossDelay(String userId, String deviceClass, int retryCount)
+	{
+		return getRetryDelay(userId, deviceClass, retryCount);
 	}
 	
-	private void doTaskOnece()
+	private void schedule(QoSEntry entry, long delay)
 	{
-		if(!_excuting)
+		HashedWheelTimer t = entry.shard.timer;
+		if(t == null)
+			return;
+		
+		entry.timeout = t.newTimeout(entry, delay, TimeUnit.MILLISECONDS);
+		// 与remove()并发时条目可能已被移除，此时取消刚挂上的调度
+		if(entry.shard.sentMessages.get(entry.key) != entry)
+			entry.timeout.cancel();
+	}
+	
+	private void onRetryDeadline(QoSEntry entry)
+	{
+		if(entry.shard.sentMessages.get(entry.key) != entry)
+			return;
+		
+		try
 		{
-			ArrayList<Protocal> lostMessages = new ArrayList<Protocal>();
-			_excuting = true;
-			try
+			if(entry.retryCount >= QOS_TRY_COUNT)
 			{
-				if(DEBUG && sentMessages.size() > 0)
-					logger.debug("【IMCORE"+this.debugTag+"】【QoS发送方】====== 消息发送质量保证线程运行中, 当前需要处理的列表长度为"+sentMessages.size()+"...");
-
-				//** 遍历HashMap方法二（在大数据量情况下，方法二的性能要5倍优于方法一）
-				Iterator<Entry<String, Protocal>> entryIt = sentMessages.entrySet().iterator();  
-			    while(entryIt.hasNext())
-			    {  
-			        Entry<String, Protocal> entry = entryIt.next();  
-			        String key = entry.getKey();  
-			        final Protocal p = entry.getValue();
-			        
-					if(p != null && p.isQoS())
-					{
-						if(p.getRetryCount() >= QOS_TRY_COUNT)
-						{
-							if(DEBUG)
-								logger.debug("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+p.getFp()
-										+"的消息包重传次数已达"+p.getRetryCount()+"(最多"+QOS_TRY_COUNT+"次)上限，将判定为丢包！");
-
-							lostMessages.add((Protocal)p.clone());
-							remove(p.getFp());
-						}
-						else
-						{
-							//### 2015104 Bug Fix: 解决了无线网络延较大时，刚刚发出的消息在其应答包还在途中时被错误地进行重传
-							Long sendMessageTimestamp = sendMessagesTimestamp.get(key);
-							long delta = System.currentTimeMillis() - (sendMessageTimestamp == null?0 : sendMessageTimestamp);
-							if(delta <= MESSAGES_JUST$NOW_TIME)
-							{
-								if(DEBUG)
-									logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+key+"的包距\"刚刚\"发出才"+delta
-										+"ms(<="+MESSAGES_JUST$NOW_TIME+"ms将被认定是\"刚刚\"), 本次不需要重传哦.");
-							}
-							//### 2015103 Bug Fix END
-							else
-							{
-								MBObserver sendResultObserver = new MBObserver(){
-									@Override
-									public void update(boolean sendOK, Object extraObj)
-									{
-										if(sendOK)
-										{
-											if(DEBUG)
-											{
-												logger.debug("【IMCORE"+debugTag+"】【QoS发送方】指纹为"+p.getFp()
-														+"的消息包已成功进行重传，此次之后重传次数已达"
-														+p.getRetryCount()+"(最多"+QOS_TRY_COUNT+"次).");
-											}
-										}
-										else
-										{
-											if(DEBUG)
-											{
-												logger.warn("【IMCORE"+debugTag+"】【QoS发送方】指纹为"+p.getFp()
-														+"的消息包重传失败，它的重传次数之前已累计为"
-														+p.getRetryCount()+"(最多"+QOS_TRY_COUNT+"次).");
-											}
-										}
-									}
-								};
-								
-								LocalSendHelper.sendData(p, sendResultObserver);
-								p.increaseRetryCount();
-							}
-						}
-					}
-					else
-					{
-						remove(key);
-					}
-				}
+				if(DEBUG)
+					logger.debug("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+entry.key
+							+"的消息包重传次数已达"+entry.retryCount+"(最多"+QOS_TRY_COUNT+"次)上限，将判定为丢包！");
+				declareLost(entry);
+				return;
 			}
-			catch (Exception eee)
+			
+			if(!acquireRetransmitBudget(entry))
 			{
-				if(DEBUG)
-					logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】消息发送质量保证线程运行时发生异常,"+eee.getMessage(), eee);
+				long now = System.currentTimeMillis();
+				if(entry.deferredSince <= 0)
+					entry.deferredSince = now;
+				
+				if(RETRANSMIT_MAX_DEFER > 0 && now - entry.deferredSince >= RETRANSMIT_MAX_DEFER)
+				{
+					droppedRetransmitCount.increment();
+					logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+entry.key+"的消息包因重传限速已被推迟"
+							+(now - entry.deferredSince)+"ms，放弃重传并判定为丢包！");
+					declareLost(entry);
+				}
+				else
+				{
+					deferredRetransmitCount.increment();
+					schedule(entry, WHEEL_TICK_DURATION + ThreadLocalRandom.current().nextInt(Math.max(1, RETRANSMIT_DEFER_JITTER)));
+				}
+				return;
 			}
+			entry.deferredSince = 0;
+			
+			retransmit(entry, null);
+			retransmitCount.increment();
+			entry.retryCount++;
+		}
+		catch (Exception eee)
+		{
+			if(DEBUG)
+				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+entry.key+"的消息包重传时发生异常,"+eee.getMessage(), eee);
+		}
+		
+		// 无论本次重传是否成功都调度下一次检查，下一次到期时再决定继续重传还是判定丢包
+		schedule(entry, getRetryDelay(entry));
+	}
+	
+	private void declareLost(QoSEntry entry)
+	{
+		if(entry.shard.sentMessages.remove(entry.key, entry))
+		{
+			unindex(entry);
+			QoSJournal j = journal;
+			if(j != null)
+				j.appendAck(entry.key);
 
-			if(lostMessages != null && lostMessages.size() > 0)
-				notifyMessageLost(lostMessages);
-
-			_excuting = false;
+			ArrayList<Protocal> lostMessages = new ArrayList<Protocal>(1);
+			lostMessages.add(entry.decode());
+			entry.release();
+			notifyMessageLost(lostMessages);
 		}
 	}
 	
+	/**
+	 * 控制类消息及自首次发出已久的消息为高优先级，可用尽令牌；普通消息须留出余量。
+	 */
+	private boolean acquireRetransmitBudget(QoSEntry entry)
+	{
+		return tryAcquireRetransmit(entry.type, entry.createTime);
+	}
+	
+	/**
+	 * 从全节点共享的重传令牌桶中取一个令牌（其它QoS发送方如 {@link QoS4GroupSendDaemon}、{@link QoS4SeqSendDaemonS2C} 也经由此处限速）。
+	 * 
+	 * @param type 消息类型，非普通聊天数据为高优先级
+	 * @param createTime 消息首次发出的时间，已超过 {@link #RETRANSMIT_PRIORITY_AGE} 的为高优先级
+	 * @since 6.5
+	 */
+	static boolean tryAcquireRetransmit(int type, long createTime)
+	{
+		if(RETRANSMIT_RATE <= 0)
+			return true;
+		
+		boolean high = (type != ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA
+				|| System.currentTimeMillis() - createTime >= RETRANSMIT_PRIORITY_AGE);
+		return retransmitBudget.tryAcquire(RETRANSMIT_RATE, RETRANSMIT_BURST
+				, high ? 0 : RETRANSMIT_BURST * RETRANSMIT_LOW_PRIORITY_RESERVE);
+	}
+	
+	/**
+	 * 到下一次到期的时长：重传次数已用完时下一次到期即判定丢包，按 {@link #getLossDelay(String, String, int)} 计。
+	 */
+	private long getRetryDelay(QoSEntry entry)
+	{
+		if(entry.retryCount >= QOS_TRY_COUNT)
+			return getLossDelay(entry.userId, entry.deviceClass, entry.retryCount);
+		return getRetryDelay(entry.userId, entry.deviceClass, entry.retryCount);
+	}
+	
+	/**
+	 * 把条目中保存的编码数据直接写到接收方会话（session为null时按接收方及设备类别查找）。
+	 */
+	private void retransmit(final QoSEntry entry, Channel session) throws Exception
+	{
+		if(session == null)
+			session = OnlineProcessor.getInstance().getOnlineSession(entry.userId, entry.deviceClass);
+		if(session == null || !session.isActive())
+		{
+			if(DEBUG)
+				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+entry.key+"的消息包的接收方"+entry.userId+"已不在线，本次重传没有继续.");
+			return;
+		}
+		
+		final SessionContext ctx = SessionContext.get(session);
+		// 接收方已改连到支持会话序号的会话：解码后交由LocalSendHelper分配序号，此后由序号窗口跟踪
+		if(entry.type == ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA && ctx != null && ctx.isSeqAck() && ctx.isLogined())
+		{
+			Protocal p = entry.decode();
+			if(p != null)
+				LocalSendHelper.sendData(session, p, null);
+			return;
+		}
+		
+		ByteBuf payload = entry.retainFrame();
+		// 并发收到了应答，数据已释放
+		if(payload == null)
+			return;
+		
+		Object msg = (Gateway.isWebSocketChannel(session) ? new TextWebSocketFrame(payload) : payload);
+		DeliveryScheduler.getInstance().writeAndFlush(session, msg, new ChannelFutureListener(){
+			@Override
+			public void operationComplete(ChannelFuture future)
+			{
+				if(future.isSuccess())
+				{
+					if(ctx != null)
+						ctx.incrementSent();
+					if(DEBUG)
+						logger.debug("【IMCORE"+debugTag+"】【QoS发送方】指纹为"+entry.key
+								+"的消息包已成功进行重传，此次之后重传次数已达"
+								+entry.retryCount+"(最多"+QOS_TRY_COUNT+"次).");
+				}
+				else
+				{
+					if(DEBUG)
+						logger.warn("【IMCORE"+debugTag+"】【QoS发送方】指纹为"+entry.key
+								+"的消息包重传失败，它的重传次数之前已累计为"
+								+entry.retryCount+"(最多"+QOS_TRY_COUNT+"次).");
+				}
+			}
+		});
+	}
+	
 	protected void notifyMessageLost(ArrayList<Protocal> lostMessages)
 	{
 		if(serverLauncher != null && serverLauncher.getServerMessageQoSEventListener() != null)
 			serverLauncher.getServerMessageQoSEventListener().messagesLost(lostMessages);
 	}
 	
+	/**
+	 * 启动时间轮。启动前已放入的消息此时才开始调度：immediately为true时立即检查一次，否则在一个重传间隔后检查。
+	 */
 	public QoS4SendDaemonRoot startup(boolean immediately)
 	{
 		stop();
 		
-		timer = new Timer();
-		timer.scheduleAtFixedRate(new TimerTask() 
+		for(int i = 0; i < shards.length; i++)
 		{
-			@Override
-			public void run()
-			{
-				doTaskOnece();
-			}
+			Shard shard = shards[i];
+			shard.timer = new HashedWheelTimer(new DefaultThreadFactory("mobileimsdk-qos-send-" + i)
+					, WHEEL_TICK_DURATION, TimeUnit.MILLISECONDS, WHEEL_TICKS_PER_WHEEL);
+			for(QoSEntry e : shard.sentMessages.values())
+				schedule(e, immediately ? 0 : getRetryDelay(e));
 		}
-		, immediately ? 0 : CHECH_INTERVAL
-		, CHECH_INTERVAL);
+		running = true;
 		
-		logger.debug("【IMCORE"+this.debugTag+"】【QoS发送方】====== 消息发送质量保证线程已成功启动");
+		logger.debug("【IMCORE"+this.debugTag+"】【QoS发送方】====== 消息发送质量保证时间轮已成功启动");
 		
 		return this;
 	}
 	
+	/**
+	 * 停止时间轮，尚未应答的消息仍保留在队列中，再次启动后继续调度。
+	 */
 	public void stop()
 	{
-		if(timer != null)
+		running = false;
+		for(Shard shard : shards)
 		{
-			try{
-				timer.cancel();
-			}
-			finally{
-				timer = null;
+			HashedWheelTimer t = shard.timer;
+			if(t != null)
+			{
+				try{
+					t.stop();
+				}
+				finally{
+					shard.timer = null;
+				}
 			}
 		}
 	}
 	
 	public boolean isRunning()
 	{
-		return timer != null;
+		return running;
+	}
+	
+	/**
+	 * 同一条消息多端投递时每个设备各占一个QoS条目，条目key为“指纹@设备类别”（未指定设备类别时即为指纹本身）。
+	 * 
+	 * @since 6.5
+	 */
+	public static String qosKey(String fingerPrint, String deviceClass)
+	{
+		return (deviceClass == null ? fingerPrint : fingerPrint + "@" + deviceClass);
 	}
 	
 	public boolean exist(String fingerPrint)
 	{
-		return sentMessages.get(fingerPrint) != null;
+		return shardOf(fingerPrint).sentMessages.get(fingerPrint) != null;
+	}
+	
+	public boolean exist(String fingerPrint, String deviceClass)
+	{
+		return exist(qosKey(fingerPrint, deviceClass));
 	}
 	
 	public void put(Protocal p)
+	{
+		put(p, null);
+	}
+	
+	/**
+	 * 放入一条已发出的消息，frame为其发出时编码好的数据（为null时在此编码），所有权移交给本队列（出队时释放）。
+	 * 
+	 * @since 6.5
+	 */
+	public void put(Protocal p, ByteBuf frame)
 	{
 		if(p == null)
 		{
 			if(DEBUG)
 				logger.warn(this.debugTag+"Invalid arg p==null.");
+			ReferenceCountUtil.safeRelease(frame);
 			return;
 		}
 		if(p.getFp() == null)
 		{
 			if(DEBUG)
 				logger.warn(this.debugTag+"Invalid arg p.getFp() == null.");
+			ReferenceCountUtil.safeRelease(frame);
 			return;
 		}
 		
@@ -225,40 +439,272 @@ public class QoS4SendDaemonRoot
 		{
 			if(DEBUG)
 				logger.warn(this.debugTag+"This protocal is not QoS pkg, ignore it!");
+			ReferenceCountUtil.safeRelease(frame);
 			return;
 		}
 		
-		if(sentMessages.get(p.getFp()) != null)
+		if(frame == null)
+			frame = encode(p);
+		
+		String key = qosKey(p.getFp(), p.getDeviceClass());
+		// 先记日志再入队，保证日志中同一key的放入记录总在其应答记录之前；
+		// “记日志+入队”整体持日志的放入锁，日志压缩切段时不会落在两步之间（见 QoSJournal#compact）
+		QoSEntry entry = new QoSEntry(shardOf(key), key, p, frame);
+		QoSEntry old;
+		QoSJournal j = journal;
+		Lock sendLock = (j != null ? j.sendLock() : null);
+		if(sendLock != null)
+			sendLock.lock();
+		try
+		{
+			if(j != null)
+				j.appendSend(key, p.getDeviceClass(), frame);
+			old = entry.shard.sentMessages.put(key, entry);
+		}
+		finally
+		{
+			if(sendLock != null)
+				sendLock.unlock();
+		}
+		if(old != null)
 		{
 			if(DEBUG)
-				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+p.getFp()+"的消息已经放入了发送质量保证队列，该消息为何会重复？（生成的指纹码重复？还是重复put？）");
+				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+key+"的消息已经放入了发送质量保证队列，该消息为何会重复？（生成的指纹码重复？还是重复put？）");
+			old.cancel();
+			unindex(old);
+			old.release();
 		}
+		index(entry);
 		
-		sentMessages.put(p.getFp(), p);
-		sendMessagesTimestamp.put(p.getFp(), System.currentTimeMillis());
+		schedule(entry, getRetryDelay(entry));
+	}
+	
+	private static ByteBuf encode(Protocal p)
+	{
+		byte[] b = p.toBytes();
+		return PooledByteBufAllocator.DEFAULT.directBuffer(b.length).writeBytes(b);
 	}
 	
 	public void remove(final String fingerPrint)
 	{
+		removeEntry(fingerPrint);
+	}
+	
+	private QoSEntry removeEntry(final String fingerPrint)
+	{
+		QoSEntry result = null;
 		try
 		{
 			// remove it
-			sendMessagesTimestamp.remove(fingerPrint);
-			Object result = sentMessages.remove(fingerPrint);
+			result = shardOf(fingerPrint).sentMessages.remove(fingerPrint);
+			if(result != null)
+			{
+				result.cancel();
+				unindex(result);
+				result.release();
+				QoSJournal j = journal;
+				if(j != null)
+					j.appendAck(fingerPrint);
+			}
 			if(DEBUG)
 				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+fingerPrint+"的消息已成功从发送质量保证队列中移除(可能是收到接收方的应答也可能是达到了重传的次数上限)，重试次数="
-						+(result != null?((Protocal)result).getRetryCount():"none呵呵."));
+						+(result != null?result.retryCount:"none呵呵."));
 		}
 		catch (Exception e)
 		{
 			if(DEBUG)
 				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】remove(fingerPrint)时出错了：", e);
 		}
+		return result;
+	}
+	
+	public void remove(String fingerPrint, String deviceClass)
+	{
+		remove(qosKey(fingerPrint, deviceClass));
+	}
+	
+	/**
+	 * 接收方重新登陆后调用：把该用户在此设备类别上所有未应答的消息立即批量重发到新会话，
+	 * 并重置它们的重传计数与重传计时，而不必等到下一次重传到期（届时很可能已被判定为丢包）。
+	 * 
+	 * @return 重发的消息条数
+	 * @since 6.5
+	 */
+	public int resendPending(Channel session, String userId, String deviceClass)
+	{
+		Set<QoSEntry> entries = (userId == null ? null : recipientIndex.get(userId));
+		if(entries == null)
+			return 0;
+		
+		List<QoSEntry> snapshot;
+		synchronized (entries)
+		{
+			snapshot = new ArrayList<QoSEntry>(entries);
+		}
+		
+		String dc = OnlineProcessor.normalizeDeviceClass(deviceClass);
+		int count = 0;
+		for(QoSEntry e : snapshot)
+		{
+			if(!dc.equals(OnlineProcessor.normalizeDeviceClass(e.deviceClass))
+					|| e.shard.sentMessages.get(e.key) != e)
+				continue;
+			
+			e.cancel();
+			e.retryCount = 0;
+			e.sentTime = System.currentTimeMillis();
+			try
+			{
+				retransmit(e, session);
+			}
+			catch (Exception ex)
+			{
+				logger.warn("【IMCORE"+this.debugTag+"】【QoS发送方】指纹为"+e.key+"的消息包在接收方重新登陆后重发失败："+ex.getMessage());
+			}
+			schedule(e, getRetryDelay(e));
+			count++;
+		}
+		
+		if(count > 0)
+			logger.debug("【IMCORE"+this.debugTag+"】【QoS发送方】用户"+userId+"重新登陆，已将其"+count+"条未应答消息立即重发.");
+		return count;
+	}
+	
+	private void index(final QoSEntry e)
+	{
+		if(e.userId == null)
+			return;
+		recipientIndex.compute(e.userId, new BiFunction<String, Set<QoSEntry>, Set<QoSEntry>>(){
+			@Override
+			public Set<QoSEntry> apply(String userId, Set<QoSEntry> entries)
+			{
+				if(entries == null)
+					entries = new HashSet<QoSEntry>(4);
+				synchronized (entries)
+				{
+					entries.add(e);
+				}
+				return entries;
+			}
+		});
+	}
+	
+	private void unindex(final QoSEntry e)
+	{
+		if(e.userId == null)
+			return;
+		recipientIndex.computeIfPresent(e.userId, new BiFunction<String, Set<QoSEntry>, Set<QoSEntry>>(){
+			@Override
+			public Set<QoSEntry> apply(String userId, Set<QoSEntry> entries)
+			{
+				synchronized (entries)
+				{
+					entries.remove(e);
+					return entries.isEmpty() ? null : entries;
+				}
+			}
+		});
+	}
+	
+	/**
+	 * 收到应答时调用：移除该条目，并返回可用作RTT样本的“放入->应答”时长（毫秒）。
+	 * 条目不存在或已被重传过（无法确定应答对应哪一次发送）时返回-1。
+	 * 
+	 * @since 6.5
+	 */
+	public long acknowledge(String fingerPrint, String deviceClass)
+	{
+		QoSEntry e = removeEntry(qosKey(fingerPrint, deviceClass));
+		if(e == null || e.retryCount > 0)
+			return -1;
+		return System.currentTimeMillis() - e.sentTime;
+	}
+	
+	/**
+	 * 从 {@link QoSJournal} 恢复一条未应答消息（不再写日志）。
+	 * 
+	 * @since 6.5
+	 */
+	void restore(String key, Protocal p)
+	{
+		QoSEntry entry = new QoSEntry(shardOf(key), key, p, encode(p));
+		QoSEntry old = entry.shard.sentMessages.put(key, entry);
+		if(old != null)
+		{
+			old.cancel();
+			unindex(old);
+			old.release();
+		}
+		index(entry);
+		schedule(entry, getRetryDelay(entry));
+	}
+	
+	/**
+	 * 遍历当前全部未应答消息，供 {@link QoSJournal} 压缩使用；遍历期间被应答而释放的条目会被跳过。
+	 * 
+	 * @since 6.5
+	 */
+	void forEachPending(PendingVisitor visitor) throws IOException
+	{
+		for(Shard shard : shards)
+		{
+			for(QoSEntry e : shard.sentMessages.values())
+			{
+				ByteBuf frame = e.retainFrame();
+				if(frame == null)
+					continue;
+				try
+				{
+					visitor.visit(e.key, e.deviceClass, frame);
+				}
+				finally
+				{
+					frame.release();
+				}
+			}
+		}
+	}
+	
+	interface PendingVisitor
+	{
+		void visit(String key, String deviceClass, ByteBuf frame) throws IOException;
+	}
+	
+	void setJournal(QoSJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	/**
+	 * 已执行的重传次数（不含接收方重新登陆后的立即重发），since 6.5
+	 */
+	public long getRetransmitCount()
+	{
+		return retransmitCount.sum();
+	}
+	
+	/**
+	 * 全节点因重传限速而被推迟的次数（同一条消息可被推迟多次，含群消息及按会话序号投递的消息），since 6.5
+	 */
+	public long getDeferredRetransmitCount()
+	{
+		return deferredRetransmitCount.sum();
+	}
+	
+	/**
+	 * 全节点因推迟过久而被放弃（判定为丢包）的重传次数（含群消息及按会话序号投递的消息），since 6.5
+	 */
+	public long getDroppedRetransmitCount()
+	{
+		return droppedRetransmitCount.sum();
 	}
 	
 	public int size()
 	{
-		return sentMessages.size();
+		int size = 0;
+		for(Shard shard : shards)
+			size += shard.sentMessages.size();
+		return size;
 	}
 
 	public void setServerLauncher(ServerLauncher serverLauncher)
@@ -266,6 +712,23 @@ public class QoS4SendDaemonRoot
 		this.serverLauncher = serverLauncher;
 	}
 
+	/**
+	 * 设置重传次数上限（达到后的下一次到期即判定为丢包），0表示不重传。
+	 * 
+	 * @since 6.5
+	 */
+	public QoS4SendDaemonRoot setQoSTryCount(int qosTryCount)
+	{
+		if(qosTryCount >= 0)
+			this.QOS_TRY_COUNT = qosTryCount;
+		return this;
+	}
+	
+	public int getQoSTryCount()
+	{
+		return this.QOS_TRY_COUNT;
+	}
+	
 	public QoS4SendDaemonRoot setDebugable(boolean debugable)
 	{
 		this.DEBUG = debugable;
@@ -276,4 +739,122 @@ public class QoS4SendDaemonRoot
 	{
 		return this.DEBUG;
 	}
+	
+	/**
+	 * 全节点共享的重传令牌桶。
+	 */
+	private static class RetransmitBudget
+	{
+		private double tokens = -1;
+		private long lastRefillNanos = 0;
+		
+		/**
+		 * 令牌余量高于reserve时取走一个令牌并返回true。
+		 */
+		private synchronized boolean tryAcquire(int ratePerSecond, int burst, double reserve)
+		{
+			long now = System.nanoTime();
+			if(tokens < 0)
+				tokens = burst;
+			else
+				tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * ratePerSecond);
+			lastRefillNanos = now;
+			
+			if(tokens - 1 >= reserve)
+			{
+				tokens -= 1;
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * 一个分片：独占的待应答队列及驱动它的时间轮。
+	 */
+	private static class Shard
+	{
+		private final ConcurrentMap<String, QoSEntry> sentMessages = new ConcurrentHashMap<String, QoSEntry>();
+		private volatile HashedWheelTimer timer = null;
+	}
+	
+	/**
+	 * 一条待应答消息及其在时间轮上的当前调度，消息内容只以编码后的堆外数据保存。
+	 * <p>
+	 * 条目独占数据的一个引用，只由赢得出队的一方释放。池化的ByteBuf释放后会被回收复用，
+	 * 因此不能靠捕获IllegalReferenceCountException来判断数据已释放（对象可能已属于另一条消息）：
+	 * 取用数据（{@link #retainFrame()}、{@link #decode()}）与释放都在条目的监视器下进行，释放后不再取用。
+	 */
+	private class QoSEntry implements TimerTask
+	{
+		private final Shard shard;
+		private final String key;
+		private final String userId;
+		private final String deviceClass;
+		private final int type;
+		private final ByteBuf frame;
+		/** 数据是否已释放，由条目的监视器保护 */
+		private boolean released = false;
+		private volatile int retryCount;
+		private volatile Timeout timeout = null;
+		private volatile long sentTime = System.currentTimeMillis();
+		private final long createTime = sentTime;
+		private volatile long deferredSince = 0;
+		
+		private QoSEntry(Shard shard, String key, Protocal p, ByteBuf frame)
+		{
+			this.shard = shard;
+			this.key = key;
+			this.userId = p.getTo();
+			this.deviceClass = p.getDeviceClass();
+			this.type = p.getType();
+			this.frame = frame;
+			this.retryCount = p.getRetryCount();
+		}
+		
+		/**
+		 * 取一份数据的retainedDuplicate（用完由调用方释放），数据已释放时返回null。
+		 */
+		private synchronized ByteBuf retainFrame()
+		{
+			return (released ? null : frame.retainedDuplicate());
+		}
+		
+		/**
+		 * 从编码数据还原出消息对象（仅用于判定丢包等少数场合），数据已释放时返回null。
+		 */
+		private synchronized Protocal decode()
+		{
+			if(released)
+				return null;
+			byte[] b = ByteBufUtil.getBytes(frame);
+			Protocal p = ProtocalFactory.parse(b, b.length);
+			p.setDeviceClass(deviceClass);
+			for(int i = 0; i < retryCount; i++)
+				p.increaseRetryCount();
+			return p;
+		}
+		
+		private synchronized void release()
+		{
+			if(!released)
+			{
+				released = true;
+				ReferenceCountUtil.safeRelease(frame);
+			}
+		}
+		
+		@Override
+		public void run(Timeout timeout)
+		{
+			onRetryDeadline(this);
+		}
+		
+		private void cancel()
+		{
+			Timeout t = timeout;
+			if(t != null)
+				t.cancel();
+		}
+	}
 }
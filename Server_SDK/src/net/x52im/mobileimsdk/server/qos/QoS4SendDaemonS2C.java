@@ -16,8 +16,28 @@
  */
 package net.x52im.mobileimsdk.server.qos;
 
+import io.netty.channel.Channel;
+import net.x52im.mobileimsdk.server.network.SessionContext;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+
+/**
+ * 服务端到客户端消息的QoS发送方。
+ * <p>
+ * 自6.5起重传超时按接收会话实测的RTT自适应（见 {@link SessionContext#getRto(long, long)}），
+ * 每次重传后按指数退避加倍，尚无RTT样本的会话沿用固定的重传间隔。
+ * 自适应RTO只决定何时重传，判定丢包前仍至少等满固定的重传间隔（见 {@link #getLossDelay(String, String, int)}）。
+ */
 public class QoS4SendDaemonS2C extends QoS4SendDaemonRoot
 {
+	/** 是否按会话RTT自适应计算重传超时，since 6.5 */
+	public static boolean ADAPTIVE_RTO_ENABLED = true;
+	/** 自适应重传超时的下限（毫秒），since 6.5 */
+	public static long RTO_MIN = 300;
+	/** 重传超时（含退避后）的上限（毫秒），since 6.5 */
+	public static long RTO_MAX = 60 * 1000;
+	/** 每次重传后是否将重传超时加倍，since 6.5 */
+	public static boolean RTO_BACKOFF_ENABLED = true;
+	
 	private static volatile QoS4SendDaemonS2C instance = null;
 	
 	public static QoS4SendDaemonS2C getInstance()
@@ -36,4 +56,41 @@ public class QoS4SendDaemonS2C extends QoS4SendDaemonRoot
 	{
 		super(0, 0 , -1, true, "-本机QoS");
 	}
+	
+	@Override
+	protected long getRetryDelay(String userId, String deviceClass, int retryCount)
+	{
+		long rto = super.getRetryDelay(userId, deviceClass, retryCount);
+		if(!ADAPTIVE_RTO_ENABLED)
+			return rto;
+		
+		Channel session = OnlineProcessor.getInstance().getOnlineSession(userId, deviceClass);
+		return getAdaptiveRto(session != null ? SessionContext.get(session) : null, rto, retryCount);
+	}
+	
+	/**
+	 * 判定丢包不随自适应RTO缩短：至少等满固定的重传间隔，退避后的RTO更长时按RTO。
+	 * 否则在RTO_MIN=300ms、只重传1次时，约0.9秒没收到应答就会判定丢包，
+	 * 应答稍有延迟（网络切换、对端卡顿等）都会被误判并交给应用层按离线重复处理。
+	 */
+	@Override
+	protected long getLossDelay(String userId, String deviceClass, int retryCount)
+	{
+		return Math.max(super.getRetryDelay(userId, deviceClass, retryCount), getRetryDelay(userId, deviceClass, retryCount));
+	}
+	
+	/**
+	 * 按会话的RTT估计算出第retryCount次重传的超时（含下限、上限及退避），ctx为null或尚无样本时以defaultRto为基准。
+	 * 
+	 * @since 6.5
+	 */
+	public static long getAdaptiveRto(SessionContext ctx, long defaultRto, int retryCount)
+	{
+		long rto = (ctx != null ? ctx.getRto(WHEEL_TICK_DURATION, defaultRto) : defaultRto);
+		rto = Math.max(RTO_MIN, Math.min(RTO_MAX, rto));
+		
+		if(RTO_BACKOFF_ENABLED && retryCount > 0)
+			rto = Math.min(RTO_MAX, rto << Math.min(retryCount, 16));
+		return rto;
+	}
 }
@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoS4SeqSendDaemonS2C.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import io.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.x52im.mobileimsdk.server.ServerLauncher;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.s.PSeqSyncResponse;
+import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按会话序号投递的QoS发送方（服务端 -> 支持序号的客户端）。
+ * <p>
+ * 投递给某一接收设备的、来自同一对方的QoS消息组成一条“会话流”，服务端在流内按发送顺序分配单调递增
+ * 的序号。客户端按序号排序交付、去重，并周期性地回送累计应答（“已按序收到至第N条”）；发现缺号时
+ * 请求补发。与按指纹逐条跟踪的 {@link QoS4SendDaemonS2C} 相比：
+ * <ul>
+ * <li>每条流只需保存未确认的窗口，一个累计应答即可确认窗口内的多条消息；</li>
+ * <li>客户端只需为每条流记住已交付的最大序号即可去重，不再需要长期保存指纹；</li>
+ * <li>接收方按序交付，消息之间的先后顺序得到保证。</li>
+ * </ul>
+ * 超时未确认时按“回退N帧”重传窗口中的全部消息，重传 {@link #QOS_TRY_COUNT} 次后仍未确认的判定为丢失，
+ * 通过 {@link net.x52im.mobileimsdk.server.event.MessageQoSEventListenerS2C#messagesLost} 通知应用层。
+ * <p>
+ * 超时重传与客户端请求的补发都是重传，每条消息占用全节点重传令牌桶（见 {@link QoS4SendDaemonRoot#RETRANSMIT_RATE}）
+ * 中的一个令牌：令牌不足时超时重传记下进度，下次检查时从断点接着发（一轮全部发完才计一次重传），
+ * 推迟超过 {@link QoS4SendDaemonRoot#RETRANSMIT_MAX_DEFER} 的判定窗口中的消息丢失；补发请求中余下的消息则留在窗口中，
+ * 由超时重传或客户端的下一次补发请求再发。推迟、放弃的次数与其它QoS发送方一起按全节点统计。
+ * 
+ * @since 6.5
+ */
+public class QoS4SeqSendDaemonS2C
+{
+	private static Logger logger = LoggerFactory.getLogger(QoS4SeqSendDaemonS2C.class);
+	private static volatile QoS4SeqSendDaemonS2C instance = null;
+	
+	/** 检查周期（毫秒） */
+	public static int CHECH_INTERVAL = 5000;
+	/** 窗口中最早的未确认消息发出后多久未被确认即重传（毫秒） */
+	public static int MESSAGES_JUST$NOW_TIME = 2 * 1000;
+	/** 最多重传次数 */
+	public static int QOS_TRY_COUNT = 1;
+	/** 每条会话流最多保留的未确认消息数，超出时最早的消息判定为丢失 */
+	public static int MAX_WINDOW_SIZE = 1000;
+	/** 窗口为空的会话流闲置多久后释放（释放后再投递将以新的纪元重新开始编号） */
+	public static long STREAM_IDLE_TIME = 10 * 60 * 1000;
+	
+	public static boolean DEBUG = false;
+	
+	/** 纪元生成器：以启动时间为种子，保证服务端重启后新流的纪元与之前的不同 */
+	private static final AtomicLong epochGenerator = new AtomicLong(System.currentTimeMillis());
+	
+	/** key=“接收者@设备类别|对方”（见 {@link #streamKey}） */
+	private final ConcurrentMap<String, SeqStream> streams = new ConcurrentHashMap<String, SeqStream>();
+	
+	private ServerLauncher serverLauncher = null;
+	private Timer timer = null;
+	
+	public static QoS4SeqSendDaemonS2C getInstance()
+	{
+		if (instance == null) {
+			synchronized (QoS4SeqSendDaemonS2C.class) {
+				if (instance == null) {
+					instance = new QoS4SeqSendDaemonS2C();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private QoS4SeqSendDaemonS2C()
+	{
+	}
+	
+	public static String streamKey(String userId, String deviceClass, String peer)
+	{
+		return QoS4SendDaemonRoot.qosKey(userId, OnlineProcessor.normalizeDeviceClass(deviceClass)) + "|" + peer;
+	}
+	
+	/**
+	 * 为即将发往某设备的QoS消息分配会话序号，并将其放入该流的未确认窗口。
+	 * <p>
+	 * 已分配过序号的包（即重传的包）不会重新分配。调用者应在发送前调用本方法，以使序号随包发出。
+	 */
+	public void assign(String userId, String deviceClass, Protocal p)
+	{
+		if(p.isSequenced())
+			return;
+		
+		String key = streamKey(userId, deviceClass, p.getFrom());
+		Protocal evicted = null;
+		for(;;)
+		{
+			SeqStream stream = streams.get(key);
+			if(stream == null)
+			{
+				SeqStream newStream = new SeqStream(userId, OnlineProcessor.normalizeDeviceClass(deviceClass));
+				stream = streams.putIfAbsent(key, newStream);
+				if(stream == null)
+					stream = newStream;
+			}
+			
+			synchronized(stream)
+			{
+				// 该流恰好因闲置被释放了，重新取（或新建）一次
+				if(stream.released)
+					continue;
+				
+				long now = System.currentTimeMillis();
+				p.setSe(stream.epoch);
+				p.setSq(stream.nextSeq++);
+				p.setDeviceClass(stream.deviceClass);
+				if(stream.window.isEmpty())
+				{
+					stream.lastSendTime = now;
+					stream.headSince = now;
+				}
+				stream.window.put(p.getSq(), p);
+				stream.lastActiveTime = now;
+				
+				if(stream.window.size() > MAX_WINDOW_SIZE)
+				{
+					evicted = stream.window.pollFirstEntry().getValue();
+					stream.ackedSeq = evicted.getSq();
+				}
+				break;
+			}
+		}
+		
+		if(evicted != null)
+		{
+			logger.warn("[IMCORE-本机QoS！]【序号QoS】会话流{}的未确认窗口已满({})，最早的消息(sq={}, fp={})判定为丢失！"
+					, key, MAX_WINDOW_SIZE, evicted.getSq(), evicted.getFp());
+			ArrayList<Protocal> lost = new ArrayList<Protocal>(1);
+			lost.add(evicted);
+			notifyMessageLost(lost);
+		}
+	}
+	
+	/**
+	 * 处理累计应答：确认该流中序号不大于sq的全部消息。
+	 * 
+	 * @return 本次被确认的消息，无时返回空列表
+	 */
+	public List<Protocal> ack(String userId, String deviceClass, String peer, long se, long sq)
+	{
+		SeqStream stream = streams.get(streamKey(userId, deviceClass, peer));
+		if(stream == null)
+			return new ArrayList<Protocal>(0);
+		
+		synchronized(stream)
+		{
+			// 旧纪元的应答（如服务端重启前发出的）与当前流无关
+			if(stream.epoch != se || sq <= stream.ackedSeq)
+				return new ArrayList<Protocal>(0);
+			
+			List<Protocal> acked = new ArrayList<Protocal>();
+			Map<Long, Protocal> head = stream.window.headMap(sq, true);
+			acked.addAll(head.values());
+			head.clear();
+			stream.ackedSeq = Math.min(sq, stream.nextSeq - 1);
+			stream.retryCount = 0;
+			stream.resendFrom = 0;
+			stream.deferredSince = 0;
+			stream.lastSendTime = System.currentTimeMillis();
+			stream.lastActiveTime = stream.lastSendTime;
+			stream.headSince = stream.lastSendTime;
+			return acked;
+		}
+	}
+	
+	/**
+	 * 处理补发请求：重发窗口中序号在[from, to]之间的消息。请求的纪元与当前流不符、请求的起点已不在窗口内、
+	 * 或客户端尚不知道起点（from&lt;=0）时，先以 {@link PSeqSyncResponse} 告知客户端该流的当前纪元与起点。
+	 * <p>
+	 * 补发的每条消息占用一个重传令牌，令牌不足时余下的消息本次不再补发。
+	 */
+	public void sync(Channel session, String userId, String deviceClass, String peer, long se, long from, long to) throws Exception
+	{
+		SeqStream stream = streams.get(streamKey(userId, deviceClass, peer));
+		long epoch;
+		long base;
+		List<Protocal> resend;
+		if(stream == null)
+		{
+			epoch = 0;
+			base = 0;
+			resend = new ArrayList<Protocal>(0);
+		}
+		else
+		{
+			synchronized(stream)
+			{
+				epoch = stream.epoch;
+				base = stream.ackedSeq;
+				if(stream.epoch != se)
+					from = base + 1;
+				if(to <= 0 || to >= stream.nextSeq)
+					to = stream.nextSeq - 1;
+				resend = new ArrayList<Protocal>();
+				if(from <= to && acquire(stream, stream.window.subMap(from, true, to, true).values(), resend) != null)
+				{
+					QoS4SendDaemonRoot.deferredRetransmitCount.increment();
+					if(stream.deferredSince <= 0)
+						stream.deferredSince = System.currentTimeMillis();
+					if(DEBUG)
+						logger.debug("[IMCORE-本机QoS！]【序号QoS】{}来自{}的会话流的补发因重传限速只发出了{}条，余下的留待稍后重传."
+								, userId, peer, resend.size());
+				}
+			}
+		}
+		
+		if(epoch != se || from <= 0 || from <= base)
+			LocalSendHelper.sendData(session, ProtocalFactory.createPSeqSyncResponse(new PSeqSyncResponse(peer, epoch, base), userId), null);
+		for(Protocal p : resend)
+			LocalSendHelper.sendData(session, p, null);
+	}
+	
+	public QoS4SeqSendDaemonS2C startup(boolean immediately)
+	{
+		stop();
+		
+		timer = new Timer();
+		timer.scheduleAtFixedRate(new TimerTask() 
+		{
+			@Override
+			public void run()
+			{
+				doTaskOnece();
+			}
+		}
+		, immediately ? 0 : CHECH_INTERVAL
+		, CHECH_INTERVAL);
+		
+		logger.debug("[IMCORE-本机QoS！]【序号QoS】====== 按会话序号投递的QoS线程已成功启动");
+		return this;
+	}
+	
+	public void stop()
+	{
+		if(timer != null)
+		{
+			try{
+				timer.cancel();
+			}
+			finally{
+				timer = null;
+			}
+		}
+	}
+	
+	public boolean isRunning()
+	{
+		return timer != null;
+	}
+	
+	public QoS4SeqSendDaemonS2C setServerLauncher(ServerLauncher serverLauncher)
+	{
+		this.serverLauncher = serverLauncher;
+		return this;
+	}
+	
+	/** 当前的会话流数 */
+	public int getStreamCount()
+	{
+		return streams.size();
+	}
+	
+	private void doTaskOnece()
+	{
+		ArrayList<Protocal> lostMessages = new ArrayList<Protocal>();
+		long now = System.currentTimeMillis();
+		
+		try
+		{
+			Iterator<Map.Entry<String, SeqStream>> it = streams.entrySet().iterator();
+			while(it.hasNext())
+			{
+				Map.Entry<String, SeqStream> entry = it.next();
+				SeqStream stream = entry.getValue();
+				List<Protocal> resend = null;
+				Channel session = OnlineProcessor.getInstance().getOnlineSession(stream.userId, stream.deviceClass);
+				
+				synchronized(stream)
+				{
+					if(stream.window.isEmpty())
+					{
+						if(now - stream.lastActiveTime > STREAM_IDLE_TIME)
+						{
+							// 在锁内标记并移除：之后的assign会新建一条流（新纪元），不会再往这条流里放消息
+							stream.released = true;
+							streams.remove(entry.getKey(), stream);
+						}
+						continue;
+					}
+					
+					if(now - stream.lastSendTime <= MESSAGES_JUST$NOW_TIME)
+						continue;
+					
+					if(stream.resendFrom == 0 && stream.retryCount >= QOS_TRY_COUNT)
+					{
+						if(DEBUG)
+							logger.debug("[IMCORE-本机QoS！]【序号QoS】会话流{}中的{}条消息重传{}次后仍未被确认，将判定为丢包！"
+									, entry.getKey(), stream.window.size(), stream.retryCount);
+						stream.declareLost(lostMessages);
+						continue;
+					}
+					
+					// 回退N帧：从最早的未确认消息（或上次因限速中断处）起按序全部重发，接收方不在线时不占用令牌
+					resend = new ArrayList<Protocal>();
+					Protocal deferred = (session != null ? acquire(stream, stream.window.tailMap(stream.resendFrom, true).values(), resend) : null);
+					if(deferred != null)
+					{
+						stream.resendFrom = deferred.getSq();
+						if(stream.deferredSince <= 0)
+							stream.deferredSince = now;
+						
+						if(QoS4SendDaemonRoot.RETRANSMIT_MAX_DEFER > 0 && now - stream.deferredSince >= QoS4SendDaemonRoot.RETRANSMIT_MAX_DEFER)
+						{
+							QoS4SendDaemonRoot.droppedRetransmitCount.increment();
+							logger.warn("[IMCORE-本机QoS！]【序号QoS】会话流{}因重传限速已被推迟{}ms，放弃重传并将其中的{}条消息判定为丢包！"
+									, entry.getKey(), now - stream.deferredSince, stream.window.size());
+							stream.declareLost(lostMessages);
+							continue;
+						}
+						// 不更新lastSendTime，下次检查时仍然到期，从断点接着发
+						QoS4SendDaemonRoot.deferredRetransmitCount.increment();
+					}
+					else
+					{
+						stream.resendFrom = 0;
+						stream.deferredSince = 0;
+						stream.retryCount++;
+						stream.lastSendTime = now;
+					}
+				}
+				
+				for(Protocal p : resend)
+					LocalSendHelper.sendData(session, p, null);
+			}
+		}
+		catch (Exception e)
+		{
+			logger.warn("[IMCORE-本机QoS！]【序号QoS】QoS线程运行时发生异常,"+e.getMessage(), e);
+		}
+		
+		if(!lostMessages.isEmpty())
+			notifyMessageLost(lostMessages);
+	}
+	
+	/**
+	 * 依次为要重传的消息取重传令牌，取到的放入resend。
+	 * 
+	 * @return 因令牌不足而未能放入的第一条消息，全部放入时返回null
+	 */
+	private static Protocal acquire(SeqStream stream, Collection<Protocal> candidates, List<Protocal> resend)
+	{
+		for(Protocal p : candidates)
+		{
+			if(!QoS4SendDaemonRoot.tryAcquireRetransmit(p.getType(), stream.headSince))
+				return p;
+			resend.add(p);
+		}
+		return null;
+	}
+	
+	protected void notifyMessageLost(ArrayList<Protocal> lostMessages)
+	{
+		if(serverLauncher != null && serverLauncher.getServerMessageQoSEventListener() != null)
+			serverLauncher.getServerMessageQoSEventListener().messagesLost(lostMessages);
+	}
+	
+	private static class SeqStream
+	{
+		final String userId;
+		final String deviceClass;
+		final long epoch = epochGenerator.incrementAndGet();
+		
+		/** 下一个要分配的序号（从1开始） */
+		long nextSeq = 1;
+		/** 已确认（或已判定丢失）的最大序号 */
+		long ackedSeq = 0;
+		/** 未确认窗口：序号 -> 消息 */
+		final TreeMap<Long, Protocal> window = new TreeMap<Long, Protocal>();
+		
+		long lastSendTime = 0;
+		long lastActiveTime = System.currentTimeMillis();
+		/** 窗口中最早的未确认消息开始等待确认的时间，重传的优先级按其计算 */
+		long headSince = 0;
+		int retryCount = 0;
+		/** 本轮重传因限速中断时，下次从该序号接着发；0表示不在一轮重传之中 */
+		long resendFrom = 0;
+		/** 重传因限速开始被推迟的时间，0表示未被推迟 */
+		long deferredSince = 0;
+		/** 已因闲置被释放 */
+		boolean released = false;
+		
+		SeqStream(String userId, String deviceClass)
+		{
+			this.userId = userId;
+			this.deviceClass = deviceClass;
+		}
+		
+		/**
+		 * 将窗口中的消息全部判定为丢失（调用者须持有本对象的锁）。
+		 */
+		void declareLost(List<Protocal> lostMessages)
+		{
+			lostMessages.addAll(window.values());
+			ackedSeq = window.lastKey();
+			window.clear();
+			retryCount = 0;
+			resendFrom = 0;
+			deferredSince = 0;
+		}
+	}
+}
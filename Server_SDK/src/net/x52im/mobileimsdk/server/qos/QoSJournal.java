@@ -0,0 +1,553 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoSJournal.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import io.netty.buffer.ByteBuf;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 服务端QoS发送队列的本地持久化日志（可选）。
+ * <p>
+ * 消息放入 {@link QoS4SendDaemonS2C} 与收到应答（或判定丢包）时各追加一条记录到内存映射的日志段中，
+ * 由后台线程每 {@link #FLUSH_INTERVAL} 毫秒统一刷盘一次（组提交），追加本身只是一次内存拷贝。
+ * 服务启动时按段顺序重放日志，把未应答的消息恢复到发送队列中继续重传，重传仍失败的会正常回调messagesLost，
+ * 因此节点崩溃或重新部署时不会再静默丢失这些消息。已封存的日志段达到 {@link #COMPACT_THRESHOLD} 个时，
+ * 后台以发送队列的当前快照重写出一个压缩段并删除旧段。
+ * <p>
+ * 刷盘周期内的记录在操作系统崩溃（而非进程崩溃）时可能丢失。
+ * 
+ * @since 6.5
+ */
+public class QoSJournal
+{
+	private static Logger logger = LoggerFactory.getLogger(QoSJournal.class); 
+	
+	/** 是否启用QoS日志 */
+	public static boolean ENABLED = false;
+	/** 日志目录 */
+	public static String DIR = "./qos-journal";
+	/** 单个日志段的大小（字节） */
+	public static int SEGMENT_SIZE = 64 * 1024 * 1024;
+	/** 组提交刷盘间隔（毫秒） */
+	public static int FLUSH_INTERVAL = 10;
+	/** 已封存段达到该数量时触发后台压缩 */
+	public static int COMPACT_THRESHOLD = 4;
+	
+	private static final byte TYPE_SEND = 1;
+	private static final byte TYPE_ACK = 2;
+	private static final String SEGMENT_PREFIX = "qos-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	/** 追加记录时按线程复用的编码器 */
+	private static final ThreadLocal<RecordEncoder> encoders = new ThreadLocal<RecordEncoder>(){
+		@Override
+		protected RecordEncoder initialValue()
+		{
+			return new RecordEncoder();
+		}
+	};
+	
+	private static volatile QoSJournal instance = null;
+	
+	private File dir = null;
+	private QoS4SendDaemonRoot daemon = null;
+	private Timer timer = null;
+	
+	/** 当前段及其写入位置，均由this锁保护 */
+	private RandomAccessFile currentFile = null;
+	private MappedByteBuffer current = null;
+	private long currentId = 0;
+	private long nextId = 0;
+	private int sealedCount = 0;
+	private volatile boolean dirty = false;
+	/**
+	 * 放入消息时“追加SEND记录+插入发送队列”两步整体持读锁，压缩切段时持写锁：
+	 * 切段完成时，凡记在旧段中的放入都已在发送队列里，必然被随后的快照包含，旧段因此可以安全删除。
+	 */
+	private final ReentrantReadWriteLock compactLock = new ReentrantReadWriteLock();
+	/** 已封存但尚未刷盘的段，由后台线程刷盘 */
+	private final ArrayList<MappedByteBuffer> unforced = new ArrayList<MappedByteBuffer>();
+	
+	public static QoSJournal getInstance()
+	{
+		if (instance == null) {
+			synchronized (QoSJournal.class) {
+				if (instance == null) {
+					instance = new QoSJournal();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private QoSJournal()
+	{
+	}
+	
+	/**
+	 * 重放日志目录中的记录，把未应答的消息恢复到daemon中，然后开始为其记录日志。须在daemon.startup()之前调用。
+	 */
+	public synchronized void open(QoS4SendDaemonRoot daemon) throws IOException
+	{
+		close();
+		
+		this.dir = new File(DIR);
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("无法创建QoS日志目录："+dir.getAbsolutePath());
+		this.daemon = daemon;
+		
+		TreeMap<Long, File> segments = listSegments();
+		Map<String, Protocal> pending = replay(segments);
+		for(Map.Entry<String, Protocal> e : pending.entrySet())
+			daemon.restore(e.getKey(), e.getValue());
+		
+		this.nextId = (segments.isEmpty() ? 0 : segments.lastKey() + 1);
+		// 恢复出的消息直接写成一个压缩段，旧段随即可删
+		long compactId = nextId++;
+		writeCompacted(compactId, daemon);
+		deleteSegmentsBefore(compactId);
+		roll(0);
+		daemon.setJournal(this);
+		
+		timer = new Timer("mobileimsdk-qos-journal", true);
+		timer.schedule(new TimerTask() 
+		{
+			@Override
+			public void run()
+			{
+				doTaskOnece();
+			}
+		}
+		, FLUSH_INTERVAL
+		, FLUSH_INTERVAL);
+		
+		logger.info("[IMCORE] QoS日志已打开(目录"+dir.getAbsolutePath()+")，从"+segments.size()+"个日志段中恢复了"+pending.size()+"条未应答消息.");
+	}
+	
+	/**
+	 * 刷盘并关闭日志，之后的追加将被忽略。
+	 */
+	public synchronized void close()
+	{
+		if(timer != null)
+		{
+			timer.cancel();
+			timer = null;
+		}
+		if(daemon != null)
+		{
+			daemon.setJournal(null);
+			daemon = null;
+		}
+		for(MappedByteBuffer b : unforced)
+			b.force();
+		unforced.clear();
+		sealCurrent(true);
+	}
+	
+	public synchronized boolean isOpen()
+	{
+		return current != null;
+	}
+	
+	/**
+	 * 见 {@link #compactLock}。
+	 */
+	Lock sendLock()
+	{
+		return compactLock.readLock();
+	}
+	
+	void appendSend(String key, String deviceClass, ByteBuf frame)
+	{
+		append(encoders.get().encode(TYPE_SEND, key, deviceClass, frame));
+	}
+	
+	void appendAck(String key)
+	{
+		append(encoders.get().encode(TYPE_ACK, key, null, null));
+	}
+	
+	/**
+	 * 记录格式：长度(4) + CRC32(4) + 记录体，重放时长度为0即视为段尾，CRC不符则视为未写完整。
+	 * 编码与CRC都已在锁外完成，锁内只剩向映射段的一次内存拷贝。
+	 */
+	private void append(ByteBuffer record)
+	{
+		synchronized (this)
+		{
+			if(current == null)
+				return;
+			if(current.remaining() < record.remaining() + 4)
+				roll(record.remaining() + 4);
+			if(current == null)
+				return;
+			current.put(record);
+			dirty = true;
+		}
+	}
+	
+	/**
+	 * 封存当前段并新建一个至少能容纳minSize字节的段，调用方须持有this锁。
+	 */
+	private void roll(int minSize)
+	{
+		MappedByteBuffer sealed = sealCurrent(false);
+		if(sealed != null)
+			unforced.add(sealed);
+		try
+		{
+			currentId = nextId++;
+			currentFile = new RandomAccessFile(segmentFile(currentId), "rw");
+			current = currentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(SEGMENT_SIZE, minSize));
+		}
+		catch (IOException e)
+		{
+			logger.error("[IMCORE] QoS日志新建日志段失败，后续QoS消息将不再记录日志！", e);
+			sealCurrent(false);
+		}
+	}
+	
+	/**
+	 * 封存当前段，force为false时由调用方负责之后刷盘（以免在锁内刷盘），返回被封存的段。
+	 */
+	private MappedByteBuffer sealCurrent(boolean force)
+	{
+		MappedByteBuffer sealed = current;
+		if(sealed != null)
+		{
+			if(force)
+				sealed.force();
+			current = null;
+			sealedCount++;
+		}
+		if(currentFile != null)
+		{
+			try{
+				currentFile.close();
+			}
+			catch (IOException e){
+				logger.warn("[IMCORE] QoS日志关闭日志段时出错了："+e.getMessage());
+			}
+			currentFile = null;
+		}
+		return sealed;
+	}
+	
+	private void doTaskOnece()
+	{
+		ArrayList<MappedByteBuffer> bufs = new ArrayList<MappedByteBuffer>(1);
+		boolean compact = false;
+		synchronized (this)
+		{
+			bufs.addAll(unforced);
+			unforced.clear();
+			if(dirty && current != null)
+			{
+				bufs.add(current);
+				dirty = false;
+			}
+			if(sealedCount >= COMPACT_THRESHOLD && current != null)
+				compact = true;
+		}
+		
+		try
+		{
+			// 刷盘不持锁，期间的追加由下一次刷盘覆盖
+			for(MappedByteBuffer b : bufs)
+				b.force();
+			if(compact)
+				compact();
+		}
+		catch (Exception e)
+		{
+			logger.warn("[IMCORE] QoS日志刷盘或压缩时出错了："+e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * 压缩：先切到新段并为压缩结果预留一个更小的段号，再把发送队列的快照写入该段，最后删除它之前的所有段。
+	 * 快照之后的放入与应答都记在更大段号的段中，重放时在压缩段之后应用，因此结果依然正确；
+	 * 切段之前记在旧段中的放入，切段时已全部入队（见 {@link #compactLock}），也都在快照之中。
+	 */
+	private void compact() throws IOException
+	{
+		long compactId;
+		QoS4SendDaemonRoot d;
+		// 等正在进行的放入完成“记日志+入队”后再切段，见compactLock
+		compactLock.writeLock().lock();
+		try
+		{
+			synchronized (this)
+			{
+				d = daemon;
+				if(d == null)
+					return;
+				compactId = nextId++;
+				roll(0);
+				sealedCount = 0;
+			}
+		}
+		finally
+		{
+			compactLock.writeLock().unlock();
+		}
+		
+		int count = writeCompacted(compactId, d);
+		int deleted = deleteSegmentsBefore(compactId);
+		logger.debug("[IMCORE] QoS日志压缩完成，保留"+count+"条未应答消息，删除"+deleted+"个旧日志段.");
+	}
+	
+	private int writeCompacted(long id, QoS4SendDaemonRoot d) throws IOException
+	{
+		FileOutputStream fos = new FileOutputStream(segmentFile(id));
+		try
+		{
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+			final RecordEncoder e = new RecordEncoder();
+			final int[] count = new int[1];
+			d.forEachPending(new QoS4SendDaemonRoot.PendingVisitor(){
+				@Override
+				public void visit(String key, String deviceClass, ByteBuf frame) throws IOException
+				{
+					ByteBuffer record = e.encode(TYPE_SEND, key, deviceClass, frame);
+					out.write(record.array(), record.position(), record.remaining());
+					count[0]++;
+				}
+			});
+			out.writeInt(0);
+			out.flush();
+			fos.getFD().sync();
+			return count[0];
+		}
+		finally
+		{
+			fos.close();
+		}
+	}
+	
+	private Map<String, Protocal> replay(TreeMap<Long, File> segments)
+	{
+		Map<String, Protocal> pending = new LinkedHashMap<String, Protocal>();
+		for(File f : segments.values())
+		{
+			try
+			{
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024));
+				try
+				{
+					CRC32 c = new CRC32();
+					while(true)
+					{
+						int len = in.readInt();
+						if(len <= 0)
+							break;
+						int sum = in.readInt();
+						byte[] body = new byte[len];
+						in.readFully(body);
+						c.reset();
+						c.update(body);
+						if((int)c.getValue() != sum)
+						{
+							logger.warn("[IMCORE] QoS日志段"+f.getName()+"存在不完整的记录，该段其后的内容将被忽略.");
+							break;
+						}
+						
+						ByteBuffer b = ByteBuffer.wrap(body);
+						byte type = b.get();
+						String key = getString(b);
+						if(type == TYPE_SEND)
+						{
+							pending.put(key, decodeSend(b));
+						}
+						else if(type == TYPE_ACK)
+						{
+							pending.remove(key);
+						}
+					}
+				}
+				catch (EOFException e)
+				{
+					// 段尾
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch (Exception e)
+			{
+				logger.warn("[IMCORE] QoS日志重放日志段"+f.getName()+"时出错了："+e.getMessage(), e);
+			}
+		}
+		return pending;
+	}
+	
+	private static Protocal decodeSend(ByteBuffer b)
+	{
+		String deviceClass = getString(b);
+		Protocal p = ProtocalFactory.parse(Arrays.copyOfRange(b.array(), b.position(), b.limit()), b.remaining());
+		p.setDeviceClass(deviceClass);
+		return p;
+	}
+	
+	private static String getString(ByteBuffer b)
+	{
+		int len = b.getInt();
+		if(len < 0)
+			return null;
+		String s = new String(b.array(), b.position(), len, StandardCharsets.UTF_8);
+		b.position(b.position() + len);
+		return s;
+	}
+	
+	/**
+	 * 记录编码器：记录体为 类型(1) + key + 设备类别 + 消息发出时的编码数据（即JSON，直接取自堆外数据，无需再次序列化）。
+	 * 缓冲与CRC按线程复用（见 {@link #encoders}），追加时不再为每条记录分配内存。
+	 */
+	private static class RecordEncoder
+	{
+		private ByteBuffer buf = ByteBuffer.allocate(1024);
+		private final CRC32 crc = new CRC32();
+		
+		/**
+		 * 编码一条完整的记录（含长度与CRC），返回的缓冲在本线程下一次调用前有效。
+		 */
+		private ByteBuffer encode(byte type, String key, String deviceClass, ByteBuf frame)
+		{
+			int dataLen = (frame == null ? 0 : frame.readableBytes());
+			int max = 8 + 1 + 4 + key.length() * 3 + 4 + (deviceClass == null ? 0 : deviceClass.length() * 3) + dataLen;
+			if(buf.capacity() < max)
+				buf = ByteBuffer.allocate(Math.max(max, buf.capacity() * 2));
+			buf.clear();
+			buf.position(8);
+			buf.put(type);
+			putString(buf, key);
+			if(type == TYPE_SEND)
+				putString(buf, deviceClass);
+			if(frame != null)
+			{
+				frame.getBytes(frame.readerIndex(), buf.array(), buf.arrayOffset() + buf.position(), dataLen);
+				buf.position(buf.position() + dataLen);
+			}
+			
+			int end = buf.position();
+			crc.reset();
+			crc.update(buf.array(), buf.arrayOffset() + 8, end - 8);
+			buf.putInt(0, end - 8);
+			buf.putInt(4, (int)crc.getValue());
+			buf.flip();
+			return buf;
+		}
+		
+		private static void putString(ByteBuffer b, String s)
+		{
+			if(s == null)
+			{
+				b.putInt(-1);
+				return;
+			}
+			
+			int n = s.length();
+			byte[] a = b.array();
+			int off = b.arrayOffset() + b.position() + 4;
+			for(int i = 0; i < n; i++)
+			{
+				char ch = s.charAt(i);
+				if(ch >= 0x80)
+				{
+					// 非ASCII：退回到标准UTF-8编码
+					byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+					b.putInt(utf8.length).put(utf8);
+					return;
+				}
+				a[off + i] = (byte)ch;
+			}
+			b.putInt(n);
+			b.position(b.position() + n);
+		}
+	}
+	
+	private TreeMap<Long, File> listSegments()
+	{
+		TreeMap<Long, File> segments = new TreeMap<Long, File>();
+		File[] files = dir.listFiles();
+		if(files != null)
+		{
+			for(File f : files)
+			{
+				String name = f.getName();
+				if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+				{
+					try{
+						segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), f);
+					}
+					catch (NumberFormatException e){
+						// 非日志段文件
+					}
+				}
+			}
+		}
+		return segments;
+	}
+	
+	private int deleteSegmentsBefore(long id)
+	{
+		int deleted = 0;
+		for(File f : listSegments().headMap(id).values())
+		{
+			if(f.delete())
+				deleted++;
+			else
+				logger.warn("[IMCORE] QoS日志删除旧日志段"+f.getName()+"失败.");
+		}
+		return deleted;
+	}
+	
+	private File segmentFile(long id)
+	{
+		return new File(dir, String.format(SEGMENT_PREFIX+"%016d"+SEGMENT_SUFFIX, id));
+	}
+}
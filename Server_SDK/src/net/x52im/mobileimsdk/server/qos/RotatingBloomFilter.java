@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * RotatingBloomFilter.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按时间分片轮转的布隆过滤器，内存占用固定，用于海量指纹的近似去重。
+ * <p>
+ * 共有sliceCount个分片，写入只进当前分片，查询检查全部分片；每次 {@link #rotate()} 时清空最老的分片并将其作为新的当前分片。
+ * 因此一个指纹写入后至少能在 (sliceCount-1) 个轮转周期内被查到，不会漏判，只会以约fpp的概率误判。
+ * <p>
+ * 查询时任一分片命中即判为存在，整体误判率约为各分片误判率之和，因此每个分片按 fpp/sliceCount 确定容量。
+ * 
+ * @since 6.5
+ */
+public class RotatingBloomFilter
+{
+	private final AtomicLongArray[] slices;
+	private final long bitCount;
+	private final int hashCount;
+	private volatile int current = 0;
+	
+	/**
+	 * @param sliceCount 分片数，至少为2
+	 * @param expectedInsertionsPerSlice 每个轮转周期内预计写入的数量
+	 * @param fpp 全部分片都写满预计数量时整体的期望误判率
+	 */
+	public RotatingBloomFilter(int sliceCount, long expectedInsertionsPerSlice, double fpp)
+	{
+		int count = Math.max(2, sliceCount);
+		long n = Math.max(1, expectedInsertionsPerSlice);
+		double sliceFpp = fpp / count;
+		long m = (long)Math.ceil(-n * Math.log(sliceFpp) / (Math.log(2) * Math.log(2)));
+		int words = (int)Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+		
+		this.bitCount = words * 64L;
+		this.hashCount = Math.max(1, (int)Math.round((double)bitCount / n * Math.log(2)));
+		this.slices = new AtomicLongArray[count];
+		for(int i = 0; i < slices.length; i++)
+			slices[i] = new AtomicLongArray(words);
+	}
+	
+	public void put(String key)
+	{
+		AtomicLongArray bits = slices[current];
+		long h1 = hash(key);
+		long h2 = mix(h1) | 1;
+		for(int i = 0; i < hashCount; i++)
+		{
+			long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+			int word = (int)(index >>> 6);
+			long mask = 1L << index;
+			long old;
+			while(((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask));
+		}
+	}
+	
+	public boolean mightContain(String key)
+	{
+		long h1 = hash(key);
+		long h2 = mix(h1) | 1;
+		for(AtomicLongArray bits : slices)
+		{
+			if(contains(bits, h1, h2))
+				return true;
+		}
+		return false;
+	}
+	
+	private boolean contains(AtomicLongArray bits, long h1, long h2)
+	{
+		for(int i = 0; i < hashCount; i++)
+		{
+			long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+			if((bits.get((int)(index >>> 6)) & (1L << index)) == 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * 清空最老的分片并切换为当前分片，调用方需保证不会并发调用本方法。
+	 */
+	public void rotate()
+	{
+		int next = (current + 1) % slices.length;
+		AtomicLongArray bits = slices[next];
+		for(int i = 0; i < bits.length(); i++)
+			bits.set(i, 0);
+		current = next;
+	}
+	
+	/**
+	 * 按各分片当前的填充率估算的整体误判率：1 - Π(1 - 填充率^hashCount)。
+	 */
+	public double getEstimatedFalsePositiveRate()
+	{
+		double pass = 1;
+		for(AtomicLongArray bits : slices)
+		{
+			long set = 0;
+			for(int i = 0; i < bits.length(); i++)
+				set += Long.bitCount(bits.get(i));
+			pass *= 1 - Math.pow((double)set / bitCount, hashCount);
+		}
+		return 1 - pass;
+	}
+	
+	/**
+	 * 全部分片占用的内存（字节）。
+	 */
+	public long getMemoryBytes()
+	{
+		return slices.length * bitCount / 8;
+	}
+	
+	public int getSliceCount()
+	{
+		return slices.length;
+	}
+	
+	private static long hash(String key)
+	{
+		// FNV-1a 64
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++)
+		{
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+	
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+}
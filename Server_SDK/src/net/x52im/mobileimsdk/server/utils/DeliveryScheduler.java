@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * DeliveryScheduler.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.utils;
+
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * 按目标EventLoop合并跨线程写操作的投递调度器。
+ * <p>
+ * 用户A向同一节点上的用户B发消息时，写B的Channel的调用发生在A所在的EventLoop中。若B属于另一个
+ * EventLoop，Netty会为每一次writeAndFlush单独提交一个任务到B的EventLoop。本类改为：先把写操作放入
+ * 目标EventLoop专属的无锁MPSC队列，同一EventLoop在前一批尚未被处理前只会被提交一个批处理任务，
+ * 该任务依次write全部积压数据，最后对涉及的每个Channel只flush一次。
+ * <p>
+ * 目标Channel就在当前EventLoop中时直接写出，不经过队列。
+ *
+ * @since 6.5
+ */
+public class DeliveryScheduler
+{
+	/** 是否启用合并投递，关闭后退化为直接writeAndFlush */
+	public static boolean ENABLED = true;
+	/** 单个批处理任务最多处理的写操作数，超出部分留待下一个任务，以免长时间占用目标EventLoop */
+	public static int MAX_BATCH_SIZE = 1024;
+	
+	private static volatile DeliveryScheduler instance = null;
+	
+	private final ConcurrentMap<EventLoop, LoopQueue> queues = new ConcurrentHashMap<EventLoop, LoopQueue>();
+	
+	private final LongAdder directWrites = new LongAdder();
+	private final LongAdder queuedWrites = new LongAdder();
+	private final LongAdder batchTasks = new LongAdder();
+	
+	public static DeliveryScheduler getInstance()
+	{
+		if (instance == null) {
+			synchronized (DeliveryScheduler.class) {
+				if (instance == null) {
+					instance = new DeliveryScheduler();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	private DeliveryScheduler()
+	{
+	}
+	
+	/**
+	 * 向目标Channel写出并刷新数据，listener（可为null）在写操作完成后于目标Channel的EventLoop中被回调。
+	 */
+	public void writeAndFlush(Channel target, Object msg, ChannelFutureListener listener)
+	{
+		if(!ENABLED || !target.isRegistered() || target.eventLoop().inEventLoop())
+		{
+			directWrites.increment();
+			ChannelFuture cf = target.writeAndFlush(msg);
+			if(listener != null)
+				cf.addListener(listener);
+			return;
+		}
+		
+		queuedWrites.increment();
+		queueOf(target.eventLoop()).offer(new Delivery(target, msg, listener));
+	}
+	
+	private LoopQueue queueOf(EventLoop loop)
+	{
+		LoopQueue q = queues.get(loop);
+		if(q == null)
+		{
+			LoopQueue newQueue = new LoopQueue(loop);
+			q = queues.putIfAbsent(loop, newQueue);
+			if(q == null)
+				q = newQueue;
+		}
+		return q;
+	}
+	
+	/** 直接写出（未经队列）的次数 */
+	public long getDirectWriteCount()
+	{
+		return directWrites.sum();
+	}
+	
+	/** 经队列合并投递的写操作次数 */
+	public long getQueuedWriteCount()
+	{
+		return queuedWrites.sum();
+	}
+	
+	/** 实际提交到各EventLoop的批处理任务数（未启用本调度器时该值将等于getQueuedWriteCount()） */
+	public long getBatchTaskCount()
+	{
+		return batchTasks.sum();
+	}
+	
+	private static final class Delivery
+	{
+		final Channel channel;
+		final Object msg;
+		final ChannelFutureListener listener;
+		
+		Delivery(Channel channel, Object msg, ChannelFutureListener listener)
+		{
+			this.channel = channel;
+			this.msg = msg;
+			this.listener = listener;
+		}
+		
+		void write()
+		{
+			ChannelFuture cf = channel.write(msg);
+			if(listener != null)
+				cf.addListener(listener);
+		}
+	}
+	
+	private final class LoopQueue implements Runnable
+	{
+		private final EventLoop loop;
+		private final Queue<Delivery> queue = PlatformDependent.newMpscQueue();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		
+		LoopQueue(EventLoop loop)
+		{
+			this.loop = loop;
+		}
+		
+		void offer(Delivery d)
+		{
+			queue.offer(d);
+			schedule();
+		}
+		
+		private void schedule()
+		{
+			if(scheduled.compareAndSet(false, true))
+			{
+				try
+				{
+					loop.execute(this);
+					batchTasks.increment();
+				}
+				catch (RejectedExecutionException e)
+				{
+					// 目标EventLoop已关闭：逐个直接写出，由各自的future报告失败
+					scheduled.set(false);
+					Delivery d;
+					while((d = queue.poll()) != null)
+						d.write();
+				}
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			Set<Channel> toFlush = new HashSet<Channel>();
+			int count = 0;
+			Delivery d;
+			while(count < MAX_BATCH_SIZE && (d = queue.poll()) != null)
+			{
+				d.write();
+				toFlush.add(d.channel);
+				count++;
+			}
+			
+			for(Channel c : toFlush)
+				c.flush();
+			
+			scheduled.set(false);
+			// 清除标记后再检查一次，避免与并发的offer之间丢失唤醒
+			if(!queue.isEmpty())
+				schedule();
+		}
+	}
+}
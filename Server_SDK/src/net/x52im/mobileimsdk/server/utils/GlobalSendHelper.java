@@ -19,6 +19,7 @@ package net.x52im.mobileimsdk.server.utils;
 import io.netty.channel.Channel;
 import net.x52im.mobileimsdk.server.ServerCoreHandler;
 import net.x52im.mobileimsdk.server.ServerLauncher;
+import net.x52im.mobileimsdk.server.cluster.ClusterRouter;
 import net.x52im.mobileimsdk.server.network.Gateway;
 import net.x52im.mobileimsdk.server.network.MBObserver;
 import net.x52im.mobileimsdk.server.processor.BridgeProcessor;
@@ -40,127 +41,198 @@ public class GlobalSendHelper
 		// TODO just for DEBUG
 		OnlineProcessor.getInstance().__printOnline();
 
-		boolean needDelegateACK = false;
-		if(ServerLauncher.bridgeEnabled && !OnlineProcessor.isOnline(pFromClient.getTo()))
+		int route = ClusterRouter.getInstance().route(pFromClient.getTo());
+		if(route == ClusterRouter.ROUTE_DIRECT)
+			sendDataC2CDirect(bridgeProcessor, session, pFromClient, remoteAddress, serverCoreHandler);
+		else if(route == ClusterRouter.ROUTE_BRIDGE)
+			sendDataC2CBridge(bridgeProcessor, session, pFromClient, remoteAddress, serverCoreHandler);
+		// ROUTE_OFFLINE时接收者不在任何节点上，走本机发送必然失败，从而直接进入离线处理
+		else
+			sendDataC2CLocal(session, pFromClient, remoteAddress, serverCoreHandler);
+	}
+	
+	private static void sendDataC2CDirect(final BridgeProcessor bridgeProcessor
+			, final Channel session, final Protocal pFromClient, final String remoteAddress
+			, final ServerCoreHandler serverCoreHandler) throws Exception
+	{
+		logger.debug("[IMCORE-{}<C2C>-直连↑]>> 客户端{}在集群中的另一节点上，数据[from:{},fp:{},to:{}] 将经节点直连链路转发."
+				, Gateway.$(session), pFromClient.getTo(), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo());
+		
+		if(pFromClient.isQoS() && QoS4ReciveDaemonC2S.getInstance().hasRecieved(pFromClient.getFp()))
 		{
-			logger.debug("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}不在线，数据[from:{},fp:{},to:{},content:{}] 将通过MQ直发Web服务端" +
-					"（彼时在线则通过web实时发送、否则通过Web端进行离线存储）【第一阶段APP+WEB跨机通信算法】！"
-					, Gateway.$(session), pFromClient.getTo(), pFromClient.getFrom(), pFromClient.getFp()
-					, pFromClient.getTo(), pFromClient.getDataContent());
-
-			if(pFromClient.isQoS() && QoS4ReciveDaemonC2S.getInstance().hasRecieved(pFromClient.getFp()))
-			{
-				needDelegateACK = true;
-			}
-			else
+			replyDelegateACK(session, pFromClient);
+			return;
+		}
+		
+		ClusterRouter.getInstance().forward(pFromClient.getTo(), pFromClient, new MBObserver(){
+			@Override
+			public void update(boolean sendOK, Object extraObj)
 			{
-				boolean toMQ = bridgeProcessor.publish(pFromClient.toGsonString());
-				if(toMQ)
+				try
 				{
-					logger.debug("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}的数据已跨机器送出成功【OK】。(数据[from:{}"+
-							",fp:{},to:{},content:{}]【第一阶段APP+WEB跨机通信算法】)"
-							, Gateway.$(session), remoteAddress, pFromClient.getFrom(), pFromClient.getFp()
-							, pFromClient.getTo(), pFromClient.getDataContent());
-
-					if(pFromClient.isQoS())
-						needDelegateACK = true;
-				}
-				else
-				{
-					logger.debug("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}的数据已跨机器送出失败，将作离线处理了【NO】。(数据[from:{},fp:{},to:{},content:{}]【第一阶段APP+WEB跨机通信算法】)"
-							, Gateway.$(session), remoteAddress, pFromClient.getFrom(), pFromClient.getFp()
-							, pFromClient.getTo(), pFromClient.getDataContent());
-
-					boolean offlineProcessedOK = serverCoreHandler.getServerEventListener().onTransferMessage_RealTimeSendFaild(pFromClient);
-					if(pFromClient.isQoS() && offlineProcessedOK)
+					if(sendOK)
 					{
-						needDelegateACK = true;
+						serverCoreHandler.getServerEventListener().onTransferMessage4C2C_AfterBridge(pFromClient);
+						if(pFromClient.isQoS())
+							replyDelegateACK(session, pFromClient);
+						QoS4ReciveDaemonC2S.getInstance().addRecieved(pFromClient);
 					}
 					else
 					{
-						logger.warn("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}的通用数据传输消息尝试实时发送没有成功，但上层应用层没有成" +
-								"功(或者完全没有)进行离线存储，此消息将被服务端丢弃【第一阶段APP+WEB跨机通信算法】！"
-								, Gateway.$(session), remoteAddress);
+						logger.warn("[IMCORE-{}<C2C>-直连↑]>> 客户端{}的数据经节点直连链路转发失败，将{}！(fp={})"
+								, Gateway.$(session), remoteAddress, ServerLauncher.bridgeEnabled ? "改走MQ桥接" : "作离线处理", pFromClient.getFp());
+						if(ServerLauncher.bridgeEnabled)
+							sendDataC2CBridge(bridgeProcessor, session, pFromClient, remoteAddress, serverCoreHandler);
+						else
+							sendDataC2CLocal(session, pFromClient, remoteAddress, serverCoreHandler);
 					}
 				}
-				
-				serverCoreHandler.getServerEventListener().onTransferMessage4C2C_AfterBridge(pFromClient);
+				catch (Exception e)
+				{
+					logger.warn(e.getMessage(), e);
+				}
 			}
-
-			if(needDelegateACK)
+		});
+	}
+	
+	private static void replyDelegateACK(final Channel session, final Protocal pFromClient) throws Exception
+	{
+		LocalSendHelper.replyRecievedBack(session, pFromClient, new MBObserver(){
+			@Override
+			public void update(boolean receivedBackSendSucess, Object extraObj)
 			{
-				MBObserver resultObserver = new MBObserver(){
-					@Override
-					public void update(boolean receivedBackSendSucess, Object extraObj)
-					{
-						if(receivedBackSendSucess)
-							logger.debug("[IMCORE-{}<C2C>-桥接↑]【QoS_伪应答_C2S】向{}发送{}的伪应答包成功,伪装from自：{}【第一阶段APP+WEB跨机通信算法】."
-									, Gateway.$(session), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo());
-					}
-				};
-				
-				LocalSendHelper.replyRecievedBack(session, pFromClient, resultObserver);
+				if(receivedBackSendSucess)
+					logger.debug("[IMCORE-{}<C2C>-直连↑]【QoS_伪应答_C2S】向{}发送{}的伪应答包成功,伪装from自：{}."
+							, Gateway.$(session), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo());
 			}
+		});
+	}
+	
+	private static void sendDataC2CBridge(final BridgeProcessor bridgeProcessor
+			, final Channel session, final Protocal pFromClient, final String remoteAddress
+			, final ServerCoreHandler serverCoreHandler) throws Exception
+	{
+		boolean needDelegateACK = false;
+		
+		logger.debug("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}不在线，数据[from:{},fp:{},to:{},content:{}] 将通过MQ直发Web服务端" +
+				"（彼时在线则通过web实时发送、否则通过Web端进行离线存储）【第一阶段APP+WEB跨机通信算法】！"
+				, Gateway.$(session), pFromClient.getTo(), pFromClient.getFrom(), pFromClient.getFp()
+				, pFromClient.getTo(), pFromClient.getDataContent());
 
-			QoS4ReciveDaemonC2S.getInstance().addRecieved(pFromClient);
+		if(pFromClient.isQoS() && QoS4ReciveDaemonC2S.getInstance().hasRecieved(pFromClient.getFp()))
+		{
+			needDelegateACK = true;
 		}
 		else
+		{
+			boolean toMQ = bridgeProcessor.publish(pFromClient.toGsonString());
+			if(toMQ)
+			{
+				logger.debug("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}的数据已跨机器送出成功【OK】。(数据[from:{}"+
+						",fp:{},to:{},content:{}]【第一阶段APP+WEB跨机通信算法】)"
+						, Gateway.$(session), remoteAddress, pFromClient.getFrom(), pFromClient.getFp()
+						, pFromClient.getTo(), pFromClient.getDataContent());
+
+				if(pFromClient.isQoS())
+					needDelegateACK = true;
+			}
+			else
+			{
+				logger.debug("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}的数据已跨机器送出失败，将作离线处理了【NO】。(数据[from:{},fp:{},to:{},content:{}]【第一阶段APP+WEB跨机通信算法】)"
+						, Gateway.$(session), remoteAddress, pFromClient.getFrom(), pFromClient.getFp()
+						, pFromClient.getTo(), pFromClient.getDataContent());
+
+				boolean offlineProcessedOK = serverCoreHandler.getServerEventListener().onTransferMessage_RealTimeSendFaild(pFromClient);
+				if(pFromClient.isQoS() && offlineProcessedOK)
+				{
+					needDelegateACK = true;
+				}
+				else
+				{
+					logger.warn("[IMCORE-{}<C2C>-桥接↑]>> 客户端{}的通用数据传输消息尝试实时发送没有成功，但上层应用层没有成" +
+							"功(或者完全没有)进行离线存储，此消息将被服务端丢弃【第一阶段APP+WEB跨机通信算法】！"
+							, Gateway.$(session), remoteAddress);
+				}
+			}
+			
+			serverCoreHandler.getServerEventListener().onTransferMessage4C2C_AfterBridge(pFromClient);
+		}
+
+		if(needDelegateACK)
 		{
 			MBObserver resultObserver = new MBObserver(){
 				@Override
-				public void update(boolean sendOK, Object extraObj)
+				public void update(boolean receivedBackSendSucess, Object extraObj)
 				{
-					boolean needAck = false;
-					
-					if(sendOK)
+					if(receivedBackSendSucess)
+						logger.debug("[IMCORE-{}<C2C>-桥接↑]【QoS_伪应答_C2S】向{}发送{}的伪应答包成功,伪装from自：{}【第一阶段APP+WEB跨机通信算法】."
+								, Gateway.$(session), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo());
+				}
+			};
+			
+			LocalSendHelper.replyRecievedBack(session, pFromClient, resultObserver);
+		}
+
+		QoS4ReciveDaemonC2S.getInstance().addRecieved(pFromClient);
+	}
+	
+	private static void sendDataC2CLocal(final Channel session, final Protocal pFromClient, final String remoteAddress
+			, final ServerCoreHandler serverCoreHandler) throws Exception
+	{
+		MBObserver resultObserver = new MBObserver(){
+			@Override
+			public void update(boolean sendOK, Object extraObj)
+			{
+				boolean needAck = false;
+				
+				if(sendOK)
+				{
+					needAck = true;
+					serverCoreHandler.getServerEventListener().onTransferMessage4C2C(pFromClient);
+				}
+				else
+				{
+					logger.info("[IMCORE-{}<C2C>]>> 客户端{}的通用数据尝试实时发送没有成功，将交给应用层进行离线存储哦..."
+							, Gateway.$(session), remoteAddress);
+
+					boolean offlineProcessedOK = serverCoreHandler.getServerEventListener().onTransferMessage_RealTimeSendFaild(pFromClient);
+					if(pFromClient.isQoS() && offlineProcessedOK)
 					{
 						needAck = true;
-						serverCoreHandler.getServerEventListener().onTransferMessage4C2C(pFromClient);
 					}
 					else
 					{
-						logger.info("[IMCORE-{}<C2C>]>> 客户端{}的通用数据尝试实时发送没有成功，将交给应用层进行离线存储哦..."
-								, Gateway.$(session), remoteAddress);
-
-						boolean offlineProcessedOK = serverCoreHandler.getServerEventListener().onTransferMessage_RealTimeSendFaild(pFromClient);
-						if(pFromClient.isQoS() && offlineProcessedOK)
-						{
-							needAck = true;
-						}
-						else
-						{
-							logger.warn("[IMCORE-{}<C2C>]>> 客户端{}的通用数据传输消息尝试实时发送没有成功，但上层应用层没有成功(或者完全没有)进行离线存储，此消息已被服务端丢弃！", Gateway.$(session), remoteAddress);
-						}
+						logger.warn("[IMCORE-{}<C2C>]>> 客户端{}的通用数据传输消息尝试实时发送没有成功，但上层应用层没有成功(或者完全没有)进行离线存储，此消息已被服务端丢弃！", Gateway.$(session), remoteAddress);
 					}
-					
-					if(needAck)
+				}
+				
+				if(needAck)
+				{
+					try
 					{
-						try
-						{
-							MBObserver retObserver = new MBObserver(){
-								@Override
-								public void update(boolean sucess, Object extraObj)
+						MBObserver retObserver = new MBObserver(){
+							@Override
+							public void update(boolean sucess, Object extraObj)
+							{
+								if(sucess)
 								{
-									if(sucess)
-									{
-										logger.debug("[IMCORE-{}<C2C>]【QoS_伪应答_C2S】向{}发送{}的应答包成功,from={}."
-												, Gateway.$(session), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo());
-									}
+									logger.debug("[IMCORE-{}<C2C>]【QoS_伪应答_C2S】向{}发送{}的应答包成功,from={}."
+											, Gateway.$(session), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo());
 								}
-							};
-							
-							LocalSendHelper.replyRecievedBack(session, pFromClient, retObserver);
-						}
-						catch (Exception e)
-						{
-							logger.warn(e.getMessage(), e);
-						}
+							}
+						};
+						
+						LocalSendHelper.replyRecievedBack(session, pFromClient, retObserver);
+					}
+					catch (Exception e)
+					{
+						logger.warn(e.getMessage(), e);
 					}
 				}
-			};
-			
-			LocalSendHelper.sendData(pFromClient, resultObserver);
-		}
+			}
+		};
+		
+		LocalSendHelper.sendData(pFromClient, resultObserver);
 	}
 	
 	public static void sendDataS2C(BridgeProcessor bridgeProcessor, Protocal pFromClient, final MBObserver resultObserver) throws Exception
@@ -170,7 +242,27 @@ public class GlobalSendHelper
 		
 		boolean sucess = false;
 
-		if(ServerLauncher.bridgeEnabled && !OnlineProcessor.isOnline(pFromClient.getTo()))
+		int route = ClusterRouter.getInstance().route(pFromClient.getTo());
+		if(route == ClusterRouter.ROUTE_DIRECT)
+		{
+			final BridgeProcessor _bridgeProcessor = bridgeProcessor;
+			final Protocal _p = pFromClient;
+			ClusterRouter.getInstance().forward(pFromClient.getTo(), pFromClient, new MBObserver(){
+				@Override
+				public void update(boolean sendOK, Object extraObj)
+				{
+					// 直连失败时若开启了桥接则再经MQ试一次
+					if(!sendOK && ServerLauncher.bridgeEnabled && _bridgeProcessor != null)
+						sendOK = _bridgeProcessor.publish(_p.toGsonString());
+					if(!sendOK)
+						logger.warn("[IMCORE<S2C>-直连↑]>> 服务端发给{}的数据(fp={})经节点直连链路转发失败【NO】！", _p.getTo(), _p.getFp());
+					if(resultObserver != null)
+						resultObserver.update(sendOK, null);
+				}
+			});
+			return;
+		}
+		else if(route == ClusterRouter.ROUTE_BRIDGE)
 		{
 			logger.debug("[IMCORE<S2C>-桥接↑]>> 客户端{}不在线，数据[from:{},fp:{},to:{},content:{}] 将通过MQ直发Web服务端（彼时在线则通过web实时发送、否则通过Web端进行离线存储）【第一阶段APP+WEB跨机通信算法】！"
 					,pFromClient.getTo(), pFromClient.getFrom(), pFromClient.getFp(), pFromClient.getTo(), pFromClient.getDataContent());
@@ -16,22 +16,35 @@
  */
 package net.x52im.mobileimsdk.server.utils;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.x52im.mobileimsdk.server.ServerCoreHandler;
 import net.x52im.mobileimsdk.server.ServerLauncher;
 import net.x52im.mobileimsdk.server.network.Gateway;
 import net.x52im.mobileimsdk.server.network.GatewayUDP;
 import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.network.SessionContext;
 import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
 import net.x52im.mobileimsdk.server.protocal.ErrorCode;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
 import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
 import net.x52im.mobileimsdk.server.protocal.s.PKickoutInfo;
+import net.x52im.mobileimsdk.server.qos.QoS4GroupSendDaemon;
 import net.x52im.mobileimsdk.server.qos.QoS4SendDaemonS2C;
+import net.x52im.mobileimsdk.server.qos.QoS4SeqSendDaemonS2C;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,7 +83,13 @@ public class LocalSendHelper
     	if(p != null)
     	{
     		if(!"0".equals(p.getTo()))
-    			sendData(OnlineProcessor.getInstance().getOnlineSession(p.getTo()), p, resultObserver);
+    		{
+    			// QoS重传的包已绑定到某一设备，只重传给该设备
+    			if(p.getDeviceClass() != null)
+    				sendData(OnlineProcessor.getInstance().getOnlineSession(p.getTo(), p.getDeviceClass()), p, resultObserver);
+    			else
+    				sendDataToAllDevices(p, resultObserver);
+    		}
     		else
     		{
     			logger.warn("[IMCORE]【注意】此Protocal对象中的接收方是服务器(user_id==0)（而此方法本来就是由Server调用，自已发自已不可能！），数据发送没有继续！"+p.toGsonString());
@@ -85,6 +104,87 @@ public class LocalSendHelper
     	}
     }
     
+    /**
+     * 将数据投递给接收者当前在线的所有设备（多端同时在线），每个设备各自进行QoS跟踪。
+     * <p>
+     * 只要有一个设备发送成功即认为实时发送成功，resultObserver只会被回调一次。
+     * 
+     * @since 6.5
+     */
+    private static void sendDataToAllDevices(final Protocal p, final MBObserver resultObserver) throws Exception 
+    {
+    	Map<String, Channel> sessions = OnlineProcessor.getInstance().getOnlineSessions(p.getTo());
+    	if(sessions.size() <= 1)
+    	{
+    		Channel session = null;
+    		for(Map.Entry<String, Channel> e : sessions.entrySet())
+    		{
+    			p.setDeviceClass(e.getKey());
+    			session = e.getValue();
+    		}
+    		sendData(session, p, resultObserver);
+    		return;
+    	}
+    	
+    	final AtomicInteger remaining = new AtomicInteger(sessions.size());
+    	final AtomicBoolean anySucess = new AtomicBoolean(false);
+    	MBObserver allObserver = new MBObserver(){
+    		@Override
+    		public void update(boolean sendOK, Object extraObj)
+    		{
+    			if(sendOK)
+    				anySucess.set(true);
+    			if(remaining.decrementAndGet() == 0 && resultObserver != null)
+    				resultObserver.update(anySucess.get(), null);
+    		}
+    	};
+    	
+    	for(Map.Entry<String, Channel> e : sessions.entrySet())
+    	{
+    		// 每个设备一份拷贝：重传次数、QoS条目都是按设备各自独立的
+    		Protocal pForDevice = (Protocal)p.clone();
+    		pForDevice.setDeviceClass(e.getKey());
+    		sendData(e.getValue(), pForDevice, allObserver);
+    	}
+    }
+    
+    /**
+     * 将一条数据发给一组成员（群消息），p的接收方（to）应为群id，所有成员收到的是同一份编码数据。
+     * <p>
+     * 需QoS的包由 {@link QoS4GroupSendDaemon} 按整条群消息跟踪（一个条目+未应答成员位图），
+     * 而不是按成员展开成多个QoS条目。
+     *
+     * @return 发送时不在线的成员（应由应用层作离线处理），无时返回空列表
+     * @since 6.5
+     */
+    public static List<String> sendDataToGroup(Protocal p, String[] memberIds) throws Exception
+    {
+    	if(p == null || memberIds == null)
+    		return new ArrayList<String>(0);
+
+    	if(ServerLauncher.serverTimestamp)
+    		p.setSm(Protocal.genServerTimestamp());
+
+    	if(p.isQoS() && p.getFp() != null)
+    		return QoS4GroupSendDaemon.getInstance().send(p, memberIds);
+
+    	List<String> offline = new ArrayList<String>(0);
+    	for(String memberId : memberIds)
+    	{
+    		if(memberId == null)
+    			continue;
+    		if(OnlineProcessor.getInstance().getOnlineSessions(memberId).isEmpty())
+    		{
+    			offline.add(memberId);
+    			continue;
+    		}
+    		Protocal pForMember = (Protocal)p.clone();
+    		pForMember.setTo(memberId);
+    		sendDataToAllDevices(pForMember, null);
+    	}
+    	return offline;
+    }
+
     public static void sendData(final Channel session, final Protocal p, final MBObserver resultObserver) throws Exception 
     {
 		if(session == null)
@@ -101,24 +201,44 @@ public class LocalSendHelper
 		    		if(ServerLauncher.serverTimestamp)
 		    			p.setSm(Protocal.genServerTimestamp());
 		    		
-		    		Object to = null;
-		    		if(Gateway.isWebSocketChannel(session)){
-		    			final String res = p.toGsonString();
-		    			to = new TextWebSocketFrame(res);
-		    		}
-		    		else{
-		    			final byte[] res = p.toBytes();
-		    			to = Unpooled.copiedBuffer(res);
+		    		// 支持会话序号的客户端：QoS数据包在发出前分配序号，由序号窗口跟踪送达（累计应答），不再逐条按指纹跟踪
+		    		SessionContext toCtx = SessionContext.get(session);
+		    		if(p.isQoS() && !p.isSequenced() && p.getType() == ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA
+		    				&& toCtx != null && toCtx.isSeqAck() && toCtx.isLogined())
+		    		{
+		    			QoS4SeqSendDaemonS2C.getInstance().assign(toCtx.getUserId(), toCtx.getDeviceClass(), p);
+		    			// 此前按指纹跟踪的包（如对方重连前未应答、现改连到支持序号的会话）转由序号窗口跟踪
+		    			if(QoS4SendDaemonS2C.getInstance().exist(p.getFp(), p.getDeviceClass()))
+		    				QoS4SendDaemonS2C.getInstance().remove(p.getFp(), p.getDeviceClass());
 		    		}
-		    		ChannelFuture cf = session.writeAndFlush(to);//.sync();
 		    		
-		    		cf.addListener(new ChannelFutureListener() {
+		    		// 需QoS跟踪的包编码后保留一份（池化堆外内存）交给QoS队列，重传时直接复用而不再重新序列化
+		    		final byte[] res = p.toBytes();
+		    		final ByteBuf frame = (p.isQoS() && !p.isSequenced() ? PooledByteBufAllocator.DEFAULT.directBuffer(res.length).writeBytes(res) : null);
+		    		ByteBuf payload = (frame != null ? frame.retainedDuplicate() : Unpooled.copiedBuffer(res));
+		    		Object to = (Gateway.isWebSocketChannel(session) ? new TextWebSocketFrame(payload) : payload);
+		    		// 目标Channel不在当前EventLoop时，由DeliveryScheduler按EventLoop合并投递
+		    		DeliveryScheduler.getInstance().writeAndFlush(session, to, new ChannelFutureListener() {
 		    	         public void operationComplete(ChannelFuture future) {
 		    	        	 if( future.isSuccess()){
-		    	        		 if(p.isQoS() && !QoS4SendDaemonS2C.getInstance().exist(p.getFp()))
-		    	        			 QoS4SendDaemonS2C.getInstance().put(p);
+		    	        		 SessionContext ctx = SessionContext.get(session);
+		    	        		 if(ctx != null)
+		    	        			 ctx.incrementSent();
+		    	        		 
+		    	        		 if(frame != null)
+		    	        		 {
+		    	        			 // 直接发往某会话的包也按该会话的设备类别跟踪，以便与该设备回来的应答对应上
+		    	        			 if(p.getDeviceClass() == null && ctx != null)
+		    	        				 p.setDeviceClass(ctx.getDeviceClass());
+		    	        			 if(!QoS4SendDaemonS2C.getInstance().exist(p.getFp(), p.getDeviceClass()))
+		    	        				 QoS4SendDaemonS2C.getInstance().put(p, frame);
+		    	        			 else
+		    	        				 frame.release();
+		    	        		 }
 		    	        	 }
 		    	        	 else{
+		    	        		 if(frame != null)
+		    	        			 frame.release();
 		    	        		 logger.warn("[IMCORE-{}]给客户端：{}的数据->{},发送失败(此消息应考虑作离线处理哦)."
 		    	        				 , Gateway.$(session), ServerToolKits.clientInfoToString(session), p.toGsonString());
 		    	        	 }
@@ -169,6 +289,15 @@ public class LocalSendHelper
 		sendData(session, perror, resultObserver);
 	}
 
+	public static void replyDataForRateLimited(final Channel session, Protocal p, MBObserver resultObserver) throws Exception
+	{
+		logger.warn("[IMCORE-{}]>> 客户端{}发送过于频繁，消息{}未被处理."
+				, Gateway.$(session), ServerToolKits.clientInfoToString(session), p.getFp());
+		
+		Protocal perror = ProtocalFactory.createPErrorResponse(ErrorCode.ForS.RESPONSE_FOR_RATE_LIMITED, p.toGsonString(), p.getFrom());
+		sendData(session, perror, resultObserver);
+	}
+
 	public static void replyRecievedBack(Channel session, Protocal pFromClient, MBObserver resultObserver) throws Exception
 	{
 		if(pFromClient.isQoS() && pFromClient.getFp() != null)
@@ -24,7 +24,7 @@ import java.net.SocketAddress;
 import net.x52im.mobileimsdk.server.network.GatewayTCP;
 import net.x52im.mobileimsdk.server.network.GatewayUDP;
 import net.x52im.mobileimsdk.server.network.GatewayWebsocket;
-import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.network.SessionContext;
 import net.x52im.mobileimsdk.server.protocal.CharsetHelper;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
 import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
@@ -118,12 +118,17 @@ public class ServerToolKits
     		GatewayWebsocket.SESION_RECYCLER_EXPIRE = expire;
     }
 	public static String clientInfoToString(Channel session)
+	{
+		return clientInfoToString(session, SessionContext.get(session));
+	}
+	
+	public static String clientInfoToString(Channel session, SessionContext ctx)
 	{
 		SocketAddress remoteAddress = session.remoteAddress();
 		String s1 = remoteAddress.toString();
 		StringBuilder sb = new StringBuilder()
 			.append("{uid:")
-			.append(OnlineProcessor.getUserIdFromChannel(session))
+			.append(ctx != null ? ctx.getUserId() : null)
 			.append("}")
 			.append(s1);
 		return sb.toString();
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * ServerCoreHandlerTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.x52im.mobileimsdk.server.event.ServerEventListener;
+import net.x52im.mobileimsdk.server.network.SessionContext;
+import net.x52im.mobileimsdk.server.processor.BridgeProcessor;
+import net.x52im.mobileimsdk.server.processor.LogicProcessor;
+import net.x52im.mobileimsdk.server.protocal.ErrorCode;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+
+import org.junit.Test;
+
+/**
+ * 单个连接的C2C限流：超出令牌桶的消息不转发，并以RESPONSE_FOR_RATE_LIMITED告知客户端，连接保持。
+ */
+public class ServerCoreHandlerTest
+{
+	@Test
+	public void c2cBeyondBurstIsRejectedWithoutForwarding() throws Exception
+	{
+		int rate = ServerCoreHandler.C2C_RATE_PER_SECOND;
+		int burst = ServerCoreHandler.C2C_RATE_BURST;
+		// 每秒只补充1个令牌，测试期间可视为不补充
+		ServerCoreHandler.C2C_RATE_PER_SECOND = 1;
+		ServerCoreHandler.C2C_RATE_BURST = 3;
+		try
+		{
+			final List<Protocal> forwarded = new ArrayList<Protocal>();
+			ServerCoreHandler handler = new ServerCoreHandler(){
+				@Override
+				protected LogicProcessor createLogicProcessor()
+				{
+					return new LogicProcessor(this){
+						@Override
+						public void processC2CMessage(BridgeProcessor bridgeProcessor, Channel session, Protocal pFromClient, String remoteAddress)
+						{
+							forwarded.add(pFromClient);
+						}
+					};
+				}
+			};
+			handler.setServerEventListener(allowAll());
+
+			EmbeddedChannel session = new EmbeddedChannel();
+			SessionContext.of(session).onLogined("rate-test-user", "android", System.currentTimeMillis());
+			for(int i = 1; i <= 5; i++)
+				handler.messageReceived(session, ProtocalFactory.createCommonData("m"+i, "rate-test-user", "rate-test-peer", false, "rate-test-"+i));
+
+			assertEquals(3, forwarded.size());
+			List<Protocal> out = readAll(session);
+			assertEquals(2, out.size());
+			for(Protocal p : out)
+			{
+				assertEquals(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$FOR$ERROR, p.getType());
+				assertEquals(ErrorCode.ForS.RESPONSE_FOR_RATE_LIMITED, ProtocalFactory.parsePErrorResponse(p.getDataContent()).getErrorCode());
+			}
+			// 被拒后连接仍保持
+			assertEquals(true, session.isActive());
+		}
+		finally
+		{
+			ServerCoreHandler.C2C_RATE_PER_SECOND = rate;
+			ServerCoreHandler.C2C_RATE_BURST = burst;
+		}
+	}
+
+	private static ServerEventListener allowAll()
+	{
+		return (ServerEventListener)Proxy.newProxyInstance(ServerEventListener.class.getClassLoader()
+				, new Class<?>[]{ServerEventListener.class}, new InvocationHandler(){
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+					{
+						Class<?> r = method.getReturnType();
+						if(r == boolean.class)
+							return true;
+						if(r == int.class)
+							return 0;
+						return null;
+					}
+				});
+	}
+
+	private static List<Protocal> readAll(EmbeddedChannel session)
+	{
+		List<Protocal> out = new ArrayList<Protocal>();
+		ByteBuf b;
+		while((b = session.readOutbound()) != null)
+		{
+			byte[] bytes = ByteBufUtil.getBytes(b);
+			b.release();
+			out.add(ProtocalFactory.parse(bytes, bytes.length));
+		}
+		return out;
+	}
+}
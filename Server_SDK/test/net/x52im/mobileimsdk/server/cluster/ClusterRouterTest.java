@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * ClusterRouterTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 节点间直连链路的握手/来源校验，以及并发上下线时在线目录与本机在线状态的一致性（目录在专用线程中异步登记）。
+ */
+public class ClusterRouterTest
+{
+	private static final String NODE_ID = "node-test";
+	
+	private ClusterRouter router;
+	private InMemoryPresenceDirectory directory;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		ServerSocket probe = new ServerSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		
+		ClusterRouter.NODE_ID = NODE_ID;
+		ClusterRouter.LINK_HOST = "127.0.0.1";
+		ClusterRouter.LINK_PORT = port;
+		ClusterRouter.LINK_SECRET = "test-secret";
+		
+		router = ClusterRouter.getInstance();
+		directory = new InMemoryPresenceDirectory();
+		router.setPresenceDirectory(directory);
+		// 本节点连向自己：作为主动端和被动端走完整的握手
+		router.addNode(NODE_ID, "127.0.0.1", port);
+		router.startup(new ServerCoreHandler());
+	}
+	
+	@After
+	public void tearDown()
+	{
+		router.shutdown();
+		router.removeNode(NODE_ID);
+		ClusterRouter.LINK_HOST = null;
+		ClusterRouter.LINK_SECRET = null;
+	}
+	
+	@Test
+	public void forwardCompletesHandshakeBeforeWriting() throws Exception
+	{
+		directory.register("u1", NODE_ID);
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicBoolean ok = new AtomicBoolean();
+		router.forward("u1", ProtocalFactory.createCommonData("hi", "u0", "u1", false, "fp-1"), new MBObserver() {
+			@Override
+			public void update(boolean sendOK, Object extraObj)
+			{
+				ok.set(sendOK);
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(ok.get());
+	}
+	
+	@Test
+	public void peerWithoutSecretIsDisconnected() throws Exception
+	{
+		Socket s = new Socket("127.0.0.1", ClusterRouter.LINK_PORT);
+		try
+		{
+			s.setSoTimeout(5000);
+			DataInputStream in = new DataInputStream(s.getInputStream());
+			assertEquals(MBNodeLinkHandshake.NONCE_LENGTH, in.readInt());
+			in.readFully(new byte[MBNodeLinkHandshake.NONCE_LENGTH]);
+			
+			// 不持有密钥的一方只能伪造应答
+			byte[] forged = new byte[MBNodeLinkHandshake.NONCE_LENGTH + MBNodeLinkHandshake.MAC_LENGTH + NODE_ID.length()];
+			System.arraycopy(NODE_ID.getBytes("UTF-8"), 0, forged, forged.length - NODE_ID.length(), NODE_ID.length());
+			DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			out.writeInt(forged.length);
+			out.write(forged);
+			out.flush();
+			
+			assertEquals(-1, in.read());
+		}
+		finally
+		{
+			s.close();
+		}
+	}
+	
+	@Test
+	public void directoryFollowsLocalSessionsUnderConcurrentLoginLogout() throws Exception
+	{
+		final OnlineProcessor op = OnlineProcessor.getInstance();
+		final int threads = 4;
+		final int users = 20;
+		final List<Map<String, Channel>> online = new ArrayList<Map<String, Channel>>();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int t = 0; t < threads; t++)
+		{
+			final String deviceClass = "dc"+t;
+			final Map<String, Channel> mine = new HashMap<String, Channel>();
+			online.add(mine);
+			final long seed = t;
+			Thread th = new Thread(){
+				@Override
+				public void run()
+				{
+					Random random = new Random(seed);
+					try
+					{
+						start.await();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+					for(int i = 0; i < 20000; i++)
+					{
+						String userId = "cluster-u"+random.nextInt(users);
+						Channel c = mine.remove(userId);
+						if(c == null)
+						{
+							c = new EmbeddedChannel();
+							op.putUser(userId, deviceClass, System.currentTimeMillis(), c);
+							mine.put(userId, c);
+						}
+						else
+							op.removeUser(userId, c);
+					}
+				}
+			};
+			workers.add(th);
+			th.start();
+		}
+		start.countDown();
+		for(Thread th : workers)
+			th.join();
+		
+		awaitDirectoryFollows(op, users);
+		for(int u = 0; u < users; u++)
+		{
+			String userId = "cluster-u"+u;
+			assertEquals(userId, op.isUserOnline(userId) ? NODE_ID : null, directory.lookup(userId));
+		}
+		
+		for(Map<String, Channel> mine : online)
+		{
+			for(Map.Entry<String, Channel> e : mine.entrySet())
+				op.removeUser(e.getKey(), e.getValue());
+		}
+		awaitDirectoryFollows(op, users);
+		assertEquals(0, directory.size());
+	}
+	
+	@Test
+	public void directoryIsUpdatedOffTheCallingThread() throws Exception
+	{
+		final List<String> registeringThreads = new ArrayList<String>();
+		router.setPresenceDirectory(new InMemoryPresenceDirectory() {
+			@Override
+			public void register(String userId, String nodeId)
+			{
+				synchronized(registeringThreads)
+				{
+					registeringThreads.add(Thread.currentThread().getName());
+				}
+				super.register(userId, nodeId);
+			}
+		});
+		
+		Channel c = new EmbeddedChannel();
+		OnlineProcessor.getInstance().putUser("cluster-async", "android", System.currentTimeMillis(), c);
+		try
+		{
+			long deadline = System.currentTimeMillis() + 5000;
+			while(router.getPresenceDirectory().lookup("cluster-async") == null && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			assertEquals(NODE_ID, router.getPresenceDirectory().lookup("cluster-async"));
+			synchronized(registeringThreads)
+			{
+				assertEquals(1, registeringThreads.size());
+				assertTrue(registeringThreads.get(0), registeringThreads.get(0).startsWith("mobileimsdk-cluster-presence"));
+			}
+		}
+		finally
+		{
+			OnlineProcessor.getInstance().removeUser("cluster-async", c);
+			router.setPresenceDirectory(directory);
+		}
+	}
+	
+	/**
+	 * 目录在专用线程中异步登记，等其跟上本机的在线状态（最多5秒）。
+	 */
+	private void awaitDirectoryFollows(OnlineProcessor op, int users) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		for(int u = 0; u < users && System.currentTimeMillis() < deadline; )
+		{
+			String userId = "cluster-u"+u;
+			String expected = (op.isUserOnline(userId) ? NODE_ID : null);
+			String actual = directory.lookup(userId);
+			if(expected == null ? actual == null : expected.equals(actual))
+				u++;
+			else
+				Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * EdgeLinkHandshakeTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.edge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.cluster.MBNodeLinkHandshake;
+import net.x52im.mobileimsdk.server.network.GatewayEdgeLink;
+import net.x52im.mobileimsdk.server.network.edge.EdgeFrame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 边缘链路的握手与来源校验：持有密钥的上行链路握手后才可用，伪造的应答、握手前的帧及不在白名单中的来源都被断开。
+ */
+public class EdgeLinkHandshakeTest
+{
+	private GatewayEdgeLink gateway;
+	private EdgeUplinkPool pool;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		ServerSocket probe = new ServerSocket(0);
+		GatewayEdgeLink.PORT = probe.getLocalPort();
+		probe.close();
+		GatewayEdgeLink.HOST = "127.0.0.1";
+		GatewayEdgeLink.SECRET = "edge-secret";
+		EdgeServerLauncher.CORE_SECRET = "edge-secret";
+	}
+	
+	@After
+	public void tearDown()
+	{
+		if(pool != null)
+			pool.stop();
+		if(gateway != null)
+			gateway.shutdown();
+		GatewayEdgeLink.HOST = null;
+		GatewayEdgeLink.SECRET = null;
+		GatewayEdgeLink.ALLOWED_EDGE_HOSTS = null;
+		EdgeServerLauncher.CORE_SECRET = null;
+	}
+	
+	private void startGateway() throws Exception
+	{
+		gateway = new GatewayEdgeLink();
+		gateway.init(new ServerCoreHandler());
+		gateway.bind();
+	}
+	
+	@Test
+	public void uplinkIsSelectableOnlyAfterHandshake() throws Exception
+	{
+		startGateway();
+		pool = new EdgeUplinkPool("127.0.0.1", GatewayEdgeLink.PORT, 2);
+		pool.start();
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pool.select(0) < 0 || pool.select(1) < 0 || pool.select(0) == pool.select(1))
+		{
+			assertTrue("uplinks not ready in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+	}
+	
+	@Test
+	public void uplinkWithWrongSecretNeverBecomesSelectable() throws Exception
+	{
+		startGateway();
+		EdgeServerLauncher.CORE_SECRET = "wrong-secret";
+		pool = new EdgeUplinkPool("127.0.0.1", GatewayEdgeLink.PORT, 1);
+		pool.start();
+		
+		Thread.sleep(1000);
+		assertEquals(-1, pool.select(0));
+	}
+	
+	@Test
+	public void forgedResponseIsDisconnected() throws Exception
+	{
+		startGateway();
+		Socket s = connect();
+		try
+		{
+			DataInputStream in = readChallenge(s);
+			DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			out.writeInt(MBNodeLinkHandshake.NONCE_LENGTH + MBNodeLinkHandshake.MAC_LENGTH);
+			out.write(new byte[MBNodeLinkHandshake.NONCE_LENGTH + MBNodeLinkHandshake.MAC_LENGTH]);
+			out.flush();
+			assertEquals(-1, in.read());
+		}
+		finally
+		{
+			s.close();
+		}
+	}
+	
+	@Test
+	public void frameBeforeHandshakeIsDisconnected() throws Exception
+	{
+		startGateway();
+		Socket s = connect();
+		try
+		{
+			DataInputStream in = readChallenge(s);
+			// 不握手直接打开一个会话
+			DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			byte[] host = "1.2.3.4".getBytes("UTF-8");
+			out.writeInt(EdgeFrame.HEADER_LENGTH + 8 + host.length);
+			out.writeByte(EdgeFrame.TYPE_OPEN);
+			out.writeLong(1);
+			out.writeInt(0);
+			out.writeInt(1234);
+			out.write(host);
+			out.flush();
+			assertEquals(-1, in.read());
+		}
+		finally
+		{
+			s.close();
+		}
+	}
+	
+	@Test
+	public void sourceOutsideAllowlistIsDisconnectedBeforeChallenge() throws Exception
+	{
+		GatewayEdgeLink.ALLOWED_EDGE_HOSTS = new String[]{"192.0.2.1"};
+		startGateway();
+		Socket s = connect();
+		try
+		{
+			assertEquals(-1, s.getInputStream().read());
+		}
+		finally
+		{
+			s.close();
+		}
+	}
+	
+	private static Socket connect() throws Exception
+	{
+		Socket s = new Socket("127.0.0.1", GatewayEdgeLink.PORT);
+		s.setSoTimeout(5000);
+		return s;
+	}
+	
+	private static DataInputStream readChallenge(Socket s) throws Exception
+	{
+		DataInputStream in = new DataInputStream(s.getInputStream());
+		assertEquals(MBNodeLinkHandshake.NONCE_LENGTH, in.readInt());
+		in.readFully(new byte[MBNodeLinkHandshake.NONCE_LENGTH]);
+		return in;
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * GatewayQUICTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.incubator.codec.quic.QuicChannel;
+import io.netty.incubator.codec.quic.QuicClientCodecBuilder;
+import io.netty.incubator.codec.quic.QuicSslContext;
+import io.netty.incubator.codec.quic.QuicSslContextBuilder;
+import io.netty.incubator.codec.quic.QuicStreamChannel;
+import io.netty.incubator.codec.quic.QuicStreamType;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.x52im.mobileimsdk.server.ServerCoreHandler;
+import net.x52im.mobileimsdk.server.event.ServerEventListener;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+import net.x52im.mobileimsdk.server.protocal.c.PLoginInfo;
+import net.x52im.mobileimsdk.server.utils.ServerToolKits;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * QUIC网关的连接迁移：客户端的源地址在会话中途改变（网络切换/NAT重绑定）后，
+ * 原连接及其上的IM会话应继续可用，而无需重新登陆。
+ * <p>
+ * 客户端经由一个UDP中继连到网关，中继在会话中途改用新的本地端口向网关转发（并关闭旧端口），
+ * 在网关看来即是同一条QUIC连接换了源地址。
+ */
+public class GatewayQUICTest
+{
+	private static final String USER_ID = "quic-u1";
+	
+	private final AtomicInteger loginVerifyCount = new AtomicInteger();
+	private final AtomicInteger logoutCount = new AtomicInteger();
+	
+	private GatewayQUIC gateway;
+	private RebindingRelay relay;
+	private EventLoopGroup clientGroup;
+	private QuicSslContext sslContext;
+	private QuicClient client;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		DatagramSocket probe = new DatagramSocket(0);
+		GatewayQUIC.PORT = probe.getLocalPort();
+		probe.close();
+		
+		gateway = new GatewayQUIC();
+		gateway.init(new ListeningCoreHandler());
+		gateway.bind();
+		
+		relay = new RebindingRelay(new InetSocketAddress(InetAddress.getLoopbackAddress(), GatewayQUIC.PORT));
+		
+		sslContext = QuicSslContextBuilder.forClient()
+				.trustManager(InsecureTrustManagerFactory.INSTANCE)
+				.applicationProtocols(GatewayQUIC.APPLICATION_PROTOCOL).build();
+		clientGroup = new NioEventLoopGroup(1);
+		client = new QuicClient(relay.getFrontAddress());
+	}
+	
+	@After
+	public void tearDown() throws Exception
+	{
+		client.close();
+		clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+		relay.close();
+		gateway.shutdown();
+		OnlineProcessor.getInstance().removeUser(USER_ID);
+	}
+	
+	@Test
+	public void sessionSurvivesSourceAddressChange() throws Exception
+	{
+		Channel session = client.login(USER_ID);
+		
+		client.send(ProtocalFactory.createPKeepAlive(USER_ID));
+		client.await(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$KEEP$ALIVE);
+		
+		int portBefore = relay.getUpstreamPort();
+		relay.rebind();
+		assertNotEquals(portBefore, relay.getUpstreamPort());
+		
+		// 换了源地址后，心跳仍按原会话处理（未登陆的会话只会得到错误应答），应答也只能经新端口返回
+		client.send(ProtocalFactory.createPKeepAlive(USER_ID));
+		client.await(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$KEEP$ALIVE);
+		
+		assertEquals(1, loginVerifyCount.get());
+		assertEquals(0, logoutCount.get());
+		assertSame(session, OnlineProcessor.getInstance().getOnlineSession(USER_ID));
+	}
+	
+	@Test
+	public void acceptsMoreThanOneConnection() throws Exception
+	{
+		client.login(USER_ID);
+		
+		QuicClient other = new QuicClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), GatewayQUIC.PORT));
+		try
+		{
+			other.login("quic-u2");
+			assertEquals(2, loginVerifyCount.get());
+		}
+		finally
+		{
+			other.close();
+			OnlineProcessor.getInstance().removeUser("quic-u2");
+		}
+	}
+	
+	/**
+	 * 测试用的QUIC客户端：一条连接上打开一个双向Stream，帧格式与网关一致。
+	 */
+	private class QuicClient
+	{
+		private final Channel datagramChannel;
+		private final QuicChannel quicChannel;
+		private final QuicStreamChannel stream;
+		private final BlockingQueue<Protocal> received = new LinkedBlockingQueue<Protocal>();
+		
+		QuicClient(SocketAddress remote) throws Exception
+		{
+			datagramChannel = new Bootstrap()
+					.group(clientGroup)
+					.channel(NioDatagramChannel.class)
+					.handler(new QuicClientCodecBuilder()
+							.sslContext(sslContext)
+							.maxIdleTimeout(GatewayQUIC.SESION_RECYCLER_EXPIRE, TimeUnit.SECONDS)
+							.initialMaxData(1024 * 1024)
+							.initialMaxStreamDataBidirectionalLocal(1024 * 1024)
+							.build())
+					.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).sync().channel();
+			quicChannel = QuicChannel.newBootstrap(datagramChannel)
+					.streamHandler(new ChannelInboundHandlerAdapter())
+					.remoteAddress(remote)
+					.connect().get(5, TimeUnit.SECONDS);
+			stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL, new ChannelInitializer<QuicStreamChannel>() {
+				@Override
+				protected void initChannel(QuicStreamChannel ch)
+				{
+					ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(
+							GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH + GatewayQUIC.QUIC_FRAME_MAX_BODY_LENGTH
+							, 0, GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH, 0, GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH));
+					ch.pipeline().addLast(new LengthFieldPrepender(GatewayQUIC.QUIC_FRAME_FIXED_HEADER_LENGTH));
+					ch.pipeline().addLast(new SimpleChannelInboundHandler<ByteBuf>() {
+						@Override
+						protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception
+						{
+							received.add(ServerToolKits.fromIOBuffer(msg));
+						}
+					});
+				}
+			}).get(5, TimeUnit.SECONDS);
+		}
+		
+		/**
+		 * 登陆并等到会话加入在线列表（登陆应答发出之后才加入），返回网关侧的会话。
+		 */
+		Channel login(String userId) throws Exception
+		{
+			send(ProtocalFactory.createPLoginInfo(new PLoginInfo(userId, "token")));
+			Protocal res = await(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$LOGIN);
+			assertEquals(0, ProtocalFactory.parsePLoginInfoResponse(res.getDataContent()).getCode());
+			
+			long deadline = System.currentTimeMillis() + 5000;
+			while(!OnlineProcessor.isOnline(userId) && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			Channel session = OnlineProcessor.getInstance().getOnlineSession(userId);
+			assertNotNull(session);
+			return session;
+		}
+		
+		void send(Protocal p)
+		{
+			stream.writeAndFlush(Unpooled.wrappedBuffer(p.toBytes()));
+		}
+		
+		Protocal await(int type) throws Exception
+		{
+			long deadline = System.currentTimeMillis() + 5000;
+			for(;;)
+			{
+				Protocal p = received.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				assertNotNull("等待类型为" + type + "的应答超时", p);
+				if(p.getType() == type)
+					return p;
+				assertNotEquals("收到错误应答：" + p.getDataContent(), ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$FOR$ERROR, p.getType());
+			}
+		}
+		
+		void close() throws Exception
+		{
+			quicChannel.close().await(5, TimeUnit.SECONDS);
+			datagramChannel.close().await(5, TimeUnit.SECONDS);
+		}
+	}
+	
+	private class ListeningCoreHandler extends ServerCoreHandler
+	{
+		ListeningCoreHandler()
+		{
+			serverEventListener = new ServerEventListener() {
+				public int onUserLoginVerify(String userId, String token, String extra, Channel session)
+				{
+					loginVerifyCount.incrementAndGet();
+					return 0;
+				}
+				public void onUserLoginSucess(String userId, String extra, Channel session) {}
+				public void onUserLogout(String userId, Channel session, int beKickoutCode)
+				{
+					logoutCount.incrementAndGet();
+				}
+				public boolean onTransferMessage4C2SBefore(Protocal p, Channel session) { return true; }
+				public boolean onTransferMessage4C2CBefore(Protocal p, Channel session) { return true; }
+				public boolean onTransferMessage4C2S(Protocal p, Channel session) { return true; }
+				public void onTransferMessage4C2C(Protocal p) {}
+				public boolean onTransferMessage_RealTimeSendFaild(Protocal p) { return false; }
+				public void onTransferMessage4C2C_AfterBridge(Protocal p) {}
+			};
+		}
+	}
+	
+	/**
+	 * 客户端与网关之间的UDP中继：{@link #rebind()}后改用新的本地端口向网关转发并关闭旧端口，
+	 * 模拟客户端换网后源地址的改变。
+	 */
+	private static class RebindingRelay
+	{
+		private final InetSocketAddress server;
+		private final DatagramSocket front;
+		private volatile DatagramSocket upstream;
+		private volatile SocketAddress client;
+		
+		RebindingRelay(InetSocketAddress server) throws SocketException
+		{
+			this.server = server;
+			this.front = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			this.upstream = openUpstream();
+			pump(front, true);
+		}
+		
+		SocketAddress getFrontAddress()
+		{
+			return front.getLocalSocketAddress();
+		}
+		
+		int getUpstreamPort()
+		{
+			return upstream.getLocalPort();
+		}
+		
+		void rebind() throws SocketException
+		{
+			DatagramSocket old = upstream;
+			upstream = openUpstream();
+			old.close();
+		}
+		
+		void close()
+		{
+			front.close();
+			upstream.close();
+		}
+		
+		private DatagramSocket openUpstream() throws SocketException
+		{
+			DatagramSocket s = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			pump(s, false);
+			return s;
+		}
+		
+		private void pump(final DatagramSocket from, final boolean fromClient)
+		{
+			Thread t = new Thread("quic-relay-" + from.getLocalPort()) {
+				@Override
+				public void run()
+				{
+					byte[] buf = new byte[2048];
+					while(!from.isClosed())
+					{
+						try
+						{
+							DatagramPacket p = new DatagramPacket(buf, buf.length);
+							from.receive(p);
+							if(fromClient)
+							{
+								client = p.getSocketAddress();
+								upstream.send(new DatagramPacket(p.getData(), p.getLength(), server));
+							}
+							else if(client != null)
+								front.send(new DatagramPacket(p.getData(), p.getLength(), client));
+						}
+						catch (Exception e)
+						{
+							// 端口关闭（rebind/close）或在rebind瞬间向已关闭的旧端口写入，丢弃即可
+						}
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * OnlineProcessorTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.processor;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * 并发登陆/退出下在线列表、计数器与分页索引的一致性。
+ */
+public class OnlineProcessorTest
+{
+	private static final int THREADS = 8;
+	private static final int USERS = 200;
+	private static final int ROUNDS = 20000;
+	
+	@Test
+	public void concurrentPutAndRemoveKeepCountersAndIndexConsistent() throws Exception
+	{
+		final OnlineProcessor op = OnlineProcessor.getInstance();
+		final int userCountBefore = op.getOnlineUserCount();
+		final long sessionCountBefore = op.getOnlineSessionCount();
+		
+		// 每个线程独占一个设备类别，同一用户的不同设备类别在各线程间并发登陆/退出（不会互踢）
+		final List<Map<String, Channel>> online = new ArrayList<Map<String, Channel>>();
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < THREADS; t++)
+		{
+			final String deviceClass = "dc"+t;
+			final Map<String, Channel> mine = new HashMap<String, Channel>();
+			online.add(mine);
+			final long seed = t;
+			Thread th = new Thread(){
+				@Override
+				public void run()
+				{
+					try
+					{
+						Random random = new Random(seed);
+						start.await();
+						for(int i = 0; i < ROUNDS; i++)
+						{
+							String userId = userId(random.nextInt(USERS));
+							Channel c = mine.remove(userId);
+							if(c == null)
+							{
+								c = new EmbeddedChannel();
+								op.putUser(userId, deviceClass, System.currentTimeMillis(), c);
+								mine.put(userId, c);
+							}
+							else
+								op.removeUser(userId, c);
+						}
+					}
+					catch (Throwable e)
+					{
+						synchronized (errors){
+							errors.add(e);
+						}
+					}
+				}
+			};
+			threads.add(th);
+			th.start();
+		}
+		start.countDown();
+		for(Thread th : threads)
+			th.join();
+		assertEquals(new ArrayList<Throwable>(), errors);
+		
+		TreeSet<String> expectedUsers = new TreeSet<String>();
+		long expectedSessions = 0;
+		for(Map<String, Channel> mine : online)
+		{
+			expectedUsers.addAll(mine.keySet());
+			expectedSessions += mine.size();
+		}
+		
+		assertEquals(userCountBefore + expectedUsers.size(), op.getOnlineUserCount());
+		assertEquals(sessionCountBefore + expectedSessions, op.getOnlineSessionCount());
+		for(int u = 0; u < USERS; u++)
+		{
+			String userId = userId(u);
+			Map<String, Channel> expected = new HashMap<String, Channel>();
+			for(int t = 0; t < THREADS; t++)
+			{
+				Channel c = online.get(t).get(userId);
+				if(c != null)
+					expected.put("dc"+t, c);
+			}
+			assertEquals(expected, op.getOnlineSessions(userId));
+			assertEquals(!expected.isEmpty(), op.isUserOnline(userId));
+		}
+		
+		// 分页索引：每个在线用户都必须能翻到，且按小页翻页与一次取完的结果一致
+		assertEquals(new ArrayList<String>(expectedUsers), pageAll(op, 7));
+		assertEquals(new ArrayList<String>(expectedUsers), pageAll(op, USERS + 1));
+		
+		for(int t = 0; t < THREADS; t++)
+		{
+			for(Map.Entry<String, Channel> e : online.get(t).entrySet())
+				op.removeUser(e.getKey(), e.getValue());
+		}
+		assertEquals(userCountBefore, op.getOnlineUserCount());
+		assertEquals(sessionCountBefore, op.getOnlineSessionCount());
+		assertEquals(new ArrayList<String>(), pageAll(op, 7));
+	}
+	
+	private static List<String> pageAll(OnlineProcessor op, int pageSize)
+	{
+		List<String> all = new ArrayList<String>();
+		String after = userId(-1);
+		for(;;)
+		{
+			List<String> page = op.getOnlineUserIds(after, pageSize);
+			for(String userId : page)
+			{
+				// 只统计本测试的用户
+				if(userId.startsWith("online-test-"))
+					all.add(userId);
+			}
+			if(page.size() < pageSize)
+				return all;
+			after = page.get(page.size() - 1);
+		}
+	}
+	
+	private static String userId(int u)
+	{
+		return (u < 0 ? "online-test-" : String.format("online-test-%05d", u));
+	}
+}
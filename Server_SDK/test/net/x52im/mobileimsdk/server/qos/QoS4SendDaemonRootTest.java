@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoS4SendDaemonRootTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 时间轮调度的正确性：到期重传与判定丢包的时刻、应答后取消调度、启动前放入的消息在启动时调度。
+ */
+public class QoS4SendDaemonRootTest
+{
+	private static final int TICK = 10;
+	private static final long RETRY_DELAY = 200;
+	/** 允许的延迟误差：时间轮精度（一个tick）加上调度与测试线程的抖动 */
+	private static final long SLACK = 3 * TICK + 150;
+	
+	private int tickDuration;
+	private int shardCount;
+	private TestDaemon daemon;
+	
+	@Before
+	public void setUp()
+	{
+		tickDuration = QoS4SendDaemonRoot.WHEEL_TICK_DURATION;
+		shardCount = QoS4SendDaemonRoot.QOS_SHARD_COUNT;
+		QoS4SendDaemonRoot.WHEEL_TICK_DURATION = TICK;
+		QoS4SendDaemonRoot.QOS_SHARD_COUNT = 2;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		if(daemon != null)
+			daemon.stop();
+		QoS4SendDaemonRoot.WHEEL_TICK_DURATION = tickDuration;
+		QoS4SendDaemonRoot.QOS_SHARD_COUNT = shardCount;
+	}
+	
+	@Test
+	public void deadlineRetransmitsThenDeclaresLost() throws Exception
+	{
+		int tries = 2;
+		daemon = new TestDaemon(tries, RETRY_DELAY, 1);
+		daemon.startup(false);
+		
+		long start = System.currentTimeMillis();
+		Protocal p = newMessage(0);
+		daemon.put(p);
+		
+		assertTrue(daemon.lost.await(RETRY_DELAY * (tries + 1) + 5000, TimeUnit.MILLISECONDS));
+		long elapsed = daemon.lostAt.get(p.getFp()) - start;
+		// 每RETRY_DELAY到期一次：前tries次重传，第tries+1次判定丢包
+		long expected = RETRY_DELAY * (tries + 1);
+		assertTrue("lost after "+elapsed+"ms, expected ~"+expected+"ms", elapsed >= expected - TICK && elapsed <= expected + SLACK);
+		assertEquals(tries, daemon.getRetransmitCount());
+		assertEquals(0, daemon.size());
+	}
+	
+	@Test
+	public void lossDelayIsIndependentOfRetryDelay() throws Exception
+	{
+		long lossDelay = 600;
+		daemon = new TestDaemon(1, RETRY_DELAY, 1);
+		daemon.lossDelay = lossDelay;
+		daemon.startup(false);
+		
+		long start = System.currentTimeMillis();
+		Protocal p = newMessage(0);
+		daemon.put(p);
+		
+		assertTrue(daemon.lost.await(RETRY_DELAY + lossDelay + 5000, TimeUnit.MILLISECONDS));
+		long elapsed = daemon.lostAt.get(p.getFp()) - start;
+		// RETRY_DELAY后重传一次，再等lossDelay才判定丢包
+		long expected = RETRY_DELAY + lossDelay;
+		assertTrue("lost after "+elapsed+"ms, expected ~"+expected+"ms", elapsed >= expected - TICK && elapsed <= expected + SLACK);
+		assertEquals(1, daemon.getRetransmitCount());
+	}
+	
+	@Test
+	public void acknowledgeCancelsSchedule() throws Exception
+	{
+		int count = 1000;
+		// 较长的重传间隔：放入与应答全部完成之前不应到期
+		long delay = 1000;
+		daemon = new TestDaemon(1, delay, 1);
+		daemon.startup(false);
+		
+		for(int i = 0; i < count; i++)
+			daemon.put(newMessage(i));
+		assertEquals(count, daemon.size());
+		
+		for(int i = 0; i < count; i++)
+		{
+			Protocal p = newMessage(i);
+			daemon.acknowledge(p.getFp(), p.getDeviceClass());
+		}
+		assertEquals(0, daemon.size());
+		
+		// 过了重传周期也不应有任何重传或丢包
+		Thread.sleep(delay + SLACK);
+		assertEquals(0, daemon.getRetransmitCount());
+		assertTrue(daemon.lostAt.isEmpty());
+	}
+	
+	@Test
+	public void putBeforeStartupIsScheduledOnStartup() throws Exception
+	{
+		int count = 100;
+		daemon = new TestDaemon(0, RETRY_DELAY, count);
+		for(int i = 0; i < count; i++)
+			daemon.put(newMessage(i));
+		
+		// 未启动时不调度
+		Thread.sleep(RETRY_DELAY + SLACK);
+		assertEquals(count, daemon.size());
+		assertTrue(daemon.lostAt.isEmpty());
+		
+		// immediately=true：启动后立即检查一次，重传次数为0时直接判定丢包
+		long start = System.currentTimeMillis();
+		daemon.startup(true);
+		assertTrue(daemon.lost.await(5000, TimeUnit.MILLISECONDS));
+		for(long at : daemon.lostAt.values())
+			assertTrue("lost "+(at - start)+"ms after startup", at - start <= SLACK);
+		assertEquals(0, daemon.size());
+	}
+	
+	private static Protocal newMessage(int i)
+	{
+		Protocal p = ProtocalFactory.createCommonData("wheel test message", "0", "user"+(i % 100), true, "fp-"+i);
+		p.setDeviceClass("android");
+		return p;
+	}
+	
+	private static class TestDaemon extends QoS4SendDaemonRoot
+	{
+		final Map<String, Long> lostAt = new ConcurrentHashMap<String, Long>();
+		final CountDownLatch lost;
+		final long retryDelay;
+		/** 判定丢包前的等待，为负时与retryDelay相同 */
+		volatile long lossDelay = -1;
+		
+		TestDaemon(int tryCount, long retryDelay, int expectedLost)
+		{
+			super(0, 0, tryCount, false, "-test");
+			this.retryDelay = retryDelay;
+			this.lost = new CountDownLatch(expectedLost);
+		}
+		
+		@Override
+		protected long getRetryDelay(String userId, String deviceClass, int retryCount)
+		{
+			return retryDelay;
+		}
+		
+		@Override
+		protected long getLossDelay(String userId, String deviceClass, int retryCount)
+		{
+			return (lossDelay >= 0 ? lossDelay : retryDelay);
+		}
+		
+		@Override
+		protected void notifyMessageLost(ArrayList<Protocal> lostMessages)
+		{
+			long now = System.currentTimeMillis();
+			for(Protocal p : lostMessages)
+			{
+				lostAt.put(p.getFp(), now);
+				lost.countDown();
+			}
+		}
+	}
+}
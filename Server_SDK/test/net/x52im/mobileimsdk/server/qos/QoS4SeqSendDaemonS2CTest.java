@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoS4SeqSendDaemonS2CTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+import net.x52im.mobileimsdk.server.protocal.ProtocalType;
+import net.x52im.mobileimsdk.server.protocal.s.PSeqSyncResponse;
+
+import org.junit.Test;
+
+/**
+ * 补发请求的处理：起点未知（from=0）时总会先告知纪元与起点，再补发请求范围内的消息；补发占用全节点的重传令牌。
+ */
+public class QoS4SeqSendDaemonS2CTest
+{
+	@Test
+	public void syncWithUnknownStartIsAnsweredWithBaseAndResend() throws Exception
+	{
+		QoS4SeqSendDaemonS2C daemon = QoS4SeqSendDaemonS2C.getInstance();
+		String user = "seq-sync-user";
+		String peer = "seq-sync-peer";
+		long epoch = 0;
+		for(int i = 1; i <= 3; i++)
+		{
+			Protocal p = ProtocalFactory.createCommonData("m"+i, peer, user, true, "seq-sync-"+i);
+			daemon.assign(user, "android", p);
+			epoch = p.getSe();
+		}
+		
+		// 客户端从sq=3起才见到这条流（sq=1、2未到，且此前的应答未发出）
+		EmbeddedChannel session = new EmbeddedChannel();
+		daemon.sync(session, user, "android", peer, epoch, 0, 2);
+		
+		List<Protocal> out = readAll(session);
+		assertEquals(3, out.size());
+		assertEquals(ProtocalType.S.FROM_SERVER_TYPE_OF_RESPONSE$SYNC$SEQ, out.get(0).getType());
+		PSeqSyncResponse res = ProtocalFactory.parsePSeqSyncResponse(out.get(0).getDataContent());
+		assertEquals(epoch, res.getSe());
+		assertEquals(0, res.getBase());
+		assertEquals(Long.valueOf(1), out.get(1).getSq());
+		assertEquals(Long.valueOf(2), out.get(2).getSq());
+		
+		daemon.ack(user, "android", peer, epoch, 3);
+	}
+	
+	@Test
+	public void syncResendIsChargedToRetransmitBudget() throws Exception
+	{
+		int rate = QoS4SendDaemonRoot.RETRANSMIT_RATE;
+		int burst = QoS4SendDaemonRoot.RETRANSMIT_BURST;
+		QoS4SeqSendDaemonS2C daemon = QoS4SeqSendDaemonS2C.getInstance();
+		String user = "seq-budget-user";
+		String peer = "seq-budget-peer";
+		try
+		{
+			// 先以极高的速率把令牌补满到3个并取走1个，之后每秒只补1个：余下的2个在留出0.6个余量后只够普通消息补发1条
+			QoS4SendDaemonRoot.RETRANSMIT_BURST = 3;
+			QoS4SendDaemonRoot.RETRANSMIT_RATE = Integer.MAX_VALUE;
+			QoS4SendDaemonRoot.tryAcquireRetransmit(ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA, System.currentTimeMillis());
+			QoS4SendDaemonRoot.RETRANSMIT_RATE = 1;
+			
+			long epoch = 0;
+			for(int i = 1; i <= 3; i++)
+			{
+				Protocal p = ProtocalFactory.createCommonData("m"+i, peer, user, true, "seq-budget-"+i);
+				daemon.assign(user, "android", p);
+				epoch = p.getSe();
+			}
+			long deferred = QoS4SendDaemonRoot.deferredRetransmitCount.sum();
+			
+			EmbeddedChannel session = new EmbeddedChannel();
+			daemon.sync(session, user, "android", peer, epoch, 1, 3);
+			
+			List<Protocal> out = readAll(session);
+			assertEquals(1, out.size());
+			assertEquals(Long.valueOf(1), out.get(0).getSq());
+			assertEquals(deferred + 1, QoS4SendDaemonRoot.deferredRetransmitCount.sum());
+			
+			daemon.ack(user, "android", peer, epoch, 3);
+		}
+		finally
+		{
+			// 把令牌重新补满，不影响其它用例
+			QoS4SendDaemonRoot.RETRANSMIT_BURST = burst;
+			QoS4SendDaemonRoot.RETRANSMIT_RATE = Integer.MAX_VALUE;
+			QoS4SendDaemonRoot.tryAcquireRetransmit(ProtocalType.C.FROM_CLIENT_TYPE_OF_COMMON$DATA, System.currentTimeMillis());
+			QoS4SendDaemonRoot.RETRANSMIT_RATE = rate;
+		}
+	}
+	
+	private static List<Protocal> readAll(EmbeddedChannel session)
+	{
+		List<Protocal> out = new ArrayList<Protocal>();
+		ByteBuf b;
+		while((b = session.readOutbound()) != null)
+		{
+			byte[] bytes = ByteBufUtil.getBytes(b);
+			b.release();
+			out.add(ProtocalFactory.parse(bytes, bytes.length));
+		}
+		return out;
+	}
+}
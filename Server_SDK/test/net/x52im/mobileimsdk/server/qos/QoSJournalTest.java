@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * QoSJournalTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import net.x52im.mobileimsdk.server.protocal.Protocal;
+import net.x52im.mobileimsdk.server.protocal.ProtocalFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QoSJournalTest
+{
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+	
+	private int segmentSize;
+	private int compactThreshold;
+	private int flushInterval;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		segmentSize = QoSJournal.SEGMENT_SIZE;
+		compactThreshold = QoSJournal.COMPACT_THRESHOLD;
+		flushInterval = QoSJournal.FLUSH_INTERVAL;
+		
+		File dir = tmp.newFolder("journal");
+		QoSJournal.DIR = dir.getAbsolutePath();
+		// 小段、低阈值：写入期间频繁切段与压缩
+		QoSJournal.SEGMENT_SIZE = 32 * 1024;
+		QoSJournal.COMPACT_THRESHOLD = 2;
+		QoSJournal.FLUSH_INTERVAL = 1;
+	}
+	
+	@After
+	public void tearDown()
+	{
+		QoSJournal.getInstance().close();
+		QoSJournal.SEGMENT_SIZE = segmentSize;
+		QoSJournal.COMPACT_THRESHOLD = compactThreshold;
+		QoSJournal.FLUSH_INTERVAL = flushInterval;
+	}
+	
+	@Test
+	public void replayRestoresPendingAndDropsAcked() throws Exception
+	{
+		QoS4SendDaemonRoot before = newDaemon();
+		QoSJournal.getInstance().open(before);
+		
+		List<Protocal> sent = new ArrayList<Protocal>();
+		for(int i = 0; i < 1000; i++)
+		{
+			Protocal p = newMessage(i);
+			before.put(p);
+			sent.add(p);
+		}
+		for(int i = 0; i < 1000; i += 2)
+			before.acknowledge(sent.get(i).getFp(), sent.get(i).getDeviceClass());
+		QoSJournal.getInstance().close();
+		
+		QoS4SendDaemonRoot after = newDaemon();
+		QoSJournal.getInstance().open(after);
+		assertEquals(500, after.size());
+		for(int i = 0; i < 1000; i++)
+			assertEquals("msg "+i, i % 2 == 1, after.exist(sent.get(i).getFp(), sent.get(i).getDeviceClass()));
+	}
+	
+	/**
+	 * 多线程持续放入的同时后台不断压缩：任何一条未应答消息都不能因落在被删除的旧段中而丢失。
+	 */
+	@Test
+	public void concurrentPutsSurviveCompaction() throws Exception
+	{
+		final QoS4SendDaemonRoot before = newDaemon();
+		QoSJournal.getInstance().open(before);
+		
+		final int threads = 8;
+		final int perThread = 5000;
+		final List<Protocal> sent = Collections.synchronizedList(new ArrayList<Protocal>());
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int t = 0; t < threads; t++)
+		{
+			final int base = t * perThread;
+			Thread w = new Thread(){
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+					for(int i = 0; i < perThread; i++)
+					{
+						Protocal p = newMessage(base + i);
+						before.put(p);
+						sent.add(p);
+					}
+				}
+			};
+			w.start();
+			workers.add(w);
+		}
+		start.countDown();
+		for(Thread w : workers)
+			w.join();
+		QoSJournal.getInstance().close();
+		
+		QoS4SendDaemonRoot after = newDaemon();
+		QoSJournal.getInstance().open(after);
+		assertEquals(threads * perThread, after.size());
+		for(Protocal p : sent)
+			assertTrue(p.getFp(), after.exist(p.getFp(), p.getDeviceClass()));
+	}
+	
+	private static QoS4SendDaemonRoot newDaemon()
+	{
+		// 不启动时间轮：只验证队列与日志，不发生重传
+		return new QoS4SendDaemonRoot(0, 0, -1, false, "-test");
+	}
+	
+	private static Protocal newMessage(int i)
+	{
+		Protocal p = ProtocalFactory.createCommonData("journal test message "+i, "0", "user"+(i % 100), true, null);
+		p.setDeviceClass("android");
+		return p;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023  即时通讯网(52im.net) & Jack Jiang.
+ * The MobileIMSDK v6.4 Project.
+ * All rights reserved.
+ *
+ * > Github地址：https://github.com/JackJiang2011/MobileIMSDK
+ * > 文档地址：  http://www.52im.net/forum-89-1.html
+ * > 技术社区：  http://www.52im.net/
+ * > 技术交流群：320837163 (http://www.52im.net/topic-qqgroup.html)
+ * > 作者公众号：“【即时通讯技术圈】”，欢迎关注！
+ * > 联系作者：  http://www.52im.net/thread-2792-1-1.html
+ *
+ * "即时通讯网(52im.net) - 即时通讯开发者社区!" 推荐开源工程。
+ *
+ * RotatingBloomFilterTest.java at 2026-10-18.
+ */
+package net.x52im.mobileimsdk.server.qos;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RotatingBloomFilterTest
+{
+	private static final int SLICES = 4;
+	private static final int PER_SLICE = 20000;
+	private static final double FPP = 0.01;
+	
+	@Test
+	public void noFalseNegativesWithinRetention()
+	{
+		RotatingBloomFilter f = new RotatingBloomFilter(SLICES, PER_SLICE, FPP);
+		fill(f);
+		for(int s = 0; s < SLICES; s++)
+		{
+			for(int i = 0; i < PER_SLICE; i++)
+				assertTrue(f.mightContain("fp-"+s+"-"+i));
+		}
+	}
+	
+	@Test
+	public void overallFalsePositiveRateStaysNearFpp()
+	{
+		RotatingBloomFilter f = new RotatingBloomFilter(SLICES, PER_SLICE, FPP);
+		fill(f);
+		
+		int probes = 200000, hits = 0;
+		for(int i = 0; i < probes; i++)
+		{
+			if(f.mightContain("unseen-"+i))
+				hits++;
+		}
+		double measured = (double)hits / probes;
+		// 各分片都写满时整体误判率应约为fpp，而不是 分片数 x fpp
+		assertTrue("measured fpp "+measured, measured < FPP * 1.5);
+		assertTrue("estimated fpp "+f.getEstimatedFalsePositiveRate(), f.getEstimatedFalsePositiveRate() < FPP * 1.5);
+	}
+	
+	private static void fill(RotatingBloomFilter f)
+	{
+		for(int s = 0; s < SLICES; s++)
+		{
+			if(s > 0)
+				f.rotate();
+			for(int i = 0; i < PER_SLICE; i++)
+				f.put("fp-"+s+"-"+i);
+		}
+	}
+}
@@ -64,6 +64,7 @@ CREATE TABLE IF NOT EXISTS tm_group_members (
 CREATE TABLE IF NOT EXISTS tm_messages (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     message_id VARCHAR(100) NOT NULL UNIQUE,
+    fp VARCHAR(100),
     sender_id VARCHAR(50) NOT NULL,
     receiver_id VARCHAR(50),
     group_id VARCHAR(50),
@@ -81,6 +82,7 @@ CREATE TABLE IF NOT EXISTS tm_messages (
     INDEX idx_receiver_id (receiver_id),
     INDEX idx_group_id (group_id),
     INDEX idx_create_time (create_time),
+    INDEX idx_fp (fp),
     INDEX idx_private_chat (sender_id, receiver_id, create_time),
     INDEX idx_group_chat (group_id, create_time)
 );
@@ -0,0 +1,115 @@
+package com.telemsg.server.im;
+
+import com.telemsg.server.entity.User;
+import com.telemsg.server.service.GroupService;
+import com.telemsg.server.service.JwtService;
+import com.telemsg.server.service.MessageService;
+import com.telemsg.server.service.UserService;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 重连风暴下IM登录验证（onUserLoginVerify）的吞吐：一批此前已登录过的用户用各自的token反复重新登录，
+ * 比较开启与关闭已验证token缓存时每秒可完成的登录验证数。
+ * <p>
+ * 关闭缓存即缓存容量为0（放入后立即被淘汰），每次登录都要验签并查库。
+ * 查库由UserService的Mockito替身代替，按dbLatencyMicros阻塞模拟一次数据库往返；
+ * 登录日志与被测路径无关，测量时调高为WARN。
+ * <p>
+ * 运行：gradle :TeleMsg-SpringBoot:jmh -Pjmh.includes=LoginVerifyBenchmark
+ *
+ * @author TeleMsg Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LoginVerifyBenchmark {
+
+    private static final String SECRET = "benchmark-secret-key-for-jwt-token-generation-0123456789";
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    @Param({"0", "1000"})
+    public long dbLatencyMicros;
+
+    @Param({"10000"})
+    public int users;
+
+    private TeleMsgServerEventListener listener;
+    private String[] userIds;
+    private String[] tokens;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Configurator.setLevel("com.telemsg", org.apache.logging.log4j.Level.WARN);
+
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+        ReflectionTestUtils.setField(jwtService, "expiration", 86400000L);
+        ReflectionTestUtils.setField(jwtService, "verifiedCacheMaxSize", cache ? users : 0);
+        jwtService.init();
+
+        final long dbLatencyNanos = TimeUnit.MICROSECONDS.toNanos(dbLatencyMicros);
+        final User user = new User();
+        UserService userService = mock(UserService.class);
+        when(userService.findByUserId(anyString())).thenAnswer(invocation -> {
+            if (dbLatencyNanos > 0) {
+                LockSupport.parkNanos(dbLatencyNanos);
+            }
+            return Optional.of(user);
+        });
+
+        listener = new TeleMsgServerEventListener(userService, mock(MessageService.class),
+                mock(GroupService.class), mock(IMSessionManager.class), jwtService);
+        ReflectionTestUtils.setField(listener, "tokenVerifyEnabled", true);
+
+        userIds = new String[users];
+        tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.valueOf(100000 + i);
+            tokens[i] = jwtService.generateToken(userIds[i]);
+        }
+        // 重连风暴中的用户此前都已登录过一次
+        for (int i = 0; i < users; i++) {
+            listener.onUserLoginVerify(userIds[i], tokens[i], null, null);
+        }
+    }
+
+    @Benchmark
+    public int login() {
+        int i = Math.floorMod(next.getAndIncrement(), users);
+        int code = listener.onUserLoginVerify(userIds[i], tokens[i], null, null);
+        if (code != 0) {
+            throw new IllegalStateException("登录验证失败: code=" + code);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,226 @@
+package com.telemsg.server.im;
+
+import com.telemsg.server.service.GroupService;
+import com.telemsg.server.service.JwtService;
+import com.telemsg.server.service.MessageService;
+import com.telemsg.server.service.UserService;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.x52im.mobileimsdk.server.event.SessionRegistryListener;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.processor.PresenceProcessor;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 重连风暴下在线状态持久化的写库次数：修改前逐事件写库与修改后去抖合并、批量写库的对比。
+ * <p>
+ * 一批已在线的用户在风暴期间反复掉线重连（每次在线1~5秒后掉线，50~800毫秒后重连），会话的增删经由真实的
+ * {@link OnlineProcessor} 触发 onSessionAdded/onSessionRemoved。风暴结束时全部用户重连，其中10%随后真正下线。
+ * 同一组事件同时交给两条路径：
+ * <ul>
+ * <li>修改前：每次登录成功写两次（在线状态、登录信息），每次下线写一次在线状态，以计数器统计；</li>
+ * <li>修改后：{@link PresenceProcessor} 去抖合并后回调 {@link TeleMsgServerEventListener#onPresenceChanged}，
+ * 统计其调用 updateUsersOnline/updateUserStatusBatch 的次数与涉及的用户数（UserService为Mockito替身，不连数据库）。</li>
+ * </ul>
+ * 风暴前的首次登录不计入两者。
+ * <p>
+ * 本类只存在于TeleMsg-SpringBoot的jmh源码集中（与基准测试一起，不随应用发布），可用以下任务运行：
+ * gradle :TeleMsg-SpringBoot:presenceFlapSim -Psim.args="[用户数] [风暴秒数]"
+ *
+ * @author TeleMsg Team
+ */
+public class PresenceFlapSimulator {
+
+    private static final long ONLINE_MIN_MILLIS = 1000;
+    private static final long ONLINE_MAX_MILLIS = 5000;
+    private static final long RECONNECT_MIN_MILLIS = 50;
+    private static final long RECONNECT_MAX_MILLIS = 800;
+    private static final double LEAVE_RATIO = 0.1;
+
+    private final AtomicLong onlineCalls = new AtomicLong();
+    private final AtomicLong onlineRows = new AtomicLong();
+    private final AtomicLong offlineCalls = new AtomicLong();
+    private final AtomicLong offlineRows = new AtomicLong();
+    private final LegacyPath legacy = new LegacyPath();
+
+    private final String[] userIds;
+    private final Channel[] sessions;
+    private final Random random = new Random(20261018L);
+
+    public PresenceFlapSimulator(int users) {
+        userIds = new String[users];
+        sessions = new Channel[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.valueOf(100000 + i);
+        }
+    }
+
+    public void run(long stormMillis) throws InterruptedException {
+        UserService userService = mock(UserService.class);
+        when(userService.updateUsersOnline(anyMap())).thenAnswer(invocation -> {
+            count(onlineCalls, onlineRows, ((Map<?, ?>) invocation.getArgument(0)).size());
+            return 0;
+        });
+        when(userService.updateUserStatusBatch(anyCollection(), any())).thenAnswer(invocation -> {
+            count(offlineCalls, offlineRows, ((Collection<?>) invocation.getArgument(0)).size());
+            return 0;
+        });
+        TeleMsgServerEventListener listener = new TeleMsgServerEventListener(userService, mock(MessageService.class),
+                mock(GroupService.class), mock(IMSessionManager.class), mock(JwtService.class));
+
+        PresenceProcessor.getInstance().addPresenceChangeListener(listener);
+        PresenceProcessor.getInstance().startup();
+        try {
+            // 风暴前全部用户已在线，等其首次上线通知完成后再开始计数
+            for (int i = 0; i < userIds.length; i++) {
+                connect(i);
+            }
+            settle();
+            reset();
+            OnlineProcessor.getInstance().addSessionRegistryListener(legacy);
+
+            storm(stormMillis);
+
+            for (int i = 0; i < userIds.length; i++) {
+                if (sessions[i] == null) {
+                    connect(i);
+                }
+            }
+            for (int i = 0; i < userIds.length * LEAVE_RATIO; i++) {
+                disconnect(i);
+            }
+            settle();
+        } finally {
+            OnlineProcessor.getInstance().removeSessionRegistryListener(legacy);
+            PresenceProcessor.getInstance().stop();
+            PresenceProcessor.getInstance().removePresenceChangeListener(listener);
+            for (int i = 0; i < userIds.length; i++) {
+                if (sessions[i] != null) {
+                    disconnect(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按各用户下一次掉线/重连的时刻依次执行，直到风暴结束。
+     */
+    private void storm(long stormMillis) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        PriorityQueue<long[]> events = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < userIds.length; i++) {
+            events.add(new long[]{start + between(ONLINE_MIN_MILLIS, ONLINE_MAX_MILLIS), i});
+        }
+
+        long end = start + stormMillis;
+        while (!events.isEmpty() && events.peek()[0] < end) {
+            long[] e = events.poll();
+            long wait = e[0] - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+
+            int i = (int) e[1];
+            if (sessions[i] != null) {
+                disconnect(i);
+                e[0] += between(RECONNECT_MIN_MILLIS, RECONNECT_MAX_MILLIS);
+            } else {
+                connect(i);
+                e[0] += between(ONLINE_MIN_MILLIS, ONLINE_MAX_MILLIS);
+            }
+            events.add(e);
+        }
+    }
+
+    private void connect(int i) {
+        sessions[i] = new EmbeddedChannel();
+        OnlineProcessor.getInstance().putUser(userIds[i], "android", System.currentTimeMillis(), sessions[i]);
+    }
+
+    private void disconnect(int i) {
+        OnlineProcessor.getInstance().removeUser(userIds[i], sessions[i]);
+        sessions[i].close();
+        sessions[i] = null;
+    }
+
+    private long between(long min, long max) {
+        return min + (long) (random.nextDouble() * (max - min));
+    }
+
+    /**
+     * 等所有用户都安静满去抖窗口并被通知出去。
+     */
+    private static void settle() throws InterruptedException {
+        Thread.sleep(PresenceProcessor.DEBOUNCE_MILLIS + 3L * PresenceProcessor.CHECK_INTERVAL);
+    }
+
+    private static void count(AtomicLong calls, AtomicLong rows, int size) {
+        if (size > 0) {
+            calls.incrementAndGet();
+            rows.addAndGet(size);
+        }
+    }
+
+    private void reset() {
+        onlineCalls.set(0);
+        onlineRows.set(0);
+        offlineCalls.set(0);
+        offlineRows.set(0);
+    }
+
+    private void print() {
+        long logins = legacy.added.get();
+        long logouts = legacy.removed.get();
+        System.out.println(String.format("风暴期间会话事件：上线 %d 次，下线 %d 次", logins, logouts));
+        System.out.println(String.format("修改前（逐事件）：写库 %d 次（在线状态 %d + 登录信息 %d + 下线状态 %d）",
+                2 * logins + logouts, logins, logins, logouts));
+        System.out.println(String.format("修改后（去抖合并）：updateUsersOnline %d 次（共 %d 人），updateUserStatusBatch %d 次（共 %d 人）",
+                onlineCalls.get(), onlineRows.get(), offlineCalls.get(), offlineRows.get()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        long stormSeconds = args.length > 1 ? Long.parseLong(args[1]) : 20;
+
+        // 逐个会话的上下线日志与被测路径无关
+        Configurator.setLevel("com.telemsg", Level.WARN);
+        Configurator.setLevel("net.x52im", Level.WARN);
+
+        System.out.println(String.format("用户数=%d，风暴时长=%d秒，去抖窗口=%dms", users, stormSeconds, PresenceProcessor.DEBOUNCE_MILLIS));
+        PresenceFlapSimulator sim = new PresenceFlapSimulator(users);
+        sim.run(stormSeconds * 1000);
+        sim.print();
+        System.exit(0);
+    }
+
+    /**
+     * 修改前的写库路径：登录成功时更新在线状态与登录信息，下线时更新在线状态，每个事件各自写库。
+     */
+    private static class LegacyPath implements SessionRegistryListener {
+        final AtomicLong added = new AtomicLong();
+        final AtomicLong removed = new AtomicLong();
+
+        @Override
+        public void onSessionAdded(String userId, String deviceClass, Channel session) {
+            added.incrementAndGet();
+        }
+
+        @Override
+        public void onSessionRemoved(String userId, String deviceClass, Channel session) {
+            removed.incrementAndGet();
+        }
+    }
+}
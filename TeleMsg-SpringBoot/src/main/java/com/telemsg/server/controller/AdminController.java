@@ -1,6 +1,7 @@
 package com.telemsg.server.controller;
 
 import com.telemsg.server.entity.User;
+import com.telemsg.server.im.IMSessionManager;
 import com.telemsg.server.service.UserService;
 import com.telemsg.server.service.MessageService;
 import com.telemsg.server.service.JwtService;
@@ -31,6 +32,7 @@ public class AdminController {
     private final UserService userService;
     private final MessageService messageService;
     private final JwtService jwtService;
+    private final IMSessionManager sessionManager;
 
     /**
      * 获取所有用户
@@ -116,12 +118,13 @@ public class AdminController {
             // 这里应该验证是否为管理员权限
 
             long totalUsers = userService.getTotalUserCount();
-            long onlineUsers = userService.getOnlineUserCount();
+            IMSessionManager.SessionStats sessionStats = sessionManager.getSessionStats();
             long totalMessages = messageService.getTotalMessageCount();
 
             Map<String, Object> stats = new HashMap<>();
             stats.put("totalUsers", totalUsers);
-            stats.put("onlineUsers", onlineUsers);
+            stats.put("onlineUsers", sessionStats.getOnlineUsers());
+            stats.put("onlineSessions", sessionStats.getTotalSessions());
             stats.put("totalMessages", totalMessages);
             stats.put("storageUsed", 0); // 暂时返回0
 
@@ -133,6 +136,26 @@ public class AdminController {
         }
     }
 
+    /**
+     * 分页获取在线用户
+     */
+    @GetMapping("/online-users")
+    public ResponseEntity<?> getOnlineUsers(@RequestHeader("Authorization") String authHeader,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "100") int size) {
+        try {
+            String adminId = extractUserIdFromToken(authHeader);
+
+            // 这里应该验证是否为管理员权限
+
+            return ResponseEntity.ok(sessionManager.getOnlineUsersPage(cursor, size));
+
+        } catch (Exception e) {
+            log.error("获取在线用户失败", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "获取在线用户失败"));
+        }
+    }
+
     /**
      * 从JWT token中提取用户ID
      */
@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
     @Index(name = "idx_sender", columnList = "senderId"),
     @Index(name = "idx_receiver", columnList = "receiverId"),
     @Index(name = "idx_group", columnList = "groupId"),
-    @Index(name = "idx_create_time", columnList = "createTime")
+    @Index(name = "idx_create_time", columnList = "createTime"),
+    @Index(name = "idx_fp", columnList = "fp")
 })
 public class Message {
 
@@ -26,6 +27,9 @@ public class Message {
     @Column(unique = true, nullable = false, length = 100)
     private String messageId;
 
+    @Column(length = 100)
+    private String fp; // IM协议包的指纹码，QoS应答回来时据此更新送达状态
+
     @Column(nullable = false, length = 50)
     private String senderId;
 
@@ -2,15 +2,26 @@ package com.telemsg.server.im;
 
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
+import net.x52im.mobileimsdk.server.event.SessionRegistryListener;
+import net.x52im.mobileimsdk.server.network.MBObserver;
+import net.x52im.mobileimsdk.server.network.SessionContext;
+import net.x52im.mobileimsdk.server.processor.OnlineProcessor;
+import net.x52im.mobileimsdk.server.processor.SessionRegistry;
+import net.x52im.mobileimsdk.server.protocal.s.PKickoutInfo;
+import net.x52im.mobileimsdk.server.utils.LocalSendHelper;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * IM会话管理器
- * 管理用户的网络会话状态
+ * 基于MobileIMSDK核心在线会话表（{@link SessionRegistry}）的只读视图，本身不保存任何会话状态，
+ * 用户登录/退出时由核心层统一维护，因此不会与核心层的在线状态不一致。
  *
  * @author TeleMsg Team
  */
@@ -19,204 +30,182 @@ import java.util.concurrent.ConcurrentMap;
 public class IMSessionManager {
 
     /**
-     * 用户会话映射表 userId -> Channel
+     * 无心跳超过该时长的会话视为过期
      */
-    private final ConcurrentMap<String, Channel> userSessions = new ConcurrentHashMap<>();
+    private static final long SESSION_EXPIRE_MILLIS = 10 * 60 * 1000L;
 
     /**
-     * 用户最后活跃时间 userId -> LocalDateTime
+     * 在线用户分页查询的最大页大小
      */
-    private final ConcurrentMap<String, LocalDateTime> userHeartbeats = new ConcurrentHashMap<>();
+    public static final int MAX_PAGE_SIZE = 500;
 
-    /**
-     * Channel到用户ID的映射 Channel -> userId
-     */
-    private final ConcurrentMap<Channel, String> channelUsers = new ConcurrentHashMap<>();
-
-    /**
-     * 添加用户会话
-     */
-    public void addUserSession(String userId, Channel channel) {
-        // 如果用户已经有会话，先移除旧的
-        removeUserSession(userId);
-
-        userSessions.put(userId, channel);
-        channelUsers.put(channel, userId);
-        userHeartbeats.put(userId, LocalDateTime.now());
-
-        log.info("用户会话添加成功: userId={}, channel={}", userId, channel.id().asShortText());
-    }
-
-    /**
-     * 移除用户会话
-     */
-    public void removeUserSession(String userId) {
-        Channel channel = userSessions.remove(userId);
-        if (channel != null) {
-            channelUsers.remove(channel);
-            userHeartbeats.remove(userId);
+    private final SessionRegistry registry = OnlineProcessor.getInstance();
 
-            // 如果Channel还活跃，尝试关闭
-            if (channel.isActive()) {
-                try {
-                    channel.close();
-                } catch (Exception e) {
-                    log.warn("关闭Channel异常: userId={}", userId, e);
-                }
+    public IMSessionManager() {
+        registry.addSessionRegistryListener(new SessionRegistryListener() {
+            @Override
+            public void onSessionAdded(String userId, String deviceClass, Channel session) {
+                log.info("用户会话添加: userId={}, deviceClass={}, channel={}", userId, deviceClass, session.id().asShortText());
             }
 
-            log.info("用户会话移除成功: userId={}, channel={}", userId, channel.id().asShortText());
-        }
+            @Override
+            public void onSessionRemoved(String userId, String deviceClass, Channel session) {
+                log.info("用户会话移除: userId={}, deviceClass={}, channel={}", userId, deviceClass, session.id().asShortText());
+            }
+        });
     }
 
     /**
-     * 通过Channel移除会话
+     * 获取用户会话（多端在线时为最近登录的那个）
      */
-    public void removeSessionByChannel(Channel channel) {
-        String userId = channelUsers.remove(channel);
-        if (userId != null) {
-            userSessions.remove(userId);
-            userHeartbeats.remove(userId);
-
-            log.info("通过Channel移除会话成功: userId={}, channel={}", userId, channel.id().asShortText());
-        }
+    public Channel getUserSession(String userId) {
+        return registry.getOnlineSession(userId);
     }
 
     /**
-     * 获取用户会话
+     * 获取用户所有在线会话 deviceClass -> Channel
      */
-    public Channel getUserSession(String userId) {
-        return userSessions.get(userId);
+    public Map<String, Channel> getUserSessions(String userId) {
+        return registry.getOnlineSessions(userId);
     }
 
     /**
      * 检查用户是否在线
      */
     public boolean isUserOnline(String userId) {
-        Channel channel = userSessions.get(userId);
-        return channel != null && channel.isActive();
+        return registry.isUserOnline(userId);
     }
 
     /**
      * 获取在线用户数量
      */
     public int getOnlineUserCount() {
-        return userSessions.size();
+        return registry.getOnlineUserCount();
     }
 
     /**
-     * 获取所有在线用户ID
+     * 获取所有在线用户ID（只读视图，遍历代价为O(在线人数)，查询类接口请使用 {@link #getOnlineUsersPage}）
      */
-    public java.util.Set<String> getOnlineUsers() {
-        return userSessions.keySet();
+    public Set<String> getOnlineUsers() {
+        return registry.getOnlineUserIds();
     }
 
     /**
-     * 更新用户心跳时间
+     * 按游标分页获取在线用户ID
+     *
+     * @param cursor 上一页返回的nextCursor，首页传null
+     * @param size   每页数量，最大 {@link #MAX_PAGE_SIZE}
      */
-    public void updateUserHeartbeat(String userId) {
-        if (userSessions.containsKey(userId)) {
-            userHeartbeats.put(userId, LocalDateTime.now());
-            log.debug("用户心跳更新: userId={}", userId);
-        }
+    public OnlineUserPage getOnlineUsersPage(String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<String> userIds = registry.getOnlineUserIds(cursor, limit);
+
+        OnlineUserPage page = new OnlineUserPage();
+        page.setUserIds(userIds);
+        page.setNextCursor(userIds.size() < limit ? null : userIds.get(userIds.size() - 1));
+        page.setTotal(registry.getOnlineUserCount());
+        return page;
     }
 
     /**
-     * 获取用户最后活跃时间
+     * 获取用户最后活跃时间（所有在线设备中最近一次收到数据的时间）
      */
     public LocalDateTime getUserLastHeartbeat(String userId) {
-        return userHeartbeats.get(userId);
+        long last = -1;
+        for (Channel channel : registry.getOnlineSessions(userId).values()) {
+            SessionContext ctx = SessionContext.get(channel);
+            if (ctx != null && ctx.getLastReceivedTime() > last) {
+                last = ctx.getLastReceivedTime();
+            }
+        }
+        return last > 0 ? LocalDateTime.ofInstant(Instant.ofEpochMilli(last), ZoneId.systemDefault()) : null;
     }
 
     /**
      * 清理过期会话（用于定时任务）
+     * 只需关闭Channel，会话关闭后核心层会将其移出在线列表
      */
     public void cleanExpiredSessions() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime expireTime = now.minusMinutes(10); // 10分钟无心跳视为过期
-
-        userHeartbeats.entrySet().removeIf(entry -> {
-            String userId = entry.getKey();
-            LocalDateTime lastHeartbeat = entry.getValue();
+        long expireTime = System.currentTimeMillis() - SESSION_EXPIRE_MILLIS;
 
-            if (lastHeartbeat.isBefore(expireTime)) {
-                log.info("清理过期会话: userId={}, lastHeartbeat={}", userId, lastHeartbeat);
-                removeUserSession(userId);
-                return true;
-            }
-
-            return false;
-        });
+        for (String userId : registry.getOnlineUserIds()) {
+            registry.getOnlineSessions(userId).forEach((deviceClass, channel) -> {
+                SessionContext ctx = SessionContext.get(channel);
+                if (ctx != null && ctx.getLastReceivedTime() < expireTime) {
+                    log.info("清理过期会话: userId={}, deviceClass={}", userId, deviceClass);
+                    channel.close();
+                }
+            });
+        }
     }
 
     /**
-     * 踢出用户（强制下线）
+     * 踢出用户（强制下线，该用户所有设备均会收到被踢通知）
      */
     public boolean kickUser(String userId, String reason) {
-        Channel channel = userSessions.get(userId);
-        if (channel != null && channel.isActive()) {
-            try {
-                // 这里可以发送踢出通知消息
-                // TODO: 发送踢出消息给客户端
-
-                channel.close();
-                removeUserSession(userId);
-
-                log.info("用户被踢出: userId={}, reason={}", userId, reason);
-                return true;
+        Map<String, Channel> sessions = registry.getOnlineSessions(userId);
+        if (sessions.isEmpty()) {
+            return false;
+        }
 
-            } catch (Exception e) {
-                log.error("踢出用户失败: userId={}, reason={}", userId, reason, e);
-                return false;
+        try {
+            for (Channel channel : sessions.values()) {
+                LocalSendHelper.sendKickout(channel, userId, PKickoutInfo.KICKOUT_FOR_ADMIN, reason);
             }
-        }
+            log.info("用户被踢出: userId={}, reason={}", userId, reason);
+            return true;
 
-        return false;
+        } catch (Exception e) {
+            log.error("踢出用户失败: userId={}, reason={}", userId, reason, e);
+            return false;
+        }
     }
 
     /**
      * 广播消息给所有在线用户
      */
     public void broadcastToAllUsers(String message) {
-        userSessions.forEach((userId, channel) -> {
-            if (channel.isActive()) {
-                try {
-                    // TODO: 这里需要根据MobileIMSDK的协议格式发送消息
-                    log.debug("广播消息给用户: userId={}, message={}", userId, message);
-                } catch (Exception e) {
-                    log.error("广播消息失败: userId={}", userId, e);
-                }
-            }
-        });
+        for (String userId : registry.getOnlineUserIds()) {
+            sendMessageToUser(userId, message);
+        }
     }
 
     /**
-     * 发送消息给指定用户
+     * 发送消息给指定用户（投递到该用户所有在线设备，带QoS送达保证）
+     *
+     * @return 用户在线且消息已提交发送时返回true，实际发送结果异步记录在日志中
      */
     public boolean sendMessageToUser(String userId, String message) {
-        Channel channel = userSessions.get(userId);
-        if (channel != null && channel.isActive()) {
-            try {
-                // TODO: 这里需要根据MobileIMSDK的协议格式发送消息
-                log.debug("发送消息给用户: userId={}, message={}", userId, message);
-                return true;
-
-            } catch (Exception e) {
-                log.error("发送消息失败: userId={}", userId, e);
-                return false;
-            }
+        if (!registry.isUserOnline(userId)) {
+            return false;
         }
 
-        return false;
+        try {
+            LocalSendHelper.sendData(userId, message, new MBObserver() {
+                @Override
+                public void update(boolean sendOK, Object extraObj) {
+                    if (sendOK) {
+                        log.debug("发送消息给用户成功: userId={}", userId);
+                    } else {
+                        log.warn("发送消息给用户失败: userId={}", userId);
+                    }
+                }
+            });
+            return true;
+
+        } catch (Exception e) {
+            log.error("发送消息失败: userId={}", userId, e);
+            return false;
+        }
     }
 
     /**
-     * 获取会话统计信息
+     * 获取会话统计信息（计数由核心层增量维护，不遍历在线列表）
      */
     public SessionStats getSessionStats() {
         SessionStats stats = new SessionStats();
-        stats.setTotalSessions(userSessions.size());
-        stats.setActiveSessions((int) userSessions.values().stream().filter(Channel::isActive).count());
+        stats.setOnlineUsers(registry.getOnlineUserCount());
+        stats.setTotalSessions(registry.getOnlineSessionCount());
         return stats;
     }
 
@@ -224,13 +213,33 @@ public class IMSessionManager {
      * 会话统计信息
      */
     public static class SessionStats {
-        private int totalSessions;
-        private int activeSessions;
+        private int onlineUsers;
+        private long totalSessions;
+
+        public int getOnlineUsers() { return onlineUsers; }
+        public void setOnlineUsers(int onlineUsers) { this.onlineUsers = onlineUsers; }
+
+        public long getTotalSessions() { return totalSessions; }
+        public void setTotalSessions(long totalSessions) { this.totalSessions = totalSessions; }
+    }
+
+    /**
+     * 在线用户分页结果
+     */
+    public static class OnlineUserPage {
+        private List<String> userIds;
+        private String nextCursor;
+        private int total;
+
+        public List<String> getUserIds() { return userIds; }
+        public void setUserIds(List<String> userIds) { this.userIds = userIds; }
 
-        public int getTotalSessions() { return totalSessions; }
-        public void setTotalSessions(int totalSessions) { this.totalSessions = totalSessions; }
+        /** 下一页游标，为null时表示已是最后一页 */
+        public String getNextCursor() { return nextCursor; }
+        public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
 
-        public int getActiveSessions() { return activeSessions; }
-        public void setActiveSessions(int activeSessions) { this.activeSessions = activeSessions; }
+        /** 在线用户总数（近似值） */
+        public int getTotal() { return total; }
+        public void setTotal(int total) { this.total = total; }
     }
 }
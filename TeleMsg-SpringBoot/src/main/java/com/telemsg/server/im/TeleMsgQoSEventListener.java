@@ -1,5 +1,7 @@
 package com.telemsg.server.im;
 
+import com.telemsg.server.service.DeliveryStatusSink;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.x52im.mobileimsdk.server.event.MessageQoSEventListenerS2C;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
@@ -14,8 +16,11 @@ import java.util.ArrayList;
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class TeleMsgQoSEventListener implements MessageQoSEventListenerS2C {
 
+    private final DeliveryStatusSink deliveryStatusSink;
+
     public void messagesLost(String toUserId, String[] lostMessages) {
         if (lostMessages == null || lostMessages.length == 0) {
             return;
@@ -73,16 +78,13 @@ public class TeleMsgQoSEventListener implements MessageQoSEventListenerS2C {
 
         log.debug("消息已被接收确认: fingerPrint={}", theFingerPrint);
 
-        // 消息送达确认，可以在这里更新消息状态为已送达
+        // 消息送达确认：交给DeliveryStatusSink攒批后统一更新为已送达，不在IM线程上逐条写库
         try {
-            // 这里可以调用MessageService更新消息状态
-            // messageService.updateMessageStatus(theFingerPrint, MessageStatus.DELIVERED);
-
-            // 或者触发其他相关处理:
-            // 1. 更新消息投递状态
-            // 2. 通知发送方消息已送达
-            // 3. 更新统计信息
-            // 4. 清理重发队列中的相关消息
+            deliveryStatusSink.offer(theFingerPrint);
+
+            // 还可以触发其他相关处理:
+            // 1. 通知发送方消息已送达
+            // 2. 更新统计信息
 
         } catch (Exception e) {
             log.error("处理消息接收确认时出错: fingerPrint={}", theFingerPrint, e);
@@ -2,16 +2,25 @@ package com.telemsg.server.im;
 
 import com.google.gson.Gson;
 import com.telemsg.server.entity.Message;
+import com.telemsg.server.entity.User;
 import com.telemsg.server.service.GroupService;
+import com.telemsg.server.service.JwtService;
 import com.telemsg.server.service.MessageService;
 import com.telemsg.server.service.UserService;
+import io.jsonwebtoken.Claims;
 import io.netty.channel.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.x52im.mobileimsdk.server.event.PresenceChangeListener;
 import net.x52im.mobileimsdk.server.event.ServerEventListener;
 import net.x52im.mobileimsdk.server.protocal.Protocal;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * TeleMsg服务端事件监听器实现
  * 集成SpringBoot服务与MobileIMSDK
@@ -21,26 +30,55 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class TeleMsgServerEventListener implements ServerEventListener {
+public class TeleMsgServerEventListener implements ServerEventListener, PresenceChangeListener {
 
     private final UserService userService;
     private final MessageService messageService;
     private final GroupService groupService;
     private final IMSessionManager sessionManager;
+    private final JwtService jwtService;
     private final Gson gson = new Gson();
 
+    /**
+     * IM登录时是否校验JWT token（关闭时仅校验用户是否存在，便于调试）
+     */
+    @Value("${telemsg.im.login.token-verify:true}")
+    private boolean tokenVerifyEnabled;
+
     @Override
     public int onUserLoginVerify(String userId, String token, String extra, Channel session) {
         log.info("用户登录验证: userId={}, extra={}", userId, extra);
 
         try {
+            Claims claims = null;
+            if (tokenVerifyEnabled) {
+                // 已验证过的token直接放行，重连风暴时免去验签和查库
+                String verifiedUserId = jwtService.getVerifiedUserId(token);
+                if (verifiedUserId != null) {
+                    if (!verifiedUserId.equals(userId)) {
+                        log.warn("用户登录失败: token与用户不匹配 userId={}", userId);
+                        return 1027; // token无效
+                    }
+                    log.debug("用户登录验证成功(缓存): userId={}", userId);
+                    return 0;
+                }
+
+                claims = jwtService.verifyToken(token);
+                if (claims == null || !userId.equals(claims.getSubject())) {
+                    log.warn("用户登录失败: token无效 userId={}", userId);
+                    return 1027; // token无效
+                }
+            }
+
             // 验证用户是否存在
             if (userService.findByUserId(userId).isEmpty()) {
                 log.warn("用户登录失败: 用户不存在 userId={}", userId);
                 return 1025; // 用户不存在
             }
 
-            // TODO: 这里可以添加更复杂的验证逻辑，比如验证token
+            if (claims != null) {
+                jwtService.cacheVerifiedToken(token, claims);
+            }
 
             log.info("用户登录验证成功: userId={}", userId);
             return 0; // 验证通过
@@ -53,41 +91,35 @@ public class TeleMsgServerEventListener implements ServerEventListener {
 
     @Override
     public void onUserLoginSucess(String userId, String extra, Channel session) {
-        log.info("用户登录成功: userId={}", userId);
-
-        try {
-            // 更新用户在线状态
-            userService.updateUserStatus(userId, com.telemsg.server.entity.User.UserStatus.ONLINE);
-
-            // 记录用户会话
-            String clientIp = getClientIp(session);
-            userService.updateLastLoginInfo(userId, clientIp);
-
-            // 管理用户会话
-            sessionManager.addUserSession(userId, session);
-
-            log.info("用户上线处理完成: userId={}, clientIp={}", userId, clientIp);
-
-        } catch (Exception e) {
-            log.error("用户上线处理异常: userId={}", userId, e);
-        }
+        // 在线状态与登录信息由onPresenceChanged去抖合并后批量持久化，避免网络抖动时频繁写库
+        log.info("用户登录成功: userId={}, clientIp={}", userId, getClientIp(session));
     }
 
     @Override
     public void onUserLogout(String userId, Channel session, int beKickoutCode) {
         log.info("用户下线: userId={}, beKickoutCode={}", userId, beKickoutCode);
+    }
 
+    /**
+     * 用户在线状态净变化的批量持久化
+     * 多端在线时只有最后一个设备下线才算用户离线，短时间内的“上线-下线-上线”不会产生任何写入
+     */
+    @Override
+    public void onPresenceChanged(Set<String> onlineUserIds, Set<String> offlineUserIds) {
         try {
-            // 更新用户离线状态
-            userService.updateUserStatus(userId, com.telemsg.server.entity.User.UserStatus.OFFLINE);
-
-            // 移除用户会话
-            sessionManager.removeUserSession(userId);
+            // 登录IP随上线状态一并批量写入，不再逐个用户更新登录信息
+            Map<String, String> loginIps = new HashMap<>(onlineUserIds.size() * 2);
+            for (String userId : onlineUserIds) {
+                Channel session = sessionManager.getUserSession(userId);
+                loginIps.put(userId, session != null ? getClientIp(session) : null);
+            }
+            userService.updateUsersOnline(loginIps);
+            userService.updateUserStatusBatch(offlineUserIds, User.UserStatus.OFFLINE);
 
-            log.info("用户下线处理完成: userId={}", userId);
+            log.info("用户在线状态持久化完成: online={}, offline={}", onlineUserIds.size(), offlineUserIds.size());
 
         } catch (Exception e) {
-            log.error("用户下线处理��常: userId={}", userId, e);
+            log.error("用户在线状态持久化异常: online={}, offline={}", onlineUserIds, offlineUserIds, e);
         }
     }
 
@@ -151,7 +183,8 @@ public class TeleMsgServerEventListener implements ServerEventListener {
                     messageData.getGroupId(),
                     Message.MessageType.valueOf(messageData.getMessageType().toUpperCase()),
                     messageData.getContent(),
-                    messageData.getMediaUrl()
+                    messageData.getMediaUrl(),
+                    p.getFp()
                 );
             } else {
                 // 私聊消息
@@ -160,7 +193,8 @@ public class TeleMsgServerEventListener implements ServerEventListener {
                     p.getTo(),
                     Message.MessageType.valueOf(messageData.getMessageType().toUpperCase()),
                     messageData.getContent(),
-                    messageData.getMediaUrl()
+                    messageData.getMediaUrl(),
+                    p.getFp()
                 );
             }
 
@@ -190,7 +224,8 @@ public class TeleMsgServerEventListener implements ServerEventListener {
                     messageData.getGroupId(),
                     Message.MessageType.valueOf(messageData.getMessageType().toUpperCase()),
                     messageData.getContent(),
-                    messageData.getMediaUrl()
+                    messageData.getMediaUrl(),
+                    p.getFp()
                 );
             } else {
                 // 私聊离线消息
@@ -199,7 +234,8 @@ public class TeleMsgServerEventListener implements ServerEventListener {
                     p.getTo(),
                     Message.MessageType.valueOf(messageData.getMessageType().toUpperCase()),
                     messageData.getContent(),
-                    messageData.getMediaUrl()
+                    messageData.getMediaUrl(),
+                    p.getFp()
                 );
             }
 
@@ -238,8 +274,8 @@ public class TeleMsgServerEventListener implements ServerEventListener {
      * 处理心跳消息
      */
     private void handleHeartbeat(String userId) {
+        // 最后活跃时间由核心层在收到数据时记录，见IMSessionManager#getUserLastHeartbeat
         log.debug("收到用户心跳: userId={}", userId);
-        sessionManager.updateUserHeartbeat(userId);
     }
 
     /**
@@ -7,6 +7,7 @@ import net.x52im.mobileimsdk.server.network.Gateway;
 import net.x52im.mobileimsdk.server.network.GatewayTCP;
 import net.x52im.mobileimsdk.server.network.GatewayUDP;
 import net.x52im.mobileimsdk.server.network.GatewayWebsocket;
+import net.x52im.mobileimsdk.server.processor.PresenceProcessor;
 import net.x52im.mobileimsdk.server.qos.QoS4ReciveDaemonC2S;
 import net.x52im.mobileimsdk.server.qos.QoS4SendDaemonS2C;
 import net.x52im.mobileimsdk.server.utils.ServerToolKits;
@@ -115,6 +116,9 @@ public class TeleMsgServerLauncher extends ServerLauncher implements CommandLine
         // 设置QoS事件监听器
         this.setServerMessageQoSEventListener(qoSEventListener);
 
+        // 设置用户在线状态变化监听器（去抖合并后批量回调）
+        PresenceProcessor.getInstance().addPresenceChangeListener(serverEventListener);
+
         log.info("TeleMsg事件监听器初始化完成");
     }
 }
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -83,6 +84,21 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("UPDATE Message m SET m.status = :status, m.updateTime = :updateTime WHERE m.messageId = :messageId")
     int updateMessageStatus(String messageId, Message.MessageStatus status, LocalDateTime updateTime);
 
+    /**
+     * 按指纹码批量更新消息状态（只更新当前为fromStatus的消息，避免把已读的改回已送达）
+     */
+    @Modifying
+    @Query("UPDATE Message m SET m.status = :status, m.updateTime = :updateTime WHERE " +
+           "m.fp IN :fps AND m.status = :fromStatus")
+    int updateStatusByFps(Collection<String> fps, Message.MessageStatus fromStatus,
+                          Message.MessageStatus status, LocalDateTime updateTime);
+
+    /**
+     * 在给定的指纹码中查出已有消息记录的那些
+     */
+    @Query("SELECT m.fp FROM Message m WHERE m.fp IN :fps")
+    List<String> findExistingFps(Collection<String> fps);
+
     /**
      * 批量更新私聊消息为已读状态
      */
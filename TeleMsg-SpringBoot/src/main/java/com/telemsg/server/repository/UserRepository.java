@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -59,6 +60,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("UPDATE User u SET u.status = :status, u.updateTime = :updateTime WHERE u.userId = :userId")
     int updateUserStatus(String userId, User.UserStatus status, LocalDateTime updateTime);
 
+    /**
+     * 批量更新用户在线状态
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.status = :status, u.updateTime = :updateTime WHERE u.userId IN :userIds")
+    int updateUserStatusBatch(Collection<String> userIds, User.UserStatus status, LocalDateTime updateTime);
+
+    /**
+     * 批量将用户置为在线并刷新最后登录时间
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.status = :status, u.lastLoginTime = :loginTime, u.updateTime = :loginTime WHERE u.userId IN :userIds")
+    int updateUserOnlineBatch(Collection<String> userIds, User.UserStatus status, LocalDateTime loginTime);
+
     /**
      * 更新用户最后登录信息
      */
@@ -0,0 +1,207 @@
+package com.telemsg.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息送达状态的批量落库
+ * 收到QoS应答时只把指纹码放入内存队列（不碰数据库），攒够一批或到达刷新间隔时
+ * 以一条 UPDATE ... WHERE fp IN (...) 语句批量标记为已送达，避免每个应答一次写库
+ * <p>
+ * 应答可能先于消息记录落库到达（消息的插入事务尚未提交），此时UPDATE匹配不到记录，
+ * 这些指纹会在之后的unmatchedRetries次刷新中重试；写库失败的整批应答也会留到下次刷新重试，
+ * 两者都计入maxPending，超出时才丢弃
+ *
+ * @author TeleMsg Team
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeliveryStatusSink {
+
+    private final MessageService messageService;
+
+    @Value("${telemsg.im.delivery-status.batch-size:500}")
+    private int batchSize;
+
+    @Value("${telemsg.im.delivery-status.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${telemsg.im.delivery-status.max-pending:200000}")
+    private int maxPending;
+
+    @Value("${telemsg.im.delivery-status.unmatched-retries:2}")
+    private int unmatchedRetries;
+
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * 待下次刷新重试的指纹码（计入pendingCount），以及各指纹因匹配不到记录已重试的次数，只在刷新线程中访问
+     */
+    private List<String> retry = new ArrayList<>();
+    private final Map<String, Integer> unmatchedAttempts = new HashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong droppedCount = new AtomicLong();
+    /**
+     * 上次写库失败：此时不再因攒满一批而立即刷新，只由定时刷新重试，避免数据库不可用时每个应答都触发一次写库
+     */
+    private volatile boolean failing;
+
+    /**
+     * 单线程执行全部刷新：定时刷新与攒满一批时的刷新不会并发写库
+     */
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "delivery-status-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前把剩余的应答落库
+        flush();
+    }
+
+    /**
+     * 记录一条已被接收方应答的消息指纹码（在IM线程上调用，不阻塞）
+     *
+     * @return 队列已满而被丢弃时返回false
+     */
+    public boolean offer(String fp) {
+        if (pendingCount.get() >= maxPending) {
+            // 数据库长时间不可用时宁可丢掉送达状态，也不能让队列无限增长
+            if (droppedCount.incrementAndGet() % 10000 == 1) {
+                log.warn("送达状态队列已满({})，丢弃应答: fingerPrint={}, 累计丢弃={}", maxPending, fp, droppedCount.get());
+            }
+            return false;
+        }
+
+        pending.offer(fp);
+        if (pendingCount.incrementAndGet() >= batchSize && !failing && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+        return true;
+    }
+
+    /**
+     * 先重试上次刷新留下的指纹码，再把队列中的指纹码按批写库，直到剩余不足一批
+     */
+    void flush() {
+        flushRequested.set(false);
+        List<String> retrying = retry;
+        retry = new ArrayList<>();
+        int next = 0;
+        while (true) {
+            List<String> batch = new ArrayList<>(Math.min(batchSize, Math.max(pendingCount.get(), 16)));
+            while (batch.size() < batchSize && next < retrying.size()) {
+                batch.add(retrying.get(next++));
+            }
+            String fp;
+            while (batch.size() < batchSize && (fp = pending.poll()) != null) {
+                batch.add(fp);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pendingCount.addAndGet(-batch.size());
+
+            try {
+                int updated = messageService.markMessagesDelivered(batch);
+                failing = false;
+                log.debug("批量更新消息送达状态: 应答数={}, 更新条数={}", batch.size(), updated);
+                if (updated < batch.size()) {
+                    retryUnmatched(batch);
+                } else if (!unmatchedAttempts.isEmpty()) {
+                    unmatchedAttempts.keySet().removeAll(batch);
+                }
+            } catch (Exception e) {
+                failing = true;
+                int kept = requeue(batch);
+                log.error("批量更新消息送达状态失败，{}条应答留待下次刷新重试，{}条因队列已满被丢弃",
+                        kept, batch.size() - kept, e);
+                // 数据库不可用时不再继续本轮刷新，尚未处理的重试项原样留到下次（它们仍计在pendingCount中）
+                retry.addAll(retrying.subList(next, retrying.size()));
+                return;
+            }
+
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * UPDATE条数少于应答数时，找出没有消息记录的指纹码留待下次刷新重试（已是送达/已读状态的不再重试）
+     */
+    private void retryUnmatched(List<String> batch) {
+        Set<String> existing = messageService.findExistingFps(batch);
+        int retried = 0;
+        int given = 0;
+        for (String fp : batch) {
+            if (existing.contains(fp)) {
+                unmatchedAttempts.remove(fp);
+                continue;
+            }
+            int attempts = unmatchedAttempts.merge(fp, 1, Integer::sum);
+            if (attempts <= unmatchedRetries && requeue(Collections.singletonList(fp)) == 1) {
+                retried++;
+            } else {
+                unmatchedAttempts.remove(fp);
+                given++;
+            }
+        }
+        if (retried > 0 || given > 0) {
+            log.debug("送达状态未匹配到消息记录: 留待重试={}, 放弃={}", retried, given);
+        }
+    }
+
+    /**
+     * 在maxPending以内把指纹码放回重试列表，返回实际放回的条数，其余计入丢弃数
+     */
+    private int requeue(List<String> fps) {
+        int kept = Math.max(0, Math.min(fps.size(), maxPending - pendingCount.get()));
+        retry.addAll(fps.subList(0, kept));
+        pendingCount.addAndGet(kept);
+        droppedCount.addAndGet(fps.size() - kept);
+        return kept;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
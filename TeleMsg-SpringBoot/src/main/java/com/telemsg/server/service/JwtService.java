@@ -1,13 +1,22 @@
 package com.telemsg.server.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -24,8 +33,37 @@ public class JwtService {
     @Value("${jwt.expiration:86400000}") // 24小时
     private Long expiration;
 
+    @Value("${jwt.verified-cache.max-size:100000}")
+    private int verifiedCacheMaxSize;
+
+    /**
+     * 签名密钥与解析器均为不可变对象，启动时构建一次即可，无需每次调用都重建
+     */
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    /**
+     * 已验证过的token缓存（token哈希 -> 用户ID及过期时间），按LRU淘汰
+     * 重连风暴时同一token反复登录，命中缓存即可免去验签和查库
+     */
+    private Map<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        parser = Jwts.parser().verifyWith(signingKey).build();
+
+        final int maxSize = verifiedCacheMaxSize;
+        verifiedTokens = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes());
+        return signingKey;
     }
 
     public String generateToken(String userId) {
@@ -55,11 +93,80 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    /**
+     * 从已验证token缓存中取得token所属的用户ID
+     *
+     * @return 未命中或缓存的token已过期时返回null
+     */
+    public String getVerifiedUserId(String token) {
+        if (token == null) {
+            return null;
+        }
+
+        String key = hashToken(token);
+        VerifiedToken verified = verifiedTokens.get(key);
+        if (verified == null) {
+            return null;
+        }
+        if (verified.expiresAt <= System.currentTimeMillis()) {
+            verifiedTokens.remove(key);
+            return null;
+        }
+        return verified.userId;
+    }
+
+    /**
+     * 完整验证token（验签并检查过期）
+     *
+     * @return 已验证的claims（用户ID即subject），token无效时返回null
+     */
+    public Claims verifyToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try {
+            Claims claims = extractAllClaims(token);
+            Date exp = claims.getExpiration();
+            if (exp != null && exp.before(new Date())) {
+                return null;
+            }
+            return claims;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 将已通过验证的token加入缓存，缓存有效期不超过token本身的过期时间
+     *
+     * @param claims {@link #verifyToken(String)}返回的claims，直接复用而不再解析验签一次
+     */
+    public void cacheVerifiedToken(String token, Claims claims) {
+        Date exp = claims.getExpiration();
+        long expiresAt = (exp != null ? exp.getTime() : System.currentTimeMillis() + expiration);
+        verifiedTokens.put(hashToken(token), new VerifiedToken(claims.getSubject(), expiresAt));
+    }
+
+    /**
+     * 使某用户所有已缓存的token失效（用户被删除、禁用时调用）
+     */
+    public void invalidateUser(String userId) {
+        synchronized (verifiedTokens) {
+            verifiedTokens.values().removeIf(v -> v.userId.equals(userId));
+        }
+    }
+
+    private static String hashToken(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private Boolean isTokenExpired(String token) {
@@ -78,4 +185,14 @@ public class JwtService {
             return false;
         }
     }
+
+    private static final class VerifiedToken {
+        private final String userId;
+        private final long expiresAt;
+
+        private VerifiedToken(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
 }
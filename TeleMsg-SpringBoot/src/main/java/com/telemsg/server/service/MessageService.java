@@ -11,8 +11,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -35,6 +39,15 @@ public class MessageService {
     @Transactional
     public Message sendPrivateMessage(String senderId, String receiverId,
                                     Message.MessageType messageType, String content, String mediaUrl) {
+        return sendPrivateMessage(senderId, receiverId, messageType, content, mediaUrl, null);
+    }
+
+    /**
+     * 发送私聊消息（fp为IM协议包的指纹码，用于之后按QoS应答更新送达状态）
+     */
+    @Transactional
+    public Message sendPrivateMessage(String senderId, String receiverId,
+                                    Message.MessageType messageType, String content, String mediaUrl, String fp) {
         // 验证发送者和接收者
         if (userService.findByUserId(senderId).isEmpty()) {
             throw new RuntimeException("发送者不存在");
@@ -47,6 +60,7 @@ public class MessageService {
         Message message = new Message();
         message.setMessageId(generateMessageId());
         message.setSenderId(senderId);
+        message.setFp(fp);
         message.setReceiverId(receiverId);
         message.setMessageType(messageType);
         message.setContent(content);
@@ -67,6 +81,15 @@ public class MessageService {
     @Transactional
     public Message sendGroupMessage(String senderId, String groupId,
                                   Message.MessageType messageType, String content, String mediaUrl) {
+        return sendGroupMessage(senderId, groupId, messageType, content, mediaUrl, null);
+    }
+
+    /**
+     * 发送群聊消息（fp为IM协议包的指纹码，用于之后按QoS应答更新送达状态）
+     */
+    @Transactional
+    public Message sendGroupMessage(String senderId, String groupId,
+                                  Message.MessageType messageType, String content, String mediaUrl, String fp) {
         // 验证发送者
         if (userService.findByUserId(senderId).isEmpty()) {
             throw new RuntimeException("发送者不存在");
@@ -81,6 +104,7 @@ public class MessageService {
         Message message = new Message();
         message.setMessageId(generateMessageId());
         message.setSenderId(senderId);
+        message.setFp(fp);
         message.setGroupId(groupId);
         message.setMessageType(messageType);
         message.setContent(content);
@@ -95,6 +119,31 @@ public class MessageService {
         return savedMessage;
     }
 
+    /**
+     * 按指纹码批量将已发送的消息标记为已送达
+     *
+     * @return 实际更新的消息条数
+     */
+    @Transactional
+    public int markMessagesDelivered(Collection<String> fps) {
+        if (fps == null || fps.isEmpty()) {
+            return 0;
+        }
+        return messageRepository.updateStatusByFps(fps, Message.MessageStatus.SENT,
+                Message.MessageStatus.DELIVERED, LocalDateTime.now());
+    }
+
+    /**
+     * 在给定的指纹码中查出已有消息记录的那些（用于区分“消息尚未落库”与“已是送达/已读状态”）
+     */
+    @Transactional(readOnly = true)
+    public Set<String> findExistingFps(Collection<String> fps) {
+        if (fps == null || fps.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(messageRepository.findExistingFps(fps));
+    }
+
     /**
      * 获取私聊消息记录
      */
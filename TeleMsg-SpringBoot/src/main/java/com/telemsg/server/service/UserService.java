@@ -4,12 +4,18 @@ import com.telemsg.server.entity.User;
 import com.telemsg.server.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -24,6 +30,19 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final JwtService jwtService;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 批量更新用户状态时单条SQL的最大用户数
+     */
+    private static final int STATUS_BATCH_SIZE = 500;
+
+    /**
+     * 置为在线并记录登录信息（IP为null时保留原值）
+     */
+    private static final String UPDATE_ONLINE_SQL = "UPDATE tm_users SET status = ?, last_login_time = ?, "
+            + "last_login_ip = COALESCE(?, last_login_ip), update_time = ? WHERE user_id = ?";
 
     /**
      * 用户注册
@@ -132,6 +151,62 @@ public class UserService {
         }
     }
 
+    /**
+     * 批量更新用户在线状态（用于在线状态变化的批量持久化）
+     * 每批最多 {@link #STATUS_BATCH_SIZE} 个用户，避免IN列表过长
+     */
+    @Transactional
+    public int updateUserStatusBatch(Collection<String> userIds, User.UserStatus status) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<String> ids = new ArrayList<>(userIds);
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += STATUS_BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(from + STATUS_BATCH_SIZE, ids.size()));
+            updated += (status == User.UserStatus.ONLINE)
+                    ? userRepository.updateUserOnlineBatch(batch, status, now)
+                    : userRepository.updateUserStatusBatch(batch, status, now);
+        }
+        log.debug("用户状态批量更新: count={}, status={}, updated={}", ids.size(), status, updated);
+        return updated;
+    }
+
+    /**
+     * 批量将用户置为在线，并记录各自的最后登录时间与登录IP
+     * 每个用户的IP不同，无法用一条 UPDATE ... IN 表达，这里以JDBC批处理提交（每批 {@link #STATUS_BATCH_SIZE} 条）
+     *
+     * @param loginIps 用户ID -> 登录IP（取不到时为null）
+     */
+    @Transactional
+    public int updateUsersOnline(Map<String, String> loginIps) {
+        if (loginIps.isEmpty()) {
+            return 0;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_ONLINE_SQL, loginIps.entrySet(), STATUS_BATCH_SIZE,
+                (ps, e) -> {
+                    ps.setString(1, User.UserStatus.ONLINE.name());
+                    ps.setTimestamp(2, now);
+                    ps.setString(3, e.getValue());
+                    ps.setTimestamp(4, now);
+                    ps.setString(5, e.getKey());
+                });
+
+        int updated = 0;
+        for (int[] batch : counts) {
+            for (int c : batch) {
+                // 部分驱动批处理时只返回SUCCESS_NO_INFO(-2)
+                updated += (c > 0 || c == Statement.SUCCESS_NO_INFO ? 1 : 0);
+            }
+        }
+        log.debug("用户上线批量更新: count={}, updated={}", loginIps.size(), updated);
+        return updated;
+    }
+
     /**
      * 更新用户最后登录信息
      */
@@ -218,6 +293,7 @@ public class UserService {
     public void deleteUser(String userId) {
         int updated = userRepository.softDeleteUser(userId, LocalDateTime.now());
         if (updated > 0) {
+            jwtService.invalidateUser(userId);
             log.info("用户删除成功: userId={}", userId);
         } else {
             throw new RuntimeException("用户删除失败");
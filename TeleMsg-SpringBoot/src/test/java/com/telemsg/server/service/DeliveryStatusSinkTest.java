@@ -0,0 +1,118 @@
+package com.telemsg.server.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * DeliveryStatusSink 批量落库、未匹配重试与失败重试的单元测试
+ *
+ * @author TeleMsg Team
+ */
+class DeliveryStatusSinkTest {
+
+    private MessageService messageService;
+    private DeliveryStatusSink sink;
+
+    @BeforeEach
+    void setUp() {
+        messageService = mock(MessageService.class);
+        sink = new DeliveryStatusSink(messageService);
+        // 不调用init()：不启动刷新线程，由测试直接调用flush()；批大小足够大，offer不会触发立即刷新
+        ReflectionTestUtils.setField(sink, "batchSize", 100);
+        ReflectionTestUtils.setField(sink, "maxPending", 5);
+        ReflectionTestUtils.setField(sink, "unmatchedRetries", 2);
+    }
+
+    @Test
+    void unmatchedFingerprintIsRetriedUntilItsMessageIsStored() {
+        // 第一次：fp2的消息尚未落库；第二次：已落库
+        when(messageService.markMessagesDelivered(anyCollection())).thenReturn(1, 1);
+        when(messageService.findExistingFps(anyCollection())).thenReturn(Set.of("fp1"));
+
+        sink.offer("fp1");
+        sink.offer("fp2");
+        sink.flush();
+        assertEquals(1, sink.getPendingCount());
+
+        sink.flush();
+        assertEquals(0, sink.getPendingCount());
+        assertEquals(List.of(List.of("fp1", "fp2"), List.of("fp2")), updatedBatches(2));
+        assertEquals(0, sink.getDroppedCount());
+    }
+
+    @Test
+    void unmatchedFingerprintIsGivenUpAfterBoundedRetries() {
+        when(messageService.markMessagesDelivered(anyCollection())).thenReturn(0);
+        when(messageService.findExistingFps(anyCollection())).thenReturn(Set.of());
+
+        sink.offer("fp1");
+        for (int i = 0; i < 5; i++) {
+            sink.flush();
+        }
+        // 首次 + 2次重试
+        verify(messageService, times(3)).markMessagesDelivered(anyCollection());
+        assertEquals(0, sink.getPendingCount());
+    }
+
+    @Test
+    void alreadyDeliveredFingerprintIsNotRetried() {
+        when(messageService.markMessagesDelivered(anyCollection())).thenReturn(0);
+        when(messageService.findExistingFps(anyCollection())).thenReturn(Set.of("fp1"));
+
+        sink.offer("fp1");
+        sink.flush();
+        sink.flush();
+        verify(messageService, times(1)).markMessagesDelivered(anyCollection());
+        assertEquals(0, sink.getPendingCount());
+    }
+
+    @Test
+    void failedBatchIsRequeuedWithinMaxPending() {
+        when(messageService.markMessagesDelivered(anyCollection()))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(5);
+
+        sink.offer("fp1");
+        sink.offer("fp2");
+        sink.offer("fp3");
+        sink.flush();
+        assertEquals(3, sink.getPendingCount());
+        assertEquals(0, sink.getDroppedCount());
+
+        // 重试项计入maxPending(5)
+        sink.offer("fp4");
+        sink.offer("fp5");
+        assertFalse(sink.offer("fp6"));
+        assertEquals(1, sink.getDroppedCount());
+
+        sink.flush();
+        assertEquals(0, sink.getPendingCount());
+        assertEquals(List.of("fp1", "fp2", "fp3", "fp4", "fp5"), updatedBatches(2).get(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<String>> updatedBatches(int calls) {
+        ArgumentCaptor<Collection<String>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(messageService, times(calls)).markMessagesDelivered(captor.capture());
+        List<List<String>> batches = new ArrayList<>();
+        for (Collection<String> c : captor.getAllValues()) {
+            batches.add(new ArrayList<>(c));
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,99 @@
+package com.telemsg.server.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * JwtService 验证与已验证token缓存的单元测试
+ *
+ * @author TeleMsg Team
+ */
+class JwtServiceTest {
+
+    private static final String SECRET = "unit-test-secret-key-for-jwt-token-generation-0123456789";
+
+    private JwtService jwtService;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = newService(86400000L);
+    }
+
+    @Test
+    void verifiedTokenIsServedFromCache() {
+        String token = jwtService.generateToken("10001");
+        assertNull(jwtService.getVerifiedUserId(token));
+
+        Claims claims = jwtService.verifyToken(token);
+        assertNotNull(claims);
+        assertEquals("10001", claims.getSubject());
+
+        jwtService.cacheVerifiedToken(token, claims);
+        assertEquals("10001", jwtService.getVerifiedUserId(token));
+
+        jwtService.invalidateUser("10001");
+        assertNull(jwtService.getVerifiedUserId(token));
+    }
+
+    @Test
+    void cachedTokenKeepsItsOwnUser() {
+        String tokenA = jwtService.generateToken("10001");
+        String tokenB = jwtService.generateToken("10002");
+        jwtService.cacheVerifiedToken(tokenA, jwtService.verifyToken(tokenA));
+
+        // 缓存命中时返回的是token自己的用户，调用方据此拒绝拿他人token登录
+        assertEquals("10001", jwtService.getVerifiedUserId(tokenA));
+        assertNull(jwtService.getVerifiedUserId(tokenB));
+    }
+
+    @Test
+    void tokenSignedWithAnotherKeyIsRejected() {
+        String forged = Jwts.builder()
+                .subject("10001")
+                .expiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(Keys.hmacShaKeyFor("another-secret-key-for-jwt-token-generation-0123456789".getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        assertNull(jwtService.verifyToken(forged));
+        assertNull(jwtService.verifyToken(""));
+        assertNull(jwtService.verifyToken(null));
+        assertNull(jwtService.getVerifiedUserId(null));
+    }
+
+    @Test
+    void expiredTokenIsRejectedAndEvictedFromCache() throws InterruptedException {
+        // exp按秒取整，有效期需超过1秒才能保证刚签发时仍有效
+        JwtService shortLived = newService(2000L);
+        String token = shortLived.generateToken("10001");
+
+        Claims claims = shortLived.verifyToken(token);
+        assertNotNull(claims);
+        shortLived.cacheVerifiedToken(token, claims);
+        assertEquals("10001", shortLived.getVerifiedUserId(token));
+
+        // 缓存有效期不超过token本身的过期时间
+        Thread.sleep(2100);
+        assertNull(shortLived.getVerifiedUserId(token));
+        assertNull(shortLived.verifyToken(token));
+    }
+
+    private static JwtService newService(long expiration) {
+        JwtService service = new JwtService();
+        ReflectionTestUtils.setField(service, "secretKey", SECRET);
+        ReflectionTestUtils.setField(service, "expiration", expiration);
+        ReflectionTestUtils.setField(service, "verifiedCacheMaxSize", 100);
+        service.init();
+        return service;
+    }
+}